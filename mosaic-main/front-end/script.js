@@ -11,6 +11,11 @@ if ((window.location.hostname == "localhost") || (window.location.hostname == ""
   searchserviceurl_ = "http://localhost:8008";
 if (logging_) console.log ("searchserviceurl = " + searchserviceurl_);
 
+// wait time after the last keystroke before suggestions are requested
+var suggestdelay_ = 150;
+var suggesttimer_ = null;
+var suggestrequest_ = null;
+
 
 
 
@@ -22,9 +27,76 @@ $(document).ready(function () {
       doSearch ();  
     }
   });  
+  $('#searchterm').on('input', function(){
+    clearTimeout (suggesttimer_);
+    suggesttimer_ = setTimeout (doSuggest, suggestdelay_);
+  });
 });
 
 
+// request completions of the search term and show them below the search field
+function doSuggest ()
+{
+  var searchterm = $("#searchterm").val ();
+  var optionindex = $('input[name="option-index"]:checked').val();
+  if (searchterm.trim () == "")
+  {
+    $("#suggestions").empty ();
+    return;
+  }
+
+  var suggesturl = searchserviceurl_ + "/suggest?q=" + encodeURIComponent (searchterm) + "&limit=8";
+  if (optionindex != "default")
+    suggesturl += "&index=" + optionindex;
+
+  // only the response of the last request is shown
+  if (suggestrequest_ != null)
+    suggestrequest_.abort ();
+  suggestrequest_ = $.ajax ({
+    type: "get",
+    url:suggesturl,
+    success:function (result) {
+      var html = "";
+      for (var i = 0; i < result.suggestions.length; i++)
+        html += "<option value=\"" + $("<div>").text (result.suggestions[i]).html () + "\">";
+      $("#suggestions").html (html);
+    }
+  });
+}
+
+
+// search for the corrected search term
+function doCorrectedSearch (correction)
+{
+  $("#searchterm").val (correction);
+  doSearch ();
+}
+
+
+// request a correction of a search term without results and show it as link
+function showCorrection (searchterm)
+{
+  var optionindex = $('input[name="option-index"]:checked').val();
+  var suggesturl = searchserviceurl_ + "/suggest?q=" + encodeURIComponent (searchterm) + "&limit=1&correct=true";
+  if (optionindex != "default")
+    suggesturl += "&index=" + optionindex;
+
+  $.ajax ({
+    type: "get",
+    url:suggesturl,
+    success:function (result) {
+      if (result.didYouMean == undefined)
+        return;
+      var link = $("<a href='#'></a>").text (result.didYouMean).click (function (event) {
+        event.preventDefault ();
+        doCorrectedSearch (result.didYouMean);
+      });
+      $("#searchresult").prepend ($("<p>Did you mean: </p>").append (link));
+    }
+  });
+}
+
+
 //perform a search
 function indexInfo ()
 {
@@ -128,6 +200,7 @@ function doSearch ()
 
       var iicount = result.results.length;
       var html = "<p>Search result for term: \"" + searchterm + "\"</p>";
+      var totalitems = 0;
 
       
       
@@ -138,6 +211,7 @@ function doSearch ()
 
         html += "<h2>Index: " + indexname + "</h2>";
         html += "<p><i>Number of items: " + items.length + "</i></p>";
+        totalitems += items.length;
 
         
         
@@ -222,6 +296,10 @@ function doSearch ()
         $("#searchresult").html (html);
         
       }
+
+      // offer a correction if no index returned results
+      if (totalitems == 0)
+        showCorrection (searchterm);
     },
     error: function (xhr, status, error) {
       console.log ("error: "+ xhr + status + error);
@@ -0,0 +1,32 @@
+#!/bin/bash
+
+# Compares the import of a CIFF file using the importer of the search service
+# with the external lucene-ciff tool, e.g.: ./benchmark_import.sh demo-simplewiki
+
+index_name="${1:-demo-simplewiki}"
+threads="${2:-}"
+
+ciff_file=$(ls ../resources/$index_name/*.ciff* 2>/dev/null | head -n 1)
+if [ -z "$ciff_file" ]; then
+    echo "No CIFF file found in ../resources/$index_name/"
+    exit 1
+fi
+
+out_dir=$(mktemp -d)
+trap 'rm -rf "$out_dir"' EXIT
+
+echo "Importing $ciff_file using lucene-ciff..."
+start=$(date +%s%N)
+java -jar ../lucene-ciff/lucene-ciff.jar "$ciff_file" "$out_dir/lucene-ciff/" > /dev/null
+end=$(date +%s%N)
+external_ms=$(( (end - start) / 1000000 ))
+
+echo "Importing $ciff_file using the importer of the search service..."
+start=$(date +%s%N)
+java -cp ../search-service/core/target/service.jar eu.ows.mosaic.CiffImporter \
+    --input "$ciff_file" --output "$out_dir/importer/" ${threads:+--threads "$threads"}
+end=$(date +%s%N)
+importer_ms=$(( (end - start) / 1000000 ))
+
+echo "lucene-ciff: ${external_ms} ms ($(du -sh "$out_dir/lucene-ciff" | cut -f1))"
+echo "importer:    ${importer_ms} ms ($(du -sh "$out_dir/importer" | cut -f1))"
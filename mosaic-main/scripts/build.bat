@@ -2,6 +2,11 @@
 
 SET codec=%1
 
+pushd ..\search-service\
+call mvn clean compile
+call mvn -Dmaven.test.skip=true package
+popd
+
 :: try to convert all CIFF files which are not converted yet
 for /R "..\resources\" %%f in (*.ciff*) do (
     echo Checking if %%f is already converted...
@@ -13,7 +18,3 @@ for /R "..\resources\" %%f in (*.ciff*) do (
         echo Conversion of %%~nxf in %%~nf completed successfully
     )
 )
-
-cd..\search-service\
-call mvn clean compile
-call mvn -Dmaven.test.skip=true package
\ No newline at end of file
@@ -1,25 +1,26 @@
 #!/bin/bash
 
-codec="${1:-[CODEC]}"
+codec="${1:-}"
+
+cd ../search-service/
+./mvnw clean compile
+./mvnw -Dmaven.test.skip=true package
+cd ../scripts/
 
 # try to convert all CIFF files which are not converted yet
 for f in ../resources/*/*.ciff*
 do
+    [ -e "$f" ] || continue
     dir="${f%/*}"
     dir="${dir##*/}"
     f=$(echo $f | sed s:.*/::)
     echo "Checking if $f in $dir is already import..."
     if [ ! -d "../lucene/$dir" ]; then
         echo "Converting CIFF file $f in $dir to Lucene index..."
-        d=$(echo $f | sed "s/\..*//")
         echo "Creating directory ../lucene/$dir"
-        ./import_index.sh "$f" "$dir"
+        ./import_index.sh "$f" "$dir" "$codec"
         echo "Import of $f completed successfully"
     else
         echo "$f is already converted"
     fi
 done
-
-cd ../search-service/
-./mvnw clean compile
-./mvnw -Dmaven.test.skip=true package
\ No newline at end of file
@@ -4,5 +4,7 @@ SET ciff_name=%~1
 SET lucene_name=%~2
 SET codec=%~3
 
-cd..\search-service\
-call java -jar lucene-ciff.jar ..\resources\%lucene_name%\%ciff_name% ..\lucene\%lucene_name%\ %codec%
\ No newline at end of file
+SET codec_option=
+IF NOT "%codec%"=="" SET codec_option=--codec %codec%
+
+call java -cp ..\search-service\core\target\service.jar eu.ows.mosaic.CiffImporter --input ..\resources\%lucene_name%\%ciff_name% --output ..\lucene\%lucene_name%\ --metadata ..\resources\%lucene_name%\ %codec_option%
@@ -2,7 +2,12 @@
 
 ciff_name="$1"
 lucene_name="$2"
-codec="${3:-[CODEC]}"
+codec="${3:-}"
+threads="${4:-}"
 
-cd ../lucene-ciff/
-java -jar lucene-ciff.jar ../resources/$2/$1 ../lucene/$2/ $3
\ No newline at end of file
+java -cp ../search-service/core/target/service.jar eu.ows.mosaic.CiffImporter \
+    --input "../resources/$lucene_name/$ciff_name" \
+    --output "../lucene/$lucene_name/" \
+    --metadata "../resources/$lucene_name/" \
+    ${codec:+--codec "$codec"} \
+    ${threads:+--threads "$threads"}
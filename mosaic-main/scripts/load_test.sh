@@ -0,0 +1,22 @@
+#!/bin/bash
+
+# Measures the throughput of the search endpoint under concurrent clients using hey (https://github.com/rakyll/hey),
+# e.g.: ./load_test.sh "graz" 1000 60s 8008
+# Run it once against the service started with Java 17 (worker threads) and once with Java 21 (virtual threads)
+# to compare both execution modes.
+
+query="${1:-graz}"
+clients="${2:-1000}"
+duration="${3:-60s}"
+port="${4:-8008}"
+
+if ! command -v hey > /dev/null; then
+    echo "hey is not installed, see https://github.com/rakyll/hey"
+    exit 1
+fi
+
+url="http://localhost:$port/search?q=$query"
+java_version=$(java -version 2>&1 | head -n 1)
+
+echo "Sending requests to $url with $clients concurrent clients for $duration ($java_version)..."
+hey -z "$duration" -c "$clients" "$url" | grep -E "Requests/sec|Average|Slowest|Fastest|99%|Status code distribution|\[[0-9]+\]"
@@ -23,7 +23,7 @@ public class CustomAnalysis implements AnalyzerComponent {
 
         // Implement the desired analyzer
 
-        LOGGER.info("Using default analyzer");
+        LOGGER.debug("Using default analyzer");
         Analyzer analyzer = defaultAnalyzer;
         return analyzer;
     }
@@ -0,0 +1,156 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Administration endpoints of the search service. The endpoints are not authenticated and are therefore
+ * only served if {@code mosaic.admin.enabled} is set to true (enabled in dev mode), otherwise they respond with 404.
+ */
+@Path("/admin")
+public class AdminResource {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(AdminResource.class);
+
+    public static final int DEFAULT_REPLAY_LIMIT = 20;
+    public static final int MAX_REPLAY_LIMIT = 100;
+
+    @ConfigProperty(name = "mosaic.admin.enabled", defaultValue = "false")
+    boolean adminEnabled;
+
+    /**
+     * Checks if the admin endpoints are enabled.
+     * @throws NotFoundException If the admin endpoints are disabled
+     */
+    private void checkEnabled() {
+        if (!adminEnabled) {
+            LOGGER.warn("Rejected admin request, the admin endpoints are disabled (set mosaic.admin.enabled=true to enable them)");
+            throw new NotFoundException();
+        }
+    }
+
+    /**
+     * Returns the active generation of each index.
+     */
+    @GET
+    @Path("/indexes")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String indexes() {
+        LOGGER.info("Received admin request for the active index generations");
+        checkEnabled();
+
+        JsonArray indexesArray = new JsonArray();
+        for (IndexGeneration generation : ResourceManager.getInstance().getGenerations().values()) {
+            JsonObject indexObject = new JsonObject();
+            indexObject.addProperty("index", generation.getIndexName());
+            indexObject.addProperty("generation", generation.getGeneration());
+            indexObject.addProperty("table", generation.getTableName());
+            indexObject.addProperty("fingerprint", generation.getFingerprint());
+            indexObject.addProperty("documentCount", generation.getReader().maxDoc());
+            indexObject.addProperty("references", generation.getRefCount());
+            indexesArray.add(indexObject);
+        }
+
+        JsonObject resultsObject = new JsonObject();
+        resultsObject.add("indexes", indexesArray);
+        return resultsObject.toString();
+    }
+
+    /**
+     * Returns the state of the admission controller and the downstream limiters,
+     * i.e., the concurrency limits, the requests in flight, the queue wait and the shed requests.
+     */
+    @GET
+    @Path("/admission")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String admission() {
+        LOGGER.info("Received admin request for the admission statistics");
+        checkEnabled();
+
+        JsonObject downstreamObject = new JsonObject();
+        for (DownstreamLimiter limiter : new DownstreamLimiter[] {DownstreamLimiter.getLucene(), DownstreamLimiter.getDuckDb()}) {
+            JsonObject limiterObject = new JsonObject();
+            limiterObject.addProperty("limit", limiter.getMaxConcurrency());
+            limiterObject.addProperty("inFlight", limiter.getInFlight());
+            limiterObject.addProperty("waiting", limiter.getWaiting());
+            downstreamObject.add(limiter.getName(), limiterObject);
+        }
+
+        JsonObject resultsObject = new JsonObject();
+        resultsObject.add("admission", AdmissionController.getInstance().getStats());
+        resultsObject.add("downstream", downstreamObject);
+        return resultsObject.toString();
+    }
+
+    /**
+     * Returns the most recently recorded slow queries with their stage timings and DuckDB plans.
+     */
+    @GET
+    @Path("/slow-queries")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String slowQueries() {
+        LOGGER.info("Received admin request for the slow queries");
+        checkEnabled();
+
+        JsonObject resultsObject = new JsonObject();
+        resultsObject.add("slowQueries", SlowQueryRecorder.getInstance().getRecentEntries());
+        return resultsObject.toString();
+    }
+
+    /**
+     * Replays the recorded slow queries and returns the original and the replayed duration of each query.
+     */
+    @POST
+    @Path("/slow-queries/replay")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String replaySlowQueries(@QueryParam("limit") Integer limit) throws IOException {
+        LOGGER.info("Received admin request to replay the slow queries");
+        checkEnabled();
+
+        int numReplayed = limit != null ? limit : DEFAULT_REPLAY_LIMIT;
+        if (numReplayed <= 0 || numReplayed > MAX_REPLAY_LIMIT) {
+            LOGGER.error("The limit parameter {} is invalid and must be between 1 and {}", limit, MAX_REPLAY_LIMIT);
+            throw new MosaicWebException(String.format("The limit parameter %s is invalid and must be between 1 and %d", limit, MAX_REPLAY_LIMIT));
+        }
+
+        JsonObject resultsObject = new JsonObject();
+        resultsObject.add("replayed", SlowQueryRecorder.getInstance().replay(numReplayed));
+        return resultsObject.toString();
+    }
+
+    /**
+     * Reloads all indexes which have been added, updated or removed on disk.
+     */
+    @POST
+    @Path("/reload")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String reload() {
+        LOGGER.info("Received admin request to reload the indexes");
+        checkEnabled();
+
+        Map<String, String> actions = ResourceManager.getInstance().reload();
+
+        JsonObject actionsObject = new JsonObject();
+        actions.forEach(actionsObject::addProperty);
+
+        JsonObject resultsObject = new JsonObject();
+        resultsObject.add("reloaded", actionsObject);
+        return resultsObject.toString();
+    }
+
+}
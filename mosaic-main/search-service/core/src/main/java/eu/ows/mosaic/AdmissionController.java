@@ -0,0 +1,277 @@
+package eu.ows.mosaic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+import jakarta.ws.rs.ServiceUnavailableException;
+
+/**
+ * Admission controller in front of the search requests.
+ * The number of concurrent requests is limited per endpoint and per index. The limits adapt to the latency of the
+ * requests (AIMD): a limit grows by one per window of requests finishing within the target latency and shrinks
+ * multiplicatively if a request exceeds it. A request that cannot be admitted within a short queue wait is shed
+ * with a 503 response and a Retry-After header instead of piling up on Lucene and DuckDB.
+ */
+public class AdmissionController {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(AdmissionController.class);
+
+    public static final String ENDPOINT_PREFIX = "endpoint:";
+    public static final String INDEX_PREFIX = "index:";
+
+    private static final int INITIAL_LIMIT = 16;
+    private static final int MIN_LIMIT = 1;
+    private static final int MAX_LIMIT = 512;
+    private static final double DECREASE_FACTOR = 0.9;
+    private static final long TARGET_LATENCY_MS = 1000;
+    private static final long MAX_QUEUE_WAIT_MS = 100;
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    private static AdmissionController INSTANCE;
+
+    private final Map<String, AdaptiveLimit> limits = new ConcurrentHashMap<>();
+
+    private AdmissionController() {}
+
+    public static synchronized AdmissionController getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new AdmissionController();
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Admits a request to an endpoint that searches in the given indexes.
+     * The limit of the endpoint is acquired first, then the limits of the indexes in the order of their names.
+     * @param endpoint Name of the endpoint (e.g., search)
+     * @param indexNames Names of the indexes to be searched in
+     * @return Ticket that has to be completed when the request has been processed
+     * @throws ServiceUnavailableException If one of the limits is saturated
+     */
+    public Ticket admit(String endpoint, Iterable<String> indexNames) {
+        List<AdaptiveLimit> acquired = new ArrayList<>();
+        long start = System.nanoTime();
+
+        List<String> keys = new ArrayList<>();
+        keys.add(ENDPOINT_PREFIX + endpoint);
+        indexNames.forEach(indexName -> keys.add(INDEX_PREFIX + indexName));
+
+        for (String key : keys) {
+            AdaptiveLimit limit = limits.computeIfAbsent(key, AdaptiveLimit::new);
+            if (!limit.acquire()) {
+                acquired.forEach(AdaptiveLimit::cancel);
+                LOGGER.warn("Shedding request to {}, limit {} of {} is saturated", endpoint, limit.getLimit(), key);
+                throw new ServiceUnavailableException("The search service is overloaded, please retry later", (long) RETRY_AFTER_SECONDS);
+            }
+            acquired.add(limit);
+        }
+
+        long queueWaitMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (queueWaitMs > 0) {
+            LOGGER.info("Admitted request to {} after waiting {} ms", endpoint, queueWaitMs);
+        }
+        return new Ticket(acquired);
+    }
+
+    /**
+     * Returns the state of all limits, i.e., the current limit, the requests in flight and the shed requests.
+     * @return JSON object of the limits keyed by endpoint or index
+     */
+    public JsonObject getStats() {
+        JsonObject statsObject = new JsonObject();
+        new TreeMap<>(limits).forEach((key, limit) -> statsObject.add(key, limit.toJson()));
+        return statsObject;
+    }
+
+    /**
+     * Admission of one request, holding a slot of each of the limits the request was admitted to.
+     */
+    public static class Ticket implements AutoCloseable {
+
+        private final List<AdaptiveLimit> acquired;
+        private final long start = System.nanoTime();
+        private boolean failed = false;
+        private boolean rejected = false;
+
+        private Ticket(List<AdaptiveLimit> acquired) {
+            this.acquired = acquired;
+        }
+
+        /**
+         * Marks the request as failed, so that the limits are decreased when the ticket is closed.
+         */
+        public void fail() {
+            failed = true;
+        }
+
+        /**
+         * Marks the request as rejected because of a client error (e.g., an invalid query),
+         * so that the slots are released without adapting the limits when the ticket is closed.
+         */
+        public void reject() {
+            rejected = true;
+        }
+
+        /**
+         * Releases the slots and updates the limits based on the latency of the request.
+         */
+        @Override
+        public void close() {
+            if (rejected && !failed) {
+                acquired.forEach(AdaptiveLimit::releaseWithoutAdapting);
+                return;
+            }
+            long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            boolean overloaded = failed || latencyMs > TARGET_LATENCY_MS;
+            acquired.forEach(limit -> limit.release(overloaded));
+        }
+    }
+
+    /**
+     * Concurrency limit of one endpoint or index that is adapted with AIMD.
+     */
+    private static class AdaptiveLimit {
+
+        private final String key;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition released = lock.newCondition();
+
+        private double limit = INITIAL_LIMIT;
+        private int inFlight = 0;
+        private int waiting = 0;
+        private long admittedCount = 0;
+        private long shedCount = 0;
+        private long totalQueueWaitNanos = 0;
+        private long maxQueueWaitNanos = 0;
+
+        AdaptiveLimit(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Waits for a free slot for at most the maximum queue wait.
+         * @return True if a slot was acquired, false if the request has to be shed
+         */
+        boolean acquire() {
+            long start = System.nanoTime();
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(MAX_QUEUE_WAIT_MS);
+            lock.lock();
+            try {
+                waiting++;
+                try {
+                    while (inFlight >= (int) limit) {
+                        if (remainingNanos <= 0) {
+                            shedCount++;
+                            return false;
+                        }
+                        remainingNanos = released.awaitNanos(remainingNanos);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    shedCount++;
+                    return false;
+                } finally {
+                    waiting--;
+                }
+
+                long queueWaitNanos = System.nanoTime() - start;
+                totalQueueWaitNanos += queueWaitNanos;
+                maxQueueWaitNanos = Math.max(maxQueueWaitNanos, queueWaitNanos);
+                admittedCount++;
+                inFlight++;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Releases a slot and adapts the limit: additive increase if the request finished in time,
+         * multiplicative decrease if it was too slow or failed.
+         */
+        void release(boolean overloaded) {
+            lock.lock();
+            try {
+                inFlight--;
+                if (overloaded) {
+                    double previousLimit = limit;
+                    limit = Math.max(MIN_LIMIT, limit * DECREASE_FACTOR);
+                    if ((int) previousLimit != (int) limit) {
+                        LOGGER.info("Decreased concurrency limit of {} to {}", key, (int) limit);
+                    }
+                } else if (inFlight + 1 >= (int) limit) {
+                    // Only grow the limit if it was actually used
+                    limit = Math.min(MAX_LIMIT, limit + 1.0 / limit);
+                }
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Releases a slot of an admitted request without adapting the limit, e.g., if the request was invalid.
+         */
+        void releaseWithoutAdapting() {
+            lock.lock();
+            try {
+                inFlight--;
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Releases a slot without adapting the limit, e.g., if the request was shed by another limit.
+         */
+        void cancel() {
+            lock.lock();
+            try {
+                inFlight--;
+                admittedCount--;
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int getLimit() {
+            lock.lock();
+            try {
+                return (int) limit;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        JsonObject toJson() {
+            lock.lock();
+            try {
+                JsonObject limitObject = new JsonObject();
+                limitObject.addProperty("limit", (int) limit);
+                limitObject.addProperty("inFlight", inFlight);
+                limitObject.addProperty("waiting", waiting);
+                limitObject.addProperty("admitted", admittedCount);
+                limitObject.addProperty("shed", shedCount);
+                limitObject.addProperty("avgQueueWaitMs", admittedCount > 0 ? TimeUnit.NANOSECONDS.toMillis(totalQueueWaitNanos / admittedCount) : 0);
+                limitObject.addProperty("maxQueueWaitMs", TimeUnit.NANOSECONDS.toMillis(maxQueueWaitNanos));
+                return limitObject;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+}
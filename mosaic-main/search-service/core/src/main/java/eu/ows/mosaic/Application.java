@@ -75,6 +75,16 @@ public class Application {
                 .hasArg()
                 .desc("Database file path")
                 .build());
+            options.addOption(Option.builder("r")
+                .argName("reloadInterval").longOpt("reload-interval")
+                .hasArg()
+                .type(Number.class)
+                .desc("Number of seconds between two scans for added, updated or removed indexes (0 = disabled)")
+                .build());
+            options.addOption(Option.builder("c")
+                .longOpt("import-ciff")
+                .desc("Import CIFF files in the Parquet directory for which no Lucene index exists")
+                .build());
 
             CommandLineParser parser = new DefaultParser();
             CommandLine cmd = null;
@@ -92,17 +102,17 @@ public class Application {
             CoreUtils.setIdColumn(cmd.getOptionValue("i", CoreUtils.DEFAULT_ID_COLUMN));
             CoreUtils.setConfigFilePath(CoreUtils.DEFAULT_CONFIG_FILE_PATH);
             CoreUtils.setDatabaseFilePath(cmd.getOptionValue("d", CoreUtils.DEFAULT_DATABASE_FILE_PATH));
+            CoreUtils.setNumPlainTextCharacters((Long) cmd.getParsedOptionValue("n"));
+            IndexImporter.setEnabled(cmd.hasOption("c"));
 
             PluginManager.getInstance().loadComponents();
             PluginManager.getInstance().loadModules();
 
-            DbConnection dbConn = new DbConnection(false);
-            dbConn.createTables((Long) cmd.getParsedOptionValue("n"));
-            dbConn.closeConnection();
-
             CoreUtils.setOpenSearchUrlTemplate(CoreConfig.getInstance().getOpenSearchTemplateUrl());
 
-            LOGGER.info("MOSAIC search service started. Waiting for requests...");
+            if (IndexImporter.isEnabled()) {
+                IndexImporter.importMissingIndexes();
+            }
 
             try {
                 ResourceManager.getInstance();
@@ -111,7 +121,14 @@ public class Application {
                 return 1;
             }
 
+            Long reloadInterval = (Long) cmd.getParsedOptionValue("r");
+            IndexWatcher.getInstance().start(reloadInterval != null ? reloadInterval : IndexWatcher.DEFAULT_RELOAD_INTERVAL_SECONDS);
+
+            LOGGER.info("MOSAIC search service started. Waiting for requests...");
+
             Quarkus.waitForExit();
+            IndexWatcher.getInstance().stop();
+            DbConnection.shutdown();
             LOGGER.info("MOSAIC search service exited");
             return 0;
         }
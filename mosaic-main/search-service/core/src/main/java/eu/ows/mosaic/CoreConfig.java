@@ -24,6 +24,22 @@ public class CoreConfig {
     private String baseUrl;
     private String openSearchTemplateUrl;
     private Map<String, String> plugins;
+    private Integer luceneConcurrency;
+    private Integer duckDbConcurrency;
+    private Double requestLogSampleRate;
+    private Long slowQueryThresholdMs;
+    private Integer queryCacheSize;
+    private Integer maxClauseCount;
+    private Double maxDocFreqRatio;
+    private Integer maxTermExpansions;
+    private Long searchTimeoutMs;
+    private Integer totalHitsCacheSize;
+    private String reRankModel;
+    private Integer reRankDepth;
+    private Long reRankBudgetMs;
+    private Map<String, RankingConfig> ranking;
+    private Integer suggestMaxTitles;
+    private Integer suggestMinTermDocFreq;
 
     private CoreConfig(String baseUrl, String openSearchTemplateUrl, Map<String, String> plugins) {
         this.baseUrl = baseUrl;
@@ -65,5 +81,141 @@ public class CoreConfig {
     public String getPluginClassname(String pluginName) {
         return plugins.get(pluginName);
     }
-    
+
+    /**
+     * Getter method for the maximum number of concurrent Lucene searches.
+     * @return Configured value or twice the number of cores if not configured
+     */
+    public int getLuceneConcurrency() {
+        return luceneConcurrency != null && luceneConcurrency > 0 ? luceneConcurrency : 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Getter method for the maximum number of concurrent DuckDB queries.
+     * @return Configured value or the number of cores if not configured
+     */
+    public int getDuckDbConcurrency() {
+        return duckDbConcurrency != null && duckDbConcurrency > 0 ? duckDbConcurrency : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Getter method for the fraction of requests whose debug detail is written to the request log.
+     * @return Configured value or 0.01 if not configured
+     */
+    public double getRequestLogSampleRate() {
+        return requestLogSampleRate != null ? requestLogSampleRate : 0.01;
+    }
+
+    /**
+     * Getter method for the duration after which a search request is recorded as slow query.
+     * @return Configured value or 1000 ms if not configured
+     */
+    public long getSlowQueryThresholdMs() {
+        return slowQueryThresholdMs != null && slowQueryThresholdMs > 0 ? slowQueryThresholdMs : 1000;
+    }
+
+    /**
+     * Getter method for the maximum number of parsed queries that are cached.
+     * @return Configured value or 10000 if not configured
+     */
+    public int getQueryCacheSize() {
+        return queryCacheSize != null && queryCacheSize > 0 ? queryCacheSize : 10000;
+    }
+
+    /**
+     * Getter method for the maximum number of clauses of a query.
+     * @return Configured value or 256 if not configured
+     */
+    public int getMaxClauseCount() {
+        return maxClauseCount != null && maxClauseCount > 0 ? maxClauseCount : 256;
+    }
+
+    /**
+     * Getter method for the fraction of the documents of an index above which optional query terms are dropped.
+     * @return Configured value or 0.5 if not configured
+     */
+    public double getMaxDocFreqRatio() {
+        return maxDocFreqRatio != null && maxDocFreqRatio > 0 ? maxDocFreqRatio : 0.5;
+    }
+
+    /**
+     * Getter method for the maximum number of terms that wildcard, prefix, regexp and fuzzy queries expand to,
+     * wildcard, prefix and regexp queries keep the most frequent terms and fuzzy queries the most similar terms.
+     * @return Configured value or 50 if not configured
+     */
+    public int getMaxTermExpansions() {
+        return maxTermExpansions != null && maxTermExpansions > 0 ? maxTermExpansions : 50;
+    }
+
+    /**
+     * Getter method for the time allowed for one Lucene search.
+     * @return Configured value or 2000 ms if not configured
+     */
+    public long getSearchTimeoutMs() {
+        return searchTimeoutMs != null && searchTimeoutMs > 0 ? searchTimeoutMs : 2000;
+    }
+
+    /**
+     * Getter method for the maximum number of exact hit counts that are cached.
+     * @return Configured value or 10000 if not configured
+     */
+    public int getTotalHitsCacheSize() {
+        return totalHitsCacheSize != null && totalHitsCacheSize > 0 ? totalHitsCacheSize : 10000;
+    }
+
+    /**
+     * Getter method for the path of the model file of the second-stage re-ranking.
+     * @return Configured path or null if re-ranking is disabled
+     */
+    public String getReRankModel() {
+        return reRankModel;
+    }
+
+    /**
+     * Getter method for the maximum number of search results of a page that are re-ranked.
+     * @return Configured value or 100 if not configured
+     */
+    public int getReRankDepth() {
+        return reRankDepth != null && reRankDepth > 0 ? reRankDepth : 100;
+    }
+
+    /**
+     * Getter method for the time allowed for re-ranking the search results of a page.
+     * @return Configured value or 50 ms if not configured
+     */
+    public long getReRankBudgetMs() {
+        return reRankBudgetMs != null && reRankBudgetMs > 0 ? reRankBudgetMs : 50;
+    }
+
+    /**
+     * Getter method for the maximum number of distinct titles of an index that are suggested as query completions.
+     * @return Configured value or 100000 if not configured, 0 disables the completion with titles
+     */
+    public int getSuggestMaxTitles() {
+        return suggestMaxTitles != null && suggestMaxTitles >= 0 ? suggestMaxTitles : 100000;
+    }
+
+    /**
+     * Getter method for the minimum number of documents a term of an index has to occur in to be suggested as query completion.
+     * @return Configured value or 2 if not configured, 1 suggests all terms
+     */
+    public int getSuggestMinTermDocFreq() {
+        return suggestMinTermDocFreq != null && suggestMinTermDocFreq > 0 ? suggestMinTermDocFreq : 2;
+    }
+
+    /**
+     * Getter method for the ranking configuration of an index.
+     * @param indexName Name of the index
+     * @return Configured value of the index, the value configured as "default" or BM25 with k1=1.2 and b=0.75 if not configured
+     */
+    public RankingConfig getRankingConfig(String indexName) {
+        if (ranking != null && ranking.containsKey(indexName)) {
+            return ranking.get(indexName);
+        }
+        if (ranking != null && ranking.containsKey("default")) {
+            return ranking.get("default");
+        }
+        return new RankingConfig();
+    }
+
 }
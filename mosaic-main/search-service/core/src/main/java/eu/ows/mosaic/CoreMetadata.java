@@ -1,5 +1,7 @@
 package eu.ows.mosaic;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -7,6 +9,7 @@ import java.util.TreeMap;
 
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.text.StringEscapeUtils;
 import org.apache.commons.text.translate.UnicodeUnescaper;
 import org.slf4j.Logger;
@@ -58,6 +61,11 @@ public class CoreMetadata extends MetadataModule {
             throw new MosaicWebException(String.format("The pw parameter %s is invalid and must be a positive value", queryParams.get("pw")));
         }
 
+        if (queryParams.containsKey("track_total_hits") && !CoreUtils.isValidTrackTotalHits(queryParams.get("track_total_hits"))) {
+            LOGGER.error("The track_total_hits parameter {} is invalid and must be true, false or a non-negative value", queryParams.get("track_total_hits"));
+            throw new MosaicWebException(String.format("The track_total_hits parameter %s is invalid and must be true, false or a non-negative value", queryParams.get("track_total_hits")));
+        }
+
     }
 
     @Override
@@ -88,6 +96,18 @@ public class CoreMetadata extends MetadataModule {
         boolean loadFullTextDynamicallyIfRequired = BooleanUtils.toBoolean(queryParams.getOrDefault("fulltext", "false"));
         parsedParams.put("fulltext", loadFullTextDynamicallyIfRequired);
 
+        int trackTotalHits = CoreUtils.convertTrackTotalHits(queryParams.get("track_total_hits"));
+        parsedParams.put("trackTotalHits", trackTotalHits);
+
+        boolean reRank = BooleanUtils.toBoolean(queryParams.getOrDefault("rerank", "true"));
+        parsedParams.put("rerank", reRank);
+
+        boolean bm25f = BooleanUtils.toBoolean(queryParams.getOrDefault("bm25f", "true"));
+        parsedParams.put("bm25f", bm25f);
+
+        boolean collapse = BooleanUtils.toBoolean(queryParams.getOrDefault("collapse", "true"));
+        parsedParams.put("collapse", collapse);
+
         return parsedParams;
     }
 
@@ -106,6 +126,31 @@ public class CoreMetadata extends MetadataModule {
         return super.inManualFilter(result, queryParams);
     }
 
+    @Override
+    public void extractFeatures(Map<String, String> result, Set<String> queryTerms, Map<String, Object> queryParams, Map<String, Double> features) {
+        // Lucene score of the first stage
+        features.put("score", NumberUtils.toDouble(result.get(ReRanker.FEATURE_SCORE), 0.0));
+
+        // Logarithm of the number of words of the stored plain text
+        String plainText = result.get("plain_text");
+        features.put("docLength", plainText != null ? Math.log1p(StringUtils.countMatches(plainText, ' ') + 1) : 0.0);
+
+        // Recency decaying from 1 (crawled now) by half per year
+        long warcDate = result.containsKey("warc_date") ? CoreUtils.convertWarcDateToEpoch(result.get("warc_date")) : -1;
+        if (warcDate > 0) {
+            double ageYears = Math.max(0, System.currentTimeMillis() - warcDate / 1000) / (365.25 * 24 * 60 * 60 * 1000);
+            features.put("recency", Math.pow(0.5, ageYears));
+        }
+
+        // Fraction of the query terms that occur in the title
+        String title = result.get("title");
+        if (title != null && !queryTerms.isEmpty()) {
+            Set<String> titleTerms = new HashSet<>(Arrays.asList(StringUtils.split(title.toLowerCase(), " \t\n\r.,;:!?()[]\"'-|/")));
+            long numMatches = queryTerms.stream().filter(titleTerms::contains).count();
+            features.put("titleMatch", (double) numMatches / queryTerms.size());
+        }
+    }
+
     @Override
     public JsonObject serializeJson(Map<String, String> result, Map<String, Object> queryParams) {
         JsonObject json = new JsonObject();
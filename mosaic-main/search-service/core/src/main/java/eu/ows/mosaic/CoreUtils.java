@@ -50,6 +50,8 @@ public abstract class CoreUtils {
     public static final String RANKING_ASC = "asc";
     public static final String RANKING_DESC = "desc";
     public static final int DEFAULT_RESULTS_LIMIT = 20;
+    public static final int DEFAULT_TOTAL_HITS_THRESHOLD = 1000;
+    public static final int TRACK_TOTAL_HITS_EXACT = Integer.MAX_VALUE;
 
     public static enum SortBy {
         LENGTH,
@@ -90,6 +92,7 @@ public abstract class CoreUtils {
     private static String configFilePath;
     private static String databaseFilePath;
     private static String idColumn;
+    private static Long numPlainTextCharacters;
 
     /**
      * Getter method for the index directory path.
@@ -176,6 +179,23 @@ public abstract class CoreUtils {
         idColumn = newIdColumn;
     }
 
+    /**
+     * Getter method for the number of plain text characters stored in the metadata tables.
+     * @return Number of plain text characters or null if the full plain text is stored
+     */
+    public static Long getNumPlainTextCharacters() {
+        return numPlainTextCharacters;
+    }
+
+    /**
+     * Setter method for the number of plain text characters stored in the metadata tables.
+     * @param newNumPlainTextCharacters New number of plain text characters or null to store the full plain text
+     */
+    public static void setNumPlainTextCharacters(Long newNumPlainTextCharacters) {
+        LOGGER.info("Setting number of plain text characters to: {}", newNumPlainTextCharacters);
+        numPlainTextCharacters = newNumPlainTextCharacters;
+    }
+
     /**
      * Sets the OpenSearch URL template in the XML file.
      * @param openSearchUrlTemplate New OpenSearch URL template of this search service
@@ -231,7 +251,7 @@ public abstract class CoreUtils {
      * @throws SQLException
      */
     public static String getFullTextOfDocument(String indexName, String id, String idColumn) throws SQLException {
-        LOGGER.info("Retrieving full text of document with ID: {}", id);
+        LOGGER.debug("Retrieving full text of document with ID: {}", id);
 
         DbConnection dbConn = new DbConnection();
         String fullText = dbConn.retrieveFullText(indexName, id, idColumn);
@@ -249,7 +269,19 @@ public abstract class CoreUtils {
      * @throws SQLException
      */
     public static String extractTextSnippet(String textSnippet, String[] queryTerms, String indexName, String id, boolean loadFullTextDynamically) {
-        LOGGER.info("Extracting text snippet from document with ID {} and query terms {}", id, queryTerms);
+        long start = System.nanoTime();
+        try (Tracing.SpanScope span = Tracing.startSpan("mosaic.snippet", indexName)) {
+            return highlightTextSnippet(textSnippet, queryTerms, indexName, id, loadFullTextDynamically);
+        } finally {
+            SearchMetrics.recordStage(SearchMetrics.STAGE_SNIPPET, indexName, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Highlights the most relevant sentence in a text snippet, see {@link #extractTextSnippet}.
+     */
+    private static String highlightTextSnippet(String textSnippet, String[] queryTerms, String indexName, String id, boolean loadFullTextDynamically) {
+        LOGGER.debug("Extracting text snippet from document with ID {} and query terms {}", id, queryTerms);
         List<String> mostFrequentSentences = getMostFrequentSentences(textSnippet, queryTerms);
 
         // If no sentence has been found, load the full text of the document or use the first 200 characters
@@ -334,7 +366,7 @@ public abstract class CoreUtils {
      * @return Re-ranked results sorted by the specified sort order
      */
     public static List<Map<String, String>> reRankResults(List<Map<String, String>> searchResults, String ranking, String sortBy) {
-        LOGGER.info("Re-ranking search results with key: {} and sort: {}", ranking, sortBy);
+        LOGGER.debug("Re-ranking search results with key: {} and sort: {}", ranking, sortBy);
 
         if (ranking == null || sortBy == null) {
             return searchResults;
@@ -404,7 +436,7 @@ public abstract class CoreUtils {
      * @return True if the index exists, false otherwise
      */
     public static boolean isValidIndex(String indexName) {
-        return indexName != null && !indexName.isEmpty() && ResourceManager.getInstance().getIndexes().containsKey(indexName);
+        return indexName != null && !indexName.isEmpty() && ResourceManager.getInstance().getIndexNames().contains(indexName);
     }
 
     /**
@@ -452,4 +484,32 @@ public abstract class CoreUtils {
         return NumberUtils.toInt(page, 1);
     }
 
+    /**
+     * Checks if the track_total_hits parameter is valid.
+     * @param trackTotalHits Track total hits parameter
+     * @return True if the parameter is a boolean or a non-negative integer, false otherwise
+     */
+    public static boolean isValidTrackTotalHits(String trackTotalHits) {
+        return trackTotalHits.equalsIgnoreCase("true") || trackTotalHits.equalsIgnoreCase("false") || NumberUtils.toInt(trackTotalHits, -1) >= 0;
+    }
+
+    /**
+     * Converts the track_total_hits parameter to the number of hits up to which the total number of hits is counted exactly.
+     * @param trackTotalHits Track total hits parameter
+     * @return {@link #TRACK_TOTAL_HITS_EXACT} if the total is always counted, 0 if it is not counted beyond the top hits,
+     *         the given number of hits or {@link #DEFAULT_TOTAL_HITS_THRESHOLD} if the parameter is not specified
+     */
+    public static int convertTrackTotalHits(String trackTotalHits) {
+        if (trackTotalHits == null) {
+            return DEFAULT_TOTAL_HITS_THRESHOLD;
+        }
+        if (trackTotalHits.equalsIgnoreCase("true")) {
+            return TRACK_TOTAL_HITS_EXACT;
+        }
+        if (trackTotalHits.equalsIgnoreCase("false")) {
+            return 0;
+        }
+        return NumberUtils.toInt(trackTotalHits, DEFAULT_TOTAL_HITS_THRESHOLD);
+    }
+
 }
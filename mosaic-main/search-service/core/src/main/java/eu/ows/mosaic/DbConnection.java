@@ -1,20 +1,24 @@
 package eu.ows.mosaic;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.duckdb.DuckDBAppender;
+import org.duckdb.DuckDBConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,80 +28,247 @@ import org.slf4j.LoggerFactory;
 public class DbConnection {
 
     private static Logger LOGGER = LoggerFactory.getLogger(DbConnection.class);
+
+    private static final String TABLE_REGISTRY = "mosaic_index_tables";
+
+    public static final String ORDINAL_COLUMN = "doc_ord";
+    private static final int ORDINAL_BATCH_SIZE = 4096;
+    private static final String DOC_ORDS_PLACEHOLDER = "{doc_ords}";
+
+    private static DuckDBConnection database;
     
     private Connection conn;
+    private String lastMetadataSql;
+    private List<Object> lastMetadataSqlValues = List.of();
 
-    public DbConnection(boolean isReadOnly) throws SQLException {
-        Properties properties = new Properties();
-        if (isReadOnly) {
-            properties.setProperty("duckdb.read_only", "true");
+    /**
+     * Creates a new connection to the DuckDB database.
+     * All connections are duplicated from one database instance that is opened once per process,
+     * so that metadata tables can be rebuilt while requests are served.
+     * @throws SQLException If the database could not be opened
+     */
+    public DbConnection() throws SQLException {
+        conn = getDatabase().duplicate();
+        SearchMetrics.count(SearchMetrics.COUNTER_DUCKDB_CONNECTIONS, null, 1);
+    }
+
+    /**
+     * Opens the database instance if it has not been opened yet.
+     * @return Connection of the database instance
+     * @throws SQLException If the database could not be opened
+     */
+    private static synchronized DuckDBConnection getDatabase() throws SQLException {
+        if (database == null) {
+            LOGGER.info("Opening DuckDB database {}", CoreUtils.getDatabaseFilePath());
+            database = (DuckDBConnection) DriverManager.getConnection("jdbc:duckdb:" + CoreUtils.getDatabaseFilePath());
+            database.createStatement().execute("CREATE TABLE IF NOT EXISTS " + TABLE_REGISTRY + " (" +
+                                               "index_name VARCHAR PRIMARY KEY, table_name VARCHAR, fingerprint VARCHAR)");
         }
-        conn = DriverManager.getConnection("jdbc:duckdb:" + CoreUtils.getDatabaseFilePath(), properties);
+        return database;
     }
 
-    public DbConnection() throws SQLException {
-        this(true);
+    /**
+     * Opens a new plain JDBC connection to the database instance. The caller must close the connection.
+     * @return Connection to the database
+     * @throws SQLException If the database could not be opened
+     */
+    public static Connection openConnection() throws SQLException {
+        Connection connection = getDatabase().duplicate();
+        SearchMetrics.count(SearchMetrics.COUNTER_DUCKDB_CONNECTIONS, null, 1);
+        return connection;
     }
 
     /**
-     * Create tables for indexes if they do not already exist.
-     * @param numPlainTextCharacters The number of plain text characters to limit the plain text to
-     * @throws SQLException If an error occurs while creating the tables
+     * Closes the database instance.
      */
-    public void createTables(Long numPlainTextCharacters) throws SQLException {
-        LOGGER.info("Checking if tables for indexes already exist");
-
-        // Check if tables for indexes already exist
-        Set<String> tablesToCreate = new HashSet<>();
-        for (String indexName : ResourceManager.getInstance().getIndexes().keySet()) {
-            if (!tableExists(indexName)) {
-                LOGGER.info("Table for index {} does not exist", indexName);
-                tablesToCreate.add(indexName);
+    public static synchronized void shutdown() {
+        if (database != null) {
+            try {
+                database.close();
+            } catch (SQLException e) {
+                LOGGER.error("Failed to close database", e);
             }
+            database = null;
         }
+    }
 
-        // Create tables for indexes that do not already exist
-        for (String indexName : tablesToCreate) {
-            LOGGER.info("Creating table using DuckDB for index {}", indexName);
-
-            // Retrieve columns from Parquet schema and filter out columns that are not in the metadata schema
-            Set<String> parquetSchemaColumns = this.retrieveParquetSchema(indexName);
-            Set<String> metadataColumns = new TreeSet<>();
-            PluginManager.getInstance().getModules().values().forEach(module -> metadataColumns.addAll(module.getMetadataColumns()));
-            LOGGER.info("Metadata schema columns: {}", metadataColumns);
-            parquetSchemaColumns.retainAll(metadataColumns);
-            parquetSchemaColumns.add("id");
-            LOGGER.info("Parquet schema columns: {}", parquetSchemaColumns);
-
-            String columns = String.join(",", parquetSchemaColumns);
-
-            // Limit the number of plain text characters if specified
-            if (numPlainTextCharacters != null && numPlainTextCharacters.longValue() > 1 && columns.contains("plain_text")) {
-                LOGGER.info("Limiting the number of plain text characters to {}", numPlainTextCharacters);
-                columns = columns.replace("plain_text", "substring(plain_text, 1, " + numPlainTextCharacters + ") as plain_text");
-            }
+    /**
+     * Create the metadata table for an index from its Parquet file(s).
+     * Each row is keyed by the Lucene document number of its document (column {@code doc_ord}) and the
+     * table is ordered by this column, so that search hits are joined by an integer instead of a string key.
+     * @param indexName The name of the index
+     * @param tableName The name of the table to create
+     * @param docIdResolver Resolver of the Lucene index the table is built for
+     * @throws SQLException If an error occurs while creating the table
+     * @throws IOException If an error occurs while reading the document ids from the Lucene index
+     */
+    public void createTable(String indexName, String tableName, DocIdResolver docIdResolver) throws SQLException, IOException {
+        LOGGER.info("Creating table {} using DuckDB for index {}", tableName, indexName);
+
+        // Retrieve columns from Parquet schema and filter out columns that are not in the metadata schema
+        Set<String> parquetSchemaColumns = this.retrieveParquetSchema(indexName);
+        Set<String> metadataColumns = new TreeSet<>();
+        PluginManager.getInstance().getModules().values().forEach(module -> metadataColumns.addAll(module.getMetadataColumns()));
+        LOGGER.info("Metadata schema columns: {}", metadataColumns);
+        parquetSchemaColumns.retainAll(metadataColumns);
+        parquetSchemaColumns.add("id");
+        LOGGER.info("Parquet schema columns: {}", parquetSchemaColumns);
+
+        String columns = String.join(",", parquetSchemaColumns);
+
+        // Limit the number of plain text characters if specified
+        Long numPlainTextCharacters = CoreUtils.getNumPlainTextCharacters();
+        if (numPlainTextCharacters != null && numPlainTextCharacters.longValue() > 1 && columns.contains("plain_text")) {
+            LOGGER.info("Limiting the number of plain text characters to {}", numPlainTextCharacters);
+            columns = columns.replace("plain_text", "substring(plain_text, 1, " + numPlainTextCharacters + ") as plain_text");
+        }
 
-            String sql = "CREATE TABLE " + indexName.replace('-', '_') + " AS " + 
-                         "SELECT " + columns + " " +
+        // Map the ids of the Parquet file(s) to the Lucene document numbers
+        String ordinalTableName = tableName + "_ord";
+        createOrdinalTable(ordinalTableName, docIdResolver);
+
+        try {
+            String sql = "CREATE TABLE " + tableName + " AS " + 
+                         "SELECT " + ORDINAL_COLUMN + "," + columns + " " +
                          "FROM read_parquet('" + CoreUtils.getParquetDirPath() + indexName + File.separator + "*.parquet*') " + 
-                         "ORDER BY " + CoreUtils.getIdColumn();
-            try {
-                conn.createStatement().execute(sql);
-            } catch (SQLException e) {
-                LOGGER.error("Failed to create table using DuckDB for index " + indexName, e);
+                         "JOIN " + ordinalTableName + " ON " + CoreUtils.getIdColumn() + " = " + ordinalTableName + ".doc_key " +
+                         "ORDER BY " + ORDINAL_COLUMN;
+            Statement statement = conn.createStatement();
+            statement.execute(sql);
+            statement.close();
+        } finally {
+            dropTable(ordinalTableName);
+        }
+    }
+
+    /**
+     * Create a table that maps the ids of the documents to their Lucene document numbers.
+     * @param ordinalTableName The name of the table to create
+     * @param docIdResolver Resolver of the Lucene index
+     * @throws SQLException If an error occurs while creating the table
+     * @throws IOException If an error occurs while reading the document ids from the Lucene index
+     */
+    private void createOrdinalTable(String ordinalTableName, DocIdResolver docIdResolver) throws SQLException, IOException {
+        LOGGER.info("Creating ordinal table {} for {} documents", ordinalTableName, docIdResolver.maxDoc());
+
+        Statement statement = conn.createStatement();
+        statement.execute("CREATE TABLE " + ordinalTableName + " (" + ORDINAL_COLUMN + " INTEGER, doc_key VARCHAR)");
+        statement.close();
+
+        int[] docIds = new int[ORDINAL_BATCH_SIZE];
+        DuckDBAppender appender = conn.unwrap(DuckDBConnection.class).createAppender(DuckDBConnection.DEFAULT_SCHEMA, ordinalTableName);
+        try {
+            for (int batchStart = 0; batchStart < docIdResolver.maxDoc(); batchStart += ORDINAL_BATCH_SIZE) {
+                int batchSize = Math.min(ORDINAL_BATCH_SIZE, docIdResolver.maxDoc() - batchStart);
+                if (batchSize < docIds.length) {
+                    docIds = new int[batchSize];
+                }
+                for (int i = 0; i < batchSize; i++) {
+                    docIds[i] = batchStart + i;
+                }
+
+                String[] ids = docIdResolver.resolve(docIds);
+                for (int i = 0; i < batchSize; i++) {
+                    if (ids[i] != null) {
+                        appender.beginRow();
+                        appender.append(docIds[i]);
+                        appender.append(ids[i]);
+                        appender.endRow();
+                    }
+                }
             }
-            
-        } 
+        } finally {
+            appender.close();
+        }
+    }
+
+    /**
+     * Looks up the registered metadata table of an index.
+     * @param indexName The name of the index
+     * @param fingerprint The fingerprint the table must have been built from or null to accept any fingerprint
+     * @return The name of the registered table or null if no (matching) table exists
+     * @throws SQLException If an error occurs while looking up the table
+     */
+    public String lookupTable(String indexName, String fingerprint) throws SQLException {
+        String sql = "SELECT table_name, fingerprint " +
+                     "FROM " + TABLE_REGISTRY + " " +
+                     "WHERE index_name = ?";
+
+        PreparedStatement ps = conn.prepareStatement(sql);
+        ps.setString(1, indexName);
+
+        ResultSet rs = ps.executeQuery();
+        String tableName = null;
+        if (rs.next() && (fingerprint == null || fingerprint.equals(rs.getString("fingerprint")))) {
+            tableName = rs.getString("table_name");
+        }
+
+        rs.close();
+        ps.close();
+
+        if (tableName != null && !tableExists(tableName)) {
+            LOGGER.info("Registered table {} for index {} does not exist", tableName, indexName);
+            return null;
+        }
+
+        return tableName;
     }
 
     /**
-     * Checks if a table for an index already exists.
+     * Registers the metadata table of an index.
      * @param indexName The name of the index
+     * @param tableName The name of the table
+     * @param fingerprint The fingerprint the table has been built from
+     * @throws SQLException If an error occurs while registering the table
+     */
+    public void registerTable(String indexName, String tableName, String fingerprint) throws SQLException {
+        LOGGER.info("Registering table {} for index {}", tableName, indexName);
+
+        String sql = "INSERT OR REPLACE INTO " + TABLE_REGISTRY + " VALUES (?, ?, ?)";
+
+        PreparedStatement ps = conn.prepareStatement(sql);
+        ps.setString(1, indexName);
+        ps.setString(2, tableName);
+        ps.setString(3, fingerprint);
+        ps.executeUpdate();
+        ps.close();
+    }
+
+    /**
+     * Removes the registration of the metadata table of an index.
+     * @param indexName The name of the index
+     * @throws SQLException If an error occurs while removing the registration
+     */
+    public void unregisterTable(String indexName) throws SQLException {
+        LOGGER.info("Unregistering table for index {}", indexName);
+
+        PreparedStatement ps = conn.prepareStatement("DELETE FROM " + TABLE_REGISTRY + " WHERE index_name = ?");
+        ps.setString(1, indexName);
+        ps.executeUpdate();
+        ps.close();
+    }
+
+    /**
+     * Drops a metadata table if it exists.
+     * @param tableName The name of the table
+     * @throws SQLException If an error occurs while dropping the table
+     */
+    public void dropTable(String tableName) throws SQLException {
+        LOGGER.info("Dropping table {}", tableName);
+
+        Statement statement = conn.createStatement();
+        statement.execute("DROP TABLE IF EXISTS " + tableName);
+        statement.close();
+    }
+
+    /**
+     * Checks if a table already exists.
+     * @param tableName The name of the table
      * @return True if the table exists, false otherwise
      * @throws SQLException If an error occurs while checking if the table exists
      */
-    private boolean tableExists(String indexName) throws SQLException {
-        LOGGER.info("Checking if table for index {} already exists", indexName);
+    private boolean tableExists(String tableName) throws SQLException {
+        LOGGER.info("Checking if table {} already exists", tableName);
 
         String sql = "SELECT count(*) " +
                      "FROM information_schema.tables " +
@@ -105,7 +276,7 @@ public class DbConnection {
                      "LIMIT 1;";
 
         PreparedStatement ps = conn.prepareStatement(sql);
-        ps.setString(1, indexName.replace('-', '_'));
+        ps.setString(1, tableName);
 
         ResultSet rs = ps.executeQuery();
         rs.next();
@@ -145,19 +316,19 @@ public class DbConnection {
 
     /**
      * Retrieve the available metadata table columns for an index.
-     * @param indexName The name of the index
+     * @param tableName The name of the metadata table of the index
      * @return The available metadata columns
      * @throws SQLException If an error occurs while retrieving the metadata columns
      */
-    public Set<String> retrieveMetadataColumns(String indexName) throws SQLException {
-        LOGGER.info("Retrieving available metadata columns for index {}", indexName);
+    public Set<String> retrieveMetadataColumns(String tableName) throws SQLException {
+        LOGGER.debug("Retrieving available metadata columns for table {}", tableName);
 
         String sql = "SELECT column_name " +
                      "FROM information_schema.columns " +
                      "WHERE table_name = ?";
 
         PreparedStatement ps = conn.prepareStatement(sql);
-        ps.setString(1, indexName.replace('-', '_'));
+        ps.setString(1, tableName);
         ResultSet rs = ps.executeQuery();
 
         Set<String> metadataColumns = new HashSet<>();
@@ -173,81 +344,135 @@ public class DbConnection {
 
     /**
      * Build a metadata query for an index.
-     * The query is built based on the metadata columns and query parameters.
+     * The query is built based on the metadata columns and query parameters and retrieves the metadata
+     * of a batch of Lucene documents, whose numbers are inserted by {@link #retrieveMetadataBatch}.
      * Additional filter clauses can be added by metadata modules.
-     * @param indexName The name of the index
+     * @param tableName The name of the metadata table of the index
      * @param metadataColumns The metadata columns to retrieve
      * @param queryParams The query parameters
      * @return The metadata query
      */
-    public String buildMetadataQuery(String indexName, Set<String> metadataColumns, Map<String, Object> queryParams) {
-        LOGGER.info("Building metadata query for index {}", indexName);
+    public String buildMetadataQuery(String tableName, Set<String> metadataColumns, Map<String, Object> queryParams) {
+        LOGGER.debug("Building metadata query for table {}", tableName);
 
-        String columns = String.join(", ", metadataColumns);
         StringBuilder sqlBuilder = new StringBuilder();
-        sqlBuilder.append("SELECT ").append(columns)
-                  .append(" FROM ").append(indexName.replace('-', '_'))
-                  .append(" WHERE ").append(CoreUtils.getIdColumn()).append(" = ? ");
+        sqlBuilder.append("SELECT ").append(ORDINAL_COLUMN);
+        new TreeSet<>(metadataColumns).forEach(column -> sqlBuilder.append(", ").append(column));
+        sqlBuilder.append(" FROM ").append(tableName)
+                  .append(" WHERE ").append(ORDINAL_COLUMN).append(" IN (").append(DOC_ORDS_PLACEHOLDER).append(") ");
 
         // Add additional filter clauses from metadata modules
-        PluginManager.getInstance().getModules().forEach((k, v) -> sqlBuilder.append(v.getSqlFilterClauses(queryParams, metadataColumns)));
+        for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
+            try (Tracing.SpanScope span = Tracing.startSpan("mosaic.module." + module.getClass().getSimpleName() + ".getSqlFilterClauses")) {
+                sqlBuilder.append(module.getSqlFilterClauses(queryParams, metadataColumns));
+            }
+        }
         String sql = sqlBuilder.toString();
-        LOGGER.info("Built metadata query: {}", sql);
+        LOGGER.debug("Built metadata query: {}", sql);
 
         return sql;
     }
 
     /**
-     * Retrieve metadata for an index and id.
-     * @param indexName The name of the index
-     * @param id The id of the document
+     * Retrieve the metadata of a batch of Lucene documents with one query.
+     * The values are read column by column into a columnar batch instead of one map per document.
+     * @param context The index generation the metadata table belongs to
+     * @param docOrds The Lucene document numbers of the documents
      * @param metadataQuery The metadata query
      * @param queryParams The query parameters
      * @param metadataColumns The metadata columns to retrieve
-     * @return The metadata result set
+     * @return The metadata batch containing the documents that passed the SQL filters
      * @throws SQLException If an error occurs while retrieving the metadata
      */
-    public ResultSet retrieveMetadataForDocument(String indexName, String id, String metadataQuery, Map<String, Object> queryParams, Set<String> metadataColumns) throws SQLException {
-        LOGGER.info("Retrieving metadata for index {} and id {}", indexName, id);
+    public MetadataBatch retrieveMetadataBatch(IndexContext context, int[] docOrds, String metadataQuery, Map<String, Object> queryParams, Set<String> metadataColumns) throws SQLException {
+        LOGGER.debug("Retrieving metadata for index {} and {} documents", context.getIndexName(), docOrds.length);
+
+        if (docOrds.length == 0) {
+            return new MetadataBatch(context, List.of(), new String[0][], new int[0], 0);
+        }
+
+        // Document numbers are integers, so they can be inlined safely
+        StringBuilder docOrdList = new StringBuilder();
+        for (int i = 0; i < docOrds.length; i++) {
+            if (i > 0) {
+                docOrdList.append(',');
+            }
+            docOrdList.append(docOrds[i]);
+        }
 
-        PreparedStatement ps = conn.prepareStatement(metadataQuery);
+        lastMetadataSql = metadataQuery.replace(DOC_ORDS_PLACEHOLDER, docOrdList);
+        lastMetadataSqlValues = new ArrayList<>();
+        PreparedStatement ps = conn.prepareStatement(lastMetadataSql);
         int parameterIndex = 1;
-        ps.setString(parameterIndex++, id);
 
         // Add additional filter values from metadata modules
         for (Entry<String, MetadataModule> module : PluginManager.getInstance().getModules().entrySet()) {
             for (Object value : module.getValue().getSqlFilterValues(queryParams, metadataColumns)) {
                 ps.setObject(parameterIndex++, value);
+                lastMetadataSqlValues.add(value);
             }
         }
 
-        ResultSet rs = ps.executeQuery();
-        return rs;
+        List<String> columnNames = new ArrayList<>();
+        String[][] columns;
+        int[] rowDocOrds = new int[docOrds.length];
+        int numRows = 0;
+
+        acquireQueryPermit();
+        try {
+            ResultSet rs = ps.executeQuery();
+            ResultSetMetaData rsMetadata = rs.getMetaData();
+
+            // The first column contains the document numbers, all other columns are metadata columns
+            for (int i = 2; i <= rsMetadata.getColumnCount(); i++) {
+                columnNames.add(rsMetadata.getColumnName(i));
+            }
+
+            columns = new String[columnNames.size()][docOrds.length];
+            while (rs.next() && numRows < docOrds.length) {
+                rowDocOrds[numRows] = rs.getInt(1);
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i][numRows] = rs.getString(i + 2);
+                }
+                numRows++;
+            }
+
+            rs.close();
+        } finally {
+            ps.close();
+            DownstreamLimiter.getDuckDb().release();
+        }
+
+        return new MetadataBatch(context, columnNames, columns, rowDocOrds, numRows);
     }
 
     /**
      * Retrieve the languages for an index.
-     * @param indexName The name of the index
+     * @param tableName The name of the metadata table of the index
      * @return The languages contained in the index
      * @throws SQLException If an error occurs while retrieving the languages
      */
-    public List<String> retrieveIndexInfo(String indexName) throws SQLException {
-        LOGGER.info("Retrieving index info for index {}", indexName);
+    public List<String> retrieveIndexInfo(String tableName) throws SQLException {
+        LOGGER.info("Retrieving index info for table {}", tableName);
 
         String sql = "SELECT DISTINCT language " +
-                     "FROM " + indexName.replace('-', '_') + " " +
+                     "FROM " + tableName + " " +
                      "ORDER BY language ASC";
 
         PreparedStatement ps = conn.prepareStatement(sql);
-        ResultSet rs = ps.executeQuery();
-
         List<String> languages = new ArrayList<>();
-        while (rs.next()) {
-            languages.add(rs.getString("language"));
-        }
 
-        rs.close();
-        ps.close();
+        acquireQueryPermit();
+        try {
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                languages.add(rs.getString("language"));
+            }
+            rs.close();
+        } finally {
+            ps.close();
+            DownstreamLimiter.getDuckDb().release();
+        }
 
         return languages;
     }
@@ -261,7 +486,7 @@ public class DbConnection {
      * @throws SQLException If an error occurs while retrieving the full text
      */
     public String retrieveFullText(String indexName, String id, String idColumn) throws SQLException {
-        LOGGER.info("Retrieving full text for index {} and id {}", indexName, id);
+        LOGGER.debug("Retrieving full text for index {} and id {}", indexName, id);
 
         String sql = "SELECT plain_text " +
                      "FROM read_parquet('" + CoreUtils.getParquetDirPath() + indexName + File.separator + "*.parquet*') " +
@@ -269,18 +494,81 @@ public class DbConnection {
 
         PreparedStatement ps = conn.prepareStatement(sql);
         ps.setString(1, id);
-        ResultSet rs = ps.executeQuery();
         String fullText = null;
-        if (rs.next()) {
-            fullText = rs.getString("plain_text");
-        }
 
-        rs.close();
-        ps.close();
+        acquireQueryPermit();
+        try {
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                fullText = rs.getString("plain_text");
+            }
+            rs.close();
+        } finally {
+            ps.close();
+            DownstreamLimiter.getDuckDb().release();
+        }
 
         return fullText;
     }
 
+    /**
+     * Getter method for the SQL of the last metadata query with the document numbers inlined.
+     * @return SQL of the last metadata query or null if no metadata query has been executed
+     */
+    public String getLastMetadataSql() {
+        return lastMetadataSql;
+    }
+
+    /**
+     * Getter method for the parameter values of the last metadata query.
+     * @return Parameter values in the order of the placeholders
+     */
+    public List<Object> getLastMetadataSqlValues() {
+        return lastMetadataSqlValues;
+    }
+
+    /**
+     * Runs a query with {@code EXPLAIN ANALYZE} and returns the physical plan with the measured timings.
+     * @param sql The query
+     * @param values The parameter values of the query
+     * @return The output of {@code EXPLAIN ANALYZE}
+     * @throws SQLException If the query could not be explained
+     */
+    public String explainAnalyze(String sql, List<Object> values) throws SQLException {
+        LOGGER.debug("Explaining query {}", sql);
+
+        PreparedStatement ps = conn.prepareStatement("EXPLAIN ANALYZE " + sql);
+        for (int i = 0; i < values.size(); i++) {
+            ps.setObject(i + 1, values.get(i));
+        }
+
+        StringBuilder plan = new StringBuilder();
+        acquireQueryPermit();
+        try {
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                // The plan is returned as rows of a key and a rendered value
+                plan.append(rs.getString(rs.getMetaData().getColumnCount())).append('\n');
+            }
+            rs.close();
+        } finally {
+            ps.close();
+            DownstreamLimiter.getDuckDb().release();
+        }
+
+        return plan.toString();
+    }
+
+    /**
+     * Waits for a permit of the DuckDB limiter before a query of a request is executed.
+     * @throws SQLException If no permit could be acquired in time
+     */
+    private static void acquireQueryPermit() throws SQLException {
+        if (!DownstreamLimiter.getDuckDb().tryAcquire()) {
+            throw new SQLException("Timed out waiting for a DuckDB query permit");
+        }
+    }
+
     /**
      * Close the connection to the DuckDB database.
      */
@@ -0,0 +1,245 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.util.ArrayUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves Lucene document numbers to the ids of the documents, e.g., to key the metadata table of a generation by the
+ * document numbers. Segments that contain a binary doc values field {@code id} (written by the CIFF importer) are read
+ * directly, for all other segments a docid to id table is built from the stored fields and kept off-heap.
+ * The tables live as long as the resolver, so a resolver should only be built while it is needed.
+ */
+public class DocIdResolver {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(DocIdResolver.class);
+
+    public static final String ID_FIELD = "id";
+
+    private final List<LeafReaderContext> leaves;
+    private final LeafResolver[] leafResolvers;
+    private final int maxDoc;
+
+    private DocIdResolver(List<LeafReaderContext> leaves, LeafResolver[] leafResolvers, int maxDoc) {
+        this.leaves = leaves;
+        this.leafResolvers = leafResolvers;
+        this.maxDoc = maxDoc;
+    }
+
+    /**
+     * Creates the resolver for all segments of an index reader.
+     * @param reader Index reader of a generation
+     * @return Resolver for the document numbers of the reader
+     * @throws IOException If the ids could not be read from the index
+     */
+    public static DocIdResolver build(IndexReader reader) throws IOException {
+        long start = System.currentTimeMillis();
+        List<LeafReaderContext> leaves = reader.leaves();
+        LeafResolver[] leafResolvers = new LeafResolver[leaves.size()];
+
+        int numDocValuesSegments = 0;
+        long offHeapBytes = 0;
+        for (LeafReaderContext leaf : leaves) {
+            LeafReader leafReader = leaf.reader();
+            FieldInfo fieldInfo = leafReader.getFieldInfos().fieldInfo(ID_FIELD);
+            if (fieldInfo != null && fieldInfo.getDocValuesType() == DocValuesType.BINARY) {
+                leafResolvers[leaf.ord] = new DocValuesLeafResolver(leafReader);
+                numDocValuesSegments++;
+            } else {
+                OffHeapLeafResolver leafResolver = OffHeapLeafResolver.build(leafReader);
+                leafResolvers[leaf.ord] = leafResolver;
+                offHeapBytes += leafResolver.getOffHeapBytes();
+            }
+        }
+
+        LOGGER.info("Built id resolver for {} segments ({} with doc values, {} bytes off-heap) in {} ms",
+            leaves.size(), numDocValuesSegments, offHeapBytes, System.currentTimeMillis() - start);
+        return new DocIdResolver(leaves, leafResolvers, reader.maxDoc());
+    }
+
+    /**
+     * Getter method for the number of documents that can be resolved.
+     * @return One greater than the largest document number of the reader
+     */
+    public int maxDoc() {
+        return maxDoc;
+    }
+
+    /**
+     * Resolves the ids of a batch of documents.
+     * The document numbers are resolved in increasing order, so that doc values are read sequentially per segment.
+     * @param docIds Lucene document numbers in any order
+     * @return Ids of the documents in the order of the given document numbers (null if a document has no id)
+     * @throws IOException If the ids could not be read from the index
+     */
+    public String[] resolve(int[] docIds) throws IOException {
+        String[] ids = new String[docIds.length];
+
+        // Sort the positions of the document numbers by document number
+        Integer[] order = new Integer[docIds.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(docIds[a], docIds[b]));
+
+        int i = 0;
+        while (i < order.length) {
+            int leafIndex = ReaderUtil.subIndex(docIds[order[i]], leaves);
+            LeafReaderContext leaf = leaves.get(leafIndex);
+            int leafEnd = leaf.docBase + leaf.reader().maxDoc();
+
+            // Resolve all documents of the same segment with one doc values iterator
+            LeafResolver.Cursor cursor = leafResolvers[leafIndex].cursor();
+            while (i < order.length && docIds[order[i]] < leafEnd) {
+                ids[order[i]] = cursor.resolve(docIds[order[i]] - leaf.docBase);
+                i++;
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Resolves ids of the documents of one segment.
+     */
+    private interface LeafResolver {
+
+        /**
+         * Cursor that resolves documents of the segment in increasing order of their document numbers.
+         * Cursors are not thread-safe, each request creates its own cursor.
+         */
+        interface Cursor {
+            String resolve(int leafDocId) throws IOException;
+        }
+
+        Cursor cursor() throws IOException;
+    }
+
+    /**
+     * Reads the ids from the binary doc values of a segment.
+     */
+    private static class DocValuesLeafResolver implements LeafResolver {
+
+        private final LeafReader leafReader;
+
+        DocValuesLeafResolver(LeafReader leafReader) {
+            this.leafReader = leafReader;
+        }
+
+        @Override
+        public Cursor cursor() throws IOException {
+            BinaryDocValues docValues = leafReader.getBinaryDocValues(ID_FIELD);
+            return leafDocId -> {
+                if (docValues == null || !docValues.advanceExact(leafDocId) || docValues.binaryValue().length == 0) {
+                    return null;
+                }
+                return docValues.binaryValue().utf8ToString();
+            };
+        }
+    }
+
+    /**
+     * Reads the ids from a table that is built once from the stored fields of a segment.
+     * The table consists of the UTF-8 bytes of all ids and their start offsets, both allocated outside of the heap.
+     */
+    private static class OffHeapLeafResolver implements LeafResolver {
+
+        private final IntBuffer offsets;
+        private final ByteBuffer bytes;
+
+        private OffHeapLeafResolver(IntBuffer offsets, ByteBuffer bytes) {
+            this.offsets = offsets;
+            this.bytes = bytes;
+        }
+
+        static OffHeapLeafResolver build(LeafReader leafReader) throws IOException {
+            int maxDoc = leafReader.maxDoc();
+            StoredFields storedFields = leafReader.storedFields();
+            IdVisitor visitor = new IdVisitor();
+
+            int[] idOffsets = new int[maxDoc + 1];
+            byte[] idBytes = new byte[(int) Math.min(ArrayUtil.MAX_ARRAY_LENGTH, Math.max(16, maxDoc * 16L))];
+            int length = 0;
+            for (int docId = 0; docId < maxDoc; docId++) {
+                visitor.value = null;
+                storedFields.document(docId, visitor);
+
+                idOffsets[docId] = length;
+                if (visitor.value != null) {
+                    idBytes = ArrayUtil.grow(idBytes, length + visitor.value.length);
+                    System.arraycopy(visitor.value, 0, idBytes, length, visitor.value.length);
+                    length += visitor.value.length;
+                }
+            }
+            idOffsets[maxDoc] = length;
+
+            IntBuffer offsets = ByteBuffer.allocateDirect(idOffsets.length * Integer.BYTES).asIntBuffer();
+            offsets.put(idOffsets);
+            ByteBuffer bytes = ByteBuffer.allocateDirect(Math.max(1, length));
+            bytes.put(idBytes, 0, length);
+            return new OffHeapLeafResolver(offsets, bytes);
+        }
+
+        long getOffHeapBytes() {
+            return (long) offsets.capacity() * Integer.BYTES + bytes.capacity();
+        }
+
+        @Override
+        public Cursor cursor() {
+            return leafDocId -> {
+                int start = offsets.get(leafDocId);
+                int end = offsets.get(leafDocId + 1);
+                if (start == end) {
+                    // Documents without id are stored with an empty id
+                    return null;
+                }
+                byte[] value = new byte[end - start];
+                bytes.get(start, value);
+                return new String(value, StandardCharsets.UTF_8);
+            };
+        }
+    }
+
+    /**
+     * Stored field visitor that only reads the id and stops afterwards.
+     */
+    private static class IdVisitor extends StoredFieldVisitor {
+
+        byte[] value;
+
+        @Override
+        public Status needsField(FieldInfo fieldInfo) {
+            if (value != null) {
+                return Status.STOP;
+            }
+            return ID_FIELD.equals(fieldInfo.name) ? Status.YES : Status.NO;
+        }
+
+        @Override
+        public void stringField(FieldInfo fieldInfo, String stringValue) {
+            value = stringValue.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void binaryField(FieldInfo fieldInfo, byte[] binaryValue) {
+            value = binaryValue;
+        }
+    }
+
+}
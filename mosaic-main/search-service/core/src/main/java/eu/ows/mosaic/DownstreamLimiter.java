@@ -0,0 +1,98 @@
+package eu.ows.mosaic;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounds the number of concurrent calls of requests to a downstream resource (Lucene searches or DuckDB queries).
+ * Requests run on virtual threads if available, so the number of requests in flight is not bounded by a thread pool anymore.
+ * Callers wait for a permit before they call the downstream resource and release it afterwards.
+ */
+public class DownstreamLimiter {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(DownstreamLimiter.class);
+
+    public static final String LUCENE = "lucene";
+    public static final String DUCKDB = "duckdb";
+
+    private static final long ACQUIRE_TIMEOUT_SECONDS = 30;
+
+    private static DownstreamLimiter LUCENE_INSTANCE;
+    private static DownstreamLimiter DUCKDB_INSTANCE;
+
+    private final String name;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+
+    private DownstreamLimiter(String name, int maxConcurrency) {
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, true);
+        LOGGER.info("Limiting concurrent {} calls to {}", name, maxConcurrency);
+    }
+
+    /**
+     * Getter method for the limiter of Lucene searches.
+     * @return Limiter of Lucene searches
+     */
+    public static synchronized DownstreamLimiter getLucene() {
+        if (LUCENE_INSTANCE == null) {
+            LUCENE_INSTANCE = new DownstreamLimiter(LUCENE, CoreConfig.getInstance().getLuceneConcurrency());
+        }
+        return LUCENE_INSTANCE;
+    }
+
+    /**
+     * Getter method for the limiter of DuckDB queries.
+     * @return Limiter of DuckDB queries
+     */
+    public static synchronized DownstreamLimiter getDuckDb() {
+        if (DUCKDB_INSTANCE == null) {
+            DUCKDB_INSTANCE = new DownstreamLimiter(DUCKDB, CoreConfig.getInstance().getDuckDbConcurrency());
+        }
+        return DUCKDB_INSTANCE;
+    }
+
+    /**
+     * Waits for a permit to call the downstream resource.
+     * @return True if a permit was acquired, false if the timeout elapsed or the thread was interrupted
+     */
+    public boolean tryAcquire() {
+        try {
+            if (permits.tryAcquire(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                return true;
+            }
+            LOGGER.warn("Timed out waiting for a {} permit ({} calls waiting)", name, permits.getQueueLength());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Releases a permit that was acquired with {@link #tryAcquire()}.
+     */
+    public void release() {
+        permits.release();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getInFlight() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    public int getWaiting() {
+        return permits.getQueueLength();
+    }
+
+}
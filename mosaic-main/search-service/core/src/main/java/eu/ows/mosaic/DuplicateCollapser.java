@@ -0,0 +1,154 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Collapses duplicate hits of a search in one index with the fingerprints written by the importer
+ * (see {@link DocFingerprints}). Hits are passed in score order, so the best hit of a group of duplicates is kept and
+ * all later hits with the same canonical URL or a SimHash within {@value DocFingerprints#MAX_SIMHASH_DISTANCE} bits
+ * are dropped. The fingerprints of the kept hits are remembered, so that a collapser can continue on the next page.
+ * Near-duplicates are looked up with four 16-bit bands of the SimHash: two SimHashes that differ in at most three
+ * bits have at least one band in common.
+ */
+public class DuplicateCollapser {
+
+    private static final int NUM_BANDS = 4;
+    private static final int BAND_BITS = Long.SIZE / NUM_BANDS;
+
+    private final Set<Long> urlHashes;
+    private final Map<Integer, List<Long>> simHashBands;
+    private int numCollapsed = 0;
+
+    public DuplicateCollapser() {
+        this(new HashSet<>(), new HashMap<>());
+    }
+
+    private DuplicateCollapser(Set<Long> urlHashes, Map<Integer, List<Long>> simHashBands) {
+        this.urlHashes = urlHashes;
+        this.simHashBands = simHashBands;
+    }
+
+    /**
+     * Creates a copy of the collapser, which remembers the same kept hits.
+     * @return Copy of the collapser
+     */
+    public DuplicateCollapser copy() {
+        Map<Integer, List<Long>> bandsCopy = new HashMap<>();
+        simHashBands.forEach((band, simHashes) -> bandsCopy.put(band, new ArrayList<>(simHashes)));
+        return new DuplicateCollapser(new HashSet<>(urlHashes), bandsCopy);
+    }
+
+    /**
+     * Getter method for the number of hits that have been collapsed by this collapser.
+     * @return Number of collapsed hits
+     */
+    public int getNumCollapsed() {
+        return numCollapsed;
+    }
+
+    /**
+     * Marks the hits of a batch that duplicate a higher-scored hit of the batch or of a previous batch.
+     * Only the fingerprints of the first {@code maxKept} kept hits are remembered, hits after them are neither marked
+     * nor remembered, since they do not make it into the results and are fetched again for the next page.
+     * @param reader Reader of the acquired generation of the Lucene index
+     * @param hits Hits of the batch in score order
+     * @param maxKept Maximum number of hits of the batch that can be kept
+     * @return Duplicate flags by position of the hits
+     * @throws IOException If the fingerprints could not be read from the index
+     */
+    public boolean[] collapse(IndexReader reader, ScoreDoc[] hits, int maxKept) throws IOException {
+        long[] urlHashesOfHits = new long[hits.length];
+        long[] simHashesOfHits = new long[hits.length];
+        readFingerprints(reader, hits, urlHashesOfHits, simHashesOfHits);
+
+        boolean[] duplicates = new boolean[hits.length];
+        int numKept = 0;
+        for (int i = 0; i < hits.length && numKept < maxKept; i++) {
+            if ((urlHashesOfHits[i] != 0L && urlHashes.contains(urlHashesOfHits[i])) || containsNearDuplicate(simHashesOfHits[i])) {
+                duplicates[i] = true;
+                numCollapsed++;
+                continue;
+            }
+            numKept++;
+            if (urlHashesOfHits[i] != 0L) {
+                urlHashes.add(urlHashesOfHits[i]);
+            }
+            if (simHashesOfHits[i] != 0L) {
+                for (int band = 0; band < NUM_BANDS; band++) {
+                    simHashBands.computeIfAbsent(bandKey(simHashesOfHits[i], band), key -> new ArrayList<>()).add(simHashesOfHits[i]);
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    private boolean containsNearDuplicate(long simHash) {
+        if (simHash == 0L) {
+            return false;
+        }
+        for (int band = 0; band < NUM_BANDS; band++) {
+            List<Long> candidates = simHashBands.get(bandKey(simHash, band));
+            if (candidates == null) {
+                continue;
+            }
+            for (long candidate : candidates) {
+                if (DocFingerprints.isNearDuplicate(simHash, candidate)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Key of a band of a SimHash, which consists of the number of the band and its bits.
+     */
+    private static int bandKey(long simHash, int band) {
+        return (band << BAND_BITS) | (int) ((simHash >>> (band * BAND_BITS)) & 0xffffL);
+    }
+
+    /**
+     * Reads the fingerprints of the hits. The hits are read in increasing order of their document numbers,
+     * so that doc values are read sequentially per segment. Segments without fingerprints yield 0.
+     */
+    private static void readFingerprints(IndexReader reader, ScoreDoc[] hits, long[] urlHashes, long[] simHashes) throws IOException {
+        List<LeafReaderContext> leaves = reader.leaves();
+        Integer[] order = new Integer[hits.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(hits[a].doc, hits[b].doc));
+
+        int i = 0;
+        while (i < order.length) {
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(hits[order[i]].doc, leaves));
+            int leafEnd = leaf.docBase + leaf.reader().maxDoc();
+            NumericDocValues urlHashValues = leaf.reader().getNumericDocValues(DocFingerprints.URL_HASH_FIELD);
+            NumericDocValues simHashValues = leaf.reader().getNumericDocValues(DocFingerprints.SIMHASH_FIELD);
+            while (i < order.length && hits[order[i]].doc < leafEnd) {
+                int leafDocId = hits[order[i]].doc - leaf.docBase;
+                if (urlHashValues != null && urlHashValues.advanceExact(leafDocId)) {
+                    urlHashes[order[i]] = urlHashValues.longValue();
+                }
+                if (simHashValues != null && simHashValues.advanceExact(leafDocId)) {
+                    simHashes[order[i]] = simHashValues.longValue();
+                }
+                i++;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+package eu.ows.mosaic;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.search.TotalHits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plans how many hits are fetched from Lucene per iteration of a search when metadata modules filter out hits.
+ * The pass rate of the filters (the fraction of fetched hits that pass the SQL and manual filters) is estimated
+ * from earlier requests with the same filters on the same index and from the previous iterations of the request.
+ * The next batch is sized to the expected number of hits required to fill the page, and the total work of a request
+ * is capped by a maximum number of iterations and fetched hits.
+ */
+public class FetchPlanner {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(FetchPlanner.class);
+
+    public static final int DEFAULT_MAX_ITERATIONS = 8;
+    public static final int DEFAULT_MAX_FETCH_FACTOR = 50;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 10000;
+
+    // Pass rate assumed for filters that have not been observed yet
+    private static final double DEFAULT_PASS_RATE = 0.5;
+    private static final double MIN_PASS_RATE = 0.01;
+    // Weight of the pass rate of the latest request in the moving average
+    private static final double PASS_RATE_SMOOTHING = 0.3;
+    // Additional hits fetched to compensate for the variance of the pass rate
+    private static final double SAFETY_FACTOR = 1.2;
+    private static final int MAX_OBSERVED_FILTERS = 10000;
+
+    // Parameters that do not filter the hits and are ignored for the filter signature
+    private static final Set<String> NON_FILTER_PARAMS = Set.of("q", "index", "limit", "page", "ranking", "sortby", "fulltext", "decay", "trackTotalHits", "rerank", "bm25f", "mode", "vector", "efSearch");
+
+    private static FetchPlanner INSTANCE;
+
+    private final Map<String, Double> passRates = new ConcurrentHashMap<>();
+
+    private FetchPlanner() {}
+
+    public static synchronized FetchPlanner getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new FetchPlanner();
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Creates the plan for fetching the hits of a request from an index.
+     * @param indexName Name of the index
+     * @param queryParams Parsed query parameters
+     * @param numHitsLimit Number of hits that have to pass the filters
+     * @return Fetch plan of the request
+     */
+    public Plan plan(String indexName, Map<String, Object> queryParams, int numHitsLimit) {
+        String filterSignature = getFilterSignature(queryParams);
+        String key = indexName + "|" + filterSignature;
+
+        double passRate;
+        if (filterSignature.isEmpty()) {
+            passRate = 1.0;
+        } else {
+            passRate = passRates.getOrDefault(key, DEFAULT_PASS_RATE);
+        }
+
+        long maxFetchedHits = Math.max((long) numHitsLimit * DEFAULT_MAX_FETCH_FACTOR, DEFAULT_MAX_BATCH_SIZE);
+        return new Plan(key, numHitsLimit, passRate, maxFetchedHits);
+    }
+
+    /**
+     * Computes the signature of the filters of a request, i.e., all parameters that can filter out hits.
+     * @param queryParams Parsed query parameters
+     * @return Signature of the filter parameters and their values
+     */
+    private String getFilterSignature(Map<String, Object> queryParams) {
+        Map<String, Object> filterParams = new TreeMap<>();
+        for (Map.Entry<String, Object> entry : queryParams.entrySet()) {
+            if (entry.getValue() != null && !NON_FILTER_PARAMS.contains(entry.getKey())) {
+                filterParams.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return filterParams.isEmpty() ? "" : filterParams.toString();
+    }
+
+    /**
+     * Updates the moving average of the pass rate of the filters of a request.
+     */
+    private void observe(String key, long fetchedHits, long passedHits) {
+        if (fetchedHits == 0) {
+            return;
+        }
+        if (passRates.size() >= MAX_OBSERVED_FILTERS) {
+            passRates.clear();
+        }
+
+        double observedPassRate = (double) passedHits / fetchedHits;
+        passRates.merge(key, observedPassRate, (previous, observed) -> (1 - PASS_RATE_SMOOTHING) * previous + PASS_RATE_SMOOTHING * observed);
+    }
+
+    /**
+     * Fetch plan and statistics of a search request in one index.
+     */
+    public class Plan {
+
+        private final String key;
+        private final int numHitsLimit;
+        private final long maxFetchedHits;
+        private double passRate;
+
+        private int iterations = 0;
+        private long fetchedHits = 0;
+        private long passedHits = 0;
+        private boolean exhausted = false;
+        private boolean truncated = false;
+        private boolean timedOut = false;
+        private TotalHits totalHits;
+
+        private Plan(String key, int numHitsLimit, double passRate, long maxFetchedHits) {
+            this.key = key;
+            this.numHitsLimit = numHitsLimit;
+            this.passRate = passRate;
+            this.maxFetchedHits = maxFetchedHits;
+        }
+
+        /**
+         * Checks if another iteration should be run.
+         * @param numResults Number of hits that have passed the filters so far
+         * @return True if more hits are required and the work limits have not been reached, false otherwise
+         */
+        public boolean hasNext(int numResults) {
+            if (numResults >= numHitsLimit || exhausted || timedOut) {
+                return false;
+            }
+            if (iterations >= DEFAULT_MAX_ITERATIONS || fetchedHits >= maxFetchedHits) {
+                LOGGER.info("Stopping after {} iterations and {} fetched hits with {} of {} results", iterations, fetchedHits, numResults, numHitsLimit);
+                truncated = true;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Computes the number of hits to fetch in the next iteration.
+         * @param numResults Number of hits that have passed the filters so far
+         * @return Number of hits to fetch from Lucene
+         */
+        public int nextBatchSize(int numResults) {
+            int shortfall = numHitsLimit - numResults;
+            double expectedHits = shortfall / Math.max(MIN_PASS_RATE, passRate);
+            if (passRate < 1.0) {
+                expectedHits *= SAFETY_FACTOR;
+            }
+
+            long batchSize = (long) Math.ceil(expectedHits);
+            batchSize = Math.min(batchSize, maxFetchedHits - fetchedHits);
+            batchSize = Math.min(batchSize, DEFAULT_MAX_BATCH_SIZE);
+            return (int) Math.max(shortfall, batchSize);
+        }
+
+        /**
+         * Records the outcome of an iteration.
+         * @param fetched Number of hits fetched from Lucene
+         * @param passed Number of fetched hits that passed the filters
+         * @param requested Number of hits that were requested from Lucene
+         */
+        public void record(int fetched, int passed, int requested) {
+            iterations++;
+            fetchedHits += fetched;
+            passedHits += passed;
+            exhausted = fetched < requested;
+
+            // Use the pass rate observed in this request for the following iterations
+            if (fetchedHits > 0) {
+                passRate = Math.max(MIN_PASS_RATE, (double) passedHits / fetchedHits);
+            }
+            LOGGER.debug("Iteration {}: fetched {} hits, {} passed the filters (pass rate {})", iterations, fetched, passed, passRate);
+        }
+
+        /**
+         * Stops the plan after a Lucene search has timed out, the hits collected so far are kept.
+         */
+        public void stopOnTimeout() {
+            LOGGER.info("Stopping after {} iterations because the Lucene search timed out", iterations);
+            timedOut = true;
+            truncated = true;
+        }
+
+        /**
+         * Finishes the plan and updates the pass rate statistics for later requests.
+         */
+        public void finish() {
+            if (!key.endsWith("|")) {
+                observe(key, fetchedHits, passedHits);
+            }
+        }
+
+        /**
+         * Records the total number of hits of the query, only the first recorded value is kept.
+         * @param totalHits Total number of hits reported by Lucene
+         */
+        public void recordTotalHits(TotalHits totalHits) {
+            if (this.totalHits == null) {
+                this.totalHits = totalHits;
+            }
+        }
+
+        /**
+         * Getter method for the total number of hits of the query in the index (before the SQL and manual filters of the modules).
+         * @return Total number of hits, which may be a lower bound, or null if no search was run
+         */
+        public TotalHits getTotalHits() {
+            return totalHits;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        public long getFetchedHits() {
+            return fetchedHits;
+        }
+
+        public long getPassedHits() {
+            return passedHits;
+        }
+
+        /**
+         * Checks if the search stopped because of the work limits before the page could be filled.
+         * @return True if the results were truncated, false otherwise
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+
+}
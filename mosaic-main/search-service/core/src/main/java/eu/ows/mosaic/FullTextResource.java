@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
@@ -24,6 +25,7 @@ public class FullTextResource {
     private final String DEFAULT_ID_COLUMN = "record_id";
 
     @GET
+    @RunOnVirtualThread
     @Produces(MediaType.APPLICATION_JSON)
     public String fullText(@Context UriInfo uriInfo) throws SQLException {
         Map<String, String> queryParams = uriInfo.getQueryParameters().entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get(0)));
@@ -47,7 +49,7 @@ public class FullTextResource {
         if (!selectedIndexName.isEmpty()) {
             fullText = CoreUtils.getFullTextOfDocument(selectedIndexName, id, idColumn);
         } else {
-            for (String indexName : ResourceManager.getInstance().getIndexes().keySet()) {
+            for (String indexName : ResourceManager.getInstance().getIndexNames()) {
                 fullText = CoreUtils.getFullTextOfDocument(indexName, id, idColumn);
                 if (fullText != null && !fullText.isEmpty()) {
                     break;
@@ -0,0 +1,259 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One loaded generation of an index, i.e., the Lucene searcher and the DuckDB metadata table that belong together.
+ * Generations are reference counted: requests acquire a generation before searching and release it afterwards,
+ * so that a replaced generation is only closed (and its table dropped) once all in-flight requests have drained.
+ */
+public class IndexGeneration implements IndexContext {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(IndexGeneration.class);
+
+    private final String indexName;
+    private final long generation;
+    private final String fingerprint;
+    private final String tableName;
+    private final FSDirectory directory;
+    private final DirectoryReader reader;
+    private final IndexSearcher searcher;
+    private final Map<String, Float> combinedFieldWeights;
+    private final Map<String, Object> attachments = new ConcurrentHashMap<>();
+
+    // The resource manager holds one reference as long as the generation is active
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    private volatile boolean dropTableOnClose = false;
+
+    private IndexGeneration(String indexName, long generation, String fingerprint, String tableName, FSDirectory directory, DirectoryReader reader) throws IOException {
+        this.indexName = indexName;
+        this.generation = generation;
+        this.fingerprint = fingerprint;
+        this.tableName = tableName;
+        this.directory = directory;
+        this.reader = reader;
+        this.searcher = new IndexSearcher(reader);
+        RankingConfig rankingConfig = CoreConfig.getInstance().getRankingConfig(indexName);
+        Similarity similarity;
+        try {
+            similarity = rankingConfig.createSimilarity();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid ranking configuration of index " + indexName, e);
+        }
+        rankingConfig.checkNorms(indexName, reader, similarity);
+        this.searcher.setSimilarity(similarity);
+        LOGGER.info("Ranking generation {} of index {} with {}", generation, indexName, rankingConfig);
+        this.searcher.setTimeout(QueryPlanner.getDeadline());
+        this.combinedFieldWeights = getCombinedFieldWeights(indexName, reader, rankingConfig);
+    }
+
+    /**
+     * Determines the fields of the index that are searched by multi-field (BM25F) queries.
+     * @return Weights of the indexed fields with norms or an empty map if the index only has the full text field
+     */
+    private static Map<String, Float> getCombinedFieldWeights(String indexName, DirectoryReader reader, RankingConfig rankingConfig) {
+        FieldInfos fieldInfos = FieldInfos.getMergedFieldInfos(reader);
+        Map<String, Float> fieldWeights = new TreeMap<>();
+        for (Map.Entry<String, Float> fieldWeight : rankingConfig.getFieldWeights().entrySet()) {
+            FieldInfo fieldInfo = fieldInfos.fieldInfo(fieldWeight.getKey());
+            if (fieldInfo == null || fieldInfo.getIndexOptions() == IndexOptions.NONE || !fieldInfo.hasNorms()) {
+                continue;
+            }
+            if (fieldWeight.getValue() < 1.0f) {
+                LOGGER.warn("Weight {} of field {} of index {} must be at least 1, the field is not searched by multi-field queries", fieldWeight.getValue(), fieldWeight.getKey(), indexName);
+                continue;
+            }
+            fieldWeights.put(fieldWeight.getKey(), fieldWeight.getValue());
+        }
+
+        if (!fieldWeights.containsKey(QueryCompiler.DEFAULT_FIELD) || fieldWeights.size() < 2) {
+            return Map.of();
+        }
+        LOGGER.info("Multi-field queries of index {} search the fields {}", indexName, fieldWeights);
+        return fieldWeights;
+    }
+
+    /**
+     * Opens the Lucene index of a generation.
+     * @param indexName Name of the index
+     * @param generation Sequence number of the generation
+     * @param fingerprint Fingerprint of the index and metadata files the generation was built from
+     * @param tableName Name of the metadata table or null if no metadata exists for the index
+     * @return Opened index generation
+     * @throws IOException If the Lucene index could not be opened
+     */
+    public static IndexGeneration open(String indexName, long generation, String fingerprint, String tableName) throws IOException {
+        LOGGER.info("Opening generation {} of index {}", generation, indexName);
+        FSDirectory directory = FSDirectory.open(Paths.get(CoreUtils.getIndexDirPath() + indexName));
+        DirectoryReader reader = null;
+        try {
+            reader = DirectoryReader.open(directory);
+            return new IndexGeneration(indexName, generation, fingerprint, tableName, directory, reader);
+        } catch (IOException e) {
+            if (reader != null) {
+                reader.close();
+            }
+            directory.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String getIndexName() {
+        return indexName;
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Getter method for the name of the metadata table.
+     * @return Name of the DuckDB table or null if no metadata exists for the index
+     */
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
+
+    public boolean hasMetadata() {
+        return tableName != null;
+    }
+
+    public DirectoryReader getReader() {
+        return reader;
+    }
+
+    @Override
+    public IndexSearcher getSearcher() {
+        return searcher;
+    }
+
+    @Override
+    public TopDocs search(Query query, int numHits) throws IOException {
+        return SearchUtils.search(this, query, null, numHits, numHits);
+    }
+
+    /**
+     * Getter method for the fields that are searched by multi-field (BM25F) queries.
+     * @return Weights of the fields or an empty map if multi-field queries are not supported by the index
+     */
+    public Map<String, Float> getCombinedFieldWeights() {
+        return combinedFieldWeights;
+    }
+
+    @Override
+    public int getMaxDoc() {
+        return reader.maxDoc();
+    }
+
+    @Override
+    public Connection openConnection() throws SQLException {
+        return DbConnection.openConnection();
+    }
+
+    @Override
+    public Object getAttachment(String key) {
+        return attachments.get(key);
+    }
+
+    @Override
+    public void putAttachment(String key, Object value) {
+        attachments.put(key, value);
+    }
+
+    public int getRefCount() {
+        return refCount.get();
+    }
+
+    /**
+     * Increments the reference count unless the generation has already been closed.
+     * @return True if a reference was acquired, false otherwise
+     */
+    public boolean tryIncRef() {
+        int count;
+        do {
+            count = refCount.get();
+            if (count <= 0) {
+                return false;
+            }
+        } while (!refCount.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     * Releases a reference and closes the generation as soon as no references are left.
+     */
+    public void decRef() {
+        if (refCount.decrementAndGet() == 0) {
+            close();
+        }
+    }
+
+    /**
+     * Marks the generation as replaced or removed and releases the reference of the resource manager.
+     * @param dropTable True if the metadata table is not used by the next generation and should be dropped
+     */
+    public void retire(boolean dropTable) {
+        LOGGER.info("Retiring generation {} of index {}", generation, indexName);
+        this.dropTableOnClose = dropTable;
+        decRef();
+    }
+
+    /**
+     * Closes the Lucene reader and directory and drops the metadata table if requested.
+     */
+    private void close() {
+        LOGGER.info("Closing generation {} of index {}", generation, indexName);
+        for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
+            try {
+                module.onIndexUnloaded(this);
+            } catch (RuntimeException e) {
+                LOGGER.error("Module {} failed to unload generation {} of index {}", module.getClass().getSimpleName(), generation, indexName, e);
+            }
+        }
+        attachments.clear();
+
+        try {
+            reader.close();
+            directory.close();
+        } catch (IOException e) {
+            LOGGER.error("Failed to close generation {} of index {}", generation, indexName, e);
+        }
+
+        if (dropTableOnClose && tableName != null) {
+            try {
+                DbConnection dbConn = new DbConnection();
+                dbConn.dropTable(tableName);
+                dbConn.closeConnection();
+            } catch (SQLException e) {
+                LOGGER.error("Failed to drop table {} of index {}", tableName, indexName, e);
+            }
+        }
+    }
+
+}
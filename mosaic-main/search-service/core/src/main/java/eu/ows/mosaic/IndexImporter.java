@@ -0,0 +1,73 @@
+package eu.ows.mosaic;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports CIFF files from the Parquet directory into Lucene indexes inside the search service.
+ * A CIFF file located in {@code <parquet-dir>/<index>/} is imported if no Lucene index {@code <lucene-dir>/<index>/} exists yet.
+ * Like {@code scripts/import_index.sh}, the titles, URLs and embeddings of the documents are read from the Parquet files
+ * next to the CIFF file, so that the imported index can be searched by title and URL and has fingerprints and vectors.
+ */
+public class IndexImporter {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(IndexImporter.class);
+
+    private static boolean enabled = false;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean newEnabled) {
+        LOGGER.info("Setting import of CIFF files to: {}", newEnabled);
+        enabled = newEnabled;
+    }
+
+    /**
+     * Imports all CIFF files for which no Lucene index exists yet.
+     * The index is written to a temporary directory first and renamed afterwards,
+     * so that the index watcher never sees a partially written index.
+     */
+    public static synchronized void importMissingIndexes() {
+        File[] parquetDirectories = new File(CoreUtils.getParquetDirPath()).listFiles(File::isDirectory);
+        if (parquetDirectories == null) {
+            return;
+        }
+
+        for (File parquetDirectory : parquetDirectories) {
+            String indexName = parquetDirectory.getName();
+            File indexDirectory = new File(CoreUtils.getIndexDirPath() + indexName);
+            if (indexDirectory.exists()) {
+                continue;
+            }
+
+            File[] ciffFiles = parquetDirectory.listFiles(file -> file.isFile() && file.getName().contains(".ciff"));
+            if (ciffFiles == null || ciffFiles.length == 0) {
+                continue;
+            }
+
+            File importDirectory = new File(CoreUtils.getIndexDirPath() + "." + indexName + "-import");
+            LOGGER.info("Importing CIFF file {} into index {}", ciffFiles[0].getName(), indexName);
+            File[] parquetFiles = parquetDirectory.listFiles(file -> file.isFile() && file.getName().contains(".parquet"));
+            if (parquetFiles == null || parquetFiles.length == 0) {
+                LOGGER.warn("No Parquet files found in {}, index {} is imported without titles, URLs and embeddings", parquetDirectory, indexName);
+            }
+            try {
+                CiffImporter.ImportStatistics statistics = new CiffImporter()
+                    .setMetadataPath(parquetFiles != null && parquetFiles.length > 0 ? parquetDirectory.toPath() : null)
+                    .importCiff(ciffFiles[0].toPath(), importDirectory.toPath());
+                if (!importDirectory.renameTo(indexDirectory)) {
+                    throw new IOException("Failed to move imported index to " + indexDirectory);
+                }
+                LOGGER.info("Imported index {}: {}", indexName, statistics);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Failed to import CIFF file {} into index {}", ciffFiles[0].getName(), indexName, e);
+            }
+        }
+    }
+
+}
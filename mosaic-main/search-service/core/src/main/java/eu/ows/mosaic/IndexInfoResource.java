@@ -3,11 +3,7 @@ package eu.ows.mosaic;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.List;
-import java.util.Map;
 
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.store.FSDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,6 +11,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
@@ -27,35 +24,42 @@ public class IndexInfoResource {
 
     private static Logger LOGGER = LoggerFactory.getLogger(IndexInfoResource.class);
 
-    private Map<String, FSDirectory> indexes;
-
     @GET
+    @RunOnVirtualThread
     @Produces(MediaType.APPLICATION_JSON)
     public String indexInfo(@Context UriInfo uriInfo) throws SQLException, IOException {
 
         LOGGER.info("Received index-info request: {}", uriInfo.getQueryParameters());
 
         ResourceManager resourceManager = ResourceManager.getInstance();
-        indexes = resourceManager.getIndexes();
 
         JsonArray resultsPerIndex = new JsonArray();
 
         // Iterate over all indexes and retrieve the document count and languages
-        for (String indexName : indexes.keySet()) {
-            JsonObject indexObject = new JsonObject();
+        for (String indexName : resourceManager.getIndexNames()) {
+            IndexGeneration generation = resourceManager.acquire(indexName);
+            if (generation == null) {
+                continue;
+            }
 
-            // Retrieve the document count
-            FSDirectory indexDir = indexes.get(indexName);
-            IndexReader reader = DirectoryReader.open(indexDir);
-            int documentCount = reader.maxDoc();
-            indexObject.addProperty("documentCount", documentCount);
-
-            // Retrieve the languages
-            DbConnection dbConn = new DbConnection();
-            List<String> languages = dbConn.retrieveIndexInfo(indexName);
-            dbConn.closeConnection();
-            Gson gson = new GsonBuilder().create();
-            indexObject.add("languages", gson.toJsonTree(languages).getAsJsonArray());
+            JsonObject indexObject = new JsonObject();
+            try {
+                // Retrieve the document count
+                int documentCount = generation.getReader().maxDoc();
+                indexObject.addProperty("documentCount", documentCount);
+
+                // Retrieve the languages
+                List<String> languages = List.of();
+                if (generation.hasMetadata()) {
+                    DbConnection dbConn = new DbConnection();
+                    languages = dbConn.retrieveIndexInfo(generation.getTableName());
+                    dbConn.closeConnection();
+                }
+                Gson gson = new GsonBuilder().create();
+                indexObject.add("languages", gson.toJsonTree(languages).getAsJsonArray());
+            } finally {
+                resourceManager.release(generation);
+            }
 
             // Add the index object to the results
             JsonObject indexResultsObject = new JsonObject();
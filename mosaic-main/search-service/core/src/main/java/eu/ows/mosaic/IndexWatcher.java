@@ -0,0 +1,111 @@
+package eu.ows.mosaic;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watcher that periodically scans the Lucene and Parquet directories and reloads indexes which have been
+ * added, updated or removed. An index is only reloaded once its fingerprint has been stable for two
+ * consecutive scans, so that files which are still being copied are not picked up.
+ */
+public class IndexWatcher {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(IndexWatcher.class);
+
+    public static final long DEFAULT_RELOAD_INTERVAL_SECONDS = 60;
+
+    private static IndexWatcher INSTANCE;
+
+    private ScheduledExecutorService scheduler;
+    private Map<String, String> previousScan = new TreeMap<>();
+
+    private IndexWatcher() {}
+
+    public static synchronized IndexWatcher getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new IndexWatcher();
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Starts watching the index directories.
+     * @param intervalSeconds Number of seconds between two scans, a value less than 1 disables the watcher
+     */
+    public synchronized void start(long intervalSeconds) {
+        if (intervalSeconds < 1 || scheduler != null) {
+            LOGGER.info("Index watcher is disabled");
+            return;
+        }
+
+        LOGGER.info("Watching index directories every {} seconds", intervalSeconds);
+        previousScan = ResourceManager.getInstance().scanIndexes();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mosaic-index-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops watching the index directories.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Scans the index directories and reloads the indexes whose changes are stable.
+     */
+    private void poll() {
+        try {
+            if (IndexImporter.isEnabled()) {
+                IndexImporter.importMissingIndexes();
+            }
+
+            ResourceManager resourceManager = ResourceManager.getInstance();
+            Map<String, String> currentScan = resourceManager.scanIndexes();
+            Map<String, IndexGeneration> generations = resourceManager.getGenerations();
+
+            Set<String> indexNames = new TreeSet<>(currentScan.keySet());
+            indexNames.addAll(generations.keySet());
+
+            Set<String> changedIndexNames = new TreeSet<>();
+            for (String indexName : indexNames) {
+                String fingerprint = currentScan.get(indexName);
+                IndexGeneration generation = generations.get(indexName);
+                String activeFingerprint = generation == null ? null : generation.getFingerprint();
+
+                boolean changed = fingerprint == null ? activeFingerprint != null : !fingerprint.equals(activeFingerprint);
+                boolean stable = fingerprint == null ? !previousScan.containsKey(indexName) : fingerprint.equals(previousScan.get(indexName));
+                if (changed && stable) {
+                    changedIndexNames.add(indexName);
+                } else if (changed) {
+                    LOGGER.info("Index {} is changing, waiting for the next scan", indexName);
+                }
+            }
+            previousScan = currentScan;
+
+            if (!changedIndexNames.isEmpty()) {
+                LOGGER.info("Detected changes of indexes {}", changedIndexNames);
+                Map<String, String> actions = resourceManager.reload(changedIndexNames);
+                LOGGER.info("Reloaded indexes: {}", actions);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to scan index directories", e);
+        }
+    }
+
+}
@@ -4,6 +4,8 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.Map;
 import java.util.TreeMap;
 
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,6 +20,7 @@ public class PluginManager {
 
     private Map<String, CoreComponent> components;
     private Map<String, MetadataModule> modules;
+    private QueryCompiler queryCompiler;
 
     public static final String ANALYZER = "analyzer";
     public static final String QUERY = "query";
@@ -39,6 +42,17 @@ public class PluginManager {
         return modules;
     }
 
+    /**
+     * Getter method for the query compiler with the analyzer of the search service.
+     * @return Query compiler created when the components were loaded
+     */
+    public QueryCompiler getQueryCompiler() {
+        if (queryCompiler == null) {
+            queryCompiler = createQueryCompiler();
+        }
+        return queryCompiler;
+    }
+
     /**
      * Load the components for the search service.
      * All components must implement the CoreComponent interface.
@@ -71,9 +85,25 @@ public class PluginManager {
         }
 
         LOGGER.info("Components loaded successfully: {}", components.keySet());
+
+        // Create the analyzer once instead of for each request
+        queryCompiler = createQueryCompiler();
         return components;
     }
 
+    /**
+     * Creates the query compiler with the analyzer of the analyzer component or the default analyzer.
+     * @return New query compiler
+     */
+    private QueryCompiler createQueryCompiler() {
+        Analyzer analyzer = new StandardAnalyzer();
+        if (components != null && components.containsKey(ANALYZER)) {
+            analyzer = ((AnalyzerComponent) components.get(ANALYZER)).getAnalyzer(analyzer);
+        }
+        CoreConfig config = CoreConfig.getInstance();
+        return new QueryCompiler(analyzer, config.getLuceneConcurrency(), config.getQueryCacheSize());
+    }
+
     /**
      * Load the modules which are enabled in the configuration file for the search service.
      * All modules must implement the MetadataModule interface.
@@ -0,0 +1,143 @@
+package eu.ows.mosaic;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles query strings to Lucene queries with the analyzer of the search service.
+ * The analyzer is created once when the components are loaded. Query parsers are not thread-safe, so they are kept in
+ * a pool and lent to one request at a time. Each pooled parser wraps the analyzer with its own token stream components,
+ * which are reused by all requests that borrow the parser (requests run on virtual threads, so the per-thread reuse of
+ * Lucene analyzers would create new components for every request). Parsed queries are immutable and cached by the
+ * modified query string, so repeated queries skip the analysis completely.
+ */
+public class QueryCompiler {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(QueryCompiler.class);
+
+    public static final String DEFAULT_FIELD = "contents";
+
+    private final Analyzer analyzer;
+    private final BlockingQueue<PooledParser> parserPool;
+    private final Map<String, Query> queryCache;
+
+    /**
+     * Creates a query compiler.
+     * @param analyzer Analyzer of the search service
+     * @param poolSize Maximum number of idle query parsers kept in the pool
+     * @param cacheSize Maximum number of parsed queries kept in the cache
+     */
+    public QueryCompiler(Analyzer analyzer, int poolSize, int cacheSize) {
+        this.analyzer = analyzer;
+        this.parserPool = new ArrayBlockingQueue<>(poolSize);
+        this.queryCache = new LinkedHashMap<>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Query> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        LOGGER.info("Created query compiler with {} pooled parsers and {} cached queries", poolSize, cacheSize);
+    }
+
+    public Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /**
+     * Parses a query string, or returns the cached query if the query string has been parsed before.
+     * @param q The query string (after the modification by the query component)
+     * @return The parsed query
+     * @throws ParseException If the query string could not be parsed
+     */
+    public Query compile(String q) throws ParseException {
+        Query query;
+        synchronized (queryCache) {
+            query = queryCache.get(q);
+        }
+        SearchMetrics.countCacheLookup("query", query != null);
+        if (query != null) {
+            return query;
+        }
+
+        PooledParser parser = parserPool.poll();
+        if (parser == null) {
+            parser = new PooledParser(analyzer);
+        }
+        try {
+            query = parser.getQueryParser().parse(q);
+        } finally {
+            // Drop the parser if the pool is full
+            parserPool.offer(parser);
+        }
+
+        synchronized (queryCache) {
+            queryCache.put(q, query);
+        }
+        return query;
+    }
+
+    /**
+     * Query parser with an analyzer whose token stream components are owned by the parser.
+     */
+    private static class PooledParser {
+
+        private final QueryParser queryParser;
+
+        private PooledParser(Analyzer analyzer) {
+            queryParser = new QueryParser(DEFAULT_FIELD, new PooledAnalyzer(analyzer));
+        }
+
+        private QueryParser getQueryParser() {
+            return queryParser;
+        }
+    }
+
+    /**
+     * Analyzer that delegates to the analyzer of the search service, but keeps its token stream components per field
+     * instead of per thread. It must only be used by one thread at a time, which is ensured by the parser pool.
+     */
+    private static class PooledAnalyzer extends AnalyzerWrapper {
+
+        private final Analyzer delegate;
+
+        private PooledAnalyzer(Analyzer delegate) {
+            super(new OwnerReuseStrategy());
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected Analyzer getWrappedAnalyzer(String fieldName) {
+            return delegate;
+        }
+    }
+
+    /**
+     * Reuse strategy that keeps the token stream components in the strategy itself.
+     */
+    private static class OwnerReuseStrategy extends Analyzer.ReuseStrategy {
+
+        private final Map<String, Analyzer.TokenStreamComponents> components = new HashMap<>();
+
+        @Override
+        public Analyzer.TokenStreamComponents getReusableComponents(Analyzer analyzer, String fieldName) {
+            return components.get(fieldName);
+        }
+
+        @Override
+        public void setReusableComponents(Analyzer analyzer, String fieldName, Analyzer.TokenStreamComponents reusableComponents) {
+            components.put(fieldName, reusableComponents);
+        }
+    }
+
+}
@@ -0,0 +1,362 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.QueryTimeout;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.sandbox.search.CombinedFieldQuery;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rewrites parsed queries before they are searched in an index, so that pathological user queries cannot occupy a
+ * core for seconds. The planner rejects queries with too many clauses, drops optional terms that occur in a large
+ * fraction of the documents of the index (stopwords), flattens nested disjunctions into one disjunction that Lucene
+ * can evaluate with WAND, and caps the number of terms that wildcard, prefix, regexp and fuzzy queries expand to:
+ * wildcard, prefix and regexp queries keep the terms with the highest document frequencies and their constant score,
+ * fuzzy queries keep the most similar terms.
+ * Lucene searches are additionally stopped after a time limit, returning the hits collected so far.
+ * For indices with title and URL fields, the terms of the full text field can be expanded to all fields and scored
+ * with BM25F in the same Lucene pass.
+ */
+public class QueryPlanner {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(QueryPlanner.class);
+
+    private static QueryPlanner INSTANCE;
+
+    private static final Deadline DEADLINE = new Deadline();
+
+    private final int maxClauseCount;
+    private final double maxDocFreqRatio;
+    private final int maxTermExpansions;
+
+    QueryPlanner(int maxClauseCount, double maxDocFreqRatio, int maxTermExpansions) {
+        this.maxClauseCount = maxClauseCount;
+        this.maxDocFreqRatio = maxDocFreqRatio;
+        this.maxTermExpansions = maxTermExpansions;
+    }
+
+    public static synchronized QueryPlanner getInstance() {
+        if (INSTANCE == null) {
+            CoreConfig config = CoreConfig.getInstance();
+            INSTANCE = new QueryPlanner(config.getMaxClauseCount(), config.getMaxDocFreqRatio(), config.getMaxTermExpansions());
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Getter method for the timeout of the Lucene searches, which is set on the searcher of each index generation.
+     * @return Timeout that expires when the deadline of the current search has passed
+     */
+    public static Deadline getDeadline() {
+        return DEADLINE;
+    }
+
+    /**
+     * Checks that a parsed query does not exceed the maximum number of clauses.
+     * @param query Parsed query
+     * @throws MosaicWebException If the query has too many clauses
+     */
+    public void validate(Query query) {
+        int clauseCount = countClauses(query);
+        if (clauseCount > maxClauseCount) {
+            throw new MosaicWebException("Query has " + clauseCount + " clauses, the maximum is " + maxClauseCount);
+        }
+    }
+
+    /**
+     * Rewrites a query for the search in an index.
+     * @param query Parsed query
+     * @param reader Reader of the index, used for the document frequencies of the terms
+     * @return Rewritten query or the given query if no rule applies
+     * @throws IOException If the document frequencies could not be read
+     */
+    public Query plan(Query query, IndexReader reader) throws IOException {
+        Query plannedQuery = rewrite(query, reader);
+        if (plannedQuery != query) {
+            LOGGER.debug("Planned query: {}", plannedQuery);
+        }
+        return plannedQuery;
+    }
+
+    /**
+     * Expands the terms of the full text field of a query to the fields of the index, which are scored together
+     * with BM25F (i.e., the weighted term frequencies and lengths of all fields are combined before BM25 is applied).
+     * If the similarity of the index is not BM25 without field boosts, the fields are scored separately and summed.
+     * @param query Planned query
+     * @param generation Acquired generation of the Lucene index
+     * @return Multi-field query or the given query if the index only has the full text field
+     */
+    public Query combineFields(Query query, IndexGeneration generation) {
+        Map<String, Float> fieldWeights = generation.getCombinedFieldWeights();
+        if (fieldWeights.isEmpty()) {
+            return query;
+        }
+        return combineFields(query, fieldWeights, generation.getSearcher());
+    }
+
+    private Query combineFields(Query query, Map<String, Float> fieldWeights, IndexSearcher searcher) {
+        if (query instanceof TermQuery) {
+            Term term = ((TermQuery) query).getTerm();
+            return term.field().equals(QueryCompiler.DEFAULT_FIELD) ? combineTerm(term, fieldWeights, searcher) : query;
+        }
+        if (query instanceof BoostQuery) {
+            BoostQuery boostQuery = (BoostQuery) query;
+            Query combinedQuery = combineFields(boostQuery.getQuery(), fieldWeights, searcher);
+            return combinedQuery == boostQuery.getQuery() ? query : new BoostQuery(combinedQuery, boostQuery.getBoost());
+        }
+        if (query instanceof BooleanQuery) {
+            BooleanQuery booleanQuery = (BooleanQuery) query;
+            boolean changed = false;
+            BooleanQuery.Builder builder = new BooleanQuery.Builder().setMinimumNumberShouldMatch(booleanQuery.getMinimumNumberShouldMatch());
+            for (BooleanClause clause : booleanQuery.clauses()) {
+                Query combinedQuery = combineFields(clause.getQuery(), fieldWeights, searcher);
+                changed |= combinedQuery != clause.getQuery();
+                builder.add(combinedQuery, clause.getOccur());
+            }
+            return changed ? builder.build() : query;
+        }
+        return query;
+    }
+
+    private static Query combineTerm(Term term, Map<String, Float> fieldWeights, IndexSearcher searcher) {
+        // CombinedFieldQuery requires the BM25 similarity for all fields
+        if (searcher.getSimilarity() instanceof BM25Similarity) {
+            CombinedFieldQuery.Builder builder = new CombinedFieldQuery.Builder().addTerm(term.bytes());
+            fieldWeights.forEach(builder::addField);
+            return builder.build();
+        }
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        fieldWeights.forEach((field, weight) -> builder.add(new BoostQuery(new TermQuery(new Term(field, term.bytes())), weight), BooleanClause.Occur.SHOULD));
+        return builder.build();
+    }
+
+    private Query rewrite(Query query, IndexReader reader) throws IOException {
+        if (query instanceof BooleanQuery) {
+            return rewriteBoolean((BooleanQuery) query, reader);
+        }
+        if (query instanceof BoostQuery) {
+            BoostQuery boostQuery = (BoostQuery) query;
+            Query rewrittenQuery = rewrite(boostQuery.getQuery(), reader);
+            return rewrittenQuery == boostQuery.getQuery() ? query : new BoostQuery(rewrittenQuery, boostQuery.getBoost());
+        }
+
+        // Create new queries instead of changing the rewrite method, because parsed queries are cached and shared
+        if (query instanceof FuzzyQuery) {
+            FuzzyQuery fuzzyQuery = (FuzzyQuery) query;
+            return new FuzzyQuery(fuzzyQuery.getTerm(), fuzzyQuery.getMaxEdits(), fuzzyQuery.getPrefixLength(), maxTermExpansions, fuzzyQuery.getTranspositions());
+        }
+        if (query instanceof WildcardQuery || query instanceof PrefixQuery || query instanceof RegexpQuery) {
+            return capExpansions((MultiTermQuery) query, reader);
+        }
+        return query;
+    }
+
+    /**
+     * Limits a wildcard, prefix or regexp query to the terms with the highest document frequencies in the index.
+     * The terms are only enumerated from the terms dictionary, their postings are not read. Like the default rewrite
+     * of these queries, all matching documents get the same score, so the ranking does not change.
+     * @param query Multi-term query
+     * @param reader Reader of the index
+     * @return Constant-score query of the most frequent terms or the given query if it expands to at most the maximum number of terms
+     */
+    private Query capExpansions(MultiTermQuery query, IndexReader reader) throws IOException {
+        Terms terms = MultiTerms.getTerms(reader, query.getField());
+        if (terms == null) {
+            return query;
+        }
+
+        // Keep the most frequent terms in a min-heap ordered by document frequency
+        PriorityQueue<TermFreq> topTerms = new PriorityQueue<>(maxTermExpansions + 1);
+        TermsEnum termsEnum = query.getTermsEnum(terms);
+        int numTerms = 0;
+        for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+            numTerms++;
+            int docFreq = termsEnum.docFreq();
+            if (topTerms.size() < maxTermExpansions) {
+                topTerms.add(new TermFreq(BytesRef.deepCopyOf(term), docFreq));
+            } else if (docFreq > topTerms.peek().docFreq) {
+                topTerms.poll();
+                topTerms.add(new TermFreq(BytesRef.deepCopyOf(term), docFreq));
+            }
+        }
+        if (numTerms <= maxTermExpansions) {
+            return query;
+        }
+
+        LOGGER.debug("Capped query {} from {} to {} terms", query, numTerms, topTerms.size());
+        List<BytesRef> keptTerms = new ArrayList<>();
+        topTerms.forEach(termFreq -> keptTerms.add(termFreq.term));
+        return new ConstantScoreQuery(new TermInSetQuery(query.getField(), keptTerms));
+    }
+
+    private Query rewriteBoolean(BooleanQuery query, IndexReader reader) throws IOException {
+        boolean changed = false;
+        boolean disjunction = query.getMinimumNumberShouldMatch() == 0;
+
+        // Rewrite the clauses and flatten nested disjunctions into this disjunction, the score is the same sum of the
+        // term scores, but a single disjunction lets WAND skip documents that cannot enter the top hits
+        List<BooleanClause> clauses = new ArrayList<>();
+        for (BooleanClause clause : query.clauses()) {
+            Query subQuery = rewrite(clause.getQuery(), reader);
+            if (disjunction && clause.getOccur() == BooleanClause.Occur.SHOULD && isPureDisjunction(subQuery)) {
+                clauses.addAll(((BooleanQuery) subQuery).clauses());
+                changed = true;
+                continue;
+            }
+            changed |= subQuery != clause.getQuery();
+            clauses.add(new BooleanClause(subQuery, clause.getOccur()));
+        }
+
+        // Drop optional terms that occur in a large fraction of the documents, unless no positive clause would remain
+        if (disjunction && reader.maxDoc() > 0) {
+            List<BooleanClause> keptClauses = new ArrayList<>();
+            boolean positiveClauseKept = false;
+            for (BooleanClause clause : clauses) {
+                if (clause.getOccur() == BooleanClause.Occur.SHOULD && clause.getQuery() instanceof TermQuery
+                        && reader.docFreq(((TermQuery) clause.getQuery()).getTerm()) > maxDocFreqRatio * reader.maxDoc()) {
+                    continue;
+                }
+                keptClauses.add(clause);
+                positiveClauseKept |= clause.getOccur() != BooleanClause.Occur.MUST_NOT;
+            }
+            if (positiveClauseKept && keptClauses.size() < clauses.size()) {
+                LOGGER.debug("Dropped {} frequent terms from query {}", clauses.size() - keptClauses.size(), query);
+                SearchMetrics.count(SearchMetrics.COUNTER_PRUNED_TERMS, null, clauses.size() - keptClauses.size());
+                clauses = keptClauses;
+                changed = true;
+            }
+        }
+
+        if (!changed) {
+            return query;
+        }
+        if (clauses.size() > maxClauseCount) {
+            throw new MosaicWebException("Query has " + clauses.size() + " clauses, the maximum is " + maxClauseCount);
+        }
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder().setMinimumNumberShouldMatch(query.getMinimumNumberShouldMatch());
+        clauses.forEach(builder::add);
+        return builder.build();
+    }
+
+    private static boolean isPureDisjunction(Query query) {
+        if (!(query instanceof BooleanQuery) || ((BooleanQuery) query).getMinimumNumberShouldMatch() != 0) {
+            return false;
+        }
+        for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+            if (clause.getOccur() != BooleanClause.Occur.SHOULD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int countClauses(Query query) {
+        if (query instanceof BooleanQuery) {
+            int count = 0;
+            for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+                count += countClauses(clause.getQuery());
+            }
+            return count;
+        }
+        if (query instanceof BoostQuery) {
+            return countClauses(((BoostQuery) query).getQuery());
+        }
+        return 1;
+    }
+
+    /**
+     * Term with its document frequency, ordered by document frequency.
+     */
+    private static class TermFreq implements Comparable<TermFreq> {
+
+        private final BytesRef term;
+        private final int docFreq;
+
+        private TermFreq(BytesRef term, int docFreq) {
+            this.term = term;
+            this.docFreq = docFreq;
+        }
+
+        @Override
+        public int compareTo(TermFreq other) {
+            return Integer.compare(docFreq, other.docFreq);
+        }
+    }
+
+    /**
+     * Timeout of the Lucene searches. The searchers of all index generations share this timeout, the deadline is kept
+     * per thread, because a search is executed on the thread of its request.
+     */
+    public static class Deadline implements QueryTimeout {
+
+        private static final ThreadLocal<long[]> DEADLINE_NANOS = new ThreadLocal<>();
+        private static final ThreadLocal<Boolean> EXPIRED = ThreadLocal.withInitial(() -> false);
+
+        private Deadline() {}
+
+        /**
+         * Starts the deadline of a search on the current thread.
+         * @param timeoutMs Time allowed for the search in milliseconds
+         */
+        public void start(long timeoutMs) {
+            DEADLINE_NANOS.set(new long[] {System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs)});
+            EXPIRED.set(false);
+        }
+
+        /**
+         * Finishes the deadline of a search on the current thread.
+         * @return True if the search was stopped because the deadline had passed, false otherwise
+         */
+        public boolean finish() {
+            DEADLINE_NANOS.remove();
+            return EXPIRED.get();
+        }
+
+        /**
+         * Checks if the last search on the current thread was stopped because the deadline had passed.
+         * @return True if the last search timed out, false otherwise
+         */
+        public boolean hasExpired() {
+            return EXPIRED.get();
+        }
+
+        @Override
+        public boolean shouldExit() {
+            long[] deadlineNanos = DEADLINE_NANOS.get();
+            if (deadlineNanos != null && System.nanoTime() - deadlineNanos[0] > 0) {
+                EXPIRED.set(true);
+                return true;
+            }
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,275 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.spell.DirectSpellChecker;
+import org.apache.lucene.search.spell.SuggestMode;
+import org.apache.lucene.search.spell.SuggestWord;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.fst.WFSTCompletionLookup;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Query suggestions and spelling corrections of an index generation.
+ * Two weighted FSTs are built when a generation is loaded: one of the terms of the full text field weighted by their
+ * document frequency, which leaves out rare terms (e.g., typos and identifiers occurring in a single document), and one of the (lower-case) titles of the metadata table weighted by their number of documents.
+ * A prefix is completed with the titles first and then by completing its last word with the terms. Spelling corrections
+ * of words that do not occur in the index are looked up in the terms dictionary of the index with a
+ * {@link DirectSpellChecker}, so they need no additional data structure.
+ */
+public class QuerySuggester {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(QuerySuggester.class);
+
+    public static final String ATTACHMENT_KEY = "core.suggester";
+
+    // Corrections are only suggested for terms with at least this number of characters
+    private static final int MIN_CORRECTION_LENGTH = 3;
+
+    private final IndexGeneration generation;
+    private final WFSTCompletionLookup termLookup;
+    private final WFSTCompletionLookup titleLookup;
+    private final DirectSpellChecker spellChecker = new DirectSpellChecker();
+
+    private QuerySuggester(IndexGeneration generation, WFSTCompletionLookup termLookup, WFSTCompletionLookup titleLookup) {
+        this.generation = generation;
+        this.termLookup = termLookup;
+        this.titleLookup = titleLookup;
+    }
+
+    /**
+     * Builds the suggester of an index generation from the terms of the index and the titles of the metadata table.
+     * @param generation Loaded index generation
+     * @param maxTitles Maximum number of distinct titles, the most frequent titles are kept
+     * @param minTermDocFreq Minimum number of documents a term has to occur in to be suggested
+     * @return Suggester of the generation
+     * @throws IOException If the terms of the index could not be read
+     */
+    public static QuerySuggester build(IndexGeneration generation, int maxTitles, int minTermDocFreq) throws IOException {
+        long start = System.nanoTime();
+
+        WFSTCompletionLookup termLookup = new WFSTCompletionLookup(new ByteBuffersDirectory(), "suggest-terms");
+        termLookup.build(new FrequentTermIterator(generation.getReader(), QueryCompiler.DEFAULT_FIELD, minTermDocFreq));
+
+        WFSTCompletionLookup titleLookup = null;
+        List<WeightedKey> titles = readTitles(generation, maxTitles);
+        if (!titles.isEmpty()) {
+            titleLookup = new WFSTCompletionLookup(new ByteBuffersDirectory(), "suggest-titles");
+            titleLookup.build(new WeightedKeyIterator(titles.iterator()));
+        }
+
+        LOGGER.info("Built suggester of generation {} of index {} with {} terms and {} titles ({} bytes) in {} ms", generation.getGeneration(), generation.getIndexName(),
+                    termLookup.getCount(), titles.size(), termLookup.ramBytesUsed() + (titleLookup != null ? titleLookup.ramBytesUsed() : 0),
+                    (System.nanoTime() - start) / 1000000);
+        return new QuerySuggester(generation, termLookup, titleLookup);
+    }
+
+    /**
+     * Reads the most frequent titles of the metadata table of a generation.
+     * @return Lower-case titles weighted by their number of documents or an empty list if the generation has no titles
+     */
+    private static List<WeightedKey> readTitles(IndexGeneration generation, int maxTitles) {
+        List<WeightedKey> titles = new ArrayList<>();
+        if (!generation.hasMetadata() || maxTitles <= 0) {
+            return titles;
+        }
+
+        String sql = "SELECT lower(trim(title)) AS key, count(*) AS weight FROM " + generation.getTableName() + " " +
+                     "WHERE title IS NOT NULL AND trim(title) <> '' GROUP BY 1 ORDER BY weight DESC LIMIT ?";
+        try (Connection conn = generation.openConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, maxTitles);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    titles.add(new WeightedKey(rs.getString(1), rs.getLong(2)));
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to read the titles of index {}, only terms are suggested", generation.getIndexName(), e);
+        }
+        return titles;
+    }
+
+    /**
+     * Completes a prefix of a query.
+     * @param prefix Prefix of the query
+     * @param count Maximum number of suggestions
+     * @return Suggested queries with their weights, ordered by weight
+     */
+    public List<Lookup.LookupResult> suggest(String prefix, int count) throws IOException {
+        String normalizedPrefix = prefix.toLowerCase().stripLeading().replaceAll("\\s+", " ");
+        List<Lookup.LookupResult> suggestions = new ArrayList<>();
+        if (normalizedPrefix.isEmpty()) {
+            return suggestions;
+        }
+
+        if (titleLookup != null) {
+            suggestions.addAll(titleLookup.lookup(normalizedPrefix, false, count));
+        }
+
+        // Complete the last word of the prefix with the terms of the index
+        int lastWordStart = normalizedPrefix.lastIndexOf(' ') + 1;
+        String lastWord = normalizedPrefix.substring(lastWordStart);
+        if (suggestions.size() < count && !lastWord.isEmpty()) {
+            String previousWords = normalizedPrefix.substring(0, lastWordStart);
+            for (Lookup.LookupResult result : termLookup.lookup(lastWord, false, count - suggestions.size())) {
+                suggestions.add(new Lookup.LookupResult(previousWords + result.key, result.value));
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Checks if a word occurs in the full text field of the index.
+     * @param word Lower-case word
+     * @return True if at least one document contains the word, false otherwise
+     */
+    public boolean containsWord(String word) throws IOException {
+        return generation.getReader().docFreq(new Term(QueryCompiler.DEFAULT_FIELD, word)) > 0;
+    }
+
+    /**
+     * Looks up the best correction of a word that does not occur in the index.
+     * @param word Lower-case word
+     * @return Correction with its similarity score and document frequency or null if no similar word occurs in the index
+     */
+    public SuggestWord correct(String word) throws IOException {
+        if (word.length() < MIN_CORRECTION_LENGTH) {
+            return null;
+        }
+        SuggestWord[] corrections = spellChecker.suggestSimilar(new Term(QueryCompiler.DEFAULT_FIELD, word), 1, generation.getReader(), SuggestMode.SUGGEST_WHEN_NOT_IN_INDEX);
+        return corrections.length > 0 ? corrections[0] : null;
+    }
+
+    /**
+     * Key of an FST with its weight.
+     */
+    private static class WeightedKey {
+
+        private final BytesRef key;
+        private final long weight;
+
+        private WeightedKey(String key, long weight) {
+            this.key = new BytesRef(key);
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Input of an FST from the terms of a field that occur in at least a minimum number of documents, weighted by their
+     * document frequency. The terms are read from the terms dictionary of the index without copying them.
+     */
+    private static class FrequentTermIterator implements InputIterator {
+
+        private final TermsEnum termsEnum;
+        private final int minDocFreq;
+        private long weight;
+
+        private FrequentTermIterator(IndexReader reader, String field, int minDocFreq) throws IOException {
+            Terms terms = MultiTerms.getTerms(reader, field);
+            this.termsEnum = terms != null ? terms.iterator() : null;
+            this.minDocFreq = minDocFreq;
+        }
+
+        @Override
+        public BytesRef next() throws IOException {
+            if (termsEnum == null) {
+                return null;
+            }
+            for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                int docFreq = termsEnum.docFreq();
+                if (docFreq >= minDocFreq) {
+                    weight = docFreq;
+                    return term;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public long weight() {
+            return weight;
+        }
+
+        @Override
+        public BytesRef payload() {
+            return null;
+        }
+
+        @Override
+        public boolean hasPayloads() {
+            return false;
+        }
+
+        @Override
+        public Set<BytesRef> contexts() {
+            return null;
+        }
+
+        @Override
+        public boolean hasContexts() {
+            return false;
+        }
+    }
+
+    /**
+     * Input of an FST from a list of weighted keys.
+     */
+    private static class WeightedKeyIterator implements InputIterator {
+
+        private final Iterator<WeightedKey> keys;
+        private WeightedKey current;
+
+        private WeightedKeyIterator(Iterator<WeightedKey> keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public BytesRef next() {
+            current = keys.hasNext() ? keys.next() : null;
+            return current != null ? current.key : null;
+        }
+
+        @Override
+        public long weight() {
+            return current.weight;
+        }
+
+        @Override
+        public BytesRef payload() {
+            return null;
+        }
+
+        @Override
+        public boolean hasPayloads() {
+            return false;
+        }
+
+        @Override
+        public Set<BytesRef> contexts() {
+            return null;
+        }
+
+        @Override
+        public boolean hasContexts() {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+package eu.ows.mosaic;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInvertState;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.ClassicSimilarity;
+import org.apache.lucene.search.similarities.LMDirichletSimilarity;
+import org.apache.lucene.search.similarities.LMJelinekMercerSimilarity;
+import org.apache.lucene.search.similarities.PerFieldSimilarityWrapper;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.util.SmallFloat;
+import org.apache.lucene.util.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ranking configuration of an index as defined in the {@code ranking} object of the configuration file, e.g.,
+ * {@code "ranking": {"default": {"similarity": "bm25", "k1": 1.2, "b": 0.75}, "my-index": {"k1": 0.9, "b": 0.4, "fieldBoosts": {"title": 2.0}}}}.
+ * The similarity is created once per index generation and set on its long-lived searcher. The {@code fieldWeights}
+ * are the weights of the fields of multi-field (BM25F) queries, e.g., {@code {"contents": 1.0, "title": 2.0, "url": 1.0}}.
+ */
+public class RankingConfig {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(RankingConfig.class);
+
+    public static final String SIMILARITY_BM25 = "bm25";
+    public static final String SIMILARITY_CLASSIC = "classic";
+    public static final String SIMILARITY_LM_DIRICHLET = "lmdirichlet";
+    public static final String SIMILARITY_LM_JELINEK_MERCER = "lmjelinekmercer";
+
+    // Document lengths used to compare the norm encoding of the similarity with the encoding of the importer
+    private static final int[] NORM_CHECK_LENGTHS = {1, 10, 100, 1000, 100000};
+
+    private String similarity;
+    private Float k1;
+    private Float b;
+    private Float mu;
+    private Float lambda;
+    private Map<String, Float> fieldBoosts;
+    private Map<String, Float> fieldWeights;
+
+    public String getSimilarity() {
+        return similarity != null ? similarity.toLowerCase() : SIMILARITY_BM25;
+    }
+
+    public float getK1() {
+        return k1 != null ? k1 : 1.2f;
+    }
+
+    public float getB() {
+        return b != null ? b : 0.75f;
+    }
+
+    public float getMu() {
+        return mu != null ? mu : 2000f;
+    }
+
+    public float getLambda() {
+        return lambda != null ? lambda : 0.7f;
+    }
+
+    public Map<String, Float> getFieldBoosts() {
+        return fieldBoosts != null ? fieldBoosts : Map.of();
+    }
+
+    /**
+     * Getter method for the weights of the fields of multi-field (BM25F) queries.
+     * @return Configured value or contents 1.0, title 2.0 and url 1.0 if not configured
+     */
+    public Map<String, Float> getFieldWeights() {
+        return fieldWeights != null ? fieldWeights : Map.of(QueryCompiler.DEFAULT_FIELD, 1.0f, "title", 2.0f, "url", 1.0f);
+    }
+
+    /**
+     * Creates the similarity of the configuration with the boosts of the fields.
+     * @return Similarity for the searcher of an index
+     * @throws IllegalArgumentException If the similarity or its parameters are invalid
+     */
+    public Similarity createSimilarity() {
+        Similarity baseSimilarity = createBaseSimilarity();
+        if (getFieldBoosts().isEmpty()) {
+            return baseSimilarity;
+        }
+
+        Map<String, Similarity> fieldSimilarities = new TreeMap<>();
+        getFieldBoosts().forEach((field, boost) -> fieldSimilarities.put(field, new FieldBoostSimilarity(baseSimilarity, boost)));
+        return new PerFieldSimilarityWrapper() {
+            @Override
+            public Similarity get(String name) {
+                return fieldSimilarities.getOrDefault(name, baseSimilarity);
+            }
+        };
+    }
+
+    private Similarity createBaseSimilarity() {
+        switch (getSimilarity()) {
+            case SIMILARITY_BM25:
+                return new BM25Similarity(getK1(), getB());
+            case SIMILARITY_CLASSIC:
+                return new ClassicSimilarity();
+            case SIMILARITY_LM_DIRICHLET:
+                return new LMDirichletSimilarity(getMu());
+            case SIMILARITY_LM_JELINEK_MERCER:
+                return new LMJelinekMercerSimilarity(getLambda());
+            default:
+                throw new IllegalArgumentException("Unknown similarity " + similarity);
+        }
+    }
+
+    /**
+     * Checks that the indexed fields of an index have norms and that the similarity encodes the document length
+     * in the same way as the importer (i.e., as {@link BM25Similarity}), otherwise the length normalization
+     * of the ranking does not match the stored norms.
+     * @param indexName Name of the index
+     * @param reader Reader of the index
+     * @param similarity Similarity created from this configuration
+     * @return True if the norms match the similarity, false otherwise
+     */
+    public boolean checkNorms(String indexName, IndexReader reader, Similarity similarity) {
+        boolean normsMatch = true;
+
+        for (LeafReaderContext leaf : reader.leaves()) {
+            for (FieldInfo fieldInfo : leaf.reader().getFieldInfos()) {
+                if (fieldInfo.getIndexOptions() == IndexOptions.NONE || fieldInfo.getIndexOptions() == IndexOptions.DOCS) {
+                    continue;
+                }
+                if (!fieldInfo.hasNorms()) {
+                    LOGGER.warn("Field {} of index {} has no norms, the {} similarity cannot normalize by document length", fieldInfo.name, indexName, getSimilarity());
+                    normsMatch = false;
+                    continue;
+                }
+
+                for (int length : NORM_CHECK_LENGTHS) {
+                    FieldInvertState state = new FieldInvertState(Version.LATEST.major, fieldInfo.name, fieldInfo.getIndexOptions());
+                    state.setLength(length);
+                    if (similarity.computeNorm(state) != SmallFloat.intToByte4(length)) {
+                        LOGGER.warn("The {} similarity encodes the norms of field {} of index {} differently than the importer, reindex the collection", getSimilarity(), fieldInfo.name, indexName);
+                        normsMatch = false;
+                        break;
+                    }
+                }
+            }
+        }
+
+        return normsMatch;
+    }
+
+    @Override
+    public String toString() {
+        switch (getSimilarity()) {
+            case SIMILARITY_BM25:
+                return getSimilarity() + "(k1=" + getK1() + ", b=" + getB() + ", fieldBoosts=" + getFieldBoosts() + ", fieldWeights=" + getFieldWeights() + ")";
+            case SIMILARITY_LM_DIRICHLET:
+                return getSimilarity() + "(mu=" + getMu() + ", fieldBoosts=" + getFieldBoosts() + ")";
+            case SIMILARITY_LM_JELINEK_MERCER:
+                return getSimilarity() + "(lambda=" + getLambda() + ", fieldBoosts=" + getFieldBoosts() + ")";
+            default:
+                return getSimilarity() + "(fieldBoosts=" + getFieldBoosts() + ")";
+        }
+    }
+
+    /**
+     * Similarity that multiplies the scores of a field with a constant boost.
+     */
+    private static class FieldBoostSimilarity extends Similarity {
+
+        private final Similarity delegate;
+        private final float fieldBoost;
+
+        private FieldBoostSimilarity(Similarity delegate, float fieldBoost) {
+            this.delegate = delegate;
+            this.fieldBoost = fieldBoost;
+        }
+
+        @Override
+        public long computeNorm(FieldInvertState state) {
+            return delegate.computeNorm(state);
+        }
+
+        @Override
+        public SimScorer scorer(float boost, CollectionStatistics collectionStats, TermStatistics... termStats) {
+            return delegate.scorer(boost * fieldBoost, collectionStats, termStats);
+        }
+    }
+
+}
@@ -0,0 +1,274 @@
+package eu.ows.mosaic;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Second-stage re-ranking of the top hits of the Lucene search with a learned model.
+ * The features of each search result are extracted by the metadata modules (e.g., the Lucene score, the document length,
+ * the recency, the title match, the keyword overlap and the geo proximity) and scored by a linear model or an ensemble
+ * of regression trees loaded from the file configured as {@code reRankModel}. Only the first {@code reRankDepth}
+ * results of a page are re-ranked, and the first-stage order is kept if the features cannot be extracted within
+ * the latency budget {@code reRankBudgetMs}.
+ */
+public class ReRanker {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ReRanker.class);
+
+    public static final String FEATURE_SCORE = "score";
+
+    private static ReRanker INSTANCE;
+
+    private final Model model;
+    private final int depth;
+    private final long budgetNanos;
+
+    private ReRanker(Model model, int depth, long budgetMs) {
+        this.model = model;
+        this.depth = depth;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+    }
+
+    public static synchronized ReRanker getInstance() {
+        if (INSTANCE == null) {
+            CoreConfig config = CoreConfig.getInstance();
+            INSTANCE = new ReRanker(loadModel(config.getReRankModel()), config.getReRankDepth(), config.getReRankBudgetMs());
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Loads the re-ranking model from a JSON file.
+     * A linear model is defined as {@code {"type": "linear", "bias": 0.0, "weights": {"score": 1.0, ...}}},
+     * a tree ensemble as {@code {"type": "trees", "trees": [{"feature": "score", "threshold": 5.0, "left": {...}, "right": {...}}, ...]}}
+     * with leaves {@code {"value": 0.3}}. Features that are missing for a search result have the value 0.
+     * @param modelPath Path of the model file or null if no model is configured
+     * @return Loaded model or null if re-ranking is disabled
+     */
+    private static Model loadModel(String modelPath) {
+        if (modelPath == null || modelPath.isBlank()) {
+            LOGGER.info("No re-ranking model configured, re-ranking is disabled");
+            return null;
+        }
+
+        try (FileReader reader = new FileReader(modelPath)) {
+            JsonObject modelObject = JsonParser.parseReader(reader).getAsJsonObject();
+            String type = modelObject.get("type").getAsString();
+            Model model;
+            switch (type) {
+                case "linear":
+                    model = new LinearModel(modelObject);
+                    break;
+                case "trees":
+                    model = new TreeModel(modelObject);
+                    break;
+                default:
+                    LOGGER.error("Unknown type {} of re-ranking model {}, re-ranking is disabled", type, modelPath);
+                    return null;
+            }
+            LOGGER.info("Loaded {} re-ranking model from {}", type, modelPath);
+            return model;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to load re-ranking model from {}, re-ranking is disabled", modelPath, e);
+            return null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return model != null;
+    }
+
+    /**
+     * Re-ranks the first search results of a page in place.
+     * @param results Search results of the page in the order of the first stage, with the Lucene score in {@value #FEATURE_SCORE}
+     * @param query Query that was searched, its terms are passed to the feature extraction
+     * @param queryParams Parsed query parameters
+     * @param indexName Name of the index
+     * @return True if the search results were re-ranked, false if re-ranking is disabled or the budget was exceeded
+     */
+    public boolean reRank(List<Map<String, String>> results, Query query, Map<String, Object> queryParams, String indexName) {
+        if (model == null || results.size() < 2) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        try (Tracing.SpanScope span = Tracing.startSpan("mosaic.rerank", indexName)) {
+            Set<String> queryTerms = getQueryTerms(query);
+            int numReRanked = Math.min(depth, results.size());
+            span.getSpan().setAttribute(Tracing.NUM_DOCUMENTS, (long) numReRanked);
+
+            // Score the first results, the first-stage order is kept if the budget is exceeded
+            List<ScoredResult> scoredResults = new ArrayList<>(numReRanked);
+            for (int i = 0; i < numReRanked; i++) {
+                if (System.nanoTime() - start > budgetNanos) {
+                    LOGGER.debug("Re-ranking budget exceeded after {} of {} results", i, numReRanked);
+                    span.getSpan().setAttribute(Tracing.TIMED_OUT, true);
+                    SearchMetrics.count(SearchMetrics.COUNTER_RERANK_BUDGET_EXCEEDED, indexName, 1);
+                    return false;
+                }
+                Map<String, String> result = results.get(i);
+                Map<String, Double> features = new HashMap<>();
+                for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
+                    module.extractFeatures(result, queryTerms, queryParams, features);
+                }
+                scoredResults.add(new ScoredResult(result, model.score(features)));
+            }
+
+            // Sort by the model score, results with the same score keep their first-stage order
+            scoredResults.sort(Comparator.comparingDouble(ScoredResult::getScore).reversed());
+            for (int i = 0; i < numReRanked; i++) {
+                results.set(i, scoredResults.get(i).getResult());
+            }
+            return true;
+        } finally {
+            SearchMetrics.recordStage(SearchMetrics.STAGE_RERANK, indexName, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Collects the terms of the full text field of a query.
+     */
+    private static Set<String> getQueryTerms(Query query) {
+        Set<Term> terms = new TreeSet<>();
+        query.visit(QueryVisitor.termCollector(terms));
+        Set<String> queryTerms = new TreeSet<>();
+        for (Term term : terms) {
+            if (term.field().equals(QueryCompiler.DEFAULT_FIELD)) {
+                queryTerms.add(term.text().toLowerCase());
+            }
+        }
+        return queryTerms;
+    }
+
+    /**
+     * Search result with the score of the re-ranking model.
+     */
+    private static class ScoredResult {
+
+        private final Map<String, String> result;
+        private final double score;
+
+        private ScoredResult(Map<String, String> result, double score) {
+            this.result = result;
+            this.score = score;
+        }
+
+        private Map<String, String> getResult() {
+            return result;
+        }
+
+        private double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * Model that scores a search result by its features.
+     */
+    private interface Model {
+        double score(Map<String, Double> features);
+    }
+
+    /**
+     * Weighted sum of the features.
+     */
+    private static class LinearModel implements Model {
+
+        private final double bias;
+        private final Map<String, Double> weights = new HashMap<>();
+
+        private LinearModel(JsonObject modelObject) {
+            bias = modelObject.has("bias") ? modelObject.get("bias").getAsDouble() : 0.0;
+            modelObject.getAsJsonObject("weights").entrySet().forEach(entry -> weights.put(entry.getKey(), entry.getValue().getAsDouble()));
+        }
+
+        @Override
+        public double score(Map<String, Double> features) {
+            double score = bias;
+            for (Map.Entry<String, Double> weight : weights.entrySet()) {
+                score += weight.getValue() * features.getOrDefault(weight.getKey(), 0.0);
+            }
+            return score;
+        }
+    }
+
+    /**
+     * Sum of the leaf values of an ensemble of regression trees (e.g., exported from LambdaMART).
+     */
+    private static class TreeModel implements Model {
+
+        private final List<TreeNode> trees = new ArrayList<>();
+
+        private TreeModel(JsonObject modelObject) {
+            JsonArray treesArray = modelObject.getAsJsonArray("trees");
+            for (JsonElement tree : treesArray) {
+                trees.add(new TreeNode(tree.getAsJsonObject()));
+            }
+        }
+
+        @Override
+        public double score(Map<String, Double> features) {
+            double score = 0.0;
+            for (TreeNode tree : trees) {
+                score += tree.evaluate(features);
+            }
+            return score;
+        }
+    }
+
+    /**
+     * Node of a regression tree, either a split on a feature or a leaf with a value.
+     */
+    private static class TreeNode {
+
+        private final String feature;
+        private final double threshold;
+        private final double value;
+        private final TreeNode left;
+        private final TreeNode right;
+
+        private TreeNode(JsonObject nodeObject) {
+            if (nodeObject.has("value")) {
+                feature = null;
+                threshold = 0.0;
+                value = nodeObject.get("value").getAsDouble();
+                left = null;
+                right = null;
+            } else {
+                feature = nodeObject.get("feature").getAsString();
+                threshold = nodeObject.get("threshold").getAsDouble();
+                value = 0.0;
+                left = new TreeNode(nodeObject.getAsJsonObject("left"));
+                right = new TreeNode(nodeObject.getAsJsonObject("right"));
+            }
+        }
+
+        private double evaluate(Map<String, Double> features) {
+            TreeNode node = this;
+            while (node.feature != null) {
+                node = features.getOrDefault(node.feature, 0.0) <= node.threshold ? node.left : node.right;
+            }
+            return node.value;
+        }
+    }
+
+}
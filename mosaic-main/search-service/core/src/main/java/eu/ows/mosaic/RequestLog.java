@@ -0,0 +1,72 @@
+package eu.ows.mosaic;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Structured log of the search requests.
+ * Each request is written as one JSON line to the logger category {@code eu.ows.mosaic.requests}, which is routed to an
+ * asynchronous file handler (see {@code application.properties}), so that logging does not block the request thread
+ * and its cost does not grow with the number of hits. A sample of the requests additionally contains debug detail,
+ * e.g., the parsed query and the query parameters.
+ */
+public class RequestLog {
+
+    private static Logger REQUEST_LOGGER = LoggerFactory.getLogger("eu.ows.mosaic.requests");
+
+    private RequestLog() {}
+
+    /**
+     * Decides if the debug detail of a new request is logged.
+     * @return True if the request is sampled, false otherwise
+     */
+    public static boolean sample() {
+        return ThreadLocalRandom.current().nextDouble() < CoreConfig.getInstance().getRequestLogSampleRate();
+    }
+
+    /**
+     * Writes the log line of a processed request.
+     * @param request Timings, counts and detail of the request
+     */
+    public static void write(SearchMetrics.Request request) {
+        if (!REQUEST_LOGGER.isInfoEnabled()) {
+            return;
+        }
+
+        JsonObject line = new JsonObject();
+        line.addProperty("timestamp", System.currentTimeMillis());
+        line.addProperty("endpoint", request.getEndpoint());
+        line.addProperty("format", request.getFormat());
+        line.addProperty("status", request.getStatus());
+        line.addProperty("durationMs", toMillis(request.getElapsedNanos()));
+
+        JsonObject stagesObject = new JsonObject();
+        request.getStageNanos().forEach((stage, nanos) -> stagesObject.addProperty(stage, toMillis(nanos)));
+        line.add("stagesMs", stagesObject);
+
+        JsonObject countsObject = new JsonObject();
+        request.getCounts().forEach(countsObject::addProperty);
+        line.add("counts", countsObject);
+
+        if (request.isSampled()) {
+            JsonObject detailObject = new JsonObject();
+            for (Map.Entry<String, Object> entry : request.getDetail().entrySet()) {
+                detailObject.addProperty(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+            line.add("detail", detailObject);
+        }
+
+        REQUEST_LOGGER.info(line.toString());
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / (double) TimeUnit.MILLISECONDS.toNanos(1) * 1000) / 1000.0;
+    }
+
+}
@@ -2,18 +2,27 @@ package eu.ows.mosaic;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Paths;
-import java.util.LinkedList;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
 
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.store.FSDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Singleton class for managing resources that are used by the application
+ * Singleton class for managing resources that are used by the application.
+ * Each index is served by an {@link IndexGeneration} which can be replaced at runtime
+ * when the Lucene index or the Parquet file(s) of the index change on disk.
  */
 public class ResourceManager {
 
@@ -21,19 +30,29 @@ public class ResourceManager {
 
     private static ResourceManager INSTANCE;
 
-    private static Map<String, FSDirectory> indexes; // Index Name -> Lucene Directory
-    private static List<String> metadataDirectoryNames;
+    public static final String ACTION_ADDED = "added";
+    public static final String ACTION_UPDATED = "updated";
+    public static final String ACTION_REMOVED = "removed";
+    public static final String ACTION_FAILED = "failed";
+
+    // Version of the metadata table layout, tables of an older layout are rebuilt
+    private static final String TABLE_LAYOUT = "doc_ord";
+
+    private final Map<String, IndexGeneration> generations = new ConcurrentSkipListMap<>(); // Index Name -> Active Generation
+    private long nextGeneration = 1;
 
     private ResourceManager() {
-        try {
-            readLuceneIndexes();
-            readParquetDirectories();
-        } catch (IOException e) {
-            LOGGER.error("Error reading indexes or parquet directories: {}", e.getMessage());
+        if (new File(CoreUtils.getIndexDirPath()).listFiles(File::isDirectory) == null) {
+            throw new RuntimeException("No indexes found in " + CoreUtils.getIndexDirPath());
+        }
+        if (new File(CoreUtils.getParquetDirPath()).listFiles(File::isDirectory) == null) {
+            throw new RuntimeException("No parquet directories found in " + CoreUtils.getParquetDirPath());
         }
+
+        reload();
     }
 
-    public static ResourceManager getInstance() {
+    public static synchronized ResourceManager getInstance() {
         if (INSTANCE == null) {
             INSTANCE = new ResourceManager();
         }
@@ -42,59 +61,283 @@ public class ResourceManager {
     }
 
     /**
-     * Adds all available indexes from the lucene directory to a map
-     * @throws IOException 
+     * Scans the Lucene and Parquet directories and computes a fingerprint for each index found on disk.
+     * The fingerprint changes whenever a new Lucene commit is written or a Parquet file is added, removed or modified.
+     * @return Map of index names to fingerprints
      */
-    private void readLuceneIndexes() throws IOException {
-        LOGGER.info("Reading lucene indexes in {}", CoreUtils.getIndexDirPath());
-        indexes = new TreeMap<String, FSDirectory>();
+    public Map<String, String> scanIndexes() {
+        Map<String, String> fingerprints = new TreeMap<>();
         File[] indexDirectories = new File(CoreUtils.getIndexDirPath()).listFiles(File::isDirectory);
         if (indexDirectories == null) {
-            throw new RuntimeException("No indexes found in " + CoreUtils.getIndexDirPath());
+            LOGGER.warn("Could not list indexes in {}", CoreUtils.getIndexDirPath());
+            return fingerprints;
         }
 
         for (File indexDirectory : indexDirectories) {
-            if (indexDirectory.getName() != null && indexDirectory.isDirectory()) {
-                String indexName = indexDirectory.getName();
-                LOGGER.info("Adding {} to indexes map", indexName);
-                indexes.put(indexName, FSDirectory.open(Paths.get(CoreUtils.getIndexDirPath() + indexName)));
+            String indexName = indexDirectory.getName();
+            if (indexName.startsWith(".")) {
+                continue;
+            }
+
+            try (FSDirectory directory = FSDirectory.open(indexDirectory.toPath())) {
+                // Skip directories which do not contain a complete Lucene commit (yet)
+                if (!DirectoryReader.indexExists(directory)) {
+                    LOGGER.debug("Directory {} does not contain a Lucene index", indexName);
+                    continue;
+                }
+                String luceneFingerprint = SegmentInfos.getLastCommitSegmentsFileName(directory);
+                fingerprints.put(indexName, luceneFingerprint + "|" + computeParquetFingerprint(indexName));
+            } catch (IOException e) {
+                LOGGER.warn("Failed to read Lucene commit of index {}: {}", indexName, e.getMessage());
             }
         }
+
+        return fingerprints;
     }
 
     /**
-     * Adds all available directories that contain Parquet files from the Parquet directory to a map
+     * Computes the fingerprint of the Parquet file(s) of an index.
+     * @param indexName Name of the index
+     * @return Fingerprint of the Parquet file(s) or an empty string if no metadata exists for the index
      */
-    private void readParquetDirectories() {
-        LOGGER.info("Reading parquet directory {}", CoreUtils.getParquetDirPath());
-        metadataDirectoryNames = new LinkedList<String>();
-        File[] parquetDirectories = new File(CoreUtils.getParquetDirPath()).listFiles(File::isDirectory);
-        if (parquetDirectories == null) {
-            throw new RuntimeException("No parquet directories found in " + CoreUtils.getParquetDirPath());
+    private String computeParquetFingerprint(String indexName) {
+        File[] parquetFiles = new File(CoreUtils.getParquetDirPath() + indexName).listFiles(file -> file.isFile() && file.getName().contains(".parquet"));
+        if (parquetFiles == null || parquetFiles.length == 0) {
+            return "";
+        }
+
+        return Arrays.stream(parquetFiles)
+            .sorted()
+            .map(file -> file.getName() + ":" + file.length() + ":" + file.lastModified())
+            .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Reloads all indexes whose fingerprint changed on disk.
+     * @return Map of index names to the applied action
+     */
+    public Map<String, String> reload() {
+        Set<String> indexNames = new TreeSet<>(scanIndexes().keySet());
+        indexNames.addAll(generations.keySet());
+        return reload(indexNames);
+    }
+
+    /**
+     * Reloads the given indexes. New and updated indexes are opened and their metadata tables are built
+     * while the active generation keeps serving requests. Afterwards, the generations are swapped and the
+     * replaced generation is closed as soon as all in-flight requests have released it.
+     * @param indexNames Names of the indexes to reload
+     * @return Map of index names to the applied action
+     */
+    public synchronized Map<String, String> reload(Collection<String> indexNames) {
+        Map<String, String> onDisk = scanIndexes();
+        Map<String, String> actions = new TreeMap<>();
+
+        for (String indexName : indexNames) {
+            String fingerprint = onDisk.get(indexName);
+            IndexGeneration current = generations.get(indexName);
+
+            if (fingerprint == null) {
+                if (current != null) {
+                    LOGGER.info("Index {} has been removed", indexName);
+                    generations.remove(indexName);
+                    unregisterTable(indexName);
+                    TotalHitsCache.getInstance().invalidate(indexName);
+                    SearchUtils.invalidateCachedPages(indexName);
+                    current.retire(true);
+                    actions.put(indexName, ACTION_REMOVED);
+                }
+                continue;
+            }
+
+            if (current != null && current.getFingerprint().equals(fingerprint)) {
+                continue;
+            }
+
+            try {
+                IndexGeneration next = loadGeneration(indexName, fingerprint);
+                loadSuggester(next);
+                generations.put(indexName, next);
+                TotalHitsCache.getInstance().invalidate(indexName);
+                SearchUtils.invalidateCachedPages(indexName);
+                if (current != null) {
+                    current.retire(!next.hasMetadata() || !next.getTableName().equals(current.getTableName()));
+                }
+                actions.put(indexName, current == null ? ACTION_ADDED : ACTION_UPDATED);
+                LOGGER.info("Index {} is now served by generation {}", indexName, next.getGeneration());
+            } catch (IOException | SQLException e) {
+                LOGGER.error("Failed to load index {}, keeping the active generation", indexName, e);
+                actions.put(indexName, ACTION_FAILED);
+            }
+        }
+
+        return actions;
+    }
+
+    /**
+     * Opens a new generation of an index and builds its metadata table if the table is missing or stale.
+     * @param indexName Name of the index
+     * @param fingerprint Fingerprint of the index on disk
+     * @return Opened index generation
+     */
+    private IndexGeneration loadGeneration(String indexName, String fingerprint) throws IOException, SQLException {
+        if (fingerprint.endsWith("|")) {
+            LOGGER.warn("No metadata found for index {}", indexName);
+            return IndexGeneration.open(indexName, nextGeneration++, fingerprint, null);
+        }
+
+        String tableFingerprint = fingerprint + "|" + computeTableConfigFingerprint();
+        DbConnection dbConn = new DbConnection();
+        try {
+            String tableName = dbConn.lookupTable(indexName, tableFingerprint);
+            if (tableName != null) {
+                LOGGER.info("Reusing table {} for index {}", tableName, indexName);
+                IndexGeneration next = IndexGeneration.open(indexName, nextGeneration++, fingerprint, tableName);
+                try {
+                    loadModules(next);
+                } catch (RuntimeException e) {
+                    // The reused table may still be used by the active generation
+                    next.retire(false);
+                    throw e;
+                }
+                return next;
+            }
+
+            // The table is keyed by the document numbers of the Lucene index, so the index is opened first
+            tableName = indexName.replace('-', '_') + "_g" + System.currentTimeMillis();
+            IndexGeneration next = IndexGeneration.open(indexName, nextGeneration++, fingerprint, tableName);
+            try {
+                // The resolver is only needed to build the table, its off-heap id tables are released afterwards
+                dbConn.createTable(indexName, tableName, DocIdResolver.build(next.getReader()));
+                String previousTableName = dbConn.lookupTable(indexName, null);
+                dbConn.registerTable(indexName, tableName, tableFingerprint);
+
+                // Drop tables of previous runs which are not used by an active generation
+                IndexGeneration current = generations.get(indexName);
+                if (previousTableName != null && (current == null || !previousTableName.equals(current.getTableName()))) {
+                    dbConn.dropTable(previousTableName);
+                }
+                if (current == null) {
+                    dbConn.dropTable(indexName.replace('-', '_'));
+                }
+                loadModules(next);
+            } catch (IOException | SQLException | RuntimeException e) {
+                // Close the opened generation and drop its table, a registration of the dropped table is ignored by lookupTable
+                next.retire(true);
+                throw e;
+            }
+            return next;
+        } finally {
+            dbConn.closeConnection();
         }
+    }
 
-        for (File parquetDirectory : parquetDirectories) {
-            if (parquetDirectory.getName() != null && parquetDirectory.isDirectory()) {
-                String parquetDirectoryName = parquetDirectory.getName();
-                LOGGER.info("Adding {} to metadata map", parquetDirectoryName);
-                metadataDirectoryNames.add(parquetDirectoryName);
+    /**
+     * Lets the metadata modules build their data structures for a new generation before it serves requests.
+     * A module that fails is logged and skipped, so that the generation can still be served.
+     * @param generation Opened index generation with metadata
+     */
+    private void loadModules(IndexGeneration generation) {
+        for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
+            try {
+                module.onIndexLoaded(generation);
+            } catch (SQLException | RuntimeException e) {
+                LOGGER.error("Module {} failed to load generation {} of index {}", module.getClass().getSimpleName(), generation.getGeneration(), generation.getIndexName(), e);
             }
         }
     }
 
     /**
-     * Getter method for the indexes map
-     * @return Map of index names to Lucene directories
+     * Builds the query suggester of a new generation before it serves requests. A generation whose suggester
+     * could not be built is still served, but answers no suggestion requests.
+     * @param generation Opened index generation
+     */
+    private void loadSuggester(IndexGeneration generation) {
+        try {
+            QuerySuggester suggester = QuerySuggester.build(generation, CoreConfig.getInstance().getSuggestMaxTitles(), CoreConfig.getInstance().getSuggestMinTermDocFreq());
+            generation.putAttachment(QuerySuggester.ATTACHMENT_KEY, suggester);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to build the suggester of generation {} of index {}", generation.getGeneration(), generation.getIndexName(), e);
+        }
+    }
+
+    /**
+     * Computes the part of the table fingerprint that depends on the configuration of the search service.
+     * @return Fingerprint of the table layout, the metadata columns and the number of plain text characters
+     */
+    private String computeTableConfigFingerprint() {
+        Set<String> metadataColumns = new TreeSet<>();
+        PluginManager.getInstance().getModules().values().forEach(module -> metadataColumns.addAll(module.getMetadataColumns()));
+        return TABLE_LAYOUT + "|" + String.join(",", metadataColumns) + "|" + CoreUtils.getNumPlainTextCharacters();
+    }
+
+    /**
+     * Removes the table registration of an index that no longer exists.
+     * @param indexName Name of the index
      */
-    public Map<String, FSDirectory> getIndexes() {
-        return indexes;
+    private void unregisterTable(String indexName) {
+        try {
+            DbConnection dbConn = new DbConnection();
+            dbConn.unregisterTable(indexName);
+            dbConn.closeConnection();
+        } catch (SQLException e) {
+            LOGGER.error("Failed to unregister table of index {}", indexName, e);
+        }
+    }
+
+    /**
+     * Acquires the active generation of an index. The caller must release the generation afterwards.
+     * @param indexName Name of the index
+     * @return Acquired index generation or null if the index does not exist
+     */
+    public IndexGeneration acquire(String indexName) {
+        while (true) {
+            IndexGeneration generation = generations.get(indexName);
+            if (generation == null) {
+                return null;
+            }
+            if (generation.tryIncRef()) {
+                return generation;
+            }
+            // The generation has been closed concurrently, retry with the new one
+        }
+    }
+
+    /**
+     * Releases a previously acquired generation.
+     * @param generation Acquired index generation
+     */
+    public void release(IndexGeneration generation) {
+        if (generation != null) {
+            generation.decRef();
+        }
+    }
+
+    /**
+     * Getter method for the names of the available indexes
+     * @return Sorted set of index names
+     */
+    public Set<String> getIndexNames() {
+        return new TreeSet<>(generations.keySet());
+    }
+
+    /**
+     * Getter method for the active generations
+     * @return Map of index names to active generations
+     */
+    public Map<String, IndexGeneration> getGenerations() {
+        return new TreeMap<>(generations);
     }
 
     /**
      * Getter method for the metadata directory names list
-     * @return List of metadata directory names
+     * @return List of names of indexes for which metadata exists
      */
     public List<String> getMetadataDirectoryNames() {
-        return metadataDirectoryNames;
+        return generations.values().stream()
+            .filter(IndexGeneration::hasMetadata)
+            .map(IndexGeneration::getIndexName)
+            .collect(Collectors.toList());
     }
+
 }
@@ -8,6 +8,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.ServiceUnavailableException;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.ExceptionMapper;
@@ -45,6 +46,14 @@ public class ResponseExceptionMapper implements ExceptionMapper<Exception> {
                     .entity(createJsonErrorContent(404, ERROR_MESSAGE_NOT_FOUND, ExceptionUtils.getStackTrace(exception)))
                     .type("application/json")
                     .build();
+        } else if (exception instanceof ServiceUnavailableException) {
+            LOGGER.warn("Rejected request: {}", exception.getMessage());
+            Response originalErrorResponse = ((ServiceUnavailableException) exception).getResponse();
+            return Response.fromResponse(originalErrorResponse)
+                    .entity(createJsonErrorContent(503, exception.getMessage(), null))
+                    .type("application/json")
+                    .status(503)
+                    .build();
         } else if (exception instanceof WebApplicationException) {
             LOGGER.error("Failed to process request: {}", exception);
             Response originalErrorResponse = ((WebApplicationException) exception).getResponse();
@@ -0,0 +1,259 @@
+package eu.ows.mosaic;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Latency timers and counters of the search pipeline, exposed by Micrometer at the endpoint {@code /metrics}.
+ * The stages of a request (e.g., Lucene search, DuckDB lookup, manual filter, snippet extraction and serialization)
+ * are recorded with the tags index, endpoint and format. The endpoint and format are taken from the request
+ * that is currently processed by the thread, so that stages deep in the pipeline do not need to know them.
+ */
+public class SearchMetrics {
+
+    public static final String STAGE_PARSE = "parse";
+    public static final String STAGE_ADMISSION = "admission";
+    public static final String STAGE_LUCENE = "lucene";
+    public static final String STAGE_DUCKDB = "duckdb";
+    public static final String STAGE_FILTER = "filter";
+    public static final String STAGE_COLLAPSE = "collapse";
+    public static final String STAGE_RERANK = "rerank";
+    public static final String STAGE_SNIPPET = "snippet";
+    public static final String STAGE_SERIALIZE = "serialize";
+    public static final String STAGE_SUGGEST = "suggest";
+    public static final String STAGE_SPELLCHECK = "spellcheck";
+    public static final String STAGE_TOTAL = "total";
+
+    public static final String COUNTER_ITERATIONS = "mosaic.search.iterations";
+    public static final String COUNTER_FETCHED_HITS = "mosaic.search.hits.fetched";
+    public static final String COUNTER_FILTER_REJECTIONS = "mosaic.search.filter.rejections";
+    public static final String COUNTER_CACHE = "mosaic.search.cache";
+    public static final String COUNTER_DUCKDB_CONNECTIONS = "mosaic.duckdb.connections";
+    public static final String COUNTER_PRUNED_TERMS = "mosaic.search.query.pruned";
+    public static final String COUNTER_TIMEOUTS = "mosaic.search.timeouts";
+    public static final String COUNTER_RERANK_BUDGET_EXCEEDED = "mosaic.search.rerank.budget.exceeded";
+
+    private static final String TIMER_STAGE = "mosaic.search.stage";
+    private static final String ALL_INDEXES = "all";
+    private static final String UNKNOWN = "none";
+
+    private static final ThreadLocal<Request> CURRENT_REQUEST = new ThreadLocal<>();
+
+    private SearchMetrics() {}
+
+    private static MeterRegistry getRegistry() {
+        return Metrics.globalRegistry;
+    }
+
+    /**
+     * Starts recording a request on the current thread. The request must be closed when it has been processed.
+     * @param endpoint Name of the endpoint (e.g., search)
+     * @param format Response format (e.g., json)
+     * @return Recorded request
+     */
+    public static Request startRequest(String endpoint, String format) {
+        Request request = new Request(endpoint, format);
+        CURRENT_REQUEST.set(request);
+        return request;
+    }
+
+    /**
+     * Getter method for the request that is processed by the current thread.
+     * @return Recorded request or null if no request is recorded
+     */
+    public static Request currentRequest() {
+        return CURRENT_REQUEST.get();
+    }
+
+    /**
+     * Records the duration of a stage of the current request.
+     * @param stage Name of the stage
+     * @param indexName Name of the index or null if the stage is not specific to an index
+     * @param nanos Duration in nanoseconds
+     */
+    public static void recordStage(String stage, String indexName, long nanos) {
+        Request request = currentRequest();
+        Timer.builder(TIMER_STAGE)
+            .description("Duration of the stages of the search pipeline")
+            .tags(getTags(request, indexName).and("stage", stage))
+            .publishPercentileHistogram()
+            .register(getRegistry())
+            .record(nanos, TimeUnit.NANOSECONDS);
+
+        if (request != null) {
+            request.addStage(stage, nanos);
+        }
+    }
+
+    /**
+     * Increments a counter of the current request.
+     * @param name Name of the counter
+     * @param indexName Name of the index or null if the counter is not specific to an index
+     * @param amount Amount to add
+     * @param extraTags Additional tags as key-value pairs
+     */
+    public static void count(String name, String indexName, long amount, String... extraTags) {
+        if (amount <= 0) {
+            return;
+        }
+        Request request = currentRequest();
+        Counter.builder(name)
+            .tags(getTags(request, indexName).and(extraTags))
+            .register(getRegistry())
+            .increment(amount);
+
+        if (request != null) {
+            request.addCount(name + (extraTags.length > 1 ? "." + extraTags[extraTags.length - 1] : ""), amount);
+        }
+    }
+
+    /**
+     * Counts a lookup in a cache of the search pipeline.
+     * @param cache Name of the cache
+     * @param hit True if the lookup was a hit, false otherwise
+     */
+    public static void countCacheLookup(String cache, boolean hit) {
+        count(COUNTER_CACHE, null, 1, "cache", cache, "result", hit ? "hit" : "miss");
+    }
+
+    private static Tags getTags(Request request, String indexName) {
+        return Tags.of(
+            "index", indexName != null ? indexName : ALL_INDEXES,
+            "endpoint", request != null ? request.getEndpoint() : UNKNOWN,
+            "format", request != null ? request.getFormat() : UNKNOWN);
+    }
+
+    /**
+     * Timings and counts of one request.
+     */
+    public static class Request implements AutoCloseable {
+
+        private final String endpoint;
+        private final String format;
+        private final long startNanos = System.nanoTime();
+        private final Map<String, Long> stageNanos = new TreeMap<>();
+        private final Map<String, Long> counts = new TreeMap<>();
+        private final Map<String, Object> detail = new TreeMap<>();
+        private final Map<String, SqlQuery> sqlQueries = new TreeMap<>();
+        private final boolean sampled = RequestLog.sample();
+        private String status = "ok";
+
+        private Request(String endpoint, String format) {
+            this.endpoint = endpoint;
+            this.format = format;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public long getElapsedNanos() {
+            return System.nanoTime() - startNanos;
+        }
+
+        public Map<String, Long> getStageNanos() {
+            return stageNanos;
+        }
+
+        public Map<String, Long> getCounts() {
+            return counts;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public void setStatus(String status) {
+            this.status = status;
+        }
+
+        /**
+         * Checks if the debug detail of the request is logged.
+         * @return True if the request was sampled, false otherwise
+         */
+        public boolean isSampled() {
+            return sampled;
+        }
+
+        public Map<String, Object> getDetail() {
+            return detail;
+        }
+
+        /**
+         * Adds detail of the request, which is written to the request log if the request was sampled
+         * and captured by the slow query recorder if the request is slow.
+         * @param key Name of the detail
+         * @param value Value of the detail
+         */
+        public void putDetail(String key, Object value) {
+            detail.put(key, value);
+        }
+
+        public Map<String, SqlQuery> getSqlQueries() {
+            return sqlQueries;
+        }
+
+        /**
+         * Keeps the last metadata query executed for an index, so that it can be explained if the request is slow.
+         * @param indexName Name of the index
+         * @param sql SQL of the query
+         * @param values Parameter values of the query
+         */
+        public void putSqlQuery(String indexName, String sql, List<Object> values) {
+            sqlQueries.put(indexName, new SqlQuery(sql, values));
+        }
+
+        private void addStage(String stage, long nanos) {
+            stageNanos.merge(stage, nanos, Long::sum);
+        }
+
+        private void addCount(String name, long amount) {
+            counts.merge(name, amount, Long::sum);
+        }
+
+        /**
+         * Records the total duration of the request, writes the request log and stops recording on the current thread.
+         */
+        @Override
+        public void close() {
+            recordStage(STAGE_TOTAL, null, getElapsedNanos());
+            CURRENT_REQUEST.remove();
+            RequestLog.write(this);
+        }
+    }
+
+    /**
+     * SQL query and its parameter values.
+     */
+    public static class SqlQuery {
+
+        private final String sql;
+        private final List<Object> values;
+
+        public SqlQuery(String sql, List<Object> values) {
+            this.sql = sql;
+            this.values = values;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public List<Object> getValues() {
+            return values;
+        }
+    }
+
+}
@@ -2,33 +2,131 @@ package eu.ows.mosaic;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import org.apache.lucene.search.ScoreDoc;
 
 /**
  * Custom cache class to store the ScoreDoc objects for the search service for caching purposes.
+ * Together with the last ScoreDoc of a page, the cache keeps the {@link DuplicateCollapser} of the page, so that the
+ * next page does not repeat duplicates of the results of the previous pages.
+ * The entries are keyed by the index generation and the query parameters, since a search without a selected index
+ * searches every index with the same query parameters and the document numbers of a ScoreDoc are only valid in the
+ * generation it has been collected in. The cache is shared by concurrent requests and keeps the most recently used pages.
  */
-public class SearchRequestScoreDocCache extends LinkedHashMap<Map<String, Object>, ScoreDoc> {
+public class SearchRequestScoreDocCache {
+
+    private final Map<Key, Page> pages;
 
     public SearchRequestScoreDocCache(int maxSize) {
-        super(maxSize, 0.75f, true);
+        this.pages = new LinkedHashMap<>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Page> eldest) {
+                return size() > maxSize;
+            }
+        };
     }
 
     /**
      * Get the ScoreDoc object of the previous page from the cache if it exists.
+     * @param generation The generation of the index that is searched.
      * @param queryParams The query parameters to get the ScoreDoc object of the previous page.
-     * @return The ScoreDoc object from the cache.
+     * @return The ScoreDoc object from the cache or null if it does not exist.
+     */
+    public ScoreDoc getLastScoreDocFromPreviousPage(IndexGeneration generation, Map<String, Object> queryParams) {
+        Page page = getPreviousPage(generation, queryParams);
+        return page != null ? page.lastScoreDoc : null;
+    }
+
+    /**
+     * Get a copy of the DuplicateCollapser of the previous page from the cache if it exists.
+     * @param generation The generation of the index that is searched.
+     * @param queryParams The query parameters to get the DuplicateCollapser of the previous page.
+     * @return Copy of the DuplicateCollapser from the cache or null if it does not exist.
+     */
+    public DuplicateCollapser getCollapserFromPreviousPage(IndexGeneration generation, Map<String, Object> queryParams) {
+        Page page = getPreviousPage(generation, queryParams);
+        return page != null && page.collapser != null ? page.collapser.copy() : null;
+    }
+
+    /**
+     * Put the last ScoreDoc and the DuplicateCollapser of a page into the cache.
+     * @param generation The generation of the index that has been searched.
+     * @param queryParams The query parameters of the page.
+     * @param lastScoreDoc The last ScoreDoc of the page.
+     * @param collapser The DuplicateCollapser after the results of the page or null if duplicates are not collapsed.
+     */
+    public void put(IndexGeneration generation, Map<String, Object> queryParams, ScoreDoc lastScoreDoc, DuplicateCollapser collapser) {
+        Key key = new Key(generation, new LinkedHashMap<>(queryParams));
+        synchronized (pages) {
+            pages.put(key, new Page(lastScoreDoc, collapser));
+        }
+    }
+
+    /**
+     * Drops the cached pages of all generations of an index, whose ScoreDocs cannot be continued in a new generation.
+     * @param indexName Name of the index
+     */
+    public void invalidate(String indexName) {
+        synchronized (pages) {
+            pages.keySet().removeIf(key -> key.indexName.equals(indexName));
+        }
+    }
+
+    private Page getPreviousPage(IndexGeneration generation, Map<String, Object> queryParams) {
+        if (!queryParams.containsKey("page")) {
+            return null;
+        }
+        Map<String, Object> previousPageQueryParams = new LinkedHashMap<>(queryParams);
+        previousPageQueryParams.put("page", Integer.parseInt(queryParams.get("page").toString()) - 1);
+        Key key = new Key(generation, previousPageQueryParams);
+        synchronized (pages) {
+            return pages.get(key);
+        }
+    }
+
+    /**
+     * Key of a cached page, which consists of the index generation and the query parameters of the page.
      */
-    public ScoreDoc getLastScoreDocFromPreviousPage(Map<String, Object> queryParams) {
-        ScoreDoc lastScoreDoc = null;
+    private static class Key {
+
+        private final String indexName;
+        private final long generation;
+        private final Map<String, Object> queryParams;
+
+        private Key(IndexGeneration generation, Map<String, Object> queryParams) {
+            this.indexName = generation.getIndexName();
+            this.generation = generation.getGeneration();
+            this.queryParams = queryParams;
+        }
 
-        if (queryParams.containsKey("page")) {
-            Map<String, Object> previousPageQueryParams = new LinkedHashMap<>(queryParams);
-            previousPageQueryParams.put("page", Integer.parseInt(queryParams.get("page").toString()) - 1);
-            return this.get(previousPageQueryParams);
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key otherKey = (Key) other;
+            return generation == otherKey.generation && indexName.equals(otherKey.indexName) && queryParams.equals(otherKey.queryParams);
         }
 
-        return lastScoreDoc;
+        @Override
+        public int hashCode() {
+            return Objects.hash(indexName, generation, queryParams);
+        }
+    }
+
+    /**
+     * Last ScoreDoc and DuplicateCollapser of a cached page.
+     */
+    private static class Page {
+
+        private final ScoreDoc lastScoreDoc;
+        private final DuplicateCollapser collapser;
+
+        private Page(ScoreDoc lastScoreDoc, DuplicateCollapser collapser) {
+            this.lastScoreDoc = lastScoreDoc;
+            this.collapser = collapser;
+        }
     }
 
 }
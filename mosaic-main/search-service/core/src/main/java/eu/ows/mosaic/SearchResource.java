@@ -9,6 +9,7 @@ import org.apache.lucene.queryparser.classic.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
@@ -22,14 +23,15 @@ public class SearchResource {
     private static Logger LOGGER = LoggerFactory.getLogger(SearchResource.class);
 
     @GET
+    @RunOnVirtualThread
     @Produces(MediaType.APPLICATION_JSON)
     public String search(@Context UriInfo uriInfo) throws ParseException, IOException, SQLException {
         Map<String, String> queryParams = uriInfo.getQueryParameters().entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get(0)));
-        LOGGER.info("Received search request: {}", queryParams);
+        LOGGER.debug("Received search request: {}", queryParams);
 
         String response = SearchUtils.searchJson(queryParams);
 
-        LOGGER.info("Returning results");
+        LOGGER.debug("Returning results");
         return response;
     }
 
@@ -1,9 +1,7 @@
 package eu.ows.mosaic;
 
 import java.io.IOException;
-import java.nio.file.Paths;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
+import java.lang.management.ManagementFactory;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -12,22 +10,19 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.stream.Collectors;
-
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.StoredFields;
+
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.search.similarities.BM25Similarity;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHits;
+
+import jakarta.ws.rs.ServiceUnavailableException;
+import jakarta.ws.rs.WebApplicationException;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
@@ -39,8 +34,6 @@ public class SearchUtils {
 
     private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(SearchUtils.class);
 
-    private static Map<String, FSDirectory> indexes = ResourceManager.getInstance().getIndexes();
-
     private static SearchRequestScoreDocCache searchRequestScoreDocCache = new SearchRequestScoreDocCache(1000);
 
     private static final String RESPONSE_TYPE_JSON = "application/json";
@@ -62,8 +55,44 @@ public class SearchUtils {
 
     /**
      * Performs the search in the indexes based on the given query parameters and returns the search results in the specified response type.
+     * The timings and counts of the request are recorded by {@link SearchMetrics}.
      */
     private static String performSearch(Map<String, String> queryParams, String responseType) throws ParseException, IOException, SQLException {
+        String endpoint = responseType.equals(RESPONSE_TYPE_XML) ? "searchxml" : "search";
+        String format = responseType.equals(RESPONSE_TYPE_XML) ? "xml" : "json";
+
+        try (SearchMetrics.Request request = SearchMetrics.startRequest(endpoint, format)) {
+            request.putDetail("rawParams", new TreeMap<>(queryParams));
+            try {
+                return executeSearch(queryParams, responseType, endpoint);
+            } catch (ServiceUnavailableException e) {
+                request.setStatus("shed");
+                throw e;
+            } catch (MosaicWebException e) {
+                request.setStatus("invalid");
+                throw e;
+            } catch (ParseException | IOException | SQLException | RuntimeException e) {
+                request.setStatus("error");
+                throw e;
+            } finally {
+                SlowQueryRecorder.getInstance().record(request);
+            }
+        }
+    }
+
+    /**
+     * Drops the cached last ScoreDocs and duplicate collapsers of the pages of an index, e.g., after it has been reloaded.
+     * @param indexName Name of the index
+     */
+    static void invalidateCachedPages(String indexName) {
+        searchRequestScoreDocCache.invalidate(indexName);
+    }
+
+    /**
+     * Parses the query, admits the request and searches in the indexes.
+     */
+    private static String executeSearch(Map<String, String> queryParams, String responseType, String endpoint) throws ParseException, IOException, SQLException {
+        long parseStart = System.nanoTime();
 
         // Validate the query parameters of all metadata modules
         for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
@@ -75,43 +104,72 @@ public class SearchUtils {
         for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
             parsedQueryParams.putAll(module.parseQueryParams(queryParams));
         }
-        LOGGER.info("Parsed query parameters: {}", parsedQueryParams);
+        LOGGER.debug("Parsed query parameters: {}", parsedQueryParams);
         String q = (String) parsedQueryParams.get("q");
         String selectedIndexName = (String) parsedQueryParams.get("index");
 
-        // Create an analyzer for the query parser
-        Analyzer analyzer;
-        if (CoreConfig.getInstance().isPluginEnabled(PluginManager.ANALYZER)) {
-            analyzer = ((AnalyzerComponent) PluginManager.getInstance().getComponents().get(PluginManager.ANALYZER)).getAnalyzer(new StandardAnalyzer());
-        } else {
-            analyzer = new StandardAnalyzer();
-        }
-
-        // Create a query parser and modify the query if required
-        QueryParser queryParser = new QueryParser("contents", analyzer);
+        // Modify the query if required and compile it with the shared analyzer
         if (CoreConfig.getInstance().isPluginEnabled(PluginManager.QUERY)) {
             q = ((QueryComponent) PluginManager.getInstance().getComponents().get(PluginManager.QUERY)).modifyQuery(q);
         }
-        Query query = queryParser.parse(q);
-
-        LOGGER.info("Query: {}", query.toString("contents"));
-        LOGGER.info("Index: {}", selectedIndexName);
+        Query query = PluginManager.getInstance().getQueryCompiler().compile(q);
+        QueryPlanner.getInstance().validate(query);
+        SearchMetrics.recordStage(SearchMetrics.STAGE_PARSE, null, System.nanoTime() - parseStart);
+
+        LOGGER.debug("Query: {}", query);
+        LOGGER.debug("Index: {}", selectedIndexName);
+        SearchMetrics.Request request = SearchMetrics.currentRequest();
+        if (request != null) {
+            request.putDetail("query", query.toString("contents"));
+            request.putDetail("params", parsedQueryParams);
+        }
 
         // Generate a set of index names used for searching
-        Set<String> indexNamesToBeSearchedIn = indexes.keySet();
+        Set<String> indexNamesToBeSearchedIn = ResourceManager.getInstance().getIndexNames();
         if (selectedIndexName != null) {
             indexNamesToBeSearchedIn = new TreeSet<String>();
             indexNamesToBeSearchedIn.add(selectedIndexName);
         }
 
-        // Serialize the search results based on the response type
-        switch (responseType) {
-            case RESPONSE_TYPE_JSON:
-                return getSerializedJsonResponse(query, q, parsedQueryParams, indexNamesToBeSearchedIn);
-            case RESPONSE_TYPE_XML:
-                return getSerializedXmlResponse(query, q, parsedQueryParams, indexNamesToBeSearchedIn);
-            default:
-                return null;
+        // Admit the request only if the endpoint and the indexes are not saturated
+        long admissionStart = System.nanoTime();
+        AdmissionController.Ticket ticket = AdmissionController.getInstance().admit(endpoint, indexNamesToBeSearchedIn);
+        SearchMetrics.recordStage(SearchMetrics.STAGE_ADMISSION, null, System.nanoTime() - admissionStart);
+
+        // Acquire the active generation of each index for the whole request
+        Map<String, IndexGeneration> generations = new TreeMap<>();
+        try {
+            for (String indexName : indexNamesToBeSearchedIn) {
+                IndexGeneration generation = ResourceManager.getInstance().acquire(indexName);
+                if (generation != null) {
+                    generations.put(indexName, generation);
+                }
+            }
+
+            // Serialize the search results based on the response type
+            switch (responseType) {
+                case RESPONSE_TYPE_JSON:
+                    return getSerializedJsonResponse(query, q, parsedQueryParams, generations);
+                case RESPONSE_TYPE_XML:
+                    return getSerializedXmlResponse(query, q, parsedQueryParams, generations);
+                default:
+                    return null;
+            }
+        } catch (WebApplicationException e) {
+            // Client errors (e.g., too many clauses, mapped to 400) say nothing about the load and do not adapt the concurrency limits
+            if (e instanceof ServiceUnavailableException) {
+                ticket.fail();
+            } else {
+                ticket.reject();
+            }
+            throw e;
+        } catch (IOException | SQLException | RuntimeException e) {
+            // Failed requests (e.g., timed out waiting for Lucene or DuckDB) decrease the concurrency limits
+            ticket.fail();
+            throw e;
+        } finally {
+            generations.values().forEach(ResourceManager.getInstance()::release);
+            ticket.close();
         }
     }
 
@@ -120,27 +178,40 @@ public class SearchUtils {
      * @param query Query object
      * @param q Query string
      * @param parsedQueryParams Parsed query parameters
-     * @param indexNamesToBeSearchedIn Set of index names to be searched in
+     * @param generations Acquired generations of the indexes to be searched in
      * @return JSON string of the serialized search results
      */
-    private static String getSerializedJsonResponse(Query query, String q, Map<String, Object> parsedQueryParams, Set<String> indexNamesToBeSearchedIn) throws IOException, SQLException {
+    private static String getSerializedJsonResponse(Query query, String q, Map<String, Object> parsedQueryParams, Map<String, IndexGeneration> generations) throws IOException, SQLException {
         JsonArray resultsPerIndex = new JsonArray();
+        Map<String, FetchPlanner.Plan> fetchPlans = new TreeMap<>();
+
+        for (IndexGeneration generation : generations.values()) {
+            String indexName = generation.getIndexName();
 
-        for (String indexName: indexNamesToBeSearchedIn) {
             // Search in index and fetch search result as JSON object
-            List<Map<String, String>> results = searchInIndex(query, indexName, parsedQueryParams);
+            List<Map<String, String>> results = searchInIndex(query, generation, parsedQueryParams, fetchPlans);
             JsonArray resultsArray = new JsonArray();
 
-            // Serialize each search result
-            for (Map<String, String> result: results) {
-                JsonObject jsonResult = new JsonObject();
-                result.put("q", q);
-                for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
-                    JsonObject serializedModuleObject = module.serializeJson(result, parsedQueryParams);
-                    serializedModuleObject.keySet().forEach(key -> jsonResult.add(key, serializedModuleObject.get(key)));
+            // Serialize each search result, module by module so that each module hook is traced once per index
+            long serializeStart = System.nanoTime();
+            JsonObject[] jsonResults = new JsonObject[results.size()];
+            for (int i = 0; i < jsonResults.length; i++) {
+                jsonResults[i] = new JsonObject();
+                results.get(i).put("q", q);
+            }
+            for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
+                try (Tracing.SpanScope span = startModuleSpan(module, "serializeJson", indexName)) {
+                    for (int i = 0; i < jsonResults.length; i++) {
+                        JsonObject jsonResult = jsonResults[i];
+                        JsonObject serializedModuleObject = module.serializeJson(results.get(i), parsedQueryParams);
+                        serializedModuleObject.keySet().forEach(key -> jsonResult.add(key, serializedModuleObject.get(key)));
+                    }
                 }
+            }
+            for (JsonObject jsonResult : jsonResults) {
                 resultsArray.add(jsonResult);
             }
+            SearchMetrics.recordStage(SearchMetrics.STAGE_SERIALIZE, indexName, System.nanoTime() - serializeStart);
 
             // Add the serialized search results to the JSON array
             JsonObject resultsObject = new JsonObject();
@@ -148,8 +219,27 @@ public class SearchUtils {
             resultsPerIndex.add(resultsObject);
         }
 
+        // Report the work done per index and whether results were truncated by the work limits
+        boolean truncated = false;
+        JsonObject fetchObject = new JsonObject();
+        for (Map.Entry<String, FetchPlanner.Plan> entry : fetchPlans.entrySet()) {
+            FetchPlanner.Plan plan = entry.getValue();
+            JsonObject planObject = new JsonObject();
+            planObject.addProperty("iterations", plan.getIterations());
+            planObject.addProperty("fetchedHits", plan.getFetchedHits());
+            planObject.addProperty("truncated", plan.isTruncated());
+            if (plan.getTotalHits() != null) {
+                planObject.addProperty("totalHits", plan.getTotalHits().value);
+                planObject.addProperty("totalHitsRelation", plan.getTotalHits().relation == TotalHits.Relation.EQUAL_TO ? "eq" : "gte");
+            }
+            fetchObject.add(entry.getKey(), planObject);
+            truncated |= plan.isTruncated();
+        }
+
         JsonObject resultsObject = new JsonObject();
         resultsObject.add("results", resultsPerIndex);
+        resultsObject.addProperty("truncated", truncated);
+        resultsObject.add("fetch", fetchObject);
 
         return resultsObject.toString();
     }
@@ -159,11 +249,11 @@ public class SearchUtils {
      * @param query Query object
      * @param q Query string
      * @param parsedQueryParams Parsed query parameters
-     * @param indexNamesToBeSearchedIn Set of index names to be searched in
+     * @param generations Acquired generations of the indexes to be searched in
      * @return XML string of the serialized search results
      */
-    private static String getSerializedXmlResponse(Query query, String q, Map<String, Object> parsedQueryParams, Set<String> indexNamesToBeSearchedIn) throws IOException, SQLException {
-        int totalResults = getTotalResults(query, indexNamesToBeSearchedIn);
+    private static String getSerializedXmlResponse(Query query, String q, Map<String, Object> parsedQueryParams, Map<String, IndexGeneration> generations) throws IOException, SQLException {
+        int totalResults = getTotalResults(query, parsedQueryParams, generations);
         int page = (int) parsedQueryParams.get("page");
         int limit = (int) parsedQueryParams.get("limit");
         int startIndex = 1 + limit * (page - 1);
@@ -196,19 +286,30 @@ public class SearchUtils {
 
         xmlResponse += "<link rel=\"search\" type=\"application/opensearchdescription+xml\" href=\"" + CoreConfig.getInstance().getBaseUrl() + "/opensearch.xml\"/>";
 
-        for (String indexName: indexNamesToBeSearchedIn) {
+        for (IndexGeneration generation : generations.values()) {
+            String indexName = generation.getIndexName();
+
             // Search in index and fetch search result as XML object
-            List<Map<String, String>> results = searchInIndex(query, indexName, parsedQueryParams);
-
-            // Serialize each search result
-            for (Map<String, String> result : results) {
-                result.put("q", q);
-                xmlResponse += "<item>";
-                for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
-                    xmlResponse += module.serializeXml(result, parsedQueryParams);
+            List<Map<String, String>> results = searchInIndex(query, generation, parsedQueryParams, new TreeMap<>());
+
+            // Serialize each search result, module by module so that each module hook is traced once per index
+            long serializeStart = System.nanoTime();
+            StringBuilder[] xmlResults = new StringBuilder[results.size()];
+            for (int i = 0; i < xmlResults.length; i++) {
+                xmlResults[i] = new StringBuilder("<item>");
+                results.get(i).put("q", q);
+            }
+            for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
+                try (Tracing.SpanScope span = startModuleSpan(module, "serializeXml", indexName)) {
+                    for (int i = 0; i < xmlResults.length; i++) {
+                        xmlResults[i].append(module.serializeXml(results.get(i), parsedQueryParams));
+                    }
                 }
-                xmlResponse += "<index>" + indexName + "</index></item>";
             }
+            for (StringBuilder xmlResult : xmlResults) {
+                xmlResponse += xmlResult.append("<index>").append(indexName).append("</index></item>");
+            }
+            SearchMetrics.recordStage(SearchMetrics.STAGE_SERIALIZE, indexName, System.nanoTime() - serializeStart);
         }
 
         xmlResponse += "</feed>";
@@ -218,35 +319,28 @@ public class SearchUtils {
 
     /**
      * Calculates the total number of results in the Lucene index for a search request.
+     * The number is exact if {@code track_total_hits=true} was requested, otherwise it is a lower bound once more hits
+     * than the threshold of {@code track_total_hits} match.
      * @param query Query object
-     * @param indexNamesToBeSearchedIn Set of index names to be searched in
+     * @param queryParams Parsed query parameters
+     * @param generations Acquired generations of the indexes to be searched in
      * @return Total number of results for the search request
      */
-    private static int getTotalResults(Query query, Set<String> indexNamesToBeSearchedIn) throws IOException, SQLException {
+    private static int getTotalResults(Query query, Map<String, Object> queryParams, Map<String, IndexGeneration> generations) throws IOException, SQLException {
         int totalResults = 0;
 
-        LOGGER.info("Calculating total number of results for search request");
-        for (String indexName: indexNamesToBeSearchedIn) {
-            LOGGER.info("Searching in index: {}", indexName);
+        LOGGER.debug("Calculating total number of results for search request");
+        for (IndexGeneration generation : generations.values()) {
+            LOGGER.debug("Searching in index: {}", generation.getIndexName());
 
-            // Create index from file system directory
-            FSDirectory indexDir = ResourceManager.getInstance().getIndexes().get(indexName);
-
-            // Check if the index exists
-            boolean indexExists = DirectoryReader.indexExists(indexDir);
-            LOGGER.info("Index exists: {}", indexExists);
-
-            // Create index reader and index searcher
-            String indexPath = CoreUtils.getIndexDirPath() + indexName;
-            LOGGER.info("Used index for search request: {}", indexPath);
-
-            // Perform the search in the Lucene index
-            IndexSearcher searcher = createSearcher(indexPath);
-            searcher.setSimilarity(new BM25Similarity());
-
-            // Fetch the total number of results in the Lucene index
-            TopDocs topDocs = searcher.search(query, 1);
-            totalResults += topDocs.totalHits.value;
+            // Count the results exactly only if requested, otherwise use the lower bound of the top hits search
+            Query indexQuery = applyModuleQueries(query, generation, queryParams);
+            int trackTotalHits = (int) queryParams.get("trackTotalHits");
+            if (trackTotalHits == CoreUtils.TRACK_TOTAL_HITS_EXACT) {
+                totalResults += count(generation, indexQuery);
+            } else {
+                totalResults += search(generation, indexQuery, null, 1, trackTotalHits).totalHits.value;
+            }
         }
 
         return totalResults;
@@ -255,139 +349,198 @@ public class SearchUtils {
     /**
      * Searches in the Lucene index for a given query and returns the search results.
      * @param query Query object
-     * @param indexName Name of the Lucene index
+     * @param generation Acquired generation of the Lucene index
      * @param queryParams Query parameters
+     * @param fetchPlans Fetch plans of the request per index, the plan of this index is added
      * @return List of search results
      */
-    public static List<Map<String, String>> searchInIndex(Query query, String indexName, Map<String, Object> queryParams) throws IOException, SQLException {
+    public static List<Map<String, String>> searchInIndex(Query query, IndexGeneration generation, Map<String, Object> queryParams, Map<String, FetchPlanner.Plan> fetchPlans) throws IOException, SQLException {
     
-        LOGGER.info("Searching in index: {}", indexName);
-
-        // Create index from file system directory
-        FSDirectory indexDir = ResourceManager.getInstance().getIndexes().get(indexName);
-
-        // Check if the index exists
-        boolean indexExists = DirectoryReader.indexExists(indexDir);
-        LOGGER.info("Index exists: {}", indexExists);
-
-        // Create index reader and index searcher
-        String indexPath = CoreUtils.getIndexDirPath() + indexName;
-        LOGGER.info("Used index for search request: {}", indexPath);
-
-        // Create index reader and index searcher
-        IndexReader reader = DirectoryReader.open(indexDir);
-        IndexSearcher searcher = createSearcher(indexPath);
-        searcher.setSimilarity(new BM25Similarity());
+        LOGGER.debug("Searching in index {} (generation {})", generation.getIndexName(), generation.getGeneration());
 
         // Fetch results in Lucene index
-        List<Map<String, String>> results = fetchResults(reader, searcher, query, indexName, queryParams);
-
-        // Close the IndexReader
-        reader.close();
-
-        return results;
-    }
-
-    /**
-     * Creates an index searcher from the file path of the index.
-     * @param indexPath Path of the Lucene index
-     * @return IndexSearcher created from given path
-     * @throws IOException
-     */
-    private static IndexSearcher createSearcher(String indexPath) throws IOException {
-        FSDirectory dir = FSDirectory.open(Paths.get(indexPath));
-        IndexReader reader = DirectoryReader.open(dir);
-        return new IndexSearcher(reader);
+        try (Tracing.SpanScope span = Tracing.startSpan("mosaic.index.search", generation.getIndexName())) {
+            try {
+                return fetchResults(generation, query, queryParams, fetchPlans);
+            } catch (IOException | SQLException | RuntimeException e) {
+                span.recordFailure(e);
+                throw e;
+            }
+        }
     }
 
     /**
      * Fetches the search results from the Lucene index and adds metadata to the search results.
-     * @param reader IndexReader of the Lucene index
-     * @param searcher IndexSearcher of the Lucene index
+     * @param generation Acquired generation of the Lucene index
      * @param query Query object
-     * @param indexName Name of the Lucene index
      * @param queryParams Parsed query parameters
+     * @param fetchPlans Fetch plans of the request per index, the plan of this index is added
      * @return List of maps representing the search results
      * @throws IOException
      * @throws SQLException
      */
-    private static List<Map<String, String>> fetchResults(IndexReader reader, IndexSearcher searcher, Query query, String indexName, Map<String, Object> queryParams) throws IOException, SQLException {
+    private static List<Map<String, String>> fetchResults(IndexGeneration generation, Query query, Map<String, Object> queryParams, Map<String, FetchPlanner.Plan> fetchPlans) throws IOException, SQLException {
         final List<Map<String, String>> results = new ArrayList<>();
+        final String indexName = generation.getIndexName();
+        query = applyModuleQueries(query, generation, queryParams);
+
+        ScoreDoc lastScoreDoc = searchRequestScoreDocCache.getLastScoreDocFromPreviousPage(generation, queryParams);
+        boolean continuesPreviousPage = lastScoreDoc != null;
+        LOGGER.debug("Last ScoreDoc: {}", lastScoreDoc);
+        if ((int) queryParams.get("page") > 1) {
+            SearchMetrics.countCacheLookup("scoredoc", lastScoreDoc != null);
+        }
 
-        ScoreDoc lastScoreDoc = searchRequestScoreDocCache.getLastScoreDocFromPreviousPage(queryParams);
-        LOGGER.info("Last ScoreDoc: {}", lastScoreDoc);
+        // Collapse duplicates unless disabled by the request, a page that continues after the cached
+        // ScoreDoc of the previous page also continues with the fingerprints of the previous pages
+        DuplicateCollapser collapser = null;
+        if ((boolean) queryParams.get("collapse")) {
+            collapser = continuesPreviousPage ? searchRequestScoreDocCache.getCollapserFromPreviousPage(generation, queryParams) : null;
+            if (collapser == null) {
+                collapser = new DuplicateCollapser();
+            }
+        }
 
         // Retrieve available metadata columns for the search results
         DbConnection dbConn = new DbConnection();
-        Set<String> metadataColumns = dbConn.retrieveMetadataColumns(indexName);
-        LOGGER.info("Available metadata columns: {}", metadataColumns);
+        Set<String> metadataColumns = dbConn.retrieveMetadataColumns(generation.getTableName());
+        LOGGER.debug("Available metadata columns: {}", metadataColumns);
 
         // Retrieve metadata columns of the modules and intersect them with the available metadata columns
         Set<String> moduleMetadataColumns = new HashSet<>();
         PluginManager.getInstance().getModules().values().forEach(module -> moduleMetadataColumns.addAll(module.getMetadataColumns()));
-        LOGGER.info("Module metadata columns: {}", moduleMetadataColumns);
+        LOGGER.debug("Module metadata columns: {}", moduleMetadataColumns);
         metadataColumns.retainAll(moduleMetadataColumns);
 
         // Build the metadata query that is used to retrieve metadata for the search results
-        String metadataQuery = dbConn.buildMetadataQuery(indexName, metadataColumns, queryParams);
-        dbConn.closeConnection();
+        String metadataQuery = dbConn.buildMetadataQuery(generation.getTableName(), metadataColumns, queryParams);
+        long allocatedBytesBefore = getAllocatedBytes();
 
-        // Iteratively increase the number of hits until the hit limit has been reached
-        // or no more documents could be found
+        // Fetch batches of hits until the hit limit has been reached, no more documents could be found
+        // or the work limit of the fetch planner has been reached
         int numHitsLimit = (int) queryParams.get("limit");
         if (lastScoreDoc == null) {
             numHitsLimit *= (int) queryParams.get("page");
         }
-        LOGGER.info("Number of hits limit for search iteration: {}", numHitsLimit);
-        while (results.size() < numHitsLimit) {
+        LOGGER.debug("Number of hits limit for search iteration: {}", numHitsLimit);
+        FetchPlanner.Plan plan = FetchPlanner.getInstance().plan(indexName, queryParams, numHitsLimit);
+        fetchPlans.put(indexName, plan);
+        List<ScoreDoc> resultScoreDocs = new ArrayList<>();
+
+        // Count the hits exactly only if requested, the top hits search then does not need to count any hits
+        // and Lucene can skip blocks of documents that cannot enter the top hits
+        int totalHitsThreshold = (int) queryParams.get("trackTotalHits");
+        if (totalHitsThreshold == CoreUtils.TRACK_TOTAL_HITS_EXACT) {
+            plan.recordTotalHits(new TotalHits(count(generation, query), TotalHits.Relation.EQUAL_TO));
+            totalHitsThreshold = 0;
+        }
+        try {
+            while (plan.hasNext(results.size())) {
+
+                // Perform the search in the Lucene index with a batch size based on the expected pass rate of the filters
+                int batchSize = plan.nextBatchSize(results.size());
+                LOGGER.debug("Fetching {} results from Lucene index", batchSize);
+                TopDocs topDocs = search(generation, query, lastScoreDoc, batchSize, totalHitsThreshold);
+                plan.recordTotalHits(topDocs.totalHits);
+                if (QueryPlanner.getDeadline().hasExpired()) {
+                    plan.stopOnTimeout();
+                }
 
-            LOGGER.info("Fetching results from Lucene index");
+                ScoreDoc[] hits = topDocs.scoreDocs;
+                if (hits.length == 0) {
+                    // No (more) documents found, stop fetching results
+                    plan.record(0, 0, batchSize);
+                    break;
+                }
 
-            // Perform the search in the Lucene index
-            TopDocs topDocs = null;
-            if (lastScoreDoc == null) {
-                topDocs = searcher.search(query, numHitsLimit);
-            } else {
-                topDocs = searcher.searchAfter(lastScoreDoc, query, numHitsLimit - results.size());
-            }
+                lastScoreDoc = hits[hits.length-1];
+                LOGGER.debug("Fetched {} documents from Lucene index", topDocs.totalHits);
 
-            if (topDocs.scoreDocs.length == 0) {
-                // No (more) documents found, stop fetching results
-                break;
+                // Fetch metadata for all search results of the iteration with one query,
+                // the rows of the metadata table are keyed by the Lucene document numbers
+                LOGGER.debug("Fetching metadata for {} documents of search iteration", hits.length);
+                int[] docOrds = new int[hits.length];
+                for (int i = 0; i < hits.length; i++) {
+                    docOrds[i] = hits[i].doc;
+                }
+                long duckDbStart = System.nanoTime();
+                MetadataBatch batch;
+                try (Tracing.SpanScope span = Tracing.startSpan("mosaic.duckdb.metadata", indexName)) {
+                    batch = dbConn.retrieveMetadataBatch(generation, docOrds, metadataQuery, queryParams, metadataColumns);
+                    span.getSpan().setAttribute(Tracing.NUM_DOCUMENTS, (long) batch.getNumRows());
+                }
+                SearchMetrics.recordStage(SearchMetrics.STAGE_DUCKDB, indexName, System.nanoTime() - duckDbStart);
+
+                // Add the search results in the order of the hits if they pass the manual filter of the modules
+                long filterStart = System.nanoTime();
+                MetadataRow[] rows = new MetadataRow[hits.length];
+                for (int i = 0; i < hits.length; i++) {
+                    int row = batch.getRow(hits[i].doc);
+                    if (row >= 0) {
+                        rows[i] = batch.row(row);
+                        rows[i].put("index", indexName);
+                        rows[i].put(ReRanker.FEATURE_SCORE, Float.toString(hits[i].score));
+                    }
+                }
+                applyManualFilters(rows, queryParams, indexName);
+                int numDuplicates = collapse(generation, collapser, hits, rows, numHitsLimit - results.size());
+                int numPassed = 0;
+                for (int i = 0; i < hits.length; i++) {
+                    if (rows[i] != null) {
+                        results.add(rows[i]);
+                        resultScoreDocs.add(hits[i]);
+                        numPassed++;
+                    }
+                }
+                plan.record(hits.length, numPassed, batchSize);
+                SearchMetrics.recordStage(SearchMetrics.STAGE_FILTER, indexName, System.nanoTime() - filterStart);
+
+                SearchMetrics.count(SearchMetrics.COUNTER_ITERATIONS, indexName, 1);
+                SearchMetrics.count(SearchMetrics.COUNTER_FETCHED_HITS, indexName, hits.length);
+                SearchMetrics.count(SearchMetrics.COUNTER_FILTER_REJECTIONS, indexName, hits.length - batch.getNumRows(), "filter", "sql");
+                SearchMetrics.count(SearchMetrics.COUNTER_FILTER_REJECTIONS, indexName, batch.getNumRows() - numPassed - numDuplicates, "filter", "manual");
+                SearchMetrics.count(SearchMetrics.COUNTER_FILTER_REJECTIONS, indexName, numDuplicates, "filter", "collapse");
             }
-
-            lastScoreDoc = topDocs.scoreDocs[topDocs.scoreDocs.length-1];
-            ScoreDoc[] hits = topDocs.scoreDocs;
-            LOGGER.info("Fetched {} documents from Lucene index", topDocs.totalHits);
-
-            // Collect the search results from Lucene
-            StoredFields allDocs = reader.storedFields();
-            List<String> documentIds = new ArrayList<>();
-            for (ScoreDoc hit : hits) {
-                Document document = allDocs.document(hit.doc);
-                documentIds.add(document.get("id"));
+        } finally {
+            SearchMetrics.Request request = SearchMetrics.currentRequest();
+            if (request != null && dbConn.getLastMetadataSql() != null) {
+                request.putSqlQuery(indexName, dbConn.getLastMetadataSql(), dbConn.getLastMetadataSqlValues());
             }
+            dbConn.closeConnection();
+            plan.finish();
+        }
 
-            // Fetch metadata for the search results
-            LOGGER.info("Fetching metadata for {} documents of search iteration", documentIds.size());
-
-            List<Map<String, String>> resultsToAdd = documentIds.parallelStream()
-                .map(documentId -> retrieveMetadataForDocument(indexName, documentId, metadataQuery, queryParams, metadataColumns))
-                .filter(result -> result != null)
-                .collect(Collectors.toList());
+        if (allocatedBytesBefore >= 0) {
+            long allocatedBytes = getAllocatedBytes() - allocatedBytesBefore;
+            LOGGER.debug("Allocated {} bytes while fetching {} results with metadata", allocatedBytes, results.size());
+        }
+        LOGGER.debug("Fetched {} results in {} iterations from {} hits (truncated: {})", results.size(), plan.getIterations(), plan.getFetchedHits(), plan.isTruncated());
+        SearchMetrics.Request request = SearchMetrics.currentRequest();
+        if (request != null) {
+            request.putDetail("fetch." + indexName, plan.getIterations() + " iterations, " + plan.getFetchedHits() + " hits, truncated: " + plan.isTruncated()
+                + (collapser != null ? ", collapsed: " + collapser.getNumCollapsed() : ""));
+        }
 
-            results.addAll(resultsToAdd);
+        // Drop the results fetched beyond the hit limit, the next page continues after the last kept result
+        if (results.size() > numHitsLimit) {
+            lastScoreDoc = resultScoreDocs.get(numHitsLimit - 1);
+            results.subList(numHitsLimit, results.size()).clear();
         }
 
         // Remove search results that do not belong to the requested page and
         // cache the last ScoreDoc for the search request
-        if (searchRequestScoreDocCache.getLastScoreDocFromPreviousPage(queryParams) == null && (int) queryParams.get("page") > 1) {
-            LOGGER.info("Removing search results that do not belong to the requested page");
+        if (!continuesPreviousPage && (int) queryParams.get("page") > 1) {
+            LOGGER.debug("Removing search results that do not belong to the requested page");
             results.subList(0, Math.min(results.size(), (int) queryParams.get("limit") * ((int) queryParams.get("page")-1))).clear();
         }
 
-        LOGGER.info("Adding last ScoreDoc to search request cache");
-        searchRequestScoreDocCache.put(queryParams, lastScoreDoc);
+        LOGGER.debug("Adding last ScoreDoc to search request cache");
+        searchRequestScoreDocCache.put(generation, queryParams, lastScoreDoc, collapser);
+
+        // Re-rank the first search results of the page with the learned model unless disabled by the request
+        if ((boolean) queryParams.get("rerank")) {
+            ReRanker.getInstance().reRank(results, query, queryParams, indexName);
+        }
 
         // Optionally re-rank the search results
         String ranking = (String) queryParams.get("ranking");
@@ -398,56 +551,220 @@ public class SearchUtils {
     }
 
     /**
-     * Retrieves metadata for a document from an index with a given id from the database.
-     * @param indexName Name of the Lucene index
-     * @param documentId Id of the document
-     * @param metadataQuery SQL query for retrieving metadata
+     * Removes the rows of hits that duplicate a higher-scored result of the request.
+     * Only rows that passed the filters are collapsed, so that a duplicate is kept if the better hit was filtered out.
+     * @param generation Acquired generation of the Lucene index
+     * @param collapser Duplicate collapser of the request or null if duplicates are not collapsed
+     * @param hits Hits of the iteration in score order
+     * @param rows Rows of the hits, null for hits that did not pass the filters
+     * @param maxKept Number of results that are still missing to reach the hit limit
+     * @return Number of removed rows
+     */
+    private static int collapse(IndexGeneration generation, DuplicateCollapser collapser, ScoreDoc[] hits, MetadataRow[] rows, int maxKept) throws IOException {
+        if (collapser == null) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] != null) {
+                positions.add(i);
+            }
+        }
+        ScoreDoc[] passedHits = new ScoreDoc[positions.size()];
+        for (int i = 0; i < passedHits.length; i++) {
+            passedHits[i] = hits[positions.get(i)];
+        }
+
+        boolean[] duplicates = collapser.collapse(generation.getReader(), passedHits, Math.max(0, maxKept));
+        int numDuplicates = 0;
+        for (int i = 0; i < duplicates.length; i++) {
+            if (duplicates[i]) {
+                rows[positions.get(i)] = null;
+                numDuplicates++;
+            }
+        }
+        SearchMetrics.recordStage(SearchMetrics.STAGE_COLLAPSE, generation.getIndexName(), System.nanoTime() - start);
+        return numDuplicates;
+    }
+
+    /**
+     * Searches in a Lucene index while holding a permit of the Lucene limiter.
+     * @param generation Acquired generation of the Lucene index
+     * @param query Query object
+     * @param after Last hit of the previous batch or null to fetch the top hits
+     * @param numHits Number of hits to fetch
+     * @param totalHitsThreshold Number of hits up to which the total number of hits is counted exactly,
+     *                           beyond it Lucene skips non-competitive hits and reports a lower bound
+     * @return Top hits of the search
+     * @throws IOException If the search failed or no permit could be acquired in time
+     */
+    static TopDocs search(IndexGeneration generation, Query query, ScoreDoc after, int numHits, int totalHitsThreshold) throws IOException {
+        IndexSearcher searcher = generation.getSearcher();
+        DownstreamLimiter limiter = DownstreamLimiter.getLucene();
+        if (!limiter.tryAcquire()) {
+            throw new IOException("Timed out waiting for a Lucene search permit");
+        }
+        long start = System.nanoTime();
+        QueryPlanner.Deadline deadline = QueryPlanner.getDeadline();
+        deadline.start(CoreConfig.getInstance().getSearchTimeoutMs());
+        try (Tracing.SpanScope span = Tracing.startSpan("mosaic.lucene.search", generation.getIndexName())) {
+            TopDocs topDocs = searcher.search(query, TopScoreDocCollector.createSharedManager(numHits, after, totalHitsThreshold));
+            span.getSpan().setAttribute(Tracing.NUM_DOCUMENTS, (long) topDocs.scoreDocs.length);
+            if (deadline.hasExpired()) {
+                // The searcher returns the hits collected until the timeout
+                LOGGER.warn("Lucene search in index {} timed out after {} hits: {}", generation.getIndexName(), topDocs.scoreDocs.length, query);
+                span.getSpan().setAttribute(Tracing.TIMED_OUT, true);
+                SearchMetrics.count(SearchMetrics.COUNTER_TIMEOUTS, generation.getIndexName(), 1);
+            }
+            return topDocs;
+        } finally {
+            deadline.finish();
+            limiter.release();
+            SearchMetrics.recordStage(SearchMetrics.STAGE_LUCENE, generation.getIndexName(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Counts the hits of a query in a Lucene index while holding a permit of the Lucene limiter.
+     * Lucene counts single term queries and match-all queries per segment from the index statistics without visiting
+     * the hits. Exact counts are cached per index generation, so that the pages of a query are counted only once.
+     * @param generation Acquired generation of the Lucene index
+     * @param query Query object
+     * @return Exact number of hits, or the number of hits counted until the search timeout
+     * @throws IOException If the count failed or no permit could be acquired in time
+     */
+    private static int count(IndexGeneration generation, Query query) throws IOException {
+        Integer cachedCount = TotalHitsCache.getInstance().get(generation, query);
+        if (cachedCount != null) {
+            return cachedCount;
+        }
+
+        DownstreamLimiter limiter = DownstreamLimiter.getLucene();
+        if (!limiter.tryAcquire()) {
+            throw new IOException("Timed out waiting for a Lucene search permit");
+        }
+        long start = System.nanoTime();
+        QueryPlanner.Deadline deadline = QueryPlanner.getDeadline();
+        deadline.start(CoreConfig.getInstance().getSearchTimeoutMs());
+        try (Tracing.SpanScope span = Tracing.startSpan("mosaic.lucene.count", generation.getIndexName())) {
+            int count = generation.getSearcher().count(query);
+            span.getSpan().setAttribute(Tracing.NUM_DOCUMENTS, (long) count);
+            if (deadline.hasExpired()) {
+                LOGGER.warn("Lucene count in index {} timed out after {} hits: {}", generation.getIndexName(), count, query);
+                span.getSpan().setAttribute(Tracing.TIMED_OUT, true);
+                SearchMetrics.count(SearchMetrics.COUNTER_TIMEOUTS, generation.getIndexName(), 1);
+            } else {
+                TotalHitsCache.getInstance().put(generation, query, count);
+            }
+            return count;
+        } finally {
+            deadline.finish();
+            limiter.release();
+            SearchMetrics.recordStage(SearchMetrics.STAGE_LUCENE, generation.getIndexName(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Plans the query for the index, lets the metadata modules rewrite the scoring query and adds their filter queries as non-scoring clauses.
+     * @param query Query object
+     * @param generation Acquired generation of the Lucene index
      * @param queryParams Parsed query parameters
-     * @param metadataColumns Set of available metadata columns in the Parquet file(s)
-     * @return Map of metadata columns and their values representing the search result
+     * @return Query restricted to the documents passing the filters of the modules
      */
-    private static Map<String, String> retrieveMetadataForDocument(String indexName, String documentId, String metadataQuery, Map<String, Object> queryParams, Set<String> metadataColumns) {
-        try {
-            LOGGER.info("Retrieving metadata for document with id: {}", documentId);
-            DbConnection dbConn = new DbConnection();
-            ResultSet rs = dbConn.retrieveMetadataForDocument(indexName, documentId, metadataQuery, queryParams, metadataColumns);
-            ResultSetMetaData rsMetadata = rs.getMetaData();
-            LOGGER.info("Retrieved metadata for document with id: {}", documentId);
-
-            while (rs.next()) {
-
-                // Create a map of metadata columns and their values for the search result
-                Map<String, String> result = new TreeMap<>();
-                for (int i = 1; i <= rsMetadata.getColumnCount(); ++i) {
-                    result.put(rsMetadata.getColumnName(i), rs.getString(i));
-                }
-                result.put("index", indexName);
-
-                // Check if the search result passes the manual filter of the modules
-                boolean passedManualFilter = true;
-                for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
-                    if (!module.inManualFilter(result, queryParams)) {
-                        LOGGER.info("Search result did not pass manual filter of module: {}", module.getClass().getSimpleName());
-                        passedManualFilter = false;
-                        break;
-                    }
-                }
+    private static Query applyModuleQueries(Query query, IndexGeneration generation, Map<String, Object> queryParams) throws IOException {
+        // Plan the query with the statistics of the index, then let the query component rewrite the planned query
+        query = QueryPlanner.getInstance().plan(query, generation.getReader());
+        if ((boolean) queryParams.getOrDefault("bm25f", true)) {
+            query = QueryPlanner.getInstance().combineFields(query, generation);
+        }
+        if (CoreConfig.getInstance().isPluginEnabled(PluginManager.QUERY)) {
+            query = ((QueryComponent) PluginManager.getInstance().getComponents().get(PluginManager.QUERY)).planQuery(query, generation.getSearcher());
+        }
 
-                // Add the search result to the list of results
-                if (passedManualFilter) {
-                    rs.close();
-                    dbConn.closeConnection();
-                    return result;
-                }
+        // Collect the filter queries first, so that modules running their own searches can restrict them to the same documents
+        List<Query> filterQueries = new ArrayList<>();
+        for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
+            Query filterQuery;
+            try (Tracing.SpanScope span = startModuleSpan(module, "getFilterQuery", generation.getIndexName())) {
+                filterQuery = module.getFilterQuery(generation, queryParams);
             }
+            if (filterQuery != null) {
+                filterQueries.add(filterQuery);
+            }
+        }
+        Query combinedFilterQuery = null;
+        if (filterQueries.size() == 1) {
+            combinedFilterQuery = filterQueries.get(0);
+        } else if (filterQueries.size() > 1) {
+            BooleanQuery.Builder filterBuilder = new BooleanQuery.Builder();
+            filterQueries.forEach(filterQuery -> filterBuilder.add(filterQuery, BooleanClause.Occur.FILTER));
+            combinedFilterQuery = filterBuilder.build();
+        }
 
-            rs.close();
-            dbConn.closeConnection();
-        } catch (SQLException e) {
-            LOGGER.error("Error while retrieving metadata for document with id: {}", documentId, e);
+        for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
+            try (Tracing.SpanScope span = startModuleSpan(module, "rewriteQuery", generation.getIndexName())) {
+                query = module.rewriteQuery(generation, query, combinedFilterQuery, queryParams);
+            }
+        }
+
+        if (filterQueries.isEmpty()) {
+            return query;
+        }
+        BooleanQuery.Builder builder = new BooleanQuery.Builder().add(query, BooleanClause.Occur.MUST);
+        filterQueries.forEach(filterQuery -> builder.add(filterQuery, BooleanClause.Occur.FILTER));
+        return builder.build();
+    }
+
+    /**
+     * Applies the manual filters of all metadata modules to the search results of a batch.
+     * The modules are applied one after another, so that each module hook is traced once per batch.
+     * @param rows Search results of the batch, rejected search results are set to null
+     * @param queryParams Parsed query parameters
+     * @param indexName Name of the index
+     */
+    private static void applyManualFilters(MetadataRow[] rows, Map<String, Object> queryParams, String indexName) {
+        for (MetadataModule module : PluginManager.getInstance().getModules().values()) {
+            try (Tracing.SpanScope span = startModuleSpan(module, "inManualFilter", indexName)) {
+                long numRejected = 0;
+                for (int i = 0; i < rows.length; i++) {
+                    if (rows[i] != null && !module.inManualFilter(rows[i], queryParams)) {
+                        LOGGER.debug("Search result did not pass manual filter of module: {}", module.getClass().getSimpleName());
+                        rows[i] = null;
+                        numRejected++;
+                    }
+                }
+                span.getSpan().setAttribute(Tracing.NUM_REJECTED, numRejected);
+            }
         }
+    }
+
+    /**
+     * Starts a span for a hook of a metadata module.
+     * @param module Metadata module
+     * @param hook Name of the hook
+     * @param indexName Name of the index
+     * @return Scope of the span
+     */
+    private static Tracing.SpanScope startModuleSpan(MetadataModule module, String hook, String indexName) {
+        String moduleName = module.getClass().getSimpleName();
+        Tracing.SpanScope span = Tracing.startSpan("mosaic.module." + moduleName + "." + hook, indexName);
+        span.getSpan().setAttribute(Tracing.MODULE, moduleName);
+        return span;
+    }
 
-        // Return null if no metadata could be retrieved or the search result did not pass the manual filter
-        return null;
+    /**
+     * Returns the number of bytes allocated on the heap by the current thread so far.
+     * @return Number of allocated bytes or -1 if the JVM does not support measuring allocations
+     */
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (sunThreadMXBean.isThreadAllocatedMemorySupported() && sunThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+                return sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
     }
 }
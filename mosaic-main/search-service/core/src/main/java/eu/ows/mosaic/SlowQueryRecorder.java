@@ -0,0 +1,225 @@
+package eu.ows.mosaic;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Records search requests that take longer than a threshold.
+ * A recorded request contains the raw and parsed query parameters, the parsed Lucene query, the stage timings, the
+ * iteration counts and, for each index, the last DuckDB metadata query with its {@code EXPLAIN ANALYZE} output.
+ * The queries are explained on a background thread and appended as JSON lines to a file. The recorded requests can
+ * be replayed against the running service to check whether a fix helps.
+ */
+public class SlowQueryRecorder {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(SlowQueryRecorder.class);
+
+    public static final String DEFAULT_SLOW_QUERY_LOG_PATH = "logs/slow-queries.jsonl";
+
+    private static final int MAX_RECENT_ENTRIES = 100;
+    private static final int MAX_PENDING_ENTRIES = 100;
+
+    private static SlowQueryRecorder INSTANCE;
+
+    private static final ThreadLocal<Boolean> REPLAYING = ThreadLocal.withInitial(() -> false);
+
+    private final Gson gson = new Gson();
+    private final Path logPath;
+    private final long thresholdNanos;
+    private final Deque<JsonObject> recentEntries = new ArrayDeque<>();
+    private final ExecutorService executor;
+
+    private SlowQueryRecorder(Path logPath, long thresholdMs) {
+        this.logPath = logPath;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+
+        // One background thread with a bounded queue, slow queries are dropped if the recorder cannot keep up
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(MAX_PENDING_ENTRIES), runnable -> {
+            Thread thread = new Thread(runnable, "slow-query-recorder");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+        LOGGER.info("Recording search requests slower than {} ms to {}", thresholdMs, logPath);
+    }
+
+    public static synchronized SlowQueryRecorder getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new SlowQueryRecorder(Path.of(DEFAULT_SLOW_QUERY_LOG_PATH), CoreConfig.getInstance().getSlowQueryThresholdMs());
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Records a request if it took longer than the threshold. Replayed requests are not recorded again.
+     * @param request Timings, counts and detail of the request
+     */
+    public void record(SearchMetrics.Request request) {
+        long elapsedNanos = request.getElapsedNanos();
+        if (elapsedNanos < thresholdNanos || REPLAYING.get()) {
+            return;
+        }
+
+        JsonObject entry = new JsonObject();
+        entry.addProperty("timestamp", System.currentTimeMillis());
+        entry.addProperty("endpoint", request.getEndpoint());
+        entry.addProperty("status", request.getStatus());
+        entry.addProperty("durationMs", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+
+        JsonObject detailObject = new JsonObject();
+        request.getDetail().forEach((key, value) -> detailObject.add(key, gson.toJsonTree(value)));
+        entry.add("detail", detailObject);
+
+        JsonObject stagesObject = new JsonObject();
+        request.getStageNanos().forEach((stage, nanos) -> stagesObject.addProperty(stage, TimeUnit.NANOSECONDS.toMicros(nanos) / 1000.0));
+        entry.add("stagesMs", stagesObject);
+
+        JsonObject countsObject = new JsonObject();
+        request.getCounts().forEach(countsObject::addProperty);
+        entry.add("counts", countsObject);
+
+        Map<String, SearchMetrics.SqlQuery> sqlQueries = new TreeMap<>(request.getSqlQueries());
+        LOGGER.warn("Slow search request ({} ms): {}", entry.get("durationMs"), request.getDetail().get("rawParams"));
+
+        // Explain the metadata queries in the background, the request has already been answered
+        executor.execute(() -> {
+            JsonObject sqlObject = new JsonObject();
+            sqlQueries.forEach((indexName, sqlQuery) -> sqlObject.add(indexName, explain(sqlQuery)));
+            entry.add("sql", sqlObject);
+            write(entry);
+        });
+    }
+
+    /**
+     * Runs {@code EXPLAIN ANALYZE} for a metadata query.
+     */
+    private JsonObject explain(SearchMetrics.SqlQuery sqlQuery) {
+        JsonObject sqlObject = new JsonObject();
+        sqlObject.addProperty("query", sqlQuery.getSql());
+        sqlObject.add("values", gson.toJsonTree(sqlQuery.getValues()));
+
+        DbConnection dbConn = null;
+        try {
+            dbConn = new DbConnection();
+            sqlObject.addProperty("explainAnalyze", dbConn.explainAnalyze(sqlQuery.getSql(), sqlQuery.getValues()));
+        } catch (SQLException e) {
+            LOGGER.error("Failed to explain slow metadata query", e);
+            sqlObject.addProperty("explainAnalyze", "failed: " + e.getMessage());
+        } finally {
+            if (dbConn != null) {
+                dbConn.closeConnection();
+            }
+        }
+        return sqlObject;
+    }
+
+    /**
+     * Appends an entry to the slow query log and keeps it in the recent entries.
+     */
+    private synchronized void write(JsonObject entry) {
+        recentEntries.addLast(entry);
+        if (recentEntries.size() > MAX_RECENT_ENTRIES) {
+            recentEntries.removeFirst();
+        }
+
+        try {
+            if (logPath.getParent() != null) {
+                Files.createDirectories(logPath.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(logPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(entry.toString());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to write slow query log {}", logPath, e);
+        }
+    }
+
+    /**
+     * Returns the most recently recorded requests.
+     * @return JSON array of the recorded requests, oldest first
+     */
+    public synchronized JsonArray getRecentEntries() {
+        JsonArray entriesArray = new JsonArray();
+        recentEntries.forEach(entriesArray::add);
+        return entriesArray;
+    }
+
+    /**
+     * Replays recorded requests against the current build and indexes and compares the durations.
+     * @param limit Maximum number of recorded requests to replay, starting with the most recent ones
+     * @return JSON array with the original and the replayed duration of each request
+     * @throws IOException If the slow query log could not be read
+     */
+    public JsonArray replay(int limit) throws IOException {
+        List<JsonObject> entries = new ArrayList<>();
+        if (Files.exists(logPath)) {
+            for (String line : Files.readAllLines(logPath, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    entries.add(JsonParser.parseString(line).getAsJsonObject());
+                }
+            }
+        }
+        List<JsonObject> selectedEntries = entries.subList(Math.max(0, entries.size() - limit), entries.size());
+        LOGGER.info("Replaying {} recorded slow search requests", selectedEntries.size());
+
+        JsonArray resultsArray = new JsonArray();
+        REPLAYING.set(true);
+        try {
+            for (JsonObject entry : selectedEntries) {
+                JsonObject detailObject = entry.getAsJsonObject("detail");
+                if (detailObject == null || !detailObject.has("rawParams")) {
+                    continue;
+                }
+                Map<String, String> rawParams = gson.fromJson(detailObject.get("rawParams"), new TypeToken<Map<String, String>>() {}.getType());
+
+                JsonObject resultObject = new JsonObject();
+                resultObject.add("params", detailObject.get("rawParams"));
+                resultObject.add("originalMs", entry.get("durationMs"));
+
+                long start = System.nanoTime();
+                try {
+                    if ("searchxml".equals(entry.get("endpoint").getAsString())) {
+                        SearchUtils.searchXml(rawParams);
+                    } else {
+                        SearchUtils.searchJson(rawParams);
+                    }
+                    resultObject.addProperty("status", "ok");
+                } catch (ParseException | IOException | SQLException | RuntimeException e) {
+                    resultObject.addProperty("status", "error: " + e.getMessage());
+                }
+                resultObject.addProperty("replayMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                resultsArray.add(resultObject);
+            }
+        } finally {
+            REPLAYING.remove();
+        }
+
+        return resultsArray;
+    }
+
+}
@@ -0,0 +1,168 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.lucene.search.spell.SuggestWord;
+import org.apache.lucene.search.suggest.Lookup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Completes query prefixes and corrects misspelled queries with the {@link QuerySuggester} of each index,
+ * e.g., for the autocompletion of the search box of a front-end. Corrections are only looked up on request
+ * ({@code correct=true}) for submitted queries, since the last word of a prefix is usually still being typed
+ * and looking up corrections on every keystroke is comparably expensive.
+ */
+@Path("/suggest")
+public class SuggestResource {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(SuggestResource.class);
+
+    private static final int DEFAULT_SUGGESTIONS_LIMIT = 10;
+    private static final int MAX_SUGGESTIONS_LIMIT = 50;
+
+    @GET
+    @RunOnVirtualThread
+    @Produces(MediaType.APPLICATION_JSON)
+    public String suggest(@QueryParam("q") String q, @QueryParam("index") String selectedIndexName, @QueryParam("limit") String limit,
+                          @QueryParam("correct") String correct) throws IOException {
+        LOGGER.debug("Received suggest request: q={}, index={}, limit={}, correct={}", q, selectedIndexName, limit, correct);
+
+        if (q == null) {
+            LOGGER.error("The q parameter is required");
+            throw new MosaicWebException("The q parameter is required");
+        }
+        if (selectedIndexName != null && !CoreUtils.isValidIndex(selectedIndexName)) {
+            LOGGER.error("The selected index {} could not be found", selectedIndexName);
+            throw new MosaicWebException(String.format("The selected index %s could not be found", selectedIndexName));
+        }
+        int numSuggestions = NumberUtils.toInt(limit, DEFAULT_SUGGESTIONS_LIMIT);
+        if (numSuggestions <= 0 || numSuggestions > MAX_SUGGESTIONS_LIMIT) {
+            LOGGER.error("The limit parameter {} is invalid and must be between 1 and {}", limit, MAX_SUGGESTIONS_LIMIT);
+            throw new MosaicWebException(String.format("The limit parameter %s is invalid and must be between 1 and %d", limit, MAX_SUGGESTIONS_LIMIT));
+        }
+
+        try (SearchMetrics.Request request = SearchMetrics.startRequest("suggest", "json")) {
+            ResourceManager resourceManager = ResourceManager.getInstance();
+            Set<String> indexNames = selectedIndexName != null ? Set.of(selectedIndexName) : resourceManager.getIndexNames();
+
+            // Acquire the active generation of each index that has a suggester
+            List<IndexGeneration> generations = new ArrayList<>();
+            try {
+                for (String indexName : indexNames) {
+                    IndexGeneration generation = resourceManager.acquire(indexName);
+                    if (generation == null) {
+                        continue;
+                    }
+                    generations.add(generation);
+                }
+
+                JsonObject resultsObject = new JsonObject();
+                resultsObject.add("suggestions", completePrefix(q, numSuggestions, generations));
+                String correction = BooleanUtils.toBoolean(correct) ? correctQuery(q, generations) : null;
+                if (correction != null) {
+                    resultsObject.addProperty("didYouMean", correction);
+                }
+                return resultsObject.toString();
+            } catch (IOException | RuntimeException e) {
+                request.setStatus("error");
+                throw e;
+            } finally {
+                generations.forEach(resourceManager::release);
+            }
+        }
+    }
+
+    /**
+     * Completes a query prefix with the suggesters of the indexes. Suggestions of several indexes are merged by their highest weight.
+     * @return Suggestions ordered by weight
+     */
+    private static JsonArray completePrefix(String prefix, int numSuggestions, List<IndexGeneration> generations) throws IOException {
+        Map<String, Long> weights = new LinkedHashMap<>();
+        for (IndexGeneration generation : generations) {
+            QuerySuggester suggester = (QuerySuggester) generation.getAttachment(QuerySuggester.ATTACHMENT_KEY);
+            if (suggester == null) {
+                continue;
+            }
+            long start = System.nanoTime();
+            for (Lookup.LookupResult result : suggester.suggest(prefix, numSuggestions)) {
+                weights.merge(result.key.toString(), result.value, Math::max);
+            }
+            SearchMetrics.recordStage(SearchMetrics.STAGE_SUGGEST, generation.getIndexName(), System.nanoTime() - start);
+        }
+
+        JsonArray suggestions = new JsonArray();
+        weights.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .limit(numSuggestions)
+            .forEach(entry -> suggestions.add(entry.getKey()));
+        return suggestions;
+    }
+
+    /**
+     * Corrects the words of a submitted query that occur in none of the indexes with the most similar word of any index.
+     * All words including the last one are assumed to be complete, so this must not be called for prefixes.
+     * @return Corrected query or null if no word has been corrected
+     */
+    private static String correctQuery(String q, List<IndexGeneration> generations) throws IOException {
+        List<QuerySuggester> suggesters = new ArrayList<>();
+        for (IndexGeneration generation : generations) {
+            QuerySuggester suggester = (QuerySuggester) generation.getAttachment(QuerySuggester.ATTACHMENT_KEY);
+            if (suggester != null) {
+                suggesters.add(suggester);
+            }
+        }
+        if (suggesters.isEmpty()) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        String[] words = q.toLowerCase().trim().split("\\s+");
+        boolean corrected = false;
+        for (int i = 0; i < words.length; i++) {
+            if (words[i].isEmpty() || containsWord(suggesters, words[i])) {
+                continue;
+            }
+            SuggestWord bestCorrection = null;
+            for (QuerySuggester suggester : suggesters) {
+                SuggestWord correction = suggester.correct(words[i]);
+                if (correction != null && (bestCorrection == null || correction.score > bestCorrection.score
+                        || (correction.score == bestCorrection.score && correction.freq > bestCorrection.freq))) {
+                    bestCorrection = correction;
+                }
+            }
+            if (bestCorrection != null) {
+                words[i] = bestCorrection.string;
+                corrected = true;
+            }
+        }
+        SearchMetrics.recordStage(SearchMetrics.STAGE_SPELLCHECK, null, System.nanoTime() - start);
+        return corrected ? String.join(" ", words) : null;
+    }
+
+    private static boolean containsWord(List<QuerySuggester> suggesters, String word) throws IOException {
+        for (QuerySuggester suggester : suggesters) {
+            if (suggester.containsWord(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
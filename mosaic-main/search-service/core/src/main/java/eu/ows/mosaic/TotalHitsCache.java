@@ -0,0 +1,139 @@
+package eu.ows.mosaic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the exact number of hits of a query in an index, so that paging through the results of a query
+ * (e.g., the OpenSearch XML pages with {@code opensearch:totalResults}) counts the hits only once.
+ * The entries are keyed by the index generation and the query including the filter queries of the modules,
+ * and the entries of an index are dropped when the index is reloaded. Queries that contain a {@link RequestScopedQuery}
+ * (e.g., the document sets of the geo filter) are never equal to the query of another request and are not cached.
+ */
+public class TotalHitsCache {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(TotalHitsCache.class);
+
+    private static TotalHitsCache INSTANCE;
+
+    private final Map<Key, Integer> counts;
+
+    private TotalHitsCache(int maxSize) {
+        this.counts = new LinkedHashMap<>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static synchronized TotalHitsCache getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new TotalHitsCache(CoreConfig.getInstance().getTotalHitsCacheSize());
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Get the cached number of hits of a query in an index generation if it exists.
+     * @param generation Generation of the index
+     * @param query Query including the filter queries of the modules
+     * @return Number of hits or null if the query has not been counted in this generation
+     */
+    public Integer get(IndexGeneration generation, Query query) {
+        if (!isCacheable(query)) {
+            return null;
+        }
+        Integer count;
+        synchronized (counts) {
+            count = counts.get(new Key(generation, query));
+        }
+        SearchMetrics.countCacheLookup("totalhits", count != null);
+        return count;
+    }
+
+    /**
+     * Caches the exact number of hits of a query in an index generation.
+     * @param generation Generation of the index
+     * @param query Query including the filter queries of the modules
+     * @param count Exact number of hits
+     */
+    public void put(IndexGeneration generation, Query query, int count) {
+        if (!isCacheable(query)) {
+            return;
+        }
+        synchronized (counts) {
+            counts.put(new Key(generation, query), count);
+        }
+    }
+
+    /**
+     * Drops the cached counts of all generations of an index.
+     * @param indexName Name of the index
+     */
+    public void invalidate(String indexName) {
+        synchronized (counts) {
+            counts.keySet().removeIf(key -> key.indexName.equals(indexName));
+        }
+        LOGGER.debug("Invalidated cached hit counts of index {}", indexName);
+    }
+
+    /**
+     * Checks if a query can be cached, i.e., if it contains no query over data computed for a single request.
+     * Such queries are only equal to themselves and their entries would keep their data alive without ever being hit.
+     */
+    private static boolean isCacheable(Query query) {
+        boolean[] requestScoped = {false};
+        query.visit(new QueryVisitor() {
+            @Override
+            public QueryVisitor getSubVisitor(BooleanClause.Occur occur, Query parent) {
+                // Also visit prohibited clauses, which are skipped by default
+                return this;
+            }
+
+            @Override
+            public void visitLeaf(Query leafQuery) {
+                requestScoped[0] |= leafQuery instanceof RequestScopedQuery;
+            }
+        });
+        return !requestScoped[0];
+    }
+
+    /**
+     * Key of a cached count. Lucene queries implement equals and hashCode, so equal queries share one entry.
+     */
+    private static class Key {
+
+        private final String indexName;
+        private final long generation;
+        private final Query query;
+
+        private Key(IndexGeneration generation, Query query) {
+            this.indexName = generation.getIndexName();
+            this.generation = generation.getGeneration();
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key otherKey = (Key) other;
+            return generation == otherKey.generation && indexName.equals(otherKey.indexName) && query.equals(otherKey.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(indexName, generation, query);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package eu.ows.mosaic;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Singleton;
+
+/**
+ * Exports spans as JSON lines to a local file, so that traces can be inspected without an OTLP collector.
+ * The exporter is enabled by setting {@code mosaic.tracing.file} to the path of the file.
+ */
+public class TraceFileExporter implements SpanExporter {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(TraceFileExporter.class);
+
+    private final BufferedWriter writer;
+
+    private TraceFileExporter(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Producer of the span processor of the file exporter, which is picked up by the OpenTelemetry extension.
+     */
+    public static class Producer {
+
+        @ConfigProperty(name = "mosaic.tracing.file")
+        Optional<String> traceFile;
+
+        @Produces
+        @Singleton
+        public SpanProcessor traceFileSpanProcessor() {
+            if (traceFile.isEmpty() || traceFile.get().isBlank()) {
+                return SpanProcessor.composite();
+            }
+            try {
+                LOGGER.info("Exporting spans to {}", traceFile.get());
+                return BatchSpanProcessor.builder(new TraceFileExporter(Path.of(traceFile.get()))).build();
+            } catch (IOException e) {
+                LOGGER.error("Failed to open trace file {}", traceFile.get(), e);
+                return SpanProcessor.composite();
+            }
+        }
+    }
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> spans) {
+        try {
+            for (SpanData span : spans) {
+                JsonObject spanObject = new JsonObject();
+                spanObject.addProperty("traceId", span.getTraceId());
+                spanObject.addProperty("spanId", span.getSpanId());
+                spanObject.addProperty("parentSpanId", span.getParentSpanId());
+                spanObject.addProperty("name", span.getName());
+                spanObject.addProperty("startEpochNanos", span.getStartEpochNanos());
+                spanObject.addProperty("durationMs", TimeUnit.NANOSECONDS.toMicros(span.getEndEpochNanos() - span.getStartEpochNanos()) / 1000.0);
+                spanObject.addProperty("status", span.getStatus().getStatusCode().name());
+
+                JsonObject attributesObject = new JsonObject();
+                span.getAttributes().forEach((key, value) -> attributesObject.addProperty(key.getKey(), String.valueOf(value)));
+                spanObject.add("attributes", attributesObject);
+
+                writer.write(spanObject.toString());
+                writer.newLine();
+            }
+            writer.flush();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            LOGGER.error("Failed to export {} spans", spans.size(), e);
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        try {
+            synchronized (this) {
+                writer.flush();
+            }
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public synchronized CompletableResultCode shutdown() {
+        try {
+            writer.close();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package eu.ows.mosaic;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * Adds the trace id of a request to its response, so that a slow or failed response can be looked up in the traces.
+ */
+@Provider
+public class TraceIdResponseFilter implements ContainerResponseFilter {
+
+    public static final String TRACE_ID_HEADER = "X-Trace-Id";
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        String traceId = Tracing.currentTraceId();
+        if (traceId != null) {
+            responseContext.getHeaders().putSingle(TRACE_ID_HEADER, traceId);
+        }
+    }
+
+}
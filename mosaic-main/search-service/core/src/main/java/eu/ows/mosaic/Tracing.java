@@ -0,0 +1,110 @@
+package eu.ows.mosaic;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.quarkus.arc.Arc;
+import io.quarkus.arc.InstanceHandle;
+
+/**
+ * Creates OpenTelemetry spans for the stages of the search pipeline.
+ * The spans are children of the span of the HTTP request created by Quarkus and are exported as configured in
+ * {@code application.properties} (OTLP collector and/or JSON file). Outside of the Quarkus application
+ * (e.g., in the importer), a no-op tracer is used.
+ */
+public class Tracing {
+
+    public static final String INSTRUMENTATION_NAME = "eu.ows.mosaic";
+
+    public static final AttributeKey<String> INDEX = AttributeKey.stringKey("mosaic.index");
+    public static final AttributeKey<String> MODULE = AttributeKey.stringKey("mosaic.module");
+    public static final AttributeKey<Long> NUM_DOCUMENTS = AttributeKey.longKey("mosaic.documents");
+    public static final AttributeKey<Long> NUM_REJECTED = AttributeKey.longKey("mosaic.rejected");
+    public static final AttributeKey<Boolean> TIMED_OUT = AttributeKey.booleanKey("mosaic.timed_out");
+
+    private static Tracer TRACER;
+
+    private Tracing() {}
+
+    private static synchronized Tracer getTracer() {
+        if (TRACER == null) {
+            OpenTelemetry openTelemetry = OpenTelemetry.noop();
+            if (Arc.container() != null) {
+                InstanceHandle<OpenTelemetry> handle = Arc.container().instance(OpenTelemetry.class);
+                if (handle.isAvailable()) {
+                    openTelemetry = handle.get();
+                }
+            }
+            TRACER = openTelemetry.getTracer(INSTRUMENTATION_NAME);
+        }
+        return TRACER;
+    }
+
+    /**
+     * Starts a span as child of the current span and makes it the current span.
+     * @param name Name of the span
+     * @return Scope of the span that has to be closed when the stage has finished
+     */
+    public static SpanScope startSpan(String name) {
+        Span span = getTracer().spanBuilder(name).startSpan();
+        return new SpanScope(span, span.makeCurrent());
+    }
+
+    /**
+     * Starts a span for a stage of the search in an index.
+     * @param name Name of the span
+     * @param indexName Name of the index
+     * @return Scope of the span that has to be closed when the stage has finished
+     */
+    public static SpanScope startSpan(String name, String indexName) {
+        SpanScope scope = startSpan(name);
+        scope.getSpan().setAttribute(INDEX, indexName);
+        return scope;
+    }
+
+    /**
+     * Getter method for the trace id of the current span.
+     * @return Trace id or null if there is no valid current span
+     */
+    public static String currentTraceId() {
+        Span span = Span.current();
+        return span.getSpanContext().isValid() ? span.getSpanContext().getTraceId() : null;
+    }
+
+    /**
+     * Span that is the current span until it is closed.
+     */
+    public static class SpanScope implements AutoCloseable {
+
+        private final Span span;
+        private final Scope scope;
+
+        private SpanScope(Span span, Scope scope) {
+            this.span = span;
+            this.scope = scope;
+        }
+
+        public Span getSpan() {
+            return span;
+        }
+
+        /**
+         * Marks the span as failed.
+         * @param exception Exception that caused the failure
+         */
+        public void recordFailure(Throwable exception) {
+            span.recordException(exception);
+            span.setStatus(StatusCode.ERROR);
+        }
+
+        @Override
+        public void close() {
+            scope.close();
+            span.end();
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+package eu.ows.mosaic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+
+import jakarta.ws.rs.ServiceUnavailableException;
+
+class AdmissionControllerTest {
+
+    // Initial limit of the endpoints and indexes
+    private static final int INITIAL_LIMIT = 16;
+
+    private final AdmissionController admissionController = AdmissionController.getInstance();
+
+    /**
+     * Returns the state of a limit. The controller is a singleton, so every test uses its own endpoints and indexes.
+     */
+    private JsonObject stats(String key) {
+        return admissionController.getStats().getAsJsonObject(key);
+    }
+
+    private Deque<AdmissionController.Ticket> saturate(String endpoint, List<String> indexNames) {
+        Deque<AdmissionController.Ticket> tickets = new ArrayDeque<>();
+        for (int i = 0; i < INITIAL_LIMIT; i++) {
+            tickets.add(admissionController.admit(endpoint, indexNames));
+        }
+        return tickets;
+    }
+
+    @Test
+    void testSaturatedLimitSheds() {
+        Deque<AdmissionController.Ticket> tickets = saturate("saturated", List.of());
+
+        ServiceUnavailableException exception = assertThrows(ServiceUnavailableException.class, () -> admissionController.admit("saturated", List.of()));
+        assertEquals(503, exception.getResponse().getStatus());
+        assertEquals("1", exception.getResponse().getHeaderString("Retry-After"));
+
+        JsonObject limitObject = stats(AdmissionController.ENDPOINT_PREFIX + "saturated");
+        assertEquals(INITIAL_LIMIT, limitObject.get("inFlight").getAsInt());
+        assertEquals(INITIAL_LIMIT, limitObject.get("admitted").getAsInt());
+        assertEquals(1, limitObject.get("shed").getAsInt());
+
+        tickets.forEach(AdmissionController.Ticket::close);
+        assertEquals(0, stats(AdmissionController.ENDPOINT_PREFIX + "saturated").get("inFlight").getAsInt());
+    }
+
+    @Test
+    void testQueueWaitIsBounded() {
+        Deque<AdmissionController.Ticket> tickets = saturate("bounded", List.of());
+
+        long start = System.nanoTime();
+        assertThrows(ServiceUnavailableException.class, () -> admissionController.admit("bounded", List.of()));
+        long waitMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // The request waits for the maximum queue wait of 100 ms before it is shed
+        assertTrue(waitMs >= 100, "Waited " + waitMs + " ms");
+        assertTrue(waitMs < 5000, "Waited " + waitMs + " ms");
+        tickets.forEach(AdmissionController.Ticket::close);
+    }
+
+    @Test
+    void testQueuedRequestIsAdmittedWhenSlotIsReleased() throws InterruptedException {
+        Deque<AdmissionController.Ticket> tickets = saturate("queued", List.of());
+        AdmissionController.Ticket released = tickets.poll();
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            executor.schedule(released::close, 20, TimeUnit.MILLISECONDS);
+            tickets.add(admissionController.admit("queued", List.of()));
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+
+        JsonObject limitObject = stats(AdmissionController.ENDPOINT_PREFIX + "queued");
+        assertEquals(INITIAL_LIMIT + 1, limitObject.get("admitted").getAsInt());
+        assertEquals(0, limitObject.get("shed").getAsInt());
+        tickets.forEach(AdmissionController.Ticket::close);
+    }
+
+    @Test
+    void testLimitGrowsWhenUsed() {
+        Deque<AdmissionController.Ticket> tickets = saturate("used", List.of());
+
+        // Each request finishing at the limit adds 1 / limit, so the limit grows by one after a window of requests
+        for (int i = 0; i <= INITIAL_LIMIT; i++) {
+            assertEquals(INITIAL_LIMIT, stats(AdmissionController.ENDPOINT_PREFIX + "used").get("limit").getAsInt());
+            tickets.poll().close();
+            tickets.add(admissionController.admit("used", List.of()));
+        }
+        assertEquals(INITIAL_LIMIT + 1, stats(AdmissionController.ENDPOINT_PREFIX + "used").get("limit").getAsInt());
+
+        // The grown limit admits another request
+        tickets.add(admissionController.admit("used", List.of()));
+        tickets.forEach(AdmissionController.Ticket::close);
+    }
+
+    @Test
+    void testLimitDoesNotGrowWhenUnused() {
+        for (int i = 0; i < 10 * INITIAL_LIMIT; i++) {
+            admissionController.admit("unused", List.of()).close();
+        }
+
+        JsonObject limitObject = stats(AdmissionController.ENDPOINT_PREFIX + "unused");
+        assertEquals(INITIAL_LIMIT, limitObject.get("limit").getAsInt());
+        assertEquals(10 * INITIAL_LIMIT, limitObject.get("admitted").getAsInt());
+    }
+
+    @Test
+    void testLimitShrinksMultiplicatively() {
+        int[] expectedLimits = {14, 12, 11, 10, 9, 8};
+        for (int expectedLimit : expectedLimits) {
+            AdmissionController.Ticket ticket = admissionController.admit("failing", List.of());
+            ticket.fail();
+            ticket.close();
+            assertEquals(expectedLimit, stats(AdmissionController.ENDPOINT_PREFIX + "failing").get("limit").getAsInt());
+        }
+
+        // The limit never drops below one request
+        for (int i = 0; i < 100; i++) {
+            AdmissionController.Ticket ticket = admissionController.admit("failing", List.of());
+            ticket.fail();
+            ticket.close();
+        }
+        assertEquals(1, stats(AdmissionController.ENDPOINT_PREFIX + "failing").get("limit").getAsInt());
+    }
+
+    @Test
+    void testShedRequestCancelsAcquiredLimits() {
+        Deque<AdmissionController.Ticket> tickets = saturate("other", List.of("cancel-index"));
+
+        assertThrows(ServiceUnavailableException.class, () -> admissionController.admit("cancel", List.of("cancel-index")));
+
+        // The endpoint limit was acquired before the index limit was saturated and is handed back
+        JsonObject endpointObject = stats(AdmissionController.ENDPOINT_PREFIX + "cancel");
+        assertEquals(0, endpointObject.get("inFlight").getAsInt());
+        assertEquals(0, endpointObject.get("admitted").getAsInt());
+        assertEquals(0, endpointObject.get("shed").getAsInt());
+        assertEquals(INITIAL_LIMIT, endpointObject.get("limit").getAsInt());
+
+        JsonObject indexObject = stats(AdmissionController.INDEX_PREFIX + "cancel-index");
+        assertEquals(INITIAL_LIMIT, indexObject.get("admitted").getAsInt());
+        assertEquals(1, indexObject.get("shed").getAsInt());
+        tickets.forEach(AdmissionController.Ticket::close);
+    }
+
+    @Test
+    void testRejectedRequestDoesNotAdaptLimit() {
+        Deque<AdmissionController.Ticket> tickets = saturate("rejected", List.of());
+
+        // The same requests would grow the limit by one if they were not rejected, see testLimitGrowsWhenUsed
+        for (int i = 0; i <= INITIAL_LIMIT; i++) {
+            AdmissionController.Ticket ticket = tickets.poll();
+            ticket.reject();
+            ticket.close();
+            tickets.add(admissionController.admit("rejected", List.of()));
+        }
+        assertEquals(INITIAL_LIMIT, stats(AdmissionController.ENDPOINT_PREFIX + "rejected").get("limit").getAsInt());
+        assertThrows(ServiceUnavailableException.class, () -> admissionController.admit("rejected", List.of()));
+
+        tickets.forEach(ticket -> {
+            ticket.reject();
+            ticket.close();
+        });
+        JsonObject limitObject = stats(AdmissionController.ENDPOINT_PREFIX + "rejected");
+        assertEquals(INITIAL_LIMIT, limitObject.get("limit").getAsInt());
+        assertEquals(0, limitObject.get("inFlight").getAsInt());
+    }
+
+    @Test
+    void testFailedRequestIsNotTreatedAsRejected() {
+        AdmissionController.Ticket ticket = admissionController.admit("failed-rejected", List.of());
+        ticket.reject();
+        ticket.fail();
+        ticket.close();
+
+        assertEquals(14, stats(AdmissionController.ENDPOINT_PREFIX + "failed-rejected").get("limit").getAsInt());
+    }
+
+}
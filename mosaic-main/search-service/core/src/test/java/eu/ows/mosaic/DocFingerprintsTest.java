@@ -0,0 +1,93 @@
+package eu.ows.mosaic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class DocFingerprintsTest {
+
+    private static final long SIMHASH = 0x0f0f0f0f0f0f0f0fL;
+
+    @Test
+    void testSchemeAndWwwAreDropped() {
+        assertEquals("example.org/page", DocFingerprints.canonicalizeUrl("https://www.example.org/page"));
+        assertEquals("example.org/page", DocFingerprints.canonicalizeUrl("http://example.org/page"));
+        assertEquals("example.org/page", DocFingerprints.canonicalizeUrl("HTTP://WWW.Example.ORG/page"));
+        assertEquals("sub.example.org/page", DocFingerprints.canonicalizeUrl("https://sub.example.org/page"));
+    }
+
+    @Test
+    void testTrailingSlashesAreDropped() {
+        assertEquals("example.org/page", DocFingerprints.canonicalizeUrl("https://example.org/page/"));
+        assertEquals("example.org/page", DocFingerprints.canonicalizeUrl("https://example.org/page//"));
+        assertEquals("example.org", DocFingerprints.canonicalizeUrl("https://example.org/"));
+        assertEquals("example.org", DocFingerprints.canonicalizeUrl("https://example.org"));
+    }
+
+    @Test
+    void testDefaultPortsAreDropped() {
+        assertEquals("example.org/page", DocFingerprints.canonicalizeUrl("http://example.org:80/page"));
+        assertEquals("example.org/page", DocFingerprints.canonicalizeUrl("https://example.org:443/page"));
+        assertEquals("example.org:8080/page", DocFingerprints.canonicalizeUrl("http://example.org:8080/page"));
+    }
+
+    @Test
+    void testQueryParametersAreSorted() {
+        assertEquals("example.org/page?a=1&b=2", DocFingerprints.canonicalizeUrl("https://example.org/page?b=2&a=1"));
+        assertEquals("example.org/page?a=1&b=2", DocFingerprints.canonicalizeUrl("https://example.org/page?a=1&&b=2&"));
+        assertEquals("example.org/page", DocFingerprints.canonicalizeUrl("https://example.org/page?"));
+        assertNotEquals(DocFingerprints.canonicalizeUrl("https://example.org/page?a=1"), DocFingerprints.canonicalizeUrl("https://example.org/page?a=2"));
+    }
+
+    @Test
+    void testFragmentsAreDropped() {
+        assertEquals("example.org/page", DocFingerprints.canonicalizeUrl("https://example.org/page#section"));
+        assertEquals("example.org/page?a=1", DocFingerprints.canonicalizeUrl("https://example.org/page?a=1#section"));
+    }
+
+    @Test
+    void testPathsAreCaseSensitive() {
+        assertNotEquals(DocFingerprints.hashUrl("https://example.org/Page"), DocFingerprints.hashUrl("https://example.org/page"));
+    }
+
+    @Test
+    void testMissingUrls() {
+        assertNull(DocFingerprints.canonicalizeUrl(null));
+        assertNull(DocFingerprints.canonicalizeUrl(" "));
+        assertEquals(0L, DocFingerprints.hashUrl(null));
+        assertEquals(DocFingerprints.hashUrl("https://www.example.org/page/"), DocFingerprints.hashUrl("http://example.org/page#top"));
+    }
+
+    @Test
+    void testHammingDistanceThreshold() {
+        assertTrue(DocFingerprints.isNearDuplicate(SIMHASH, SIMHASH));
+        assertTrue(DocFingerprints.isNearDuplicate(SIMHASH, SIMHASH ^ 0x1L));
+        assertTrue(DocFingerprints.isNearDuplicate(SIMHASH, SIMHASH ^ 0x7L));
+        assertTrue(DocFingerprints.isNearDuplicate(SIMHASH, SIMHASH ^ 0x8000000000000003L));
+        assertFalse(DocFingerprints.isNearDuplicate(SIMHASH, SIMHASH ^ 0xfL));
+        assertFalse(DocFingerprints.isNearDuplicate(SIMHASH, ~SIMHASH));
+    }
+
+    @Test
+    void testMissingSimHashesAreNeverNearDuplicates() {
+        assertFalse(DocFingerprints.isNearDuplicate(0L, 0L));
+        assertFalse(DocFingerprints.isNearDuplicate(0L, 0x1L));
+        assertFalse(DocFingerprints.isNearDuplicate(0x1L, 0L));
+    }
+
+    @Test
+    void testSimHash() {
+        long[] termHashes = {DocFingerprints.hashTerm("graz"), DocFingerprints.hashTerm("university"), DocFingerprints.hashTerm("technology")};
+        int[] termIds = {0, 1, 2, 0, 1, 2};
+        int[] termFreqs = {1, 1, 1, 1, 1, 1};
+
+        assertEquals(DocFingerprints.simHash(termHashes, termIds, termFreqs, 0, 3), DocFingerprints.simHash(termHashes, termIds, termFreqs, 3, 6));
+        assertEquals(0L, DocFingerprints.simHash(termHashes, termIds, termFreqs, 3, 3));
+        assertNotEquals(0L, DocFingerprints.simHash(termHashes, termIds, termFreqs, 0, 1));
+    }
+
+}
@@ -0,0 +1,157 @@
+package eu.ows.mosaic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class DuplicateCollapserTest {
+
+    private static final long SIMHASH = 0x0f0f0f0f0f0f0f0fL;
+
+    // URLs and SimHashes of the documents, null URLs and SimHashes of 0 are not indexed
+    private static final String[] URLS = {
+        "https://www.example.org/a",
+        "http://example.org/a/",
+        "https://example.org/b",
+        "https://example.org/c",
+        "https://example.org/d",
+        "https://example.org/e",
+        null,
+        "https://example.org/f?y=2&x=1",
+        "https://example.org/f?x=1&y=2"
+    };
+    private static final long[] SIMHASHES = {
+        SIMHASH,
+        ~SIMHASH,
+        SIMHASH ^ 0x7L,
+        SIMHASH ^ 0xf0L,
+        0L,
+        SIMHASH ^ 0xf1L,
+        0x1234567812345678L,
+        0x1111222233334444L,
+        0x5555666677778888L
+    };
+
+    private static Directory directory;
+    private static DirectoryReader reader;
+
+    @BeforeAll
+    static void createIndex() throws IOException {
+        directory = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig())) {
+            for (int doc = 0; doc < URLS.length; doc++) {
+                Document document = new Document();
+                if (URLS[doc] != null) {
+                    document.add(new NumericDocValuesField(DocFingerprints.URL_HASH_FIELD, DocFingerprints.hashUrl(URLS[doc])));
+                }
+                if (SIMHASHES[doc] != 0L) {
+                    document.add(new NumericDocValuesField(DocFingerprints.SIMHASH_FIELD, SIMHASHES[doc]));
+                }
+                writer.addDocument(document);
+                // Write several segments, so that the fingerprints are read from more than one segment
+                if (doc % 3 == 2) {
+                    writer.commit();
+                }
+            }
+        }
+        reader = DirectoryReader.open(directory);
+    }
+
+    @AfterAll
+    static void closeIndex() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    /**
+     * Hits of all documents in the order of their document numbers with decreasing scores.
+     */
+    private static ScoreDoc[] hits(int from) {
+        ScoreDoc[] hits = new ScoreDoc[URLS.length - from];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = new ScoreDoc(from + i, URLS.length - from - i);
+        }
+        return hits;
+    }
+
+    @Test
+    void testDuplicatesAreCollapsed() throws IOException {
+        DuplicateCollapser collapser = new DuplicateCollapser();
+
+        boolean[] duplicates = collapser.collapse(reader, hits(0), URLS.length);
+
+        // 1 has the URL of 0, 2 is within 3 bits of 0, 3 differs in 4 bits from 0, 5 is within 1 bit of 3 and
+        // 8 has the URL of 7 with another order of the query parameters
+        assertArrayEquals(new boolean[] {false, true, true, false, false, true, false, false, true}, duplicates);
+        assertEquals(4, collapser.getNumCollapsed());
+    }
+
+    @Test
+    void testHitsAfterTheLastKeptHitAreNotCollapsed() throws IOException {
+        DuplicateCollapser collapser = new DuplicateCollapser();
+
+        boolean[] duplicates = collapser.collapse(reader, hits(0), 1);
+
+        assertArrayEquals(new boolean[URLS.length], duplicates);
+        assertEquals(0, collapser.getNumCollapsed());
+    }
+
+    @Test
+    void testCollapsingIsStableAcrossPages() throws IOException {
+        List<Integer> expectedDocs = keptDocs(new DuplicateCollapser(), hits(0), URLS.length);
+
+        for (int pageSize = 1; pageSize <= URLS.length; pageSize++) {
+            List<Integer> pagedDocs = new ArrayList<>();
+            DuplicateCollapser collapser = new DuplicateCollapser();
+            int from = 0;
+            while (from < URLS.length) {
+                // Each page continues with a copy of the collapser of the previous page, like the cached collapsers
+                DuplicateCollapser pageCollapser = collapser.copy();
+                List<Integer> pageDocs = keptDocs(pageCollapser, hits(from), pageSize);
+
+                // Requesting the same page again with the collapser of the previous page returns the same results
+                assertEquals(pageDocs, keptDocs(collapser.copy(), hits(from), pageSize));
+
+                if (pageDocs.isEmpty()) {
+                    break;
+                }
+                pagedDocs.addAll(pageDocs);
+                from = pageDocs.get(pageDocs.size() - 1) + 1;
+                collapser = pageCollapser;
+            }
+            assertEquals(expectedDocs, pagedDocs, "Page size " + pageSize);
+        }
+        assertEquals(Arrays.asList(0, 3, 4, 6, 7), expectedDocs);
+    }
+
+    /**
+     * Collapses the hits and returns the documents of the first kept hits.
+     */
+    private static List<Integer> keptDocs(DuplicateCollapser collapser, ScoreDoc[] hits, int maxKept) throws IOException {
+        boolean[] duplicates = collapser.collapse(reader, hits, maxKept);
+        List<Integer> docs = new ArrayList<>();
+        for (int i = 0; i < hits.length && docs.size() < maxKept; i++) {
+            if (!duplicates[i]) {
+                docs.add(hits[i].doc);
+            }
+        }
+        return docs;
+    }
+
+}
@@ -0,0 +1,197 @@
+package eu.ows.mosaic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.search.TotalHits;
+import org.junit.jupiter.api.Test;
+
+class FetchPlannerTest {
+
+    private final FetchPlanner fetchPlanner = FetchPlanner.getInstance();
+
+    /**
+     * Query parameters of a request with a language filter. The planner is a singleton, so every test uses its own index.
+     */
+    private static Map<String, Object> filteredParams() {
+        Map<String, Object> queryParams = new HashMap<>();
+        queryParams.put("q", "graz");
+        queryParams.put("limit", 10);
+        queryParams.put("lang", "de");
+        return queryParams;
+    }
+
+    private static Map<String, Object> unfilteredParams() {
+        Map<String, Object> queryParams = new HashMap<>();
+        queryParams.put("q", "graz");
+        queryParams.put("limit", 10);
+        queryParams.put("page", 2);
+        queryParams.put("lang", null);
+        return queryParams;
+    }
+
+    @Test
+    void testBatchSizeWithoutFilters() {
+        FetchPlanner.Plan plan = fetchPlanner.plan("unfiltered", unfilteredParams(), 10);
+
+        // All hits pass, so exactly the missing hits are fetched
+        assertEquals(10, plan.nextBatchSize(0));
+        assertEquals(4, plan.nextBatchSize(6));
+    }
+
+    @Test
+    void testBatchSizeAtHighPassRate() {
+        FetchPlanner.Plan plan = fetchPlanner.plan("high", filteredParams(), 10);
+
+        // Unobserved filters are assumed to pass half of the hits, plus the safety factor of 1.2
+        assertEquals(24, plan.nextBatchSize(0));
+
+        plan.record(24, 24, 24);
+        assertTrue(plan.hasNext(9));
+        // Even if every hit passed, at least the missing hits are fetched
+        assertEquals(1, plan.nextBatchSize(9));
+    }
+
+    @Test
+    void testBatchSizeAtLowPassRate() {
+        FetchPlanner.Plan plan = fetchPlanner.plan("low", filteredParams(), 10);
+
+        // The pass rate observed in the request is used for the following iterations: 8 / 0.2 * 1.2
+        plan.record(100, 20, 100);
+        assertEquals(48, plan.nextBatchSize(2));
+
+        // The pass rate is bounded by the minimum pass rate of 1%
+        assertEquals(1200, nextBatchSizeAtMinPassRate(10));
+
+        // The batch size is bounded by the maximum batch size
+        assertEquals(FetchPlanner.DEFAULT_MAX_BATCH_SIZE, nextBatchSizeAtMinPassRate(1000));
+    }
+
+    private int nextBatchSizeAtMinPassRate(int numHitsLimit) {
+        FetchPlanner.Plan plan = fetchPlanner.plan("min-" + numHitsLimit, filteredParams(), numHitsLimit);
+        plan.record(1, 0, 1);
+        return plan.nextBatchSize(0);
+    }
+
+    @Test
+    void testMaxFetchedHitsCapsBatchSize() {
+        // At most max(50 * 10, 10000) hits are fetched for a page of 10 hits
+        FetchPlanner.Plan plan = fetchPlanner.plan("capped", filteredParams(), 10);
+
+        plan.record(9990, 0, 9990);
+        assertTrue(plan.hasNext(0));
+        assertEquals(10, plan.nextBatchSize(0));
+
+        plan.record(5, 0, 5);
+        assertTrue(plan.hasNext(0));
+        // The remaining budget of 5 hits is below the missing hits, which are still fetched
+        assertEquals(10, plan.nextBatchSize(0));
+
+        plan.record(10, 0, 10);
+        assertFalse(plan.hasNext(0));
+        assertTrue(plan.isTruncated());
+        assertEquals(10005, plan.getFetchedHits());
+    }
+
+    @Test
+    void testMaxIterationsTruncate() {
+        FetchPlanner.Plan plan = fetchPlanner.plan("iterations", filteredParams(), 10);
+
+        for (int i = 0; i < FetchPlanner.DEFAULT_MAX_ITERATIONS; i++) {
+            assertTrue(plan.hasNext(i));
+            plan.record(10, 1, 10);
+        }
+
+        assertFalse(plan.hasNext(FetchPlanner.DEFAULT_MAX_ITERATIONS));
+        assertTrue(plan.isTruncated());
+        assertEquals(FetchPlanner.DEFAULT_MAX_ITERATIONS, plan.getIterations());
+        assertEquals(FetchPlanner.DEFAULT_MAX_ITERATIONS, plan.getPassedHits());
+    }
+
+    @Test
+    void testExhaustedIndexIsNotTruncated() {
+        FetchPlanner.Plan plan = fetchPlanner.plan("exhausted", filteredParams(), 10);
+
+        // Lucene returned fewer hits than requested, so there are no more hits to fetch
+        plan.record(5, 3, 24);
+        assertFalse(plan.hasNext(3));
+        assertFalse(plan.isTruncated());
+    }
+
+    @Test
+    void testFilledPageIsNotTruncated() {
+        FetchPlanner.Plan plan = fetchPlanner.plan("filled", filteredParams(), 10);
+
+        plan.record(24, 12, 24);
+        assertFalse(plan.hasNext(12));
+        assertFalse(plan.isTruncated());
+    }
+
+    @Test
+    void testTimeoutTruncates() {
+        FetchPlanner.Plan plan = fetchPlanner.plan("timeout", filteredParams(), 10);
+
+        plan.record(24, 2, 24);
+        plan.stopOnTimeout();
+        assertFalse(plan.hasNext(2));
+        assertTrue(plan.isTruncated());
+    }
+
+    @Test
+    void testPassRateMovingAverage() {
+        FetchPlanner.Plan firstPlan = fetchPlanner.plan("average", filteredParams(), 10);
+        firstPlan.record(100, 10, 100);
+        firstPlan.finish();
+
+        // The first observation replaces the default pass rate: 10 / 0.1 * 1.2
+        FetchPlanner.Plan secondPlan = fetchPlanner.plan("average", filteredParams(), 10);
+        assertEquals(120, secondPlan.nextBatchSize(0));
+        secondPlan.record(100, 50, 100);
+        secondPlan.finish();
+
+        // Later observations are smoothed: 0.7 * 0.1 + 0.3 * 0.5 = 0.22, 10 / 0.22 * 1.2
+        assertEquals(55, fetchPlanner.plan("average", filteredParams(), 10).nextBatchSize(0));
+
+        // The pass rates are kept per index and filter
+        assertEquals(24, fetchPlanner.plan("average-other", filteredParams(), 10).nextBatchSize(0));
+        Map<String, Object> otherFilterParams = filteredParams();
+        otherFilterParams.put("lang", "en");
+        assertEquals(24, fetchPlanner.plan("average", otherFilterParams, 10).nextBatchSize(0));
+    }
+
+    @Test
+    void testPassRateIsNotObservedWithoutFilters() {
+        // Requests without filters have the key "<index>|", their pass rate is always 1
+        FetchPlanner.Plan firstPlan = fetchPlanner.plan("no-filter", unfilteredParams(), 10);
+        firstPlan.record(100, 1, 100);
+        firstPlan.finish();
+
+        assertEquals(10, fetchPlanner.plan("no-filter", unfilteredParams(), 10).nextBatchSize(0));
+        assertEquals(24, fetchPlanner.plan("no-filter", filteredParams(), 10).nextBatchSize(0));
+    }
+
+    @Test
+    void testPlanWithoutFetchedHitsIsNotObserved() {
+        FetchPlanner.Plan firstPlan = fetchPlanner.plan("nothing-fetched", filteredParams(), 10);
+        firstPlan.record(0, 0, 24);
+        firstPlan.finish();
+
+        assertEquals(24, fetchPlanner.plan("nothing-fetched", filteredParams(), 10).nextBatchSize(0));
+    }
+
+    @Test
+    void testFirstTotalHitsAreKept() {
+        FetchPlanner.Plan plan = fetchPlanner.plan("total-hits", filteredParams(), 10);
+        assertNull(plan.getTotalHits());
+
+        plan.recordTotalHits(new TotalHits(42, TotalHits.Relation.EQUAL_TO));
+        plan.recordTotalHits(new TotalHits(7, TotalHits.Relation.EQUAL_TO));
+        assertEquals(42, plan.getTotalHits().value);
+    }
+
+}
@@ -0,0 +1,307 @@
+package eu.ows.mosaic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.FixedBitSet;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocationGridIndexTest {
+
+    private static final int MAX_DOC = 3000;
+    private static final String TABLE_NAME = "locations_test";
+
+    // Documents with fixed locations, the other documents have random locations
+    private static final float[][] FIXED_LOCATIONS = {
+        {61.3f, 18.2f},  // Within 1000 km of (60, 0) beyond the longitude of the center latitude, see testRadiusIsWidestPoleward
+        {90.0f, 0.0f},
+        {-90.0f, 45.0f},
+        {0.0f, 180.0f},
+        {0.0f, -180.0f},
+        {10.0f, 20.0f},
+        {-15.5f, -25.5f}
+    };
+
+    @TempDir
+    static Path tempDir;
+
+    private static PackedLocations packedLocations;
+    private static LocationGridIndex gridIndex;
+
+    @BeforeAll
+    static void createIndex() throws SQLException {
+        String url = "jdbc:duckdb:" + tempDir.resolve("geo.duckdb");
+        try (Connection conn = DriverManager.getConnection(url)) {
+            conn.setAutoCommit(false);
+            try (Statement statement = conn.createStatement()) {
+                statement.execute("CREATE TABLE " + TABLE_NAME + " (doc_ord INTEGER, locations VARCHAR)");
+            }
+            try (PreparedStatement statement = conn.prepareStatement("INSERT INTO " + TABLE_NAME + " VALUES (?, ?)")) {
+                Random random = new Random(42);
+                for (int docOrd = 0; docOrd < MAX_DOC; docOrd++) {
+                    String locationsAsJson = docOrd < FIXED_LOCATIONS.length
+                        ? toJson(List.of(List.of(FIXED_LOCATIONS[docOrd])))
+                        : randomLocations(random);
+                    // Every tenth document has no locations
+                    if (docOrd >= FIXED_LOCATIONS.length && docOrd % 10 == 0) {
+                        continue;
+                    }
+                    statement.setInt(1, docOrd);
+                    statement.setString(2, locationsAsJson);
+                    statement.execute();
+                }
+            }
+            conn.commit();
+        }
+
+        packedLocations = PackedLocations.build(new TestContext(url));
+        gridIndex = LocationGridIndex.build(packedLocations);
+    }
+
+    /**
+     * Creates one or two locations with up to three entries, spread over the whole world with more entries near
+     * the poles, near the antimeridian, on the borders of the grid cells and in a cluster around (0, 0).
+     */
+    private static String randomLocations(Random random) {
+        List<List<float[]>> locations = new ArrayList<>();
+        int numLocations = 1 + random.nextInt(2);
+        for (int location = 0; location < numLocations; location++) {
+            List<float[]> entries = new ArrayList<>();
+            int numEntries = 1 + random.nextInt(3);
+            for (int entry = 0; entry < numEntries; entry++) {
+                double latitude = -90 + 180 * random.nextDouble();
+                double longitude = -180 + 360 * random.nextDouble();
+                switch (random.nextInt(5)) {
+                    case 0:
+                        latitude = (random.nextBoolean() ? 1 : -1) * (85 + 5 * random.nextDouble());
+                        break;
+                    case 1:
+                        longitude = (random.nextBoolean() ? 1 : -1) * (175 + 5 * random.nextDouble());
+                        break;
+                    case 2:
+                        latitude = Math.round(latitude);
+                        longitude = Math.round(longitude);
+                        break;
+                    case 3:
+                        latitude = -20 + 40 * random.nextDouble();
+                        longitude = -30 + 60 * random.nextDouble();
+                        break;
+                    default:
+                        break;
+                }
+                entries.add(new float[] {(float) (Math.round(latitude * 1e4) / 1e4), (float) (Math.round(longitude * 1e4) / 1e4)});
+            }
+            locations.add(entries);
+        }
+        return toJson(locations);
+    }
+
+    private static String toJson(List<List<float[]>> locations) {
+        StringBuilder json = new StringBuilder("[");
+        for (int location = 0; location < locations.size(); location++) {
+            json.append(location > 0 ? "," : "").append("{\"location").append(location).append("\":[");
+            List<float[]> entries = locations.get(location);
+            for (int entry = 0; entry < entries.size(); entry++) {
+                json.append(entry > 0 ? "," : "").append(String.format(Locale.ROOT, "[%s,%s,\"AT\"]", entries.get(entry)[0], entries.get(entry)[1]));
+            }
+            json.append("]}");
+        }
+        return json.append("]").toString();
+    }
+
+    /**
+     * Compares a bounding box query with checking the location entries of every document.
+     */
+    private static void assertQuery(BoundingBox bbox, String operator) {
+        FixedBitSet docs = gridIndex.query(bbox, operator);
+        for (int docOrd = 0; docOrd < MAX_DOC; docOrd++) {
+            boolean expected = GeoUtils.locationsInBoundingBox(packedLocations.decode(docOrd), bbox, operator);
+            assertEquals(expected, docs.get(docOrd), String.format(Locale.ROOT, "Document %d with %s, bbox west %s, east %s, south %s, north %s",
+                docOrd, operator, bbox.getWest(), bbox.getEast(), bbox.getSouth(), bbox.getNorth()));
+        }
+    }
+
+    /**
+     * Compares a radius query with computing the distance to every location entry of every document.
+     */
+    private static FixedBitSet assertQueryRadius(float latitude, float longitude, float radiusKm) {
+        FixedBitSet docs = gridIndex.queryRadius(latitude, longitude, radiusKm);
+        for (int docOrd = 0; docOrd < MAX_DOC; docOrd++) {
+            boolean expected = GeoUtils.nearestDistanceKm(packedLocations.decode(docOrd), latitude, longitude) <= radiusKm;
+            assertEquals(expected, docs.get(docOrd), String.format(Locale.ROOT, "Document %d, center (%s, %s), radius %s km", docOrd, latitude, longitude, radiusKm));
+        }
+        return docs;
+    }
+
+    private static void assertQuery(float west, float east, float south, float north) {
+        BoundingBox bbox = new BoundingBox(east, west, north, south);
+        assertQuery(bbox, GeoUtils.OPERATOR_OR);
+        assertQuery(bbox, GeoUtils.OPERATOR_AND);
+    }
+
+    @Test
+    void testSmallBoundingBox() {
+        assertQuery(10.3f, 20.7f, 40.2f, 50.9f);
+        assertQuery(5.0f, 5.0f, 5.0f, 5.0f);
+    }
+
+    @Test
+    void testBoundingBoxWithInnerCells() {
+        // The cells strictly inside the bounding box are not checked exactly
+        assertQuery(-25.5f, 25.5f, -15.5f, 15.5f);
+        assertQuery(-10.0f, 20.0f, -10.0f, 10.0f);
+        assertQuery(-180.0f, 180.0f, -90.0f, 90.0f);
+    }
+
+    @Test
+    void testBoundingBoxAtPoles() {
+        assertQuery(-180.0f, 180.0f, 80.0f, 90.0f);
+        assertQuery(-180.0f, 180.0f, -90.0f, -85.5f);
+        assertQuery(40.0f, 50.0f, -90.0f, -89.0f);
+    }
+
+    @Test
+    void testBoundingBoxAcrossAntimeridian() {
+        assertQuery(170.5f, -170.5f, -20.0f, 20.0f);
+        assertQuery(100.0f, -100.0f, -90.0f, 90.0f);
+        assertQuery(179.0f, -179.0f, 60.0f, 90.0f);
+        assertQuery(180.0f, -180.0f, -1.0f, 1.0f);
+    }
+
+    @Test
+    void testBoundingBoxMatchesDocumentsWithoutLocations() {
+        FixedBitSet docs = gridIndex.query(new BoundingBox(20.7f, 10.3f, 50.9f, 40.2f), GeoUtils.OPERATOR_AND);
+        assertFalse(packedLocations.hasLocations(10));
+        assertTrue(docs.get(10));
+    }
+
+    @Test
+    void testRadiusIsWidestPoleward() {
+        // The circle spans more longitude north of its center than 1000 km / (111.195 km * cos(60°)) = 17.99°
+        FixedBitSet docs = assertQueryRadius(60.0f, 0.0f, 1000.0f);
+        assertTrue(docs.get(0));
+        assertQueryRadius(-60.0f, 10.0f, 2000.0f);
+        assertQueryRadius(45.0f, 90.0f, 2500.0f);
+        assertQueryRadius(-70.0f, -60.0f, 1500.0f);
+    }
+
+    @Test
+    void testRadiusAcrossPoles() {
+        assertQueryRadius(89.5f, 10.0f, 200.0f);
+        assertQueryRadius(-89.0f, -100.0f, 300.0f);
+        assertQueryRadius(80.0f, 170.0f, 1500.0f);
+    }
+
+    @Test
+    void testRadiusAroundPoles() {
+        // The longitude delta is not defined at the poles, all longitudes are checked
+        FixedBitSet docs = assertQueryRadius(90.0f, 0.0f, 50.0f);
+        assertTrue(docs.get(1));
+        docs = assertQueryRadius(-90.0f, 0.0f, 500.0f);
+        assertTrue(docs.get(2));
+    }
+
+    @Test
+    void testRadiusAcrossAntimeridian() {
+        FixedBitSet docs = assertQueryRadius(0.0f, 179.5f, 300.0f);
+        assertTrue(docs.get(3));
+        assertTrue(docs.get(4));
+        assertQueryRadius(-30.0f, -179.8f, 500.0f);
+        assertQueryRadius(75.0f, 178.0f, 800.0f);
+        assertQueryRadius(-65.0f, -175.0f, 1200.0f);
+    }
+
+    @Test
+    void testSmallAndLargeRadii() {
+        FixedBitSet docs = assertQueryRadius(10.0f, 20.0f, 0.0f);
+        assertTrue(docs.get(5));
+        assertQueryRadius(0.0f, 0.0f, 100.0f);
+        assertQueryRadius(-15.5f, -25.5f, 10.0f);
+        assertQueryRadius(0.0f, 0.0f, 15000.0f);
+    }
+
+    @Test
+    void testRadiusDoesNotMatchDocumentsWithoutLocations() {
+        FixedBitSet docs = gridIndex.queryRadius(0.0f, 0.0f, 25000.0f);
+        assertFalse(docs.get(10));
+        assertTrue(docs.get(11));
+    }
+
+    /**
+     * Index generation that only provides the metadata table with the locations.
+     */
+    private static class TestContext implements IndexContext {
+
+        private final String url;
+        private final Map<String, Object> attachments = new HashMap<>();
+
+        TestContext(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public String getIndexName() {
+            return "test";
+        }
+
+        @Override
+        public long getGeneration() {
+            return 1;
+        }
+
+        @Override
+        public String getTableName() {
+            return TABLE_NAME;
+        }
+
+        @Override
+        public int getMaxDoc() {
+            return MAX_DOC;
+        }
+
+        @Override
+        public IndexSearcher getSearcher() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TopDocs search(Query query, int numHits) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Connection openConnection() throws SQLException {
+            return DriverManager.getConnection(url);
+        }
+
+        @Override
+        public Object getAttachment(String key) {
+            return attachments.get(key);
+        }
+
+        @Override
+        public void putAttachment(String key, Object value) {
+            attachments.put(key, value);
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+package eu.ows.mosaic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.PrefixCodedTerms;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class QueryPlannerTest {
+
+    private static Directory directory;
+    private static DirectoryReader reader;
+
+    /**
+     * Index of 10 documents: "common" occurs in all documents, "rare" in one and the terms starting with "term"
+     * occur in 5 (terma), 4 (termb), 3 (termc), 2 (termd) and 1 (terme) documents.
+     */
+    @BeforeAll
+    static void createIndex() throws IOException {
+        directory = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig())) {
+            String[] prefixTerms = {"terma", "termb", "termc", "termd", "terme"};
+            for (int doc = 0; doc < 10; doc++) {
+                StringBuilder contents = new StringBuilder("common");
+                if (doc == 0) {
+                    contents.append(" rare");
+                }
+                for (int i = 0; i < prefixTerms.length; i++) {
+                    if (doc < prefixTerms.length - i) {
+                        contents.append(' ').append(prefixTerms[i]);
+                    }
+                }
+                Document document = new Document();
+                document.add(new TextField(QueryCompiler.DEFAULT_FIELD, contents.toString(), Field.Store.NO));
+                writer.addDocument(document);
+            }
+        }
+        reader = DirectoryReader.open(directory);
+    }
+
+    @AfterAll
+    static void closeIndex() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    private static TermQuery term(String text) {
+        return new TermQuery(new Term(QueryCompiler.DEFAULT_FIELD, text));
+    }
+
+    private static BooleanQuery disjunction(Query... queries) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (Query query : queries) {
+            builder.add(query, BooleanClause.Occur.SHOULD);
+        }
+        return builder.build();
+    }
+
+    @Test
+    void testNestedDisjunctionsAreFlattened() throws IOException {
+        QueryPlanner planner = new QueryPlanner(256, 1.0, 50);
+        Query query = disjunction(term("rare"), disjunction(term("terma"), disjunction(term("termb"), term("termc"))));
+
+        Query plannedQuery = planner.plan(query, reader);
+
+        assertInstanceOf(BooleanQuery.class, plannedQuery);
+        List<BooleanClause> clauses = ((BooleanQuery) plannedQuery).clauses();
+        assertEquals(4, clauses.size());
+        for (BooleanClause clause : clauses) {
+            assertEquals(BooleanClause.Occur.SHOULD, clause.getOccur());
+            assertInstanceOf(TermQuery.class, clause.getQuery());
+        }
+    }
+
+    @Test
+    void testConjunctionsAreNotFlattened() throws IOException {
+        QueryPlanner planner = new QueryPlanner(256, 1.0, 50);
+        BooleanQuery conjunction = new BooleanQuery.Builder()
+            .add(term("terma"), BooleanClause.Occur.MUST)
+            .add(term("termb"), BooleanClause.Occur.MUST)
+            .build();
+        Query query = disjunction(term("rare"), conjunction);
+
+        assertSame(query, planner.plan(query, reader));
+    }
+
+    @Test
+    void testFrequentOptionalTermsAreDropped() throws IOException {
+        QueryPlanner planner = new QueryPlanner(256, 0.5, 50);
+
+        Query plannedQuery = planner.plan(disjunction(term("common"), term("rare")), reader);
+
+        assertInstanceOf(BooleanQuery.class, plannedQuery);
+        List<BooleanClause> clauses = ((BooleanQuery) plannedQuery).clauses();
+        assertEquals(1, clauses.size());
+        assertEquals(term("rare"), clauses.get(0).getQuery());
+    }
+
+    @Test
+    void testFrequentTermsAreKeptIfNoOtherTermRemains() throws IOException {
+        QueryPlanner planner = new QueryPlanner(256, 0.5, 50);
+        Query query = disjunction(term("common"), term("terma"));
+
+        // "terma" occurs in exactly half of the documents and is kept, "common" is dropped
+        Query plannedQuery = planner.plan(query, reader);
+        assertEquals(1, ((BooleanQuery) plannedQuery).clauses().size());
+
+        Query onlyFrequentTerms = disjunction(term("common"));
+        assertSame(onlyFrequentTerms, planner.plan(onlyFrequentTerms, reader));
+    }
+
+    @Test
+    void testRequiredFrequentTermsAreKept() throws IOException {
+        QueryPlanner planner = new QueryPlanner(256, 0.5, 50);
+        BooleanQuery query = new BooleanQuery.Builder()
+            .add(term("common"), BooleanClause.Occur.MUST)
+            .add(term("rare"), BooleanClause.Occur.MUST)
+            .build();
+
+        assertSame(query, planner.plan(query, reader));
+    }
+
+    @Test
+    void testQueriesWithTooManyClausesAreRejected() {
+        QueryPlanner planner = new QueryPlanner(3, 1.0, 50);
+        Query query = disjunction(term("rare"), disjunction(term("terma"), term("termb")), term("termc"));
+
+        assertThrows(MosaicWebException.class, () -> planner.validate(query));
+        planner.validate(disjunction(term("rare"), term("terma"), term("termb")));
+    }
+
+    @Test
+    void testFlattenedQueriesWithTooManyClausesAreRejected() {
+        QueryPlanner planner = new QueryPlanner(3, 1.0, 50);
+        Query query = disjunction(term("rare"), disjunction(term("terma"), term("termb"), term("termc")));
+
+        assertThrows(MosaicWebException.class, () -> planner.plan(query, reader));
+    }
+
+    @Test
+    void testExpansionsAreCappedToMostFrequentTerms() throws IOException {
+        QueryPlanner planner = new QueryPlanner(256, 1.0, 2);
+
+        Query plannedQuery = planner.plan(new PrefixQuery(new Term(QueryCompiler.DEFAULT_FIELD, "term")), reader);
+
+        assertInstanceOf(ConstantScoreQuery.class, plannedQuery);
+        Query innerQuery = ((ConstantScoreQuery) plannedQuery).getQuery();
+        assertInstanceOf(TermInSetQuery.class, innerQuery);
+        Set<String> terms = new HashSet<>();
+        PrefixCodedTerms.TermIterator termIterator = ((TermInSetQuery) innerQuery).getTermData().iterator();
+        for (BytesRef term = termIterator.next(); term != null; term = termIterator.next()) {
+            terms.add(term.utf8ToString());
+        }
+        assertEquals(Set.of("terma", "termb"), terms);
+    }
+
+    @Test
+    void testExpansionsBelowTheCapAreNotChanged() throws IOException {
+        QueryPlanner planner = new QueryPlanner(256, 1.0, 5);
+        Query query = new PrefixQuery(new Term(QueryCompiler.DEFAULT_FIELD, "term"));
+
+        Query plannedQuery = planner.plan(query, reader);
+
+        assertSame(query, plannedQuery);
+    }
+
+}
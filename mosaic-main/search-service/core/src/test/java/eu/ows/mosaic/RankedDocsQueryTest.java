@@ -0,0 +1,200 @@
+package eu.ows.mosaic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class RankedDocsQueryTest {
+
+    // Segments of 4, 3 and 3 documents, the second segment contains no ranked document
+    private static final int[] SEGMENT_SIZES = {4, 3, 3};
+    private static final int[] DOCS = {1, 3, 7, 9};
+    private static final float[] SCORES = {0.5f, 2.0f, 1.0f, 1.5f};
+
+    private static Directory directory;
+    private static DirectoryReader reader;
+    private static IndexSearcher searcher;
+
+    @BeforeAll
+    static void createIndex() throws IOException {
+        directory = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig())) {
+            int doc = 0;
+            for (int segmentSize : SEGMENT_SIZES) {
+                for (int i = 0; i < segmentSize; i++) {
+                    Document document = new Document();
+                    document.add(new StringField("id", "doc" + doc++, Field.Store.NO));
+                    writer.addDocument(document);
+                }
+                writer.commit();
+            }
+        }
+        reader = DirectoryReader.open(directory);
+        searcher = new IndexSearcher(reader);
+        assertEquals(SEGMENT_SIZES.length, reader.leaves().size());
+    }
+
+    @AfterAll
+    static void closeIndex() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    private static Weight createWeight() throws IOException {
+        RankedDocsQuery query = new RankedDocsQuery("test", DOCS, SCORES);
+        return searcher.createWeight(searcher.rewrite(query), ScoreMode.TOP_SCORES, 1.0f);
+    }
+
+    @Test
+    void testSearchReturnsRankedDocuments() throws IOException {
+        TopDocs topDocs = searcher.search(new RankedDocsQuery("test", DOCS, SCORES), 10);
+
+        assertEquals(DOCS.length, topDocs.totalHits.value);
+        int[] docs = new int[topDocs.scoreDocs.length];
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = topDocs.scoreDocs[i].doc;
+        }
+        assertArrayEquals(new int[] {3, 9, 7, 1}, docs);
+        assertEquals(2.0f, topDocs.scoreDocs[0].score);
+    }
+
+    @Test
+    void testNextDocIteratesOverDocumentsOfEachSegment() throws IOException {
+        Weight weight = createWeight();
+        List<Integer> docs = new ArrayList<>();
+        for (LeafReaderContext leaf : reader.leaves()) {
+            Scorer scorer = weight.scorer(leaf);
+            if (leaf.ord == 1) {
+                assertNull(scorer);
+                continue;
+            }
+            DocIdSetIterator iterator = scorer.iterator();
+            assertEquals(-1, iterator.docID());
+            for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+                assertTrue(doc < leaf.reader().maxDoc());
+                assertEquals(SCORES[docs.size()], scorer.score());
+                docs.add(leaf.docBase + doc);
+            }
+            assertEquals(DocIdSetIterator.NO_MORE_DOCS, iterator.docID());
+        }
+        assertEquals(List.of(1, 3, 7, 9), docs);
+    }
+
+    @Test
+    void testAdvance() throws IOException {
+        Weight weight = createWeight();
+
+        DocIdSetIterator firstIterator = weight.scorer(reader.leaves().get(0)).iterator();
+        assertEquals(1, firstIterator.advance(0));
+        assertEquals(3, firstIterator.advance(2));
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, firstIterator.advance(4));
+
+        // The third segment starts at document 7
+        DocIdSetIterator lastIterator = weight.scorer(reader.leaves().get(2)).iterator();
+        assertEquals(2, lastIterator.advance(1));
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, lastIterator.advance(3));
+    }
+
+    @Test
+    void testAdvanceToNoMoreDocs() throws IOException {
+        Weight weight = createWeight();
+        for (LeafReaderContext leaf : reader.leaves()) {
+            Scorer scorer = weight.scorer(leaf);
+            if (scorer == null) {
+                continue;
+            }
+            DocIdSetIterator iterator = scorer.iterator();
+            assertEquals(DocIdSetIterator.NO_MORE_DOCS, iterator.advance(DocIdSetIterator.NO_MORE_DOCS));
+            assertEquals(DocIdSetIterator.NO_MORE_DOCS, iterator.docID());
+        }
+    }
+
+    @Test
+    void testMaxScoreIsLimitedToSegment() throws IOException {
+        Weight weight = createWeight();
+
+        Scorer firstScorer = weight.scorer(reader.leaves().get(0));
+        assertEquals(0.5f, firstScorer.getMaxScore(1));
+        assertEquals(2.0f, firstScorer.getMaxScore(3));
+        assertEquals(2.0f, firstScorer.getMaxScore(DocIdSetIterator.NO_MORE_DOCS));
+
+        Scorer lastScorer = weight.scorer(reader.leaves().get(2));
+        assertEquals(0.0f, lastScorer.getMaxScore(-1));
+        assertEquals(1.0f, lastScorer.getMaxScore(0));
+        assertEquals(1.5f, lastScorer.getMaxScore(DocIdSetIterator.NO_MORE_DOCS));
+        lastScorer.iterator().advance(2);
+        assertEquals(1.5f, lastScorer.getMaxScore(2));
+    }
+
+    @Test
+    void testExplain() throws IOException {
+        Weight weight = createWeight();
+        LeafReaderContext lastLeaf = reader.leaves().get(2);
+
+        assertTrue(weight.explain(lastLeaf, 2).isMatch());
+        assertEquals(1.5f, weight.explain(lastLeaf, 2).getValue().floatValue());
+        assertFalse(weight.explain(lastLeaf, 1).isMatch());
+    }
+
+    @Test
+    void testReciprocalRankFusionOfOverlappingRankings() {
+        ScoreDoc[] lexicalHits = {new ScoreDoc(10, 5.0f), new ScoreDoc(11, 4.0f), new ScoreDoc(12, 3.0f)};
+        ScoreDoc[] knnHits = {new ScoreDoc(12, 0.9f), new ScoreDoc(13, 0.8f)};
+
+        Map<Integer, Float> scores = VectorUtils.fuseRankings(lexicalHits, knnHits);
+
+        assertEquals(4, scores.size());
+        assertEquals(1.0f / (VectorUtils.RRF_K + 1), scores.get(10));
+        assertEquals(1.0f / (VectorUtils.RRF_K + 2), scores.get(11));
+        assertEquals(1.0f / (VectorUtils.RRF_K + 3) + 1.0f / (VectorUtils.RRF_K + 1), scores.get(12));
+        assertEquals(1.0f / (VectorUtils.RRF_K + 2), scores.get(13));
+
+        // A document in both rankings is ranked above the documents of one ranking
+        assertTrue(scores.get(12) > scores.get(10));
+        assertTrue(scores.get(10) > scores.get(11));
+    }
+
+    @Test
+    void testReciprocalRankFusionOfDisjointRankings() {
+        ScoreDoc[] lexicalHits = {new ScoreDoc(1, 5.0f), new ScoreDoc(2, 4.0f)};
+        ScoreDoc[] knnHits = {new ScoreDoc(3, 0.9f), new ScoreDoc(4, 0.8f)};
+
+        Map<Integer, Float> scores = VectorUtils.fuseRankings(lexicalHits, knnHits);
+
+        // Documents with the same rank get the same score, regardless of the scores of the rankings
+        assertEquals(scores.get(1), scores.get(3));
+        assertEquals(scores.get(2), scores.get(4));
+        assertTrue(scores.get(1) > scores.get(2));
+        assertTrue(VectorUtils.fuseRankings().isEmpty());
+        assertNotNull(VectorUtils.fuseRankings(lexicalHits).get(2));
+    }
+
+}
@@ -17,6 +17,7 @@ class SearchResourceTest {
         CoreUtils.setIdColumn(CoreUtils.DEFAULT_ID_COLUMN);
         CoreUtils.setConfigFilePath(CoreUtils.DEFAULT_CONFIG_FILE_PATH);
         CoreUtils.setDatabaseFilePath(CoreUtils.DEFAULT_DATABASE_FILE_PATH);
+        CoreUtils.setNumPlainTextCharacters(-1L);
 
         PluginManager.getInstance().loadComponents();
         PluginManager.getInstance().loadModules();
@@ -24,10 +25,6 @@ class SearchResourceTest {
         CoreConfig.getInstance();
         ResourceManager.getInstance();
 
-        DbConnection dbConn = new DbConnection(false);
-        dbConn.createTables(-1L);
-        dbConn.closeConnection();
-
         given()
           .when().get("/search")
           .then()
@@ -0,0 +1,139 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.FilterScorer;
+import org.apache.lucene.search.FilterWeight;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+
+/**
+ * Query that combines the score of a query (e.g., BM25) with the proximity of a document to a point.
+ * The score of a document is multiplied by {@code pivot / (pivot + distance)}, where distance is the distance in
+ * kilometers between the point and the nearest location entry of the document. The factor is 1 for a distance of zero
+ * and 0.5 at the pivot distance. Distances are computed from the packed locations of the index generation.
+ */
+public class DistanceDecayQuery extends Query {
+
+    // Half of the circumference of the earth, used for documents without locations
+    private static final float MAX_DISTANCE_KM = 20015;
+
+    private final Query query;
+    private final PackedLocations packedLocations;
+    private final float latitude;
+    private final float longitude;
+    private final float pivotKm;
+
+    /**
+     * @param query Query whose score is decayed
+     * @param packedLocations Packed locations of the index generation that is searched
+     * @param latitude Latitude of the point
+     * @param longitude Longitude of the point
+     * @param pivotKm Distance in kilometers at which the score is halved
+     */
+    public DistanceDecayQuery(Query query, PackedLocations packedLocations, float latitude, float longitude, float pivotKm) {
+        this.query = query;
+        this.packedLocations = packedLocations;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.pivotKm = pivotKm;
+    }
+
+    /**
+     * Computes the decay factor of a document.
+     * @param docOrd Lucene document number
+     * @return Factor in (0, 1]
+     */
+    private float decay(int docOrd) {
+        float distance = packedLocations.nearestDistanceKm(docOrd, latitude, longitude);
+        if (Float.isInfinite(distance)) {
+            distance = MAX_DISTANCE_KM;
+        }
+        return pivotKm / (pivotKm + distance);
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+        Weight innerWeight = searcher.createWeight(searcher.rewrite(query), scoreMode, boost);
+
+        return new FilterWeight(this, innerWeight) {
+
+            @Override
+            public Scorer scorer(LeafReaderContext context) throws IOException {
+                Scorer innerScorer = in.scorer(context);
+                if (innerScorer == null) {
+                    return null;
+                }
+                int docBase = context.docBase;
+
+                return new FilterScorer(innerScorer, this) {
+
+                    @Override
+                    public float score() throws IOException {
+                        return in.score() * decay(docBase + in.docID());
+                    }
+
+                    @Override
+                    public float getMaxScore(int upTo) throws IOException {
+                        // The decay factor is at most 1
+                        return in.getMaxScore(upTo);
+                    }
+                };
+            }
+
+            @Override
+            public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+                Explanation innerExplanation = in.explain(context, doc);
+                if (!innerExplanation.isMatch()) {
+                    return innerExplanation;
+                }
+                float decay = decay(context.docBase + doc);
+                return Explanation.match(innerExplanation.getValue().floatValue() * decay, "product of:",
+                    innerExplanation, Explanation.match(decay, "distance decay with pivot " + pivotKm + " km"));
+            }
+
+            @Override
+            public boolean isCacheable(LeafReaderContext context) {
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        query.visit(visitor.getSubVisitor(BooleanClause.Occur.MUST, this));
+    }
+
+    @Override
+    public String toString(String field) {
+        return "DistanceDecay(" + query.toString(field) + ", point=[" + latitude + ", " + longitude + "], pivot=" + pivotKm + "km)";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!sameClassAs(other)) {
+            return false;
+        }
+        DistanceDecayQuery otherQuery = (DistanceDecayQuery) other;
+        return query.equals(otherQuery.query) && packedLocations == otherQuery.packedLocations &&
+            latitude == otherQuery.latitude && longitude == otherQuery.longitude && pivotKm == otherQuery.pivotKm;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = classHash();
+        hash = 31 * hash + query.hashCode();
+        hash = 31 * hash + System.identityHashCode(packedLocations);
+        hash = 31 * hash + Float.hashCode(latitude);
+        hash = 31 * hash + Float.hashCode(longitude);
+        return 31 * hash + Float.hashCode(pivotKm);
+    }
+
+}
@@ -1,20 +1,20 @@
 package eu.ows.mosaic;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Map;
 import java.util.Set;
 import java.util.List;
 import java.util.TreeMap;
 
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.FixedBitSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
 
 /**
  * Metadata module for the geo metadata.
@@ -36,6 +36,62 @@ public class GeoMetadata extends MetadataModule {
     @Override
     public void validateParams(Map<String, String> queryParams) {
         super.validateParams(queryParams);
+
+        if (queryParams.containsKey("lat") != queryParams.containsKey("lon")) {
+            LOGGER.error("The parameters lat and lon must be specified together");
+            throw new MosaicWebException("The parameters lat and lon must be specified together");
+        }
+
+        if (queryParams.containsKey("lat") && !GeoUtils.isValidLatitude(queryParams.get("lat"))) {
+            LOGGER.error("The lat parameter {} is invalid and must be between -90 and 90", queryParams.get("lat"));
+            throw new MosaicWebException(String.format("The lat parameter %s is invalid and must be between -90 and 90", queryParams.get("lat")));
+        }
+
+        if (queryParams.containsKey("lon") && !GeoUtils.isValidLongitude(queryParams.get("lon"))) {
+            LOGGER.error("The lon parameter {} is invalid and must be between -180 and 180", queryParams.get("lon"));
+            throw new MosaicWebException(String.format("The lon parameter %s is invalid and must be between -180 and 180", queryParams.get("lon")));
+        }
+
+        if (queryParams.containsKey("radius") && !GeoUtils.isValidDistance(queryParams.get("radius"))) {
+            LOGGER.error("The radius parameter {} is invalid and must be a positive value", queryParams.get("radius"));
+            throw new MosaicWebException(String.format("The radius parameter %s is invalid and must be a positive value", queryParams.get("radius")));
+        }
+
+        if (queryParams.containsKey("decay") && !GeoUtils.isValidDistance(queryParams.get("decay"))) {
+            LOGGER.error("The decay parameter {} is invalid and must be a positive value", queryParams.get("decay"));
+            throw new MosaicWebException(String.format("The decay parameter %s is invalid and must be a positive value", queryParams.get("decay")));
+        }
+
+        if ((queryParams.containsKey("radius") || queryParams.containsKey("decay")) && !queryParams.containsKey("lat")) {
+            LOGGER.error("The parameters radius and decay require the parameters lat and lon");
+            throw new MosaicWebException("The parameters radius and decay require the parameters lat and lon");
+        }
+    }
+
+    @Override
+    public void onIndexLoaded(IndexContext context) throws SQLException {
+        if (context.getTableName() == null || !hasLocationsColumn(context)) {
+            return;
+        }
+        PackedLocations packedLocations = PackedLocations.build(context);
+        context.putAttachment(PackedLocations.ATTACHMENT_KEY, packedLocations);
+        context.putAttachment(LocationGridIndex.ATTACHMENT_KEY, LocationGridIndex.build(packedLocations));
+    }
+
+    /**
+     * Checks if the metadata table of a generation contains the locations column.
+     * @param context Loaded index generation
+     * @return True if the column exists, false otherwise
+     * @throws SQLException If the columns of the table could not be retrieved
+     */
+    private boolean hasLocationsColumn(IndexContext context) throws SQLException {
+        String sql = "SELECT count(*) FROM information_schema.columns WHERE table_name = ? AND column_name = 'locations'";
+        try (Connection conn = context.openConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, context.getTableName());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
     }
 
     @Override
@@ -56,6 +112,18 @@ public class GeoMetadata extends MetadataModule {
             parsedParams.put("operator", operatorValue);
         }
 
+        if (queryParams.containsKey("lat") && queryParams.containsKey("lon")) {
+            parsedParams.put("lat", queryParams.get("lat"));
+            parsedParams.put("lon", queryParams.get("lon"));
+
+            if (queryParams.containsKey("radius")) {
+                parsedParams.put("radius", queryParams.get("radius"));
+            }
+            if (queryParams.containsKey("decay")) {
+                parsedParams.put("decay", queryParams.get("decay"));
+            }
+        }
+
         return parsedParams;
     }
 
@@ -69,38 +137,138 @@ public class GeoMetadata extends MetadataModule {
         return super.getSqlFilterValues(queryParams, metadataColumns);
     }
 
+    @Override
+    public Query getFilterQuery(IndexContext context, Map<String, Object> queryParams) {
+        BoundingBox bbox = parseBoundingBox(queryParams);
+        boolean radiusSearch = queryParams.containsKey("radius");
+        LocationGridIndex gridIndex = (LocationGridIndex) context.getAttachment(LocationGridIndex.ATTACHMENT_KEY);
+        if ((bbox == null && !radiusSearch) || gridIndex == null) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        FixedBitSet docs = null;
+        String description = "";
+        if (bbox != null) {
+            String operator = (queryParams.containsKey("operator")) ? (String) queryParams.get("operator") : GeoUtils.DEFAULT_OPERATOR;
+            docs = gridIndex.query(bbox, operator);
+            description += "locations " + operator + " [" + bbox.getWest() + ", " + bbox.getSouth() + ", " + bbox.getEast() + ", " + bbox.getNorth() + "]";
+        }
+        if (radiusSearch) {
+            float latitude = GeoUtils.convertLatitude((String) queryParams.get("lat"));
+            float longitude = GeoUtils.convertLongitude((String) queryParams.get("lon"));
+            float radius = GeoUtils.convertDistance((String) queryParams.get("radius"));
+            FixedBitSet radiusDocs = gridIndex.queryRadius(latitude, longitude, radius);
+            if (docs == null) {
+                docs = radiusDocs;
+            } else {
+                docs.and(radiusDocs);
+            }
+            description += (description.isEmpty() ? "" : " and ") + "locations within " + radius + " km of [" + latitude + ", " + longitude + "]";
+        }
+        LOGGER.debug("Location grid query of index {} matched {} documents in {} µs", context.getIndexName(), docs.cardinality(), (System.nanoTime() - start) / 1000);
+
+        return new DocSetFilterQuery(description, docs);
+    }
+
+    @Override
+    public Query rewriteQuery(IndexContext context, Query query, Map<String, Object> queryParams) {
+        PackedLocations packedLocations = (PackedLocations) context.getAttachment(PackedLocations.ATTACHMENT_KEY);
+        if (!queryParams.containsKey("decay") || packedLocations == null) {
+            return query;
+        }
+
+        // Combine the text score with the distance to the nearest location of a document
+        return new DistanceDecayQuery(query, packedLocations,
+            GeoUtils.convertLatitude((String) queryParams.get("lat")),
+            GeoUtils.convertLongitude((String) queryParams.get("lon")),
+            GeoUtils.convertDistance((String) queryParams.get("decay")));
+    }
+
     @Override
     public boolean inManualFilter(Map<String, String> result, Map<String, Object> queryParams) {
-        BoundingBox bbox = null;
+        BoundingBox bbox = parseBoundingBox(queryParams);
+        boolean radiusSearch = queryParams.containsKey("radius");
+        if (bbox == null && !radiusSearch) {
+            return true;
+        }
+
+        // Results of generations with a location grid index have already been filtered by the filter query
+        if (result instanceof MetadataRow) {
+            IndexContext context = ((MetadataRow) result).getBatch().getIndexContext();
+            if (context != null && context.getAttachment(LocationGridIndex.ATTACHMENT_KEY) != null) {
+                return true;
+            }
+        }
+
+        Locations locations = GeoUtils.getLocations(result);
+        if (radiusSearch) {
+            float distance = GeoUtils.nearestDistanceKm(locations,
+                GeoUtils.convertLatitude((String) queryParams.get("lat")),
+                GeoUtils.convertLongitude((String) queryParams.get("lon")));
+            if (distance > GeoUtils.convertDistance((String) queryParams.get("radius"))) {
+                return false;
+            }
+        }
+
+        String operator = (queryParams.containsKey("operator")) ? (String) queryParams.get("operator") : GeoUtils.DEFAULT_OPERATOR;
+        return bbox == null || GeoUtils.locationsInBoundingBox(locations, bbox, operator);
+    }
+
+    @Override
+    public void extractFeatures(Map<String, String> result, Set<String> queryTerms, Map<String, Object> queryParams, Map<String, Double> features) {
+        // Proximity to the point of the query, 1 at the point and 0.5 at a distance of 100 km
+        Float distance = getDistance(result, queryParams);
+        if (distance != null) {
+            features.put("geoProximity", 1.0 / (1.0 + distance / 100.0));
+        }
+    }
+
+    /**
+     * Computes the distance between the point of the query and the nearest location of a search result.
+     * @param result Map of metadata columns and their values of a search result
+     * @param queryParams Map of parsed query parameters
+     * @return Distance in kilometers or null if no point has been requested or the search result has no locations
+     */
+    private Float getDistance(Map<String, String> result, Map<String, Object> queryParams) {
+        if (!queryParams.containsKey("lat") || !queryParams.containsKey("lon")) {
+            return null;
+        }
+
+        float distance = GeoUtils.nearestDistanceKm(GeoUtils.getLocations(result),
+            GeoUtils.convertLatitude((String) queryParams.get("lat")),
+            GeoUtils.convertLongitude((String) queryParams.get("lon")));
+        return Float.isInfinite(distance) ? null : distance;
+    }
+
+    /**
+     * Creates the bounding box from the parsed query parameters.
+     * @param queryParams Map of parsed query parameters
+     * @return Bounding box or null if no bounding box has been requested
+     */
+    private BoundingBox parseBoundingBox(Map<String, Object> queryParams) {
         if (queryParams.containsKey("east") && queryParams.containsKey("west") && 
             queryParams.containsKey("north") && queryParams.containsKey("south")) {
-            bbox = new BoundingBox(
+            return new BoundingBox(
                 GeoUtils.convertLongitude((String) queryParams.get("east")),
                 GeoUtils.convertLongitude((String) queryParams.get("west")),
                 GeoUtils.convertLatitude((String) queryParams.get("north")),
                 GeoUtils.convertLatitude((String) queryParams.get("south")));
         }
-
-        Locations locations = GeoUtils.parseLocations(result.get("locations"));
-        String operator = (queryParams.containsKey("operator")) ? (String) queryParams.get("operator") : GeoUtils.DEFAULT_OPERATOR;
-        return bbox == null || GeoUtils.locationsInBoundingBox(locations, bbox, operator);
+        return null;
     }
 
     @Override
     public JsonObject serializeJson(Map<String, String> result, Map<String, Object> queryParams) {
         JsonObject json = new JsonObject();
 
-        Locations locations = (result.containsKey("locations")) ? GeoUtils.parseLocations(result.get("locations")) : new Locations();
-    
-        ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
-        JsonArray locationsArray = new JsonArray();
-        try {
-			locationsArray = new Gson().fromJson(ow.writeValueAsString(locations), JsonArray.class);
-		} catch (JsonSyntaxException | JsonProcessingException e) {
-            LOGGER.error("Error serializing locations to JSON", e);
-		}
+        Locations locations = (result.containsKey("locations")) ? GeoUtils.getLocations(result) : new Locations();
+        json.add("locations", GeoUtils.toJsonArray(locations));
 
-        json.add("locations", locationsArray);
+        Float distance = getDistance(result, queryParams);
+        if (distance != null) {
+            json.addProperty("distance", distance);
+        }
 
         return json;
     }
@@ -109,7 +277,7 @@ public class GeoMetadata extends MetadataModule {
     public String serializeXml(Map<String, String> result, Map<String, Object> queryParams) {
         String xml = "";                
 
-        Locations locations = (result.containsKey("locations")) ? GeoUtils.parseLocations(result.get("locations")) : new Locations();
+        Locations locations = (result.containsKey("locations")) ? GeoUtils.getLocations(result) : new Locations();
 
         xml += "<locations>";
         for (Location location : locations) {
@@ -128,6 +296,11 @@ public class GeoMetadata extends MetadataModule {
         }
         xml += "</locations>";
 
+        Float distance = getDistance(result, queryParams);
+        if (distance != null) {
+            xml += "<distance>" + distance + "</distance>";
+        }
+
         return xml;
     }
 
@@ -6,8 +6,11 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.lucene.util.SloppyMath;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 
 /**
@@ -18,15 +21,73 @@ public class GeoUtils {
     public static final String OPERATOR_AND = "and";
     public static final String DEFAULT_OPERATOR = OPERATOR_OR;
 
+    private static final String LOCATIONS_ATTACHMENT_KEY = "geo.locations";
+
+    private static final Gson GSON = new Gson();
+    private static final Type LOCATIONS_TYPE = new TypeToken<List<Map<String, List<List<Object>>>>>(){}.getType();
+
+    /**
+     * Returns the locations of a search result.
+     * If the result is a row of a metadata batch, the locations are decoded from the packed locations of the
+     * index generation (or parsed from JSON if they are not available) and cached in the row, so that
+     * the locations of a search result are decoded at most once per request.
+     * @param result Map of metadata columns and their values of a search result
+     * @return Locations of the search result
+     */
+    public static Locations getLocations(Map<String, String> result) {
+        if (!(result instanceof MetadataRow)) {
+            return parseLocations(result.get("locations"));
+        }
+
+        MetadataRow row = (MetadataRow) result;
+        Locations locations = (Locations) row.getAttachment(LOCATIONS_ATTACHMENT_KEY);
+        if (locations == null) {
+            PackedLocations packedLocations = getPackedLocations(row);
+            locations = packedLocations != null ? packedLocations.decode(row.getDocOrd()) : parseLocations(row.get("locations"));
+            row.putAttachment(LOCATIONS_ATTACHMENT_KEY, locations);
+        }
+        return locations;
+    }
+
+    /**
+     * Returns the packed locations of the index generation a search result belongs to.
+     * @param row Search result
+     * @return Packed locations or null if they have not been built for the generation
+     */
+    private static PackedLocations getPackedLocations(MetadataRow row) {
+        IndexContext context = row.getBatch().getIndexContext();
+        return context == null ? null : (PackedLocations) context.getAttachment(PackedLocations.ATTACHMENT_KEY);
+    }
+
+    /**
+     * Parses the JSON string of the locations column into its raw structure, i.e., a list of maps from the
+     * location name to the entries of the location, each consisting of latitude, longitude and country code.
+     * @param locationsAsJson JSON string containing the locations
+     * @return Raw locations or null if the string is empty
+     */
+    public static List<Map<String, List<List<Object>>>> parseRawLocations(String locationsAsJson) {
+        return GSON.fromJson(locationsAsJson, LOCATIONS_TYPE);
+    }
+
+    /**
+     * Converts a raw coordinate of the locations column to a float.
+     * @param value Number or string representing the coordinate
+     * @return Float representing the coordinate
+     */
+    public static float toFloat(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).floatValue();
+        }
+        return Float.parseFloat(String.valueOf(value));
+    }
+
     /**
      * Parses the locations from the JSON string.
      * @param locationsAsJson JSON string containing the locations
      * @return Locations object containing the parsed locations
      */
     public static Locations parseLocations(String locationsAsJson) {
-        Gson gson = new Gson();
-        Type listType = new TypeToken<List<Map<String, List<List<Object>>>>>(){}.getType();
-        List<Map<String, List<List<Object>>>> rawLocations = gson.fromJson(locationsAsJson, listType);
+        List<Map<String, List<List<Object>>>> rawLocations = parseRawLocations(locationsAsJson);
 
         Locations locations = new Locations();
 
@@ -35,24 +96,14 @@ public class GeoUtils {
             for (Map<String,List<List<Object>>> locationMap : rawLocations) {
                 for (Map.Entry<String, List<List<Object>>> locationMapEntry : locationMap.entrySet()) {
                     List<LocationEntry> locationEntries = new ArrayList<>();
-                    float latitude = Float.parseFloat(String.valueOf(locationMapEntry.getValue().get(0).get(0)));
-                    float longitude = Float.parseFloat(String.valueOf(locationMapEntry.getValue().get(0).get(1)));
-                    String alpha2CountryCode = String.valueOf(locationMapEntry.getValue().get(0).get(2));
-
-                    locationEntries.add(new LocationEntry(latitude, longitude, alpha2CountryCode));
-                    locations.add(new Location(locationMapEntry.getKey(), locationEntries));
-
-                    // Currently, only the first entry of a location is added used for filtering
-                    /*
                     for (List<Object> locationsPerLocation : locationMapEntry.getValue()) {
-                        float latitude = Float.parseFloat(String.valueOf(locationsPerLocation.get(0)));
-                        float longitude = Float.parseFloat(String.valueOf(locationsPerLocation.get(1)));
+                        float latitude = toFloat(locationsPerLocation.get(0));
+                        float longitude = toFloat(locationsPerLocation.get(1));
                         String alpha2CountryCode = String.valueOf(locationsPerLocation.get(2));
 
                         locationEntries.add(new LocationEntry(latitude, longitude, alpha2CountryCode));
                     }
                     locations.add(new Location(locationMapEntry.getKey(), locationEntries));
-                    */
                 }
             }
         }
@@ -60,6 +111,33 @@ public class GeoUtils {
         return locations;
     }
 
+    /**
+     * Serializes the locations as a JSON array.
+     * @param locations Locations to serialize
+     * @return JSON array with one object per location containing its name and entries
+     */
+    public static JsonArray toJsonArray(Locations locations) {
+        JsonArray locationsArray = new JsonArray();
+
+        for (Location location : locations) {
+            JsonArray locationEntriesArray = new JsonArray();
+            for (LocationEntry locationEntry : location.getLocationEntries()) {
+                JsonObject locationEntryObject = new JsonObject();
+                locationEntryObject.addProperty("latitude", locationEntry.getLatitude());
+                locationEntryObject.addProperty("longitude", locationEntry.getLongitude());
+                locationEntryObject.addProperty("alpha2CountryCode", locationEntry.getAlpha2CountryCode());
+                locationEntriesArray.add(locationEntryObject);
+            }
+
+            JsonObject locationObject = new JsonObject();
+            locationObject.addProperty("locationName", location.getLocationName());
+            locationObject.add("locationEntries", locationEntriesArray);
+            locationsArray.add(locationObject);
+        }
+
+        return locationsArray;
+    }
+
     /**
      * Checks if the given string is a valid latitude.
      * @param latitudeAsString String representation of the latitude
@@ -80,6 +158,25 @@ public class GeoUtils {
         return longitude >= -180 && longitude <= 180;
     }
 
+    /**
+     * Checks if the given string is a valid distance in kilometers.
+     * @param distanceAsString String representation of the distance
+     * @return True if the string is a positive number, false otherwise
+     */
+    public static boolean isValidDistance(String distanceAsString) {
+        float distance = NumberUtils.toFloat(distanceAsString, Float.NaN);
+        return distance > 0 && !Float.isInfinite(distance);
+    }
+
+    /**
+     * Converts the given string to a float representing a distance in kilometers.
+     * @param distanceAsString String representation of the distance
+     * @return Float representing the distance
+     */
+    public static float convertDistance(String distanceAsString) {
+        return NumberUtils.toFloat(distanceAsString, Float.NaN);
+    }
+
     /**
      * Converts the given string to a float representing a latitude.
      * @param latitudeAsString String representation of the latitude
@@ -98,6 +195,35 @@ public class GeoUtils {
         return NumberUtils.toFloat(longitudeAsString, Float.NaN);
     }
 
+    /**
+     * Computes the great-circle distance between two points.
+     * @param latitude1 Latitude of the first point
+     * @param longitude1 Longitude of the first point
+     * @param latitude2 Latitude of the second point
+     * @param longitude2 Longitude of the second point
+     * @return Distance in kilometers
+     */
+    public static float distanceKm(float latitude1, float longitude1, float latitude2, float longitude2) {
+        return (float) (SloppyMath.haversinMeters(latitude1, longitude1, latitude2, longitude2) / 1000);
+    }
+
+    /**
+     * Computes the distance between a point and the nearest location entry.
+     * @param locations Locations to check
+     * @param latitude Latitude of the point
+     * @param longitude Longitude of the point
+     * @return Distance in kilometers or positive infinity if there are no location entries
+     */
+    public static float nearestDistanceKm(Locations locations, float latitude, float longitude) {
+        float nearestDistance = Float.POSITIVE_INFINITY;
+        for (Location location : locations) {
+            for (LocationEntry locationEntry : location.getLocationEntries()) {
+                nearestDistance = Math.min(nearestDistance, distanceKm(latitude, longitude, locationEntry.getLatitude(), locationEntry.getLongitude()));
+            }
+        }
+        return nearestDistance;
+    }
+
     /**
      * Checks if the locations are within the given bounding box.
      * @param locations Locations to check
@@ -0,0 +1,222 @@
+package eu.ows.mosaic;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory spatial index over all location entries of all documents of an index generation.
+ * The entries are bucketed into a grid of one by one degree cells, which is stored as a compressed array:
+ * the entries of a cell are contiguous and the start of each cell is kept in an offset array.
+ * A bounding box query only visits the cells overlapping the bounding box and checks the entries of the border cells exactly.
+ */
+public class LocationGridIndex {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(LocationGridIndex.class);
+
+    public static final String ATTACHMENT_KEY = "geo.locationGridIndex";
+
+    private static final int NUM_LATITUDE_CELLS = 180;
+    private static final int NUM_LONGITUDE_CELLS = 360;
+    private static final double KM_PER_DEGREE = 111.195;
+
+    private final PackedLocations packedLocations;
+    private final int[] cellStarts;
+    private final int[] cellEntries;
+    private final int[] entryDocOrds;
+    private final FixedBitSet docsWithoutLocations;
+
+    private LocationGridIndex(PackedLocations packedLocations, int[] cellStarts, int[] cellEntries, int[] entryDocOrds, FixedBitSet docsWithoutLocations) {
+        this.packedLocations = packedLocations;
+        this.cellStarts = cellStarts;
+        this.cellEntries = cellEntries;
+        this.entryDocOrds = entryDocOrds;
+        this.docsWithoutLocations = docsWithoutLocations;
+    }
+
+    /**
+     * Builds the grid over the packed locations of a generation.
+     * @param packedLocations Packed locations of all documents
+     * @return Spatial index of the location entries
+     */
+    public static LocationGridIndex build(PackedLocations packedLocations) {
+        long start = System.currentTimeMillis();
+        int maxDoc = packedLocations.getMaxDoc();
+        int numEntries = packedLocations.getNumEntries();
+
+        // Map each entry to its document and collect the documents without location entries
+        int[] entryDocOrds = new int[numEntries];
+        FixedBitSet docsWithoutLocations = new FixedBitSet(Math.max(1, maxDoc));
+        for (int docOrd = 0; docOrd < maxDoc; docOrd++) {
+            int firstEntry = packedLocations.getFirstEntry(docOrd);
+            int endEntry = packedLocations.getEndEntry(docOrd);
+            if (firstEntry == endEntry) {
+                docsWithoutLocations.set(docOrd);
+            }
+            for (int entry = firstEntry; entry < endEntry; entry++) {
+                entryDocOrds[entry] = docOrd;
+            }
+        }
+
+        // Count the entries per cell and sort the entries by cell
+        int[] cellStarts = new int[NUM_LATITUDE_CELLS * NUM_LONGITUDE_CELLS + 1];
+        for (int entry = 0; entry < numEntries; entry++) {
+            cellStarts[cell(packedLocations.getLatitude(entry), packedLocations.getLongitude(entry)) + 1]++;
+        }
+        for (int cell = 1; cell < cellStarts.length; cell++) {
+            cellStarts[cell] += cellStarts[cell - 1];
+        }
+        int[] cellEntries = new int[numEntries];
+        int[] cellPositions = cellStarts.clone();
+        for (int entry = 0; entry < numEntries; entry++) {
+            cellEntries[cellPositions[cell(packedLocations.getLatitude(entry), packedLocations.getLongitude(entry))]++] = entry;
+        }
+
+        LOGGER.info("Built location grid index over {} entries of {} documents in {} ms", numEntries, maxDoc, System.currentTimeMillis() - start);
+        return new LocationGridIndex(packedLocations, cellStarts, cellEntries, entryDocOrds, docsWithoutLocations);
+    }
+
+    private static int latitudeCell(float latitude) {
+        return Math.max(0, Math.min(NUM_LATITUDE_CELLS - 1, (int) Math.floor(latitude + 90)));
+    }
+
+    private static int longitudeCell(float longitude) {
+        return Math.max(0, Math.min(NUM_LONGITUDE_CELLS - 1, (int) Math.floor(longitude + 180)));
+    }
+
+    private static int cell(float latitude, float longitude) {
+        return latitudeCell(latitude) * NUM_LONGITUDE_CELLS + longitudeCell(longitude);
+    }
+
+    /**
+     * Returns the documents whose locations match a bounding box.
+     * With the operator {@code or} a document matches if at least one of its location entries is within the bounding box,
+     * with the operator {@code and} if all of its location entries are within the bounding box. Documents without
+     * location entries always match. A bounding box whose west is greater than its east wraps around the antimeridian.
+     * @param bbox Bounding box
+     * @param operator Operator combining the location entries of a document
+     * @return Set of the Lucene document numbers of the matching documents
+     */
+    public FixedBitSet query(BoundingBox bbox, String operator) {
+        int maxDoc = packedLocations.getMaxDoc();
+        FixedBitSet candidates = new FixedBitSet(Math.max(1, maxDoc));
+
+        int southCell = latitudeCell(bbox.getSouth());
+        int northCell = latitudeCell(bbox.getNorth());
+        if (bbox.getWest() <= bbox.getEast()) {
+            collect(bbox, southCell, northCell, longitudeCell(bbox.getWest()), longitudeCell(bbox.getEast()), candidates);
+        } else {
+            // The bounding box crosses the antimeridian
+            collect(bbox, southCell, northCell, longitudeCell(bbox.getWest()), NUM_LONGITUDE_CELLS - 1, candidates);
+            collect(bbox, southCell, northCell, 0, longitudeCell(bbox.getEast()), candidates);
+        }
+
+        if (operator.equals(GeoUtils.OPERATOR_AND)) {
+            // Keep only the candidates whose location entries are all within the bounding box
+            int docOrd = candidates.nextSetBit(0);
+            while (docOrd != DocIdSetIterator.NO_MORE_DOCS) {
+                for (int entry = packedLocations.getFirstEntry(docOrd); entry < packedLocations.getEndEntry(docOrd); entry++) {
+                    if (!contains(bbox, packedLocations.getLatitude(entry), packedLocations.getLongitude(entry))) {
+                        candidates.clear(docOrd);
+                        break;
+                    }
+                }
+                docOrd = docOrd + 1 < candidates.length() ? candidates.nextSetBit(docOrd + 1) : DocIdSetIterator.NO_MORE_DOCS;
+            }
+        }
+
+        candidates.or(docsWithoutLocations);
+        return candidates;
+    }
+
+    /**
+     * Returns the documents with at least one location entry within a radius around a point.
+     * Only the cells overlapping the bounding box of the circle are visited. Documents without location entries do not match.
+     * @param latitude Latitude of the center
+     * @param longitude Longitude of the center
+     * @param radiusKm Radius in kilometers
+     * @return Set of the Lucene document numbers of the matching documents
+     */
+    public FixedBitSet queryRadius(float latitude, float longitude, float radiusKm) {
+        FixedBitSet docs = new FixedBitSet(Math.max(1, packedLocations.getMaxDoc()));
+
+        // Bounding box of the circle, all longitudes if the circle contains a pole
+        double latitudeDelta = radiusKm / KM_PER_DEGREE;
+        double south = latitude - latitudeDelta;
+        double north = latitude + latitudeDelta;
+        // The circle is widest poleward of its center, where it spans asin(sin(radius) / cos(latitude)) degrees of longitude
+        double angularRadius = Math.toRadians(latitudeDelta);
+        double sinRatio = Math.sin(angularRadius) / Math.cos(Math.toRadians(latitude));
+        double longitudeDelta = angularRadius < Math.PI / 2 && sinRatio < 1 ? Math.toDegrees(Math.asin(sinRatio)) : 180;
+
+        int southCell = latitudeCell((float) south);
+        int northCell = latitudeCell((float) north);
+        if (south <= -90 || north >= 90 || longitudeDelta >= 180) {
+            collectRadius(latitude, longitude, radiusKm, southCell, northCell, 0, NUM_LONGITUDE_CELLS - 1, docs);
+        } else {
+            float west = (float) (longitude - longitudeDelta);
+            float east = (float) (longitude + longitudeDelta);
+            if (west < -180) {
+                collectRadius(latitude, longitude, radiusKm, southCell, northCell, longitudeCell(west + 360), NUM_LONGITUDE_CELLS - 1, docs);
+                collectRadius(latitude, longitude, radiusKm, southCell, northCell, 0, longitudeCell(east), docs);
+            } else if (east > 180) {
+                collectRadius(latitude, longitude, radiusKm, southCell, northCell, longitudeCell(west), NUM_LONGITUDE_CELLS - 1, docs);
+                collectRadius(latitude, longitude, radiusKm, southCell, northCell, 0, longitudeCell(east - 360), docs);
+            } else {
+                collectRadius(latitude, longitude, radiusKm, southCell, northCell, longitudeCell(west), longitudeCell(east), docs);
+            }
+        }
+
+        return docs;
+    }
+
+    /**
+     * Adds the documents of all entries within the radius that lie in a range of cells.
+     */
+    private void collectRadius(float latitude, float longitude, float radiusKm, int southCell, int northCell, int westCell, int eastCell, FixedBitSet docs) {
+        for (int latitudeCell = southCell; latitudeCell <= northCell; latitudeCell++) {
+            for (int longitudeCell = westCell; longitudeCell <= eastCell; longitudeCell++) {
+                int cell = latitudeCell * NUM_LONGITUDE_CELLS + longitudeCell;
+                for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+                    int entry = cellEntries[i];
+                    if (!docs.get(entryDocOrds[entry]) &&
+                        GeoUtils.distanceKm(latitude, longitude, packedLocations.getLatitude(entry), packedLocations.getLongitude(entry)) <= radiusKm) {
+                        docs.set(entryDocOrds[entry]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the documents of all entries within the bounding box that lie in a range of cells.
+     */
+    private void collect(BoundingBox bbox, int southCell, int northCell, int westCell, int eastCell, FixedBitSet docs) {
+        for (int latitudeCell = southCell; latitudeCell <= northCell; latitudeCell++) {
+            boolean innerLatitude = latitudeCell > southCell && latitudeCell < northCell;
+            for (int longitudeCell = westCell; longitudeCell <= eastCell; longitudeCell++) {
+                boolean inner = innerLatitude && longitudeCell > westCell && longitudeCell < eastCell;
+                int cell = latitudeCell * NUM_LONGITUDE_CELLS + longitudeCell;
+                for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+                    int entry = cellEntries[i];
+                    // Entries of inner cells are within the bounding box, only border cells are checked exactly
+                    if (inner || contains(bbox, packedLocations.getLatitude(entry), packedLocations.getLongitude(entry))) {
+                        docs.set(entryDocOrds[entry]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if a location entry is within a bounding box, as done by {@link LocationEntry}.
+     */
+    private static boolean contains(BoundingBox bbox, float latitude, float longitude) {
+        boolean betweenWestEast = bbox.getWest() > bbox.getEast()
+            ? longitude >= bbox.getWest() || longitude <= bbox.getEast()
+            : longitude >= bbox.getWest() && longitude <= bbox.getEast();
+        return betweenWestEast && latitude >= bbox.getSouth() && latitude <= bbox.getNorth();
+    }
+
+}
@@ -0,0 +1,266 @@
+package eu.ows.mosaic;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Packed representation of the locations of all documents of an index generation.
+ * The JSON column {@code locations} is parsed once when the generation is loaded. Location entries are stored
+ * in primitive arrays (latitude, longitude and the ordinal of the country code), location names and country
+ * codes in dictionaries, and the locations of a document are addressed by its Lucene document number.
+ */
+public class PackedLocations {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(PackedLocations.class);
+
+    public static final String ATTACHMENT_KEY = "geo.packedLocations";
+
+    // Locations of document d are [docLocationStarts[d], docLocationStarts[d + 1])
+    private final int[] docLocationStarts;
+    // Entries of location l are [locationEntryStarts[l], locationEntryStarts[l + 1])
+    private final int[] locationEntryStarts;
+    private final int[] locationNameOrdinals;
+    private final float[] latitudes;
+    private final float[] longitudes;
+    private final short[] countryCodeOrdinals;
+    private final String[] locationNames;
+    private final String[] countryCodes;
+
+    private PackedLocations(int[] docLocationStarts, int[] locationEntryStarts, int[] locationNameOrdinals,
+                            float[] latitudes, float[] longitudes, short[] countryCodeOrdinals,
+                            String[] locationNames, String[] countryCodes) {
+        this.docLocationStarts = docLocationStarts;
+        this.locationEntryStarts = locationEntryStarts;
+        this.locationNameOrdinals = locationNameOrdinals;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.countryCodeOrdinals = countryCodeOrdinals;
+        this.locationNames = locationNames;
+        this.countryCodes = countryCodes;
+    }
+
+    /**
+     * Reads and packs the locations of all documents from the metadata table of a generation.
+     * @param context Loaded index generation
+     * @return Packed locations of the generation
+     * @throws SQLException If the metadata table could not be read
+     */
+    public static PackedLocations build(IndexContext context) throws SQLException {
+        long start = System.currentTimeMillis();
+        Builder builder = new Builder(context.getMaxDoc());
+
+        String sql = "SELECT doc_ord, locations " +
+                     "FROM " + context.getTableName() + " " +
+                     "WHERE locations IS NOT NULL " +
+                     "ORDER BY doc_ord";
+
+        try (Connection conn = context.openConnection(); Statement statement = conn.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            while (rs.next()) {
+                builder.addDocument(rs.getInt(1), rs.getString(2));
+            }
+        }
+
+        PackedLocations packedLocations = builder.build();
+        LOGGER.info("Packed {} location entries of index {} in {} ms", packedLocations.getNumEntries(), context.getIndexName(), System.currentTimeMillis() - start);
+        return packedLocations;
+    }
+
+    public int getMaxDoc() {
+        return docLocationStarts.length - 1;
+    }
+
+    public int getNumEntries() {
+        return latitudes.length;
+    }
+
+    /**
+     * Checks if a document has at least one location.
+     * @param docOrd Lucene document number
+     * @return True if the document has locations, false otherwise
+     */
+    public boolean hasLocations(int docOrd) {
+        return docOrd >= 0 && docOrd < getMaxDoc() && docLocationStarts[docOrd] < docLocationStarts[docOrd + 1];
+    }
+
+    /**
+     * Getter method for the first location entry of a document.
+     * @param docOrd Lucene document number
+     * @return Index of the first entry (entries of a document are contiguous)
+     */
+    public int getFirstEntry(int docOrd) {
+        return locationEntryStarts[docLocationStarts[docOrd]];
+    }
+
+    /**
+     * Getter method for the end of the location entries of a document.
+     * @param docOrd Lucene document number
+     * @return Index after the last entry of the document
+     */
+    public int getEndEntry(int docOrd) {
+        return locationEntryStarts[docLocationStarts[docOrd + 1]];
+    }
+
+    public float getLatitude(int entry) {
+        return latitudes[entry];
+    }
+
+    public float getLongitude(int entry) {
+        return longitudes[entry];
+    }
+
+    /**
+     * Computes the distance between a point and the nearest location entry of a document.
+     * @param docOrd Lucene document number
+     * @param latitude Latitude of the point
+     * @param longitude Longitude of the point
+     * @return Distance in kilometers or positive infinity if the document has no location entries
+     */
+    public float nearestDistanceKm(int docOrd, float latitude, float longitude) {
+        if (docOrd < 0 || docOrd >= getMaxDoc()) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float nearestDistance = Float.POSITIVE_INFINITY;
+        for (int entry = getFirstEntry(docOrd); entry < getEndEntry(docOrd); entry++) {
+            nearestDistance = Math.min(nearestDistance, GeoUtils.distanceKm(latitude, longitude, latitudes[entry], longitudes[entry]));
+        }
+        return nearestDistance;
+    }
+
+    /**
+     * Decodes the locations of a document.
+     * @param docOrd Lucene document number
+     * @return Locations of the document
+     */
+    public Locations decode(int docOrd) {
+        Locations locations = new Locations();
+        if (!hasLocations(docOrd)) {
+            return locations;
+        }
+
+        for (int location = docLocationStarts[docOrd]; location < docLocationStarts[docOrd + 1]; location++) {
+            List<LocationEntry> locationEntries = new ArrayList<>(locationEntryStarts[location + 1] - locationEntryStarts[location]);
+            for (int entry = locationEntryStarts[location]; entry < locationEntryStarts[location + 1]; entry++) {
+                locationEntries.add(new LocationEntry(latitudes[entry], longitudes[entry], countryCodes[countryCodeOrdinals[entry]]));
+            }
+            locations.add(new Location(locationNames[locationNameOrdinals[location]], locationEntries));
+        }
+
+        return locations;
+    }
+
+    /**
+     * Collects the location entries of documents while the metadata table is read.
+     */
+    private static class Builder {
+
+        private final int[] docLocationStarts;
+        private int[] locationEntryStarts = new int[1024];
+        private int[] locationNameOrdinals = new int[1024];
+        private float[] latitudes = new float[1024];
+        private float[] longitudes = new float[1024];
+        private short[] countryCodeOrdinals = new short[1024];
+
+        private final Map<String, Integer> locationNameDictionary = new HashMap<>();
+        private final List<String> locationNames = new ArrayList<>();
+        private final Map<String, Short> countryCodeDictionary = new HashMap<>();
+        private final List<String> countryCodes = new ArrayList<>();
+
+        private int numLocations = 0;
+        private int numEntries = 0;
+        private int nextDocOrd = 0;
+
+        Builder(int maxDoc) {
+            docLocationStarts = new int[maxDoc + 1];
+        }
+
+        /**
+         * Adds the locations of a document. Documents must be added in increasing order of their document numbers.
+         */
+        void addDocument(int docOrd, String locationsAsJson) {
+            if (docOrd < nextDocOrd || docOrd >= docLocationStarts.length - 1) {
+                return;
+            }
+            while (nextDocOrd <= docOrd) {
+                docLocationStarts[nextDocOrd++] = numLocations;
+            }
+
+            List<Map<String, List<List<Object>>>> rawLocations;
+            try {
+                rawLocations = GeoUtils.parseRawLocations(locationsAsJson);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Skipping invalid locations of document {}", docOrd);
+                return;
+            }
+            if (rawLocations == null) {
+                return;
+            }
+
+            for (Map<String, List<List<Object>>> locationMap : rawLocations) {
+                for (Map.Entry<String, List<List<Object>>> locationMapEntry : locationMap.entrySet()) {
+                    growLocations();
+                    locationEntryStarts[numLocations] = numEntries;
+                    locationNameOrdinals[numLocations] = locationNameDictionary.computeIfAbsent(locationMapEntry.getKey(), name -> {
+                        locationNames.add(name);
+                        return locationNames.size() - 1;
+                    });
+                    numLocations++;
+
+                    for (List<Object> rawEntry : locationMapEntry.getValue()) {
+                        growEntries();
+                        latitudes[numEntries] = GeoUtils.toFloat(rawEntry.get(0));
+                        longitudes[numEntries] = GeoUtils.toFloat(rawEntry.get(1));
+                        countryCodeOrdinals[numEntries] = countryCodeDictionary.computeIfAbsent(String.valueOf(rawEntry.get(2)), countryCode -> {
+                            countryCodes.add(countryCode);
+                            return (short) (countryCodes.size() - 1);
+                        });
+                        numEntries++;
+                    }
+                }
+            }
+        }
+
+        private void growLocations() {
+            if (numLocations + 1 >= locationEntryStarts.length) {
+                locationEntryStarts = ArrayUtil.grow(locationEntryStarts, numLocations + 2);
+                locationNameOrdinals = ArrayUtil.grow(locationNameOrdinals, numLocations + 2);
+            }
+        }
+
+        private void growEntries() {
+            if (numEntries >= latitudes.length) {
+                latitudes = ArrayUtil.grow(latitudes, numEntries + 1);
+                longitudes = ArrayUtil.grow(longitudes, numEntries + 1);
+                countryCodeOrdinals = ArrayUtil.grow(countryCodeOrdinals, numEntries + 1);
+            }
+        }
+
+        PackedLocations build() {
+            while (nextDocOrd < docLocationStarts.length) {
+                docLocationStarts[nextDocOrd++] = numLocations;
+            }
+            growLocations();
+            locationEntryStarts[numLocations] = numEntries;
+
+            return new PackedLocations(
+                docLocationStarts,
+                ArrayUtil.copyOfSubArray(locationEntryStarts, 0, numLocations + 1),
+                ArrayUtil.copyOfSubArray(locationNameOrdinals, 0, numLocations),
+                ArrayUtil.copyOfSubArray(latitudes, 0, numEntries),
+                ArrayUtil.copyOfSubArray(longitudes, 0, numEntries),
+                ArrayUtil.copyOfSubArray(countryCodeOrdinals, 0, numEntries),
+                locationNames.toArray(new String[0]),
+                countryCodes.toArray(new String[0]));
+        }
+    }
+
+}
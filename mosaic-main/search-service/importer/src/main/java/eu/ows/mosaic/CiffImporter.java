@@ -0,0 +1,568 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.KnnByteVectorField;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports a CIFF file into a Lucene index.
+ * The postings are inverted into per-document term lists in memory and the documents are then written
+ * by several threads, each with its own IndexWriter and a contiguous range of documents. Finally, the
+ * segments of all threads are added to the target index in document order and optionally force-merged
+ * into a single segment for searching. If the Parquet metadata of the index is given, the titles and URLs
+ * of the documents are indexed as additional fields for multi-field (BM25F) queries, and precomputed document
+ * embeddings are indexed as HNSW graphs for kNN queries (optionally quantized to 8-bit integers).
+ * The fingerprints of {@link DocFingerprints} (SimHash of the terms and, with metadata, the hash of the canonical URL)
+ * are written as numeric doc values, so that the search service can collapse duplicates.
+ * <p>
+ * The in-memory inversion needs about 16 bytes of heap per posting (the term-ordered postings and the
+ * document-ordered term lists are held at the same time, each with a document/term ID and a frequency of 4 bytes),
+ * plus about 50 bytes per document and the terms themselves, e.g., about 16 GB for one billion postings.
+ * Since the postings are held in Java arrays, a CIFF file can have at most {@link #MAX_POSTINGS} postings.
+ */
+public class CiffImporter {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(CiffImporter.class);
+
+    public static final String ID_FIELD = "id";
+    public static final String CONTENTS_FIELD = "contents";
+    public static final String TITLE_FIELD = "title";
+    public static final String URL_FIELD = "url";
+    public static final String VECTOR_FIELD = "vector";
+
+    public static final int MAX_POSTINGS = ArrayUtil.MAX_ARRAY_LENGTH;
+
+    public static final int DEFAULT_NUM_THREADS = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    public static final double DEFAULT_RAM_BUFFER_MB = 1024;
+
+    private static final FieldType CONTENTS_FIELD_TYPE = new FieldType();
+    static {
+        CONTENTS_FIELD_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
+        CONTENTS_FIELD_TYPE.setTokenized(true);
+        CONTENTS_FIELD_TYPE.setStored(false);
+        CONTENTS_FIELD_TYPE.setOmitNorms(false);
+        CONTENTS_FIELD_TYPE.freeze();
+    }
+
+    // Titles and URLs are analyzed by the analyzer of the IndexWriter (StandardAnalyzer), like queries by default
+    private static final FieldType METADATA_FIELD_TYPE = new FieldType(CONTENTS_FIELD_TYPE);
+    static {
+        METADATA_FIELD_TYPE.freeze();
+    }
+
+    private int numThreads = DEFAULT_NUM_THREADS;
+    private double ramBufferSizeMB = DEFAULT_RAM_BUFFER_MB;
+    private boolean forceMerge = true;
+    private String codecName;
+    private Path metadataPath;
+    private String embeddingColumn = ParquetMetadataReader.DEFAULT_EMBEDDING_COLUMN;
+    private boolean quantizeVectors = false;
+
+    // Terms by ordinal and postings by document in compressed sparse row layout
+    private String[] terms;
+    private long[] termHashes;
+    private int[] docOffsets;
+    private int[] docTermIds;
+    private int[] docTermFreqs;
+    private String[] collectionDocIds;
+    private int[] docLengths;
+    private ParquetMetadataReader.Metadata metadata;
+
+    /**
+     * Statistics of an import.
+     */
+    public static class ImportStatistics {
+        public int numDocs;
+        public int numTerms;
+        public long numPostings;
+        public int numThreads;
+        public long readMillis;
+        public long writeMillis;
+        public long mergeMillis;
+
+        public long getTotalMillis() {
+            return readMillis + writeMillis + mergeMillis;
+        }
+
+        public double getDocsPerSecond() {
+            return numDocs * 1000.0 / Math.max(1, getTotalMillis());
+        }
+
+        public double getPostingsPerSecond() {
+            return numPostings * 1000.0 / Math.max(1, getTotalMillis());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d documents, %d terms and %d postings imported with %d thread(s) in %d ms " +
+                                 "(read: %d ms, write: %d ms, merge: %d ms, %.0f docs/s, %.0f postings/s)",
+                                 numDocs, numTerms, numPostings, numThreads, getTotalMillis(),
+                                 readMillis, writeMillis, mergeMillis, getDocsPerSecond(), getPostingsPerSecond());
+        }
+    }
+
+    public CiffImporter setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+        return this;
+    }
+
+    public CiffImporter setRamBufferSizeMB(double ramBufferSizeMB) {
+        this.ramBufferSizeMB = ramBufferSizeMB;
+        return this;
+    }
+
+    public CiffImporter setForceMerge(boolean forceMerge) {
+        this.forceMerge = forceMerge;
+        return this;
+    }
+
+    public CiffImporter setCodecName(String codecName) {
+        this.codecName = codecName;
+        return this;
+    }
+
+    public CiffImporter setMetadataPath(Path metadataPath) {
+        this.metadataPath = metadataPath;
+        return this;
+    }
+
+    public CiffImporter setEmbeddingColumn(String embeddingColumn) {
+        this.embeddingColumn = embeddingColumn;
+        return this;
+    }
+
+    public CiffImporter setQuantizeVectors(boolean quantizeVectors) {
+        this.quantizeVectors = quantizeVectors;
+        return this;
+    }
+
+    /**
+     * Imports a CIFF file into a new Lucene index.
+     * @param ciffPath Path of the (optionally gzipped) CIFF file
+     * @param indexPath Path of the directory of the Lucene index
+     * @return Statistics of the import
+     * @throws IOException If the CIFF file could not be read or the index could not be written
+     */
+    public ImportStatistics importCiff(Path ciffPath, Path indexPath) throws IOException {
+        LOGGER.info("Importing CIFF file {} into Lucene index {}", ciffPath, indexPath);
+        ImportStatistics statistics = new ImportStatistics();
+
+        long start = System.currentTimeMillis();
+        readCiff(ciffPath, statistics);
+        if (metadataPath != null) {
+            metadata = ParquetMetadataReader.read(metadataPath, embeddingColumn, collectionDocIds);
+        }
+        statistics.readMillis = System.currentTimeMillis() - start;
+        LOGGER.info("Read {} documents and {} postings in {} ms", statistics.numDocs, statistics.numPostings, statistics.readMillis);
+
+        // Write contiguous document ranges in parallel into temporary indexes
+        Path tempPath = Files.createTempDirectory(indexPath.toAbsolutePath().getParent(), ".ciff-import-");
+        try {
+            start = System.currentTimeMillis();
+            statistics.numThreads = Math.min(numThreads, Math.max(1, statistics.numDocs));
+            List<Path> shardPaths = writeShards(tempPath, statistics.numThreads);
+            statistics.writeMillis = System.currentTimeMillis() - start;
+            LOGGER.info("Wrote {} shard(s) in {} ms", shardPaths.size(), statistics.writeMillis);
+
+            // Release the in-memory postings before merging
+            terms = null;
+            termHashes = null;
+            docOffsets = null;
+            docTermIds = null;
+            docTermFreqs = null;
+            collectionDocIds = null;
+            docLengths = null;
+            metadata = null;
+
+            start = System.currentTimeMillis();
+            mergeShards(shardPaths, indexPath);
+            statistics.mergeMillis = System.currentTimeMillis() - start;
+        } finally {
+            deleteRecursively(tempPath);
+        }
+
+        LOGGER.info("Imported CIFF file {}: {}", ciffPath, statistics);
+        return statistics;
+    }
+
+    /**
+     * Reads the CIFF file and inverts the term-ordered postings into document-ordered postings.
+     */
+    private void readCiff(Path ciffPath, ImportStatistics statistics) throws IOException {
+        try (CiffReader reader = new CiffReader(ciffPath)) {
+            CiffReader.Header header = reader.readHeader();
+            LOGGER.info("CIFF header: version {}, {} postings lists, {} documents, description: {}",
+                        header.version, header.numPostingsLists, header.numDocs, header.description);
+
+            int numDocs = header.numDocs;
+            terms = new String[header.numPostingsLists];
+            int[] termOffsets = new int[header.numPostingsLists + 1];
+            int[] postingDocIds = new int[1 << 16];
+            int[] postingFreqs = new int[1 << 16];
+            int[] docCounts = new int[numDocs];
+            int numPostings = 0;
+
+            // Read the postings lists in term order
+            CiffReader.PostingsList postingsList = new CiffReader.PostingsList();
+            for (int termId = 0; termId < header.numPostingsLists; termId++) {
+                reader.readPostingsList(postingsList);
+                terms[termId] = postingsList.term;
+                termOffsets[termId] = numPostings;
+
+                int newNumPostings = addPostings(numPostings, postingsList.size, postingsList.term);
+                if (newNumPostings > postingDocIds.length) {
+                    postingDocIds = ArrayUtil.grow(postingDocIds, newNumPostings);
+                    postingFreqs = ArrayUtil.grow(postingFreqs, newNumPostings);
+                }
+                System.arraycopy(postingsList.docIds, 0, postingDocIds, numPostings, postingsList.size);
+                System.arraycopy(postingsList.termFreqs, 0, postingFreqs, numPostings, postingsList.size);
+                for (int i = 0; i < postingsList.size; i++) {
+                    docCounts[postingsList.docIds[i]]++;
+                }
+                numPostings = newNumPostings;
+            }
+            termOffsets[header.numPostingsLists] = numPostings;
+
+            // Hash each term once for the SimHashes of the documents
+            termHashes = new long[header.numPostingsLists];
+            for (int termId = 0; termId < header.numPostingsLists; termId++) {
+                termHashes[termId] = DocFingerprints.hashTerm(terms[termId]);
+            }
+
+            // Invert the postings into document order
+            docOffsets = new int[numDocs + 1];
+            for (int docId = 0; docId < numDocs; docId++) {
+                docOffsets[docId + 1] = docOffsets[docId] + docCounts[docId];
+            }
+            docTermIds = new int[numPostings];
+            docTermFreqs = new int[numPostings];
+            int[] docPositions = docCounts;
+            System.arraycopy(docOffsets, 0, docPositions, 0, numDocs);
+            for (int termId = 0; termId < header.numPostingsLists; termId++) {
+                for (int i = termOffsets[termId]; i < termOffsets[termId + 1]; i++) {
+                    int position = docPositions[postingDocIds[i]]++;
+                    docTermIds[position] = termId;
+                    docTermFreqs[position] = postingFreqs[i];
+                }
+            }
+
+            // Read the document records
+            collectionDocIds = new String[numDocs];
+            docLengths = new int[numDocs];
+            CiffReader.DocRecord docRecord = new CiffReader.DocRecord();
+            for (int i = 0; i < numDocs; i++) {
+                reader.readDocRecord(docRecord);
+                collectionDocIds[docRecord.docId] = docRecord.collectionDocId;
+                docLengths[docRecord.docId] = docRecord.docLength;
+            }
+
+            statistics.numDocs = numDocs;
+            statistics.numTerms = header.numPostingsLists;
+            statistics.numPostings = numPostings;
+        }
+    }
+
+    /**
+     * Adds the postings of a term to the number of postings read so far.
+     * @return New number of postings
+     * @throws IOException If the CIFF file has more postings than can be held in memory
+     */
+    private static int addPostings(int numPostings, int numTermPostings, String term) throws IOException {
+        long newNumPostings = (long) numPostings + numTermPostings;
+        if (newNumPostings > MAX_POSTINGS) {
+            throw new IOException(String.format("The CIFF file has more than %d postings (limit exceeded at term '%s'), " +
+                                                "which cannot be inverted in memory, split the collection into several indexes", MAX_POSTINGS, term));
+        }
+        return Math.toIntExact(newNumPostings);
+    }
+
+    /**
+     * Writes the documents into one temporary index per thread.
+     * @param tempPath Directory of the temporary indexes
+     * @param numShards Number of threads and temporary indexes
+     * @return Paths of the temporary indexes in document order
+     */
+    private List<Path> writeShards(Path tempPath, int numShards) throws IOException {
+        int numDocs = collectionDocIds.length;
+        List<Path> shardPaths = new ArrayList<>();
+        List<Future<Void>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(numShards);
+
+        try {
+            for (int shard = 0; shard < numShards; shard++) {
+                Path shardPath = tempPath.resolve("shard-" + shard);
+                int startDoc = (int) ((long) numDocs * shard / numShards);
+                int endDoc = (int) ((long) numDocs * (shard + 1) / numShards);
+                shardPaths.add(shardPath);
+                futures.add(executor.submit(() -> {
+                    writeShard(shardPath, startDoc, endDoc);
+                    return null;
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import has been interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to write shard", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return shardPaths;
+    }
+
+    /**
+     * Writes a contiguous range of documents into a temporary index.
+     */
+    private void writeShard(Path shardPath, int startDoc, int endDoc) throws IOException {
+        long start = System.currentTimeMillis();
+        CiffNormSimilarity similarity = new CiffNormSimilarity();
+        IndexWriterConfig config = createConfig(ramBufferSizeMB / numThreads);
+        config.setSimilarity(similarity);
+
+        try (Directory directory = FSDirectory.open(shardPath); IndexWriter writer = new IndexWriter(directory, config)) {
+            CiffTokenStream tokenStream = new CiffTokenStream(terms, docTermIds, docTermFreqs);
+            StringField idField = new StringField(ID_FIELD, "", Field.Store.YES);
+            BinaryDocValuesField idDocValuesField = new BinaryDocValuesField(ID_FIELD, new BytesRef());
+            Document document = new Document();
+            document.add(idField);
+            // The id is also written as doc values, so the search service can resolve hits without reading stored fields
+            document.add(idDocValuesField);
+            document.add(new Field(CONTENTS_FIELD, tokenStream, CONTENTS_FIELD_TYPE));
+            NumericDocValuesField simHashField = new NumericDocValuesField(DocFingerprints.SIMHASH_FIELD, 0L);
+            document.add(simHashField);
+            Field titleField = new Field(TITLE_FIELD, "", METADATA_FIELD_TYPE);
+            Field urlField = new Field(URL_FIELD, "", METADATA_FIELD_TYPE);
+            NumericDocValuesField urlHashField = new NumericDocValuesField(DocFingerprints.URL_HASH_FIELD, 0L);
+            if (metadata != null) {
+                document.add(titleField);
+                document.add(urlField);
+                document.add(urlHashField);
+            }
+
+            for (int docId = startDoc; docId < endDoc; docId++) {
+                String id = collectionDocIds[docId] != null ? collectionDocIds[docId] : "";
+                idField.setStringValue(id);
+                idDocValuesField.setBytesValue(new BytesRef(id));
+                tokenStream.setDocument(docOffsets[docId], docOffsets[docId + 1]);
+                similarity.setDocLength(docLengths[docId]);
+                simHashField.setLongValue(DocFingerprints.simHash(termHashes, docTermIds, docTermFreqs, docOffsets[docId], docOffsets[docId + 1]));
+                if (metadata != null) {
+                    titleField.setStringValue(metadata.titles[docId] != null ? metadata.titles[docId] : "");
+                    urlField.setStringValue(toUrlText(metadata.urls[docId]));
+                    urlHashField.setLongValue(DocFingerprints.hashUrl(metadata.urls[docId]));
+                    // Vector fields cannot be reset to no value, so the field is only added to documents with an embedding
+                    document.removeFields(VECTOR_FIELD);
+                    float[] embedding = metadata.embeddings[docId];
+                    if (embedding != null) {
+                        document.add(quantizeVectors
+                            ? new KnnByteVectorField(VECTOR_FIELD, VectorQuantizer.quantize(embedding), VectorSimilarityFunction.COSINE)
+                            : new KnnFloatVectorField(VECTOR_FIELD, embedding, VectorSimilarityFunction.COSINE));
+                    }
+                }
+                writer.addDocument(document);
+            }
+
+            // One segment per shard keeps the document order when the shards are added to the target index
+            writer.forceMerge(1);
+            writer.commit();
+        }
+
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        LOGGER.info("Wrote documents {} to {} in {} ms ({} docs/s)", startDoc, endDoc - 1, millis, (endDoc - startDoc) * 1000L / millis);
+    }
+
+    /**
+     * Adds the temporary indexes to the target index in document order.
+     */
+    private void mergeShards(List<Path> shardPaths, Path indexPath) throws IOException {
+        IndexWriterConfig config = createConfig(ramBufferSizeMB);
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+
+        List<Directory> shardDirectories = new ArrayList<>();
+        try (Directory directory = FSDirectory.open(indexPath); IndexWriter writer = new IndexWriter(directory, config)) {
+            for (Path shardPath : shardPaths) {
+                shardDirectories.add(FSDirectory.open(shardPath));
+            }
+            writer.addIndexes(shardDirectories.toArray(new Directory[0]));
+
+            if (forceMerge) {
+                LOGGER.info("Force-merging index {} into a single segment", indexPath);
+                writer.forceMerge(1);
+            }
+            writer.commit();
+        } finally {
+            for (Directory shardDirectory : shardDirectories) {
+                shardDirectory.close();
+            }
+        }
+    }
+
+    /**
+     * Creates the configuration of an IndexWriter that is tuned for bulk imports.
+     * A log merge policy is used since it only merges adjacent segments and therefore keeps the document order.
+     * @param ramBufferSizeMB Size of the RAM buffer of the IndexWriter
+     */
+    private IndexWriterConfig createConfig(double ramBufferSizeMB) {
+        IndexWriterConfig config = new IndexWriterConfig();
+        config.setRAMBufferSizeMB(Math.max(16, ramBufferSizeMB));
+        config.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+        config.setUseCompoundFile(false);
+        config.setCommitOnClose(false);
+
+        LogByteSizeMergePolicy mergePolicy = new LogByteSizeMergePolicy();
+        mergePolicy.setMergeFactor(32);
+        mergePolicy.setNoCFSRatio(0.0);
+        config.setMergePolicy(mergePolicy);
+
+        if (codecName != null && !codecName.isEmpty()) {
+            config.setCodec(Codec.forName(codecName));
+        }
+        return config;
+    }
+
+    /**
+     * Splits a URL into its words (e.g., {@code https://en.wikipedia.org/wiki/Graz} into {@code https en wikipedia org wiki Graz}),
+     * so that the host name and the path segments can be matched by query terms.
+     */
+    private static String toUrlText(String url) {
+        return url != null ? url.replaceAll("[^\\p{L}\\p{N}]+", " ").trim() : "";
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Imports a CIFF file from the command line.
+     */
+    public static void main(String... args) throws IOException {
+        Options options = new Options();
+
+        options.addOption(Option.builder("i")
+            .argName("ciffFile").longOpt("input")
+            .hasArg().required()
+            .desc("Path of the (optionally gzipped) CIFF file")
+            .build());
+        options.addOption(Option.builder("o")
+            .argName("indexDir").longOpt("output")
+            .hasArg().required()
+            .desc("Path of the directory of the Lucene index")
+            .build());
+        options.addOption(Option.builder("c")
+            .argName("codec").longOpt("codec")
+            .hasArg()
+            .desc("Name of the Lucene codec (default = codec of the current Lucene version)")
+            .build());
+        options.addOption(Option.builder("t")
+            .argName("threads").longOpt("threads")
+            .hasArg()
+            .type(Number.class)
+            .desc("Number of concurrent IndexWriter threads (default = " + DEFAULT_NUM_THREADS + ")")
+            .build());
+        options.addOption(Option.builder("m")
+            .argName("ramBufferMB").longOpt("ram-buffer-mb")
+            .hasArg()
+            .type(Number.class)
+            .desc("Total RAM buffer of all IndexWriters in MB (default = " + DEFAULT_RAM_BUFFER_MB + ")")
+            .build());
+        options.addOption(Option.builder("p")
+            .argName("parquetDir").longOpt("metadata")
+            .hasArg()
+            .desc("Directory of the Parquet metadata file(s) whose titles and URLs are indexed as additional fields")
+            .build());
+        options.addOption(Option.builder()
+            .argName("column").longOpt("embedding-column")
+            .hasArg()
+            .desc("Column of the precomputed document embeddings in the Parquet metadata (default = " + ParquetMetadataReader.DEFAULT_EMBEDDING_COLUMN + ")")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("quantize-vectors")
+            .desc("Quantize the document embeddings to 8-bit integers, which reduces the memory of the HNSW graphs by a factor of 4")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("no-force-merge")
+            .desc("Keep one segment per thread instead of force-merging into a single segment")
+            .build());
+
+        CommandLineParser parser = new DefaultParser();
+        CommandLine cmd = null;
+        try {
+            cmd = parser.parse(options, args);
+        } catch (org.apache.commons.cli.ParseException e) {
+            System.err.println("Error: " + e.getMessage());
+            HelpFormatter helpFormatter = new HelpFormatter();
+            helpFormatter.printHelp("CiffImporter", options);
+            System.exit(1);
+        }
+
+        CiffImporter importer = new CiffImporter()
+            .setCodecName(cmd.getOptionValue("c"))
+            .setForceMerge(!cmd.hasOption("no-force-merge"))
+            .setMetadataPath(cmd.hasOption("p") ? Paths.get(cmd.getOptionValue("p")) : null)
+            .setEmbeddingColumn(cmd.getOptionValue("embedding-column", ParquetMetadataReader.DEFAULT_EMBEDDING_COLUMN))
+            .setQuantizeVectors(cmd.hasOption("quantize-vectors"));
+        try {
+            if (cmd.hasOption("t")) {
+                importer.setNumThreads(((Number) cmd.getParsedOptionValue("t")).intValue());
+            }
+            if (cmd.hasOption("m")) {
+                importer.setRamBufferSizeMB(((Number) cmd.getParsedOptionValue("m")).doubleValue());
+            }
+        } catch (org.apache.commons.cli.ParseException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+
+        ImportStatistics statistics = importer.importCiff(Paths.get(cmd.getOptionValue("i")), Paths.get(cmd.getOptionValue("o")));
+        System.out.println(statistics);
+    }
+
+}
@@ -0,0 +1,44 @@
+package eu.ows.mosaic;
+
+import org.apache.lucene.index.FieldInvertState;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.util.SmallFloat;
+
+/**
+ * Similarity used while importing a CIFF file.
+ * CIFF postings do not contain every token of a document (e.g., stopwords are missing), so the length norm
+ * of the contents field is computed from the document length of the CIFF document record instead of the number
+ * of indexed tokens. The norms of other fields (e.g., the title) are computed from their indexed tokens.
+ * The norm is encoded in the same way as by {@link BM25Similarity}, so the index can be searched with BM25.
+ */
+public class CiffNormSimilarity extends Similarity {
+
+    private final BM25Similarity delegate = new BM25Similarity();
+
+    // Documents are inverted in the thread that adds them, so the document length is passed per thread
+    private final ThreadLocal<Integer> docLength = new ThreadLocal<>();
+
+    /**
+     * Sets the length of the document that is added next by the current thread.
+     * @param length Document length from the CIFF document record
+     */
+    public void setDocLength(int length) {
+        docLength.set(length);
+    }
+
+    @Override
+    public long computeNorm(FieldInvertState state) {
+        Integer length = state.getName().equals(CiffImporter.CONTENTS_FIELD) ? docLength.get() : null;
+        int numTerms = (length != null && length > 0) ? length : state.getLength() - state.getNumOverlap();
+        return SmallFloat.intToByte4(numTerms);
+    }
+
+    @Override
+    public SimScorer scorer(float boost, CollectionStatistics collectionStats, TermStatistics... termStats) {
+        return delegate.scorer(boost, collectionStats, termStats);
+    }
+
+}
@@ -0,0 +1,199 @@
+package eu.ows.mosaic;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.lucene.util.ArrayUtil;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Streaming reader for files in the Common Index File Format (CIFF).
+ * A CIFF file consists of a header followed by the postings lists and the document records,
+ * each written as a length-delimited protocol buffers message.
+ * The messages are decoded directly from the wire format, so no generated protocol buffers classes are required.
+ */
+public class CiffReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final InputStream inputStream;
+    private final CodedInputStream input;
+
+    /**
+     * Header of a CIFF file.
+     */
+    public static class Header {
+        public int version;
+        public int numPostingsLists;
+        public int numDocs;
+        public int totalPostingsLists;
+        public int totalDocs;
+        public long totalTermsInCollection;
+        public double averageDocLength;
+        public String description = "";
+    }
+
+    /**
+     * Reusable buffer for the postings of one postings list.
+     */
+    public static class PostingsList {
+        public String term;
+        public long df;
+        public long cf;
+        public int size;
+        public int[] docIds = new int[16];
+        public int[] termFreqs = new int[16];
+
+        private void add(int docId, int termFreq) {
+            if (size == docIds.length) {
+                docIds = ArrayUtil.grow(docIds, size + 1);
+                termFreqs = ArrayUtil.grow(termFreqs, size + 1);
+            }
+            docIds[size] = docId;
+            termFreqs[size] = termFreq;
+            size++;
+        }
+    }
+
+    /**
+     * Reusable document record.
+     */
+    public static class DocRecord {
+        public int docId;
+        public String collectionDocId;
+        public int docLength;
+    }
+
+    public CiffReader(Path path) throws IOException {
+        InputStream fileInputStream = new BufferedInputStream(new FileInputStream(path.toFile()), BUFFER_SIZE);
+        this.inputStream = path.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(fileInputStream, BUFFER_SIZE) : fileInputStream;
+        this.input = CodedInputStream.newInstance(inputStream, BUFFER_SIZE);
+        this.input.setSizeLimit(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads the header which must be the first message of the file.
+     * @return Header of the CIFF file
+     * @throws IOException If the header could not be read
+     */
+    public Header readHeader() throws IOException {
+        Header header = new Header();
+        int oldLimit = beginMessage();
+        while (true) {
+            int tag = input.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 0: endMessage(oldLimit); return header;
+                case 1: header.version = input.readInt32(); break;
+                case 2: header.numPostingsLists = input.readInt32(); break;
+                case 3: header.numDocs = input.readInt32(); break;
+                case 4: header.totalPostingsLists = input.readInt32(); break;
+                case 5: header.totalDocs = input.readInt32(); break;
+                case 6: header.totalTermsInCollection = input.readInt64(); break;
+                case 7: header.averageDocLength = input.readDouble(); break;
+                case 8: header.description = input.readString(); break;
+                default: input.skipField(tag);
+            }
+        }
+    }
+
+    /**
+     * Reads the next postings list into a reusable buffer.
+     * The document ids are gap-decoded while reading.
+     * @param postingsList Buffer the postings list is read into
+     * @throws IOException If the postings list could not be read
+     */
+    public void readPostingsList(PostingsList postingsList) throws IOException {
+        postingsList.term = null;
+        postingsList.df = 0;
+        postingsList.cf = 0;
+        postingsList.size = 0;
+
+        int docId = 0;
+        int oldLimit = beginMessage();
+        while (true) {
+            int tag = input.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 0: endMessage(oldLimit); return;
+                case 1: postingsList.term = input.readString(); break;
+                case 2: postingsList.df = input.readInt64(); break;
+                case 3: postingsList.cf = input.readInt64(); break;
+                case 4:
+                    int postingLimit = input.pushLimit(input.readRawVarint32());
+                    int gap = 0;
+                    int termFreq = 0;
+                    while (true) {
+                        int postingTag = input.readTag();
+                        int fieldNumber = WireFormat.getTagFieldNumber(postingTag);
+                        if (fieldNumber == 0) {
+                            break;
+                        } else if (fieldNumber == 1) {
+                            gap = input.readInt32();
+                        } else if (fieldNumber == 2) {
+                            termFreq = input.readInt32();
+                        } else {
+                            input.skipField(postingTag);
+                        }
+                    }
+                    input.popLimit(postingLimit);
+                    docId += gap;
+                    postingsList.add(docId, termFreq);
+                    break;
+                default: input.skipField(tag);
+            }
+        }
+    }
+
+    /**
+     * Reads the next document record into a reusable record.
+     * @param docRecord Record the document record is read into
+     * @throws IOException If the document record could not be read
+     */
+    public void readDocRecord(DocRecord docRecord) throws IOException {
+        docRecord.docId = 0;
+        docRecord.collectionDocId = null;
+        docRecord.docLength = 0;
+
+        int oldLimit = beginMessage();
+        while (true) {
+            int tag = input.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 0: endMessage(oldLimit); return;
+                case 1: docRecord.docId = input.readInt32(); break;
+                case 2: docRecord.collectionDocId = input.readString(); break;
+                case 3: docRecord.docLength = input.readInt32(); break;
+                default: input.skipField(tag);
+            }
+        }
+    }
+
+    /**
+     * Reads the length prefix of the next message and limits the input to the message.
+     * @return Previous limit of the input
+     */
+    private int beginMessage() throws IOException {
+        input.resetSizeCounter();
+        int length = input.readRawVarint32();
+        return input.pushLimit(length);
+    }
+
+    /**
+     * Restores the previous limit of the input after a message has been read.
+     * @param oldLimit Previous limit of the input
+     */
+    private void endMessage(int oldLimit) {
+        input.popLimit(oldLimit);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+}
@@ -0,0 +1,63 @@
+package eu.ows.mosaic;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * Token stream that replays the already analyzed terms of a CIFF document.
+ * Each term is emitted as often as its term frequency, so Lucene records the same frequencies as the CIFF postings.
+ */
+public class CiffTokenStream extends TokenStream {
+
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+
+    private final String[] terms;
+    private final int[] docTermIds;
+    private final int[] docTermFreqs;
+
+    private int end;
+    private int current;
+    private int remainingFreq;
+
+    /**
+     * @param terms Terms of the CIFF file by term ordinal
+     * @param docTermIds Term ordinals of all documents
+     * @param docTermFreqs Term frequencies of all documents
+     */
+    public CiffTokenStream(String[] terms, int[] docTermIds, int[] docTermFreqs) {
+        this.terms = terms;
+        this.docTermIds = docTermIds;
+        this.docTermFreqs = docTermFreqs;
+    }
+
+    /**
+     * Sets the range of postings of the document that is emitted next.
+     * @param start Offset of the first posting of the document
+     * @param end Offset after the last posting of the document
+     */
+    public void setDocument(int start, int end) {
+        this.current = start - 1;
+        this.end = end;
+        this.remainingFreq = 0;
+    }
+
+    @Override
+    public boolean incrementToken() {
+        if (remainingFreq == 0) {
+            current++;
+            if (current >= end) {
+                return false;
+            }
+            remainingFreq = docTermFreqs[current];
+            if (remainingFreq <= 0) {
+                remainingFreq = 1;
+            }
+        }
+
+        clearAttributes();
+        termAttribute.setEmpty().append(terms[docTermIds[current]]);
+        remainingFreq--;
+        return true;
+    }
+
+}
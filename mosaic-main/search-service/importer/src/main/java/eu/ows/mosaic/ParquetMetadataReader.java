@@ -0,0 +1,134 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the titles, URLs and embeddings of the documents of a CIFF file from the Parquet metadata files of the index,
+ * so that they can be indexed as additional fields. The Parquet files are read with an in-memory DuckDB instance.
+ */
+public class ParquetMetadataReader {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ParquetMetadataReader.class);
+
+    private static final String ID_COLUMN = "id";
+    private static final String TITLE_COLUMN = "title";
+    private static final String URL_COLUMN = "url";
+
+    public static final String DEFAULT_EMBEDDING_COLUMN = "embedding";
+
+    /**
+     * Titles, URLs and embeddings by the internal document ID of the CIFF file, null if a document has no metadata.
+     */
+    public static class Metadata {
+        public final String[] titles;
+        public final String[] urls;
+        public final float[][] embeddings;
+        public int numMatchedDocs;
+        public int numEmbeddings;
+        public int embeddingDimension;
+
+        private Metadata(int numDocs) {
+            this.titles = new String[numDocs];
+            this.urls = new String[numDocs];
+            this.embeddings = new float[numDocs][];
+        }
+    }
+
+    /**
+     * Reads the titles, URLs and embeddings of the documents from the Parquet files in a directory.
+     * Embeddings are lists of floats with the same dimension for all documents, embeddings with another
+     * dimension than the first embedding or without any non-zero value are skipped.
+     * @param parquetDirPath Directory of the Parquet file(s) of the index
+     * @param embeddingColumn Name of the column of the precomputed document embeddings
+     * @param collectionDocIds Collection document IDs by internal document ID
+     * @return Titles, URLs and embeddings of the documents
+     * @throws IOException If the Parquet files could not be read
+     */
+    public static Metadata read(Path parquetDirPath, String embeddingColumn, String[] collectionDocIds) throws IOException {
+        Map<String, Integer> docIds = new HashMap<>(collectionDocIds.length * 2);
+        for (int docId = 0; docId < collectionDocIds.length; docId++) {
+            if (collectionDocIds[docId] != null) {
+                docIds.put(collectionDocIds[docId], docId);
+            }
+        }
+
+        Metadata metadata = new Metadata(collectionDocIds.length);
+        String parquetFiles = "read_parquet('" + parquetDirPath.toAbsolutePath().resolve("*.parquet*").toString().replace("'", "''") + "')";
+        try (Connection connection = DriverManager.getConnection("jdbc:duckdb:"); Statement statement = connection.createStatement()) {
+            Set<String> columns = new HashSet<>();
+            try (ResultSet rs = statement.executeQuery("DESCRIBE SELECT * FROM " + parquetFiles)) {
+                while (rs.next()) {
+                    columns.add(rs.getString("column_name"));
+                }
+            }
+            if (!columns.contains(ID_COLUMN)) {
+                LOGGER.warn("The Parquet files in {} have no {} column, no titles and URLs are indexed", parquetDirPath, ID_COLUMN);
+                return metadata;
+            }
+
+            String titleColumn = columns.contains(TITLE_COLUMN) ? TITLE_COLUMN : "NULL";
+            String urlColumn = columns.contains(URL_COLUMN) ? URL_COLUMN : "NULL";
+            boolean hasEmbeddings = columns.contains(embeddingColumn);
+            String vectorColumn = hasEmbeddings ? "\"" + embeddingColumn.replace("\"", "\"\"") + "\"" : "NULL";
+            try (ResultSet rs = statement.executeQuery("SELECT " + ID_COLUMN + ", " + titleColumn + ", " + urlColumn + ", " + vectorColumn + " FROM " + parquetFiles)) {
+                while (rs.next()) {
+                    Integer docId = docIds.get(rs.getString(1));
+                    if (docId == null) {
+                        continue;
+                    }
+                    metadata.titles[docId] = rs.getString(2);
+                    metadata.urls[docId] = rs.getString(3);
+                    metadata.embeddings[docId] = hasEmbeddings ? toEmbedding(rs.getArray(4), metadata) : null;
+                    metadata.numMatchedDocs++;
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read Parquet files in " + parquetDirPath, e);
+        }
+
+        LOGGER.info("Read titles and URLs of {} and embeddings of {} of {} documents from {}", metadata.numMatchedDocs, metadata.numEmbeddings, collectionDocIds.length, parquetDirPath);
+        return metadata;
+    }
+
+    /**
+     * Converts a list of numbers to an embedding.
+     * @return Embedding or null if the list is null, has another dimension than the previous embeddings or only zeros
+     */
+    private static float[] toEmbedding(Array array, Metadata metadata) throws SQLException {
+        if (array == null) {
+            return null;
+        }
+        Object[] values = (Object[]) array.getArray();
+        if (values.length == 0 || (metadata.embeddingDimension > 0 && values.length != metadata.embeddingDimension)) {
+            return null;
+        }
+
+        float[] embedding = new float[values.length];
+        boolean nonZero = false;
+        for (int i = 0; i < values.length; i++) {
+            embedding[i] = values[i] != null ? ((Number) values[i]).floatValue() : 0.0f;
+            nonZero |= embedding[i] != 0.0f;
+        }
+        if (!nonZero) {
+            return null;
+        }
+        metadata.embeddingDimension = values.length;
+        metadata.numEmbeddings++;
+        return embedding;
+    }
+
+}
@@ -2,6 +2,8 @@ package eu.ows.mosaic;
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -77,6 +79,22 @@ public class KeywordsMetadata extends MetadataModule {
         return super.inManualFilter(result, queryParams);
     }
 
+    @Override
+    public void extractFeatures(Map<String, String> result, Set<String> queryTerms, Map<String, Object> queryParams, Map<String, Double> features) {
+        if (!result.containsKey("keywords") || queryTerms.isEmpty()) {
+            return;
+        }
+
+        // Fraction of the query terms that occur in the keywords of the search result
+        List<String> keywords = GSON.fromJson(result.get("keywords"), LIST_TYPE);
+        Set<String> keywordTerms = new HashSet<>();
+        if (keywords != null) {
+            keywords.forEach(keyword -> keywordTerms.addAll(Arrays.asList(keyword.toLowerCase().split("\\s+"))));
+        }
+        long numMatches = queryTerms.stream().filter(keywordTerms::contains).count();
+        features.put("keywordOverlap", (double) numMatches / queryTerms.size());
+    }
+
     @Override
     public JsonObject serializeJson(Map<String, String> result, Map<String, Object> queryParams) {
         JsonObject json = new JsonObject();
@@ -1,5 +1,9 @@
 package eu.ows.mosaic;
 
+import java.io.IOException;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,9 +26,26 @@ public class CustomQuery implements QueryComponent {
         
         // Implement the desired query modification
 
-        LOGGER.info("Using original query");
+        LOGGER.debug("Using original query");
         String modifiedQuery = q;
         return modifiedQuery;
     }
 
-}
\ No newline at end of file
+    /**
+     * Rewrites the parsed query before it is searched in an index.
+     * Change the implementation of this method stub to rewrite the query, e.g., based on the statistics of the index.
+     * @param query Query planned by the core
+     * @param searcher Searcher of the index
+     * @return Rewritten query
+     */
+    @Override
+    public Query planQuery(Query query, IndexSearcher searcher) throws IOException {
+
+        // Implement the desired query rewrite
+
+        LOGGER.debug("Using planned query");
+        Query rewrittenQuery = query;
+        return rewrittenQuery;
+    }
+
+}
@@ -0,0 +1,153 @@
+package eu.ows.mosaic;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Fingerprints of documents that are written by the importer as numeric doc values and used by the search service
+ * to collapse duplicates: a hash of the canonical URL for exact duplicates and a 64-bit SimHash of the terms for
+ * near-duplicates. A fingerprint of 0 means that the document has no URL or no terms and is never collapsed.
+ */
+public class DocFingerprints {
+
+    public static final String URL_HASH_FIELD = "url_hash";
+    public static final String SIMHASH_FIELD = "simhash";
+
+    // Documents whose SimHashes differ in at most this number of bits are near-duplicates
+    public static final int MAX_SIMHASH_DISTANCE = 3;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Canonicalizes a URL, so that URLs that address the same page have the same canonical form.
+     * The scheme, a leading {@code www.}, default ports, the fragment and a trailing slash are dropped, the host is lower-cased
+     * and the parameters of the query are sorted (empty parameters are dropped).
+     * @param url URL of a document
+     * @return Canonical URL or null if the URL is null or blank
+     */
+    public static String canonicalizeUrl(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        try {
+            URI uri = new URI(url.trim());
+            if (uri.getHost() == null) {
+                return url.trim().toLowerCase(Locale.ROOT);
+            }
+            String host = uri.getHost().toLowerCase(Locale.ROOT);
+            if (host.startsWith("www.")) {
+                host = host.substring(4);
+            }
+            int port = uri.getPort();
+            String path = uri.getRawPath() != null ? uri.getRawPath() : "";
+            while (path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            String query = canonicalizeQuery(uri.getRawQuery());
+            return host + (port > 0 && port != 80 && port != 443 ? ":" + port : "") + path + (query.isEmpty() ? "" : "?" + query);
+        } catch (URISyntaxException e) {
+            return url.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Sorts the parameters of the raw query of a URL, so that the order of the parameters does not matter.
+     */
+    private static String canonicalizeQuery(String rawQuery) {
+        if (rawQuery == null) {
+            return "";
+        }
+        return Arrays.stream(rawQuery.split("&"))
+            .filter(parameter -> !parameter.isEmpty())
+            .sorted()
+            .collect(Collectors.joining("&"));
+    }
+
+    /**
+     * Hashes the canonical form of a URL.
+     * @param url URL of a document
+     * @return Hash of the canonical URL or 0 if the document has no URL
+     */
+    public static long hashUrl(String url) {
+        String canonicalUrl = canonicalizeUrl(url);
+        return canonicalUrl != null ? nonZero(hash(canonicalUrl)) : 0L;
+    }
+
+    /**
+     * Hashes a term of a document for its SimHash.
+     * @param term Term of a document
+     * @return 64-bit hash of the term
+     */
+    public static long hashTerm(String term) {
+        return hash(term);
+    }
+
+    /**
+     * Computes the SimHash of a document from the hashes of its terms: each bit of the SimHash is set if the
+     * hashes of the terms, weighted by their frequencies, have this bit set more often than not.
+     * @param termHashes Hashes of all terms by term ID
+     * @param termIds Term IDs of the postings of the documents
+     * @param termFreqs Term frequencies of the postings of the documents
+     * @param start First posting of the document
+     * @param end End of the postings of the document (exclusive)
+     * @return SimHash of the document or 0 if the document has no terms
+     */
+    public static long simHash(long[] termHashes, int[] termIds, int[] termFreqs, int start, int end) {
+        if (start >= end) {
+            return 0L;
+        }
+        long[] weights = new long[Long.SIZE];
+        for (int i = start; i < end; i++) {
+            long termHash = termHashes[termIds[i]];
+            int freq = termFreqs[i];
+            for (int bit = 0; bit < Long.SIZE; bit++) {
+                weights[bit] += ((termHash >>> bit) & 1L) != 0 ? freq : -freq;
+            }
+        }
+        long simHash = 0L;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (weights[bit] > 0) {
+                simHash |= 1L << bit;
+            }
+        }
+        return nonZero(simHash);
+    }
+
+    /**
+     * Checks if two SimHashes belong to near-duplicates.
+     * @return True if both SimHashes are set and differ in at most {@value #MAX_SIMHASH_DISTANCE} bits, false otherwise
+     */
+    public static boolean isNearDuplicate(long simHash1, long simHash2) {
+        return simHash1 != 0L && simHash2 != 0L && Long.bitCount(simHash1 ^ simHash2) <= MAX_SIMHASH_DISTANCE;
+    }
+
+    /**
+     * FNV-1a hash of the UTF-8 bytes of a string, followed by the finalizer of MurmurHash3 to spread the bits.
+     */
+    private static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Maps the hash 0, which marks missing fingerprints, to another value.
+     */
+    private static long nonZero(long hash) {
+        return hash != 0L ? hash : 1L;
+    }
+
+}
@@ -0,0 +1,126 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Lucene query that matches a precomputed set of documents of an index generation.
+ * Metadata modules use it to restrict the search to the documents that pass a filter evaluated outside of Lucene
+ * (e.g., by an in-memory spatial index), so that Lucene only scores documents that will be returned.
+ * The set is addressed by the top-level document numbers of the generation's reader.
+ */
+public class DocSetFilterQuery extends Query implements RequestScopedQuery {
+
+    private final String description;
+    private final FixedBitSet docs;
+
+    /**
+     * @param description Description of the filter used in the string representation of the query
+     * @param docs Top-level document numbers of the matching documents
+     */
+    public DocSetFilterQuery(String description, FixedBitSet docs) {
+        this.description = description;
+        this.docs = docs;
+    }
+
+    public FixedBitSet getDocs() {
+        return docs;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+        return new ConstantScoreWeight(this, boost) {
+
+            @Override
+            public Scorer scorer(LeafReaderContext context) throws IOException {
+                int docBase = context.docBase;
+                int maxDoc = context.reader().maxDoc();
+                DocIdSetIterator iterator = new LeafDocSetIterator(docs, docBase, maxDoc);
+                return new ConstantScoreScorer(this, score(), scoreMode, iterator);
+            }
+
+            @Override
+            public boolean isCacheable(LeafReaderContext context) {
+                // The set changes with every request
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        visitor.visitLeaf(this);
+    }
+
+    @Override
+    public String toString(String field) {
+        return "DocSetFilter(" + description + ")";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return sameClassAs(other) && docs == ((DocSetFilterQuery) other).docs;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * classHash() + System.identityHashCode(docs);
+    }
+
+    /**
+     * Iterates over the documents of the set that belong to one segment.
+     */
+    private static class LeafDocSetIterator extends DocIdSetIterator {
+
+        private final FixedBitSet docs;
+        private final int docBase;
+        private final int maxDoc;
+        private int doc = -1;
+
+        LeafDocSetIterator(FixedBitSet docs, int docBase, int maxDoc) {
+            this.docs = docs;
+            this.docBase = docBase;
+            this.maxDoc = maxDoc;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            return advance(doc + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+            int globalTarget = docBase + target;
+            if (target >= maxDoc || globalTarget >= docs.length()) {
+                return doc = NO_MORE_DOCS;
+            }
+            int next = docs.nextSetBit(globalTarget);
+            if (next == NO_MORE_DOCS || next >= docBase + maxDoc) {
+                return doc = NO_MORE_DOCS;
+            }
+            return doc = next - docBase;
+        }
+
+        @Override
+        public long cost() {
+            return maxDoc;
+        }
+    }
+
+}
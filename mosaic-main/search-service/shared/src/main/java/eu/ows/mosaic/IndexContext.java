@@ -0,0 +1,71 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+
+/**
+ * Loaded generation of an index as seen by the metadata modules.
+ * Modules can read the metadata table of the generation when it is loaded and attach data structures
+ * derived from it (e.g., packed representations or in-memory indexes), which live as long as the generation.
+ */
+public interface IndexContext {
+
+    String getIndexName();
+
+    long getGeneration();
+
+    /**
+     * Getter method for the name of the metadata table.
+     * @return Name of the DuckDB table or null if no metadata exists for the index
+     */
+    String getTableName();
+
+    /**
+     * Getter method for the number of documents of the Lucene index.
+     * @return One greater than the largest Lucene document number, which is stored in the column {@code doc_ord} of the metadata table
+     */
+    int getMaxDoc();
+
+    /**
+     * Getter method for the searcher of the Lucene index, e.g., for modules that run their own searches (such as kNN searches).
+     * @return Long-lived searcher of the generation with the configured similarity
+     */
+    IndexSearcher getSearcher();
+
+    /**
+     * Searches the top hits of a query in the Lucene index like the main search of a request, i.e., while holding a
+     * permit of the Lucene limiter and stopped at the search timeout. Modules should use it for their own searches.
+     * @param query Query object
+     * @param numHits Number of top hits
+     * @return Top hits, or the hits collected until the search timeout
+     * @throws IOException If the search failed or no permit could be acquired in time
+     */
+    TopDocs search(Query query, int numHits) throws IOException;
+
+    /**
+     * Opens a new connection to the database containing the metadata table. The caller must close the connection.
+     * @return Connection to the DuckDB database
+     * @throws SQLException If the connection could not be opened
+     */
+    Connection openConnection() throws SQLException;
+
+    /**
+     * Getter method for an object attached to the generation.
+     * @param key Key of the attachment
+     * @return Attached object or null if nothing has been attached with this key
+     */
+    Object getAttachment(String key);
+
+    /**
+     * Attaches an object to the generation.
+     * @param key Key of the attachment
+     * @param value Attached object
+     */
+    void putAttachment(String key, Object value);
+
+}
@@ -0,0 +1,121 @@
+package eu.ows.mosaic;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar batch of the metadata of all search results of a page.
+ * The values are stored per column and accessed by column and row index, so that no map has to be built per search result.
+ * Rows are exposed to the metadata modules as {@link MetadataRow} views on the batch.
+ */
+public class MetadataBatch {
+
+    private final IndexContext context;
+    private final List<String> columnNames;
+    private final Map<String, Integer> columnIndexes = new HashMap<>();
+    private final String[][] columns;
+    private final int[] docOrds;
+    private final int numRows;
+
+    private Map<Integer, Integer> rowsByDocOrd;
+
+    /**
+     * @param context Index generation the metadata has been retrieved from
+     * @param columnNames Names of the metadata columns
+     * @param columns Values of the metadata columns, indexed by column and row
+     * @param docOrds Lucene document number of each row
+     * @param numRows Number of rows of the batch
+     */
+    public MetadataBatch(IndexContext context, List<String> columnNames, String[][] columns, int[] docOrds, int numRows) {
+        this.context = context;
+        this.columnNames = List.copyOf(columnNames);
+        this.columns = columns;
+        this.docOrds = docOrds;
+        this.numRows = numRows;
+        for (int i = 0; i < columnNames.size(); i++) {
+            columnIndexes.put(columnNames.get(i), i);
+        }
+    }
+
+    public IndexContext getIndexContext() {
+        return context;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public int getNumColumns() {
+        return columns.length;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Getter method for the index of a column.
+     * @param columnName Name of the column
+     * @return Index of the column or -1 if the batch does not contain the column
+     */
+    public int getColumnIndex(String columnName) {
+        Integer columnIndex = columnIndexes.get(columnName);
+        return columnIndex == null ? -1 : columnIndex;
+    }
+
+    /**
+     * Getter method for a value of the batch.
+     * @param columnIndex Index of the column
+     * @param row Index of the row
+     * @return Value of the column in the row (may be null)
+     */
+    public String getString(int columnIndex, int row) {
+        return columns[columnIndex][row];
+    }
+
+    /**
+     * Getter method for all values of a column.
+     * @param columnIndex Index of the column
+     * @return Values of the column indexed by row (the array may be longer than the number of rows)
+     */
+    public String[] getColumn(int columnIndex) {
+        return columns[columnIndex];
+    }
+
+    public int getDocOrd(int row) {
+        return docOrds[row];
+    }
+
+    /**
+     * Getter method for the row of a Lucene document.
+     * @param docOrd Lucene document number
+     * @return Index of the row or -1 if the batch does not contain the document
+     */
+    public int getRow(int docOrd) {
+        if (rowsByDocOrd == null) {
+            rowsByDocOrd = new HashMap<>(numRows * 2);
+            for (int row = 0; row < numRows; row++) {
+                rowsByDocOrd.put(docOrds[row], row);
+            }
+        }
+        Integer row = rowsByDocOrd.get(docOrd);
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * Creates a view on a row of the batch.
+     * @param row Index of the row
+     * @return Row view that can be passed to the metadata modules
+     */
+    public MetadataRow row(int row) {
+        return new MetadataRow(this, row);
+    }
+
+    @Override
+    public String toString() {
+        return "MetadataBatch[columns=" + columnNames + ", rows=" + numRows + ", docOrds=" + Arrays.toString(Arrays.copyOf(docOrds, numRows)) + "]";
+    }
+
+}
@@ -1,5 +1,6 @@
 package eu.ows.mosaic;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -9,6 +10,7 @@ import java.util.TreeMap;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringEscapeUtils;
 import org.apache.commons.text.translate.UnicodeUnescaper;
+import org.apache.lucene.search.Query;
 
 import com.google.gson.JsonObject;
 
@@ -36,6 +38,21 @@ public abstract class MetadataModule {
         return Set.of();
     }
 
+    /**
+     * Called after a generation of an index with metadata has been loaded and before it serves requests.
+     * Subclasses can override this method to build data structures from the metadata table and attach them to the generation.
+     * @param context Loaded index generation
+     * @throws SQLException If the metadata table could not be read
+     */
+    public void onIndexLoaded(IndexContext context) throws SQLException {}
+
+    /**
+     * Called after a generation of an index has been closed.
+     * Subclasses can override this method to release resources that are not attached to the generation.
+     * @param context Closed index generation
+     */
+    public void onIndexUnloaded(IndexContext context) {}
+
     /**
      * Validates the query parameters.
      * Subclasses should override this method to add additional validation.
@@ -94,6 +111,46 @@ public abstract class MetadataModule {
         return values;
     }
 
+    /**
+     * Returns a Lucene query that restricts the search in an index generation to the documents passing the filter of the module.
+     * The query is added as a non-scoring clause, so filters evaluated on data structures of the module reduce the number
+     * of documents that have to be scored and whose metadata has to be retrieved.
+     * Subclasses should override this method if they can evaluate their filter for all documents of a generation at once.
+     * @param context Index generation that is searched
+     * @param queryParams Map of query parameters
+     * @return Filter query or null if the module does not restrict the search
+     */
+    public Query getFilterQuery(IndexContext context, Map<String, Object> queryParams) {
+        return null;
+    }
+
+    /**
+     * Rewrites the scoring query of the search in an index generation, e.g., to combine the text score with a score of the module.
+     * Subclasses should override this method to add their own ranking signals. The returned query must match the same documents.
+     * @param context Index generation that is searched
+     * @param query Scoring query
+     * @param queryParams Map of query parameters
+     * @return Rewritten query or the given query if the module does not change the ranking
+     */
+    public Query rewriteQuery(IndexContext context, Query query, Map<String, Object> queryParams) {
+        return query;
+    }
+
+    /**
+     * Rewrites the scoring query of the search in an index generation with the filter queries of all modules at hand.
+     * Modules that run their own searches (e.g., kNN searches) should override this method and restrict their searches
+     * to the filter, since the filter is only added to the rewritten query afterwards.
+     * By default, this method calls {@link #rewriteQuery(IndexContext, Query, Map)}.
+     * @param context Index generation that is searched
+     * @param query Scoring query
+     * @param filterQuery Conjunction of the filter queries of all modules or null if no module restricts the search
+     * @param queryParams Map of query parameters
+     * @return Rewritten query or the given query if the module does not change the ranking
+     */
+    public Query rewriteQuery(IndexContext context, Query query, Query filterQuery, Map<String, Object> queryParams) {
+        return rewriteQuery(context, query, queryParams);
+    }
+
     /**
      * Checks if the result is in the manual filter.
      * Subclasses should override this method to add additional filtering that is not covered by the SQL filter.
@@ -105,6 +162,17 @@ public abstract class MetadataModule {
         return true;
     }
 
+    /**
+     * Extracts ranking features of a search result for the second-stage re-ranking, e.g., how well a metadata column matches the query.
+     * Subclasses should override this method to contribute their own features. The features should be cheap to compute,
+     * because they are extracted for every re-ranked search result within the latency budget of the re-ranking.
+     * @param result Map of metadata columns and their values of a search result
+     * @param queryTerms Lower-case terms of the query
+     * @param queryParams Map of query parameters
+     * @param features Map of feature names to values, the extracted features are added to it
+     */
+    public void extractFeatures(Map<String, String> result, Set<String> queryTerms, Map<String, Object> queryParams, Map<String, Double> features) {}
+
     /**
      * Serializes the result as a JSON object.
      * By default, this method serializes the metadata columns defined in getMetadataColumns() that are included in the metadata columns set.
@@ -0,0 +1,143 @@
+package eu.ows.mosaic;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Search result backed by a row of a {@link MetadataBatch}.
+ * The metadata columns are read from the batch without copying them. Values that are added to the result
+ * (e.g., the query or the index name) are kept in a small overlay and take precedence over the columns.
+ * Modules can attach objects derived from the row (e.g., decoded locations) so they are computed at most once per search result.
+ */
+public class MetadataRow extends AbstractMap<String, String> {
+
+    private final MetadataBatch batch;
+    private final int row;
+
+    private Map<String, String> overlay;
+    private Map<String, Object> attachments;
+
+    public MetadataRow(MetadataBatch batch, int row) {
+        this.batch = batch;
+        this.row = row;
+    }
+
+    public MetadataBatch getBatch() {
+        return batch;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getDocOrd() {
+        return batch.getDocOrd(row);
+    }
+
+    @Override
+    public String get(Object key) {
+        if (overlay != null && overlay.containsKey(key)) {
+            return overlay.get(key);
+        }
+        int columnIndex = key instanceof String ? batch.getColumnIndex((String) key) : -1;
+        return columnIndex < 0 ? null : batch.getString(columnIndex, row);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (overlay != null && overlay.containsKey(key)) || (key instanceof String && batch.getColumnIndex((String) key) >= 0);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        String previousValue = get(key);
+        if (overlay == null) {
+            overlay = new TreeMap<>();
+        }
+        overlay.put(key, value);
+        return previousValue;
+    }
+
+    /**
+     * Getter method for an object attached to the search result.
+     * @param key Key of the attachment
+     * @return Attached object or null if nothing has been attached with this key
+     */
+    public Object getAttachment(String key) {
+        return attachments == null ? null : attachments.get(key);
+    }
+
+    /**
+     * Attaches an object to the search result.
+     * @param key Key of the attachment
+     * @param value Attached object
+     */
+    public void putAttachment(String key, Object value) {
+        if (attachments == null) {
+            attachments = new HashMap<>();
+        }
+        attachments.put(key, value);
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                Iterator<Map.Entry<String, String>> overlayIterator = overlay == null ? null : overlay.entrySet().iterator();
+
+                return new Iterator<Map.Entry<String, String>>() {
+                    private int columnIndex = nextColumn(0);
+
+                    // Skip columns that are shadowed by the overlay
+                    private int nextColumn(int start) {
+                        int index = start;
+                        while (index < batch.getNumColumns() && overlay != null && overlay.containsKey(batch.getColumnNames().get(index))) {
+                            index++;
+                        }
+                        return index;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return columnIndex < batch.getNumColumns() || (overlayIterator != null && overlayIterator.hasNext());
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (columnIndex < batch.getNumColumns()) {
+                            Map.Entry<String, String> entry = new SimpleImmutableEntry<>(batch.getColumnNames().get(columnIndex), batch.getString(columnIndex, row));
+                            columnIndex = nextColumn(columnIndex + 1);
+                            return entry;
+                        }
+                        if (overlayIterator != null) {
+                            return overlayIterator.next();
+                        }
+                        throw new NoSuchElementException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int size = batch.getNumColumns();
+                if (overlay != null) {
+                    for (String key : overlay.keySet()) {
+                        if (batch.getColumnIndex(key) < 0) {
+                            size++;
+                        }
+                    }
+                }
+                return size;
+            }
+        };
+    }
+
+}
@@ -1,9 +1,28 @@
 package eu.ows.mosaic;
 
+import java.io.IOException;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+
 /**
  * Custom Query class to define the Query for the search service.
  * Change the implementation of the modifyQuery method stub to return the desired Query.
  */
 public interface QueryComponent extends CoreComponent {
     String modifyQuery(String q);
+
+    /**
+     * Rewrites the parsed query before it is searched in an index. The query has already been planned by the core
+     * (frequent terms dropped, nested disjunctions flattened and term expansions capped).
+     * Implementations can use the statistics of the index (e.g., document frequencies) for their rewrites.
+     * Parsed queries are cached and shared between requests, so implementations must create new queries instead of modifying the given one.
+     * @param query Planned query
+     * @param searcher Searcher of the index
+     * @return Rewritten query or the given query if it is not changed
+     * @throws IOException If the statistics of the index could not be read
+     */
+    default Query planQuery(Query query, IndexSearcher searcher) throws IOException {
+        return query;
+    }
 }
@@ -0,0 +1,9 @@
+package eu.ows.mosaic;
+
+/**
+ * Marker of Lucene queries over data computed for a single request (e.g., a set of documents that pass a filter).
+ * Such queries are only equal to themselves, so the core does not cache results of queries that contain them.
+ */
+public interface RequestScopedQuery {
+
+}
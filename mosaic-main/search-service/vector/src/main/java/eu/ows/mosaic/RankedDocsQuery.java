@@ -0,0 +1,179 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+
+/**
+ * Lucene query that matches a precomputed ranking of documents of an index generation with their scores,
+ * e.g., the nearest neighbors of a kNN search or the fused ranking of a hybrid search. The documents are addressed
+ * by the top-level document numbers of the generation's reader.
+ */
+public class RankedDocsQuery extends Query implements RequestScopedQuery {
+
+    private final String description;
+    private final int[] docs;
+    private final float[] scores;
+
+    /**
+     * @param description Description of the ranking used in the string representation of the query
+     * @param docs Top-level document numbers in ascending order
+     * @param scores Scores of the documents
+     */
+    public RankedDocsQuery(String description, int[] docs, float[] scores) {
+        this.description = description;
+        this.docs = docs;
+        this.scores = scores;
+    }
+
+    public int getNumDocs() {
+        return docs.length;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+        return new Weight(this) {
+
+            @Override
+            public Scorer scorer(LeafReaderContext context) throws IOException {
+                int start = lowerBound(context.docBase);
+                int end = lowerBound(context.docBase + context.reader().maxDoc());
+                if (start == end) {
+                    return null;
+                }
+                return new RankedDocsScorer(this, context.docBase, context.reader().maxDoc(), start, end, boost);
+            }
+
+            @Override
+            public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+                int index = Arrays.binarySearch(docs, context.docBase + doc);
+                if (index < 0) {
+                    return Explanation.noMatch("Document is not in the ranking " + description);
+                }
+                return Explanation.match(boost * scores[index], "Score of the document in the ranking " + description);
+            }
+
+            @Override
+            public boolean isCacheable(LeafReaderContext context) {
+                // The ranking changes with every request
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Finds the index of the first document that is not smaller than a document number.
+     */
+    private int lowerBound(int doc) {
+        int index = Arrays.binarySearch(docs, doc);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        visitor.visitLeaf(this);
+    }
+
+    @Override
+    public String toString(String field) {
+        return "RankedDocs(" + description + ", " + docs.length + " documents)";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return sameClassAs(other) && docs == ((RankedDocsQuery) other).docs;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * classHash() + System.identityHashCode(docs);
+    }
+
+    /**
+     * Iterates over the documents of the ranking that belong to one segment.
+     */
+    private class RankedDocsScorer extends Scorer {
+
+        private final int docBase;
+        private final int maxDoc;
+        private final int start;
+        private final int end;
+        private final float boost;
+        private int index;
+
+        private RankedDocsScorer(Weight weight, int docBase, int maxDoc, int start, int end, float boost) {
+            super(weight);
+            this.docBase = docBase;
+            this.maxDoc = maxDoc;
+            this.start = start;
+            this.end = end;
+            this.boost = boost;
+            this.index = start - 1;
+        }
+
+        @Override
+        public int docID() {
+            if (index < start) {
+                return -1;
+            }
+            return index < end ? docs[index] - docBase : DocIdSetIterator.NO_MORE_DOCS;
+        }
+
+        @Override
+        public float score() {
+            return boost * scores[index];
+        }
+
+        @Override
+        public float getMaxScore(int upTo) {
+            float maxScore = 0.0f;
+            for (int i = Math.max(index, start); i < end && docs[i] - docBase <= upTo; i++) {
+                maxScore = Math.max(maxScore, boost * scores[i]);
+            }
+            return maxScore;
+        }
+
+        @Override
+        public DocIdSetIterator iterator() {
+            return new DocIdSetIterator() {
+
+                @Override
+                public int docID() {
+                    return RankedDocsScorer.this.docID();
+                }
+
+                @Override
+                public int nextDoc() {
+                    index++;
+                    return docID();
+                }
+
+                @Override
+                public int advance(int target) {
+                    // The target can be NO_MORE_DOCS, which would overflow when adding the document base
+                    if (target >= maxDoc) {
+                        index = end;
+                        return DocIdSetIterator.NO_MORE_DOCS;
+                    }
+                    index = Math.max(index + 1, lowerBound(docBase + target));
+                    return docID();
+                }
+
+                @Override
+                public long cost() {
+                    return end - start;
+                }
+            };
+        }
+    }
+
+}
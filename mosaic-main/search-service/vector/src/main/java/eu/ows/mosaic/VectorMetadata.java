@@ -0,0 +1,196 @@
+package eu.ows.mosaic;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.VectorEncoding;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.KnnByteVectorQuery;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metadata module for the semantic search with document embeddings.
+ * The embeddings are precomputed, indexed by the importer as HNSW graph in the field {@value #VECTOR_FIELD}
+ * (optionally quantized to 8-bit integers) and searched with the embedding of the query passed in the parameter
+ * {@code vector}. With {@code mode=vector}, the nearest neighbors are ranked by their cosine similarity, with
+ * {@code mode=hybrid}, the nearest neighbors and the hits of the lexical query are fused with reciprocal rank fusion.
+ * Both searches are restricted to the documents passing the filter queries of the other modules, so that filtered
+ * searches still find the nearest neighbors among the matching documents. The distance decay of the geo module
+ * cannot be combined with these modes, because it rescores the hits of the lexical query.
+ */
+public class VectorMetadata extends MetadataModule {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(VectorMetadata.class);
+
+    public static final String VECTOR_FIELD = "vector";
+
+    private static final String ATTACHMENT_KEY = "vector.field";
+
+    // Attached to generations without a vector field, since attachments cannot be null
+    private static final VectorField NO_VECTOR_FIELD = new VectorField(0, VectorEncoding.FLOAT32);
+
+    @Override
+    public void validateParams(Map<String, String> queryParams) {
+        super.validateParams(queryParams);
+
+        if (queryParams.containsKey("mode") && !VectorUtils.isValidMode(queryParams.get("mode"))) {
+            LOGGER.error("The mode parameter {} is invalid and must be one of {}", queryParams.get("mode"), VectorUtils.MODES);
+            throw new MosaicWebException(String.format("The mode parameter %s is invalid and must be one of %s", queryParams.get("mode"), VectorUtils.MODES));
+        }
+
+        if (queryParams.containsKey("vector") && !VectorUtils.isValidVector(queryParams.get("vector"))) {
+            LOGGER.error("The vector parameter is invalid and must be a comma-separated list of numbers with at least one non-zero value");
+            throw new MosaicWebException("The vector parameter is invalid and must be a comma-separated list of numbers with at least one non-zero value");
+        }
+
+        String mode = queryParams.getOrDefault("mode", VectorUtils.MODE_LEXICAL).toLowerCase();
+        if (!mode.equals(VectorUtils.MODE_LEXICAL) && !queryParams.containsKey("vector")) {
+            LOGGER.error("The mode {} requires the parameter vector", mode);
+            throw new MosaicWebException(String.format("The mode %s requires the parameter vector", mode));
+        }
+
+        if (!mode.equals(VectorUtils.MODE_LEXICAL) && queryParams.containsKey("decay")) {
+            LOGGER.error("The decay parameter cannot be combined with the mode {}", mode);
+            throw new MosaicWebException(String.format("The decay parameter cannot be combined with the mode %s", mode));
+        }
+
+        if (queryParams.containsKey("ef_search") && !VectorUtils.isValidEfSearch(queryParams.get("ef_search"))) {
+            LOGGER.error("The ef_search parameter {} is invalid and must be between 1 and {}", queryParams.get("ef_search"), VectorUtils.MAX_EF_SEARCH);
+            throw new MosaicWebException(String.format("The ef_search parameter %s is invalid and must be between 1 and %d", queryParams.get("ef_search"), VectorUtils.MAX_EF_SEARCH));
+        }
+    }
+
+    @Override
+    public Map<String, Object> parseQueryParams(Map<String, String> queryParams) {
+        Map<String, Object> parsedParams = new TreeMap<>();
+
+        String modeValue = queryParams.getOrDefault("mode", VectorUtils.MODE_LEXICAL).toLowerCase();
+        parsedParams.put("mode", modeValue);
+
+        if (queryParams.containsKey("vector")) {
+            parsedParams.put("vector", queryParams.get("vector"));
+        }
+
+        int efSearch = VectorUtils.convertEfSearch(queryParams.get("ef_search"));
+        parsedParams.put("efSearch", efSearch);
+
+        return parsedParams;
+    }
+
+    @Override
+    public Query rewriteQuery(IndexContext context, Query query, Query filterQuery, Map<String, Object> queryParams) {
+        String mode = (String) queryParams.getOrDefault("mode", VectorUtils.MODE_LEXICAL);
+        if (mode.equals(VectorUtils.MODE_LEXICAL) || !queryParams.containsKey("vector")) {
+            return query;
+        }
+
+        VectorField vectorField = getVectorField(context);
+        if (vectorField == null) {
+            // Indices without embeddings are searched lexically in the hybrid mode and match nothing in the vector mode
+            LOGGER.debug("Index {} has no {} field", context.getIndexName(), VECTOR_FIELD);
+            return mode.equals(VectorUtils.MODE_HYBRID) ? query : new MatchNoDocsQuery("Index has no embeddings");
+        }
+
+        float[] vector = VectorUtils.convertVector((String) queryParams.get("vector"));
+        if (vector.length != vectorField.dimension) {
+            throw new MosaicWebException(String.format("The vector parameter has %d dimensions, but the embeddings of index %s have %d dimensions",
+                vector.length, context.getIndexName(), vectorField.dimension));
+        }
+
+        // The HNSW search collects efSearch candidates, at least as many as the hits of the requested pages
+        int numHits = (int) queryParams.getOrDefault("limit", 10) * (int) queryParams.getOrDefault("page", 1);
+        int efSearch = Math.max(numHits, (int) queryParams.getOrDefault("efSearch", VectorUtils.DEFAULT_EF_SEARCH));
+        Query knnQuery = vectorField.encoding == VectorEncoding.BYTE
+            ? new KnnByteVectorQuery(VECTOR_FIELD, VectorQuantizer.quantize(vector), efSearch, filterQuery)
+            : new KnnFloatVectorQuery(VECTOR_FIELD, vector, efSearch, filterQuery);
+
+        try {
+            long start = System.nanoTime();
+            ScoreDoc[] knnHits = context.search(knnQuery, efSearch).scoreDocs;
+            RankedDocsQuery rankedQuery;
+            if (mode.equals(VectorUtils.MODE_VECTOR)) {
+                rankedQuery = toRankedDocsQuery("knn(k=" + efSearch + ")", knnHits);
+            } else {
+                Query lexicalQuery = filterQuery == null ? query : new BooleanQuery.Builder()
+                    .add(query, BooleanClause.Occur.MUST)
+                    .add(filterQuery, BooleanClause.Occur.FILTER)
+                    .build();
+                ScoreDoc[] lexicalHits = context.search(lexicalQuery, efSearch).scoreDocs;
+                Map<Integer, Float> fusedScores = VectorUtils.fuseRankings(lexicalHits, knnHits);
+                ScoreDoc[] fusedHits = fusedScores.entrySet().stream()
+                    .map(entry -> new ScoreDoc(entry.getKey(), entry.getValue()))
+                    .toArray(ScoreDoc[]::new);
+                rankedQuery = toRankedDocsQuery("rrf(" + query + ", knn(k=" + efSearch + "))", fusedHits);
+            }
+            LOGGER.debug("{} search of index {} ranked {} documents in {} µs", mode, context.getIndexName(),
+                rankedQuery.getNumDocs(), (System.nanoTime() - start) / 1000);
+            return rankedQuery;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to search the embeddings of index " + context.getIndexName(), e);
+        }
+    }
+
+    /**
+     * Creates a query that matches the ranked documents with their scores.
+     * @param description Description of the ranking
+     * @param hits Ranked documents in any order
+     * @return Query of the ranking
+     */
+    private static RankedDocsQuery toRankedDocsQuery(String description, ScoreDoc[] hits) {
+        ScoreDoc[] sortedHits = hits.clone();
+        Arrays.sort(sortedHits, (hit1, hit2) -> Integer.compare(hit1.doc, hit2.doc));
+        int[] docs = new int[sortedHits.length];
+        float[] scores = new float[sortedHits.length];
+        for (int i = 0; i < sortedHits.length; i++) {
+            docs[i] = sortedHits[i].doc;
+            scores[i] = sortedHits[i].score;
+        }
+        return new RankedDocsQuery(description, docs, scores);
+    }
+
+    /**
+     * Returns the vector field of an index generation. The field is looked up once and attached to the generation.
+     * @param context Index generation that is searched
+     * @return Vector field or null if the index has no embeddings
+     */
+    private static VectorField getVectorField(IndexContext context) {
+        VectorField vectorField = (VectorField) context.getAttachment(ATTACHMENT_KEY);
+        if (vectorField == null) {
+            FieldInfo fieldInfo = FieldInfos.getMergedFieldInfos(context.getSearcher().getIndexReader()).fieldInfo(VECTOR_FIELD);
+            if (fieldInfo == null || fieldInfo.getVectorDimension() == 0) {
+                vectorField = NO_VECTOR_FIELD;
+            } else {
+                vectorField = new VectorField(fieldInfo.getVectorDimension(), fieldInfo.getVectorEncoding());
+                LOGGER.info("Index {} has {} embeddings with {} dimensions", context.getIndexName(), vectorField.encoding, vectorField.dimension);
+            }
+            context.putAttachment(ATTACHMENT_KEY, vectorField);
+        }
+        return vectorField == NO_VECTOR_FIELD ? null : vectorField;
+    }
+
+    /**
+     * Dimension and encoding of the embeddings of an index.
+     */
+    private static class VectorField {
+
+        private final int dimension;
+        private final VectorEncoding encoding;
+
+        private VectorField(int dimension, VectorEncoding encoding) {
+            this.dimension = dimension;
+            this.encoding = encoding;
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package eu.ows.mosaic;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Utility methods for the vector module.
+ */
+public class VectorUtils {
+
+    public static final String MODE_LEXICAL = "lexical";
+    public static final String MODE_VECTOR = "vector";
+    public static final String MODE_HYBRID = "hybrid";
+    public static final Set<String> MODES = Set.of(MODE_LEXICAL, MODE_VECTOR, MODE_HYBRID);
+
+    public static final int DEFAULT_EF_SEARCH = 100;
+    public static final int MAX_EF_SEARCH = 10000;
+
+    // Constant of the reciprocal rank fusion, which dampens the influence of the first ranks
+    public static final int RRF_K = 60;
+
+    public static boolean isValidMode(String mode) {
+        return mode != null && MODES.contains(mode.toLowerCase());
+    }
+
+    /**
+     * Checks if a string is a comma-separated list of finite floats with at least one non-zero value.
+     * @param vector String of the vector parameter
+     * @return True if the vector is valid, false otherwise
+     */
+    public static boolean isValidVector(String vector) {
+        if (vector == null || vector.isBlank()) {
+            return false;
+        }
+        boolean nonZero = false;
+        for (String value : vector.split(",")) {
+            String trimmedValue = value.trim();
+            if (!NumberUtils.isCreatable(trimmedValue)) {
+                return false;
+            }
+            float floatValue = NumberUtils.toFloat(trimmedValue);
+            if (!Float.isFinite(floatValue)) {
+                return false;
+            }
+            nonZero |= floatValue != 0.0f;
+        }
+        return nonZero;
+    }
+
+    public static float[] convertVector(String vector) {
+        String[] values = vector.split(",");
+        float[] floatValues = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            floatValues[i] = NumberUtils.toFloat(values[i].trim());
+        }
+        return floatValues;
+    }
+
+    public static boolean isValidEfSearch(String efSearch) {
+        return NumberUtils.isDigits(efSearch) && NumberUtils.toInt(efSearch, 0) > 0 && NumberUtils.toInt(efSearch, 0) <= MAX_EF_SEARCH;
+    }
+
+    public static int convertEfSearch(String efSearch) {
+        return efSearch != null ? NumberUtils.toInt(efSearch, DEFAULT_EF_SEARCH) : DEFAULT_EF_SEARCH;
+    }
+
+    /**
+     * Fuses rankings with reciprocal rank fusion, i.e., the score of a document is the sum of {@code 1 / (RRF_K + rank)}
+     * over the rankings that contain the document, with ranks starting at 1.
+     * @param rankings Rankings of top-level documents, e.g., the hits of a BM25 search and of a kNN search
+     * @return Fused scores by top-level document number
+     */
+    public static Map<Integer, Float> fuseRankings(ScoreDoc[]... rankings) {
+        Map<Integer, Float> scores = new HashMap<>();
+        for (ScoreDoc[] ranking : rankings) {
+            for (int rank = 1; rank <= ranking.length; rank++) {
+                scores.merge(ranking[rank - 1].doc, 1.0f / (RRF_K + rank), Float::sum);
+            }
+        }
+        return scores;
+    }
+
+}
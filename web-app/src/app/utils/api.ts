@@ -1,5 +1,6 @@
 import { FullText } from '@/types/fullText';
 import { QueryParams, ApiResponse } from '@/types/queryParams';
+import { Suggestions } from '@/types/suggestions';
 
 class ApiClient {
   private baseURL: string;
@@ -28,6 +29,29 @@ class ApiClient {
     return res.json();
   }
 
+  /**
+   * Suggest
+   * @param query Prefix of the query
+   * @param index Index of the suggestions, all indexes if not set
+   * @param signal Signal to abort the request when the query changes
+   * @returns Completions of the query, without spelling corrections since the last word is still being typed
+   */
+  async suggest(query: string, index?: string, signal?: AbortSignal): Promise<Suggestions> {
+    const queryParams = new URLSearchParams();
+    queryParams.append('q', query);
+    if (index) queryParams.append('index', index);
+    queryParams.append('limit', '8');
+
+    const url = this.baseURL + `suggest?${queryParams.toString()}`;
+    const res = await fetch(url, { signal });
+
+    if (!res.ok) {
+      throw new Error('Failed to fetch data');
+    }
+
+    return res.json();
+  }
+
   /**
    * Search XML
    * TODO: Implement, change "any"
@@ -2,8 +2,12 @@ import { Button, Input, InputGroup, InputLeftElement, InputRightElement, Stack }
 import { FontAwesomeIcon } from '@fortawesome/react-fontawesome';
 import { faSearch } from '@fortawesome/free-solid-svg-icons';
 import { PhoneIcon, AddIcon, WarningIcon, SearchIcon } from '@chakra-ui/icons';
-import { FC } from 'react';
+import { FC, useEffect, useState } from 'react';
 import { QueryParams } from '@/types/queryParams';
+import ApiClient from '@/app/utils/api';
+
+// Wait time after the last keystroke before suggestions are requested
+const SUGGEST_DELAY_MS = 150;
 
 interface SearchBarProps {
   queryParams: QueryParams;
@@ -14,9 +18,40 @@ interface SearchBarProps {
 }
 
 export const SearchBar: FC<SearchBarProps> = ({ queryParams, setQueryParams, loading, sendRequest, setQuery }) => {
+  const [suggestions, setSuggestions] = useState<string[]>([]);
+
+  useEffect(() => {
+    const query = queryParams.query;
+    if (!query || query.trim().length === 0) {
+      setSuggestions([]);
+      return;
+    }
+
+    // Only the suggestions of the latest query are shown
+    const controller = new AbortController();
+    const timer = setTimeout(() => {
+      new ApiClient()
+        .suggest(query, queryParams.index, controller.signal)
+        .then((res) => setSuggestions(res.suggestions))
+        .catch(() => setSuggestions([]));
+    }, SUGGEST_DELAY_MS);
+
+    return () => {
+      clearTimeout(timer);
+      controller.abort();
+    };
+  }, [queryParams.query, queryParams.index]);
+
   return (
     <InputGroup>
+      <datalist id="search-suggestions">
+        {suggestions.map((suggestion) => (
+          <option key={suggestion} value={suggestion} />
+        ))}
+      </datalist>
       <Input
+        list="search-suggestions"
+        autoComplete="off"
         placeholder="Search ..."
         color="white"
         rounded={'xl'}
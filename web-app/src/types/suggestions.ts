@@ -0,0 +1,4 @@
+export interface Suggestions {
+  suggestions: string[];
+  didYouMean?: string;
+}